@@ -2,6 +2,8 @@ package edu.univ.lms;
 
 import edu.univ.lms.controller.LibraryController;
 
+import java.io.UncheckedIOException;
+
 /**
  * Main entry point for the Library Management System.
  * Uses layered architecture with Controller, Service, Repository, and Model layers.
@@ -9,7 +11,15 @@ import edu.univ.lms.controller.LibraryController;
 public class Main {
 
     public static void main(String[] args) {
-        LibraryController controller = new LibraryController();
+        LibraryController controller;
+        try {
+            controller = new LibraryController();
+        } catch (UncheckedIOException e) {
+            // Starting with an empty data set would overwrite the damaged files
+            System.out.println("Cannot start: " + e.getCause().getMessage());
+            System.exit(1);
+            return;
+        }
         controller.run();
     }
 }
@@ -5,15 +5,26 @@ import edu.univ.lms.model.User;
 import edu.univ.lms.observer.EmailNotifier;
 import edu.univ.lms.observer.RealEmailNotifier;
 import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.CatalogIndex;
+import edu.univ.lms.repository.Checkpointer;
+import edu.univ.lms.repository.IdAllocator;
+import edu.univ.lms.repository.LoanHistoryStore;
+import edu.univ.lms.repository.MutationLog;
 import edu.univ.lms.repository.UserRepository;
 import edu.univ.lms.service.LibraryService;
+import edu.univ.lms.service.PersistenceService;
 import edu.univ.lms.service.ReminderService;
+import edu.univ.lms.service.UserDirectory;
 import edu.univ.lms.service.UserService;
 import edu.univ.lms.strategy.BookFine;
 import edu.univ.lms.strategy.DvdFine;
 import edu.univ.lms.strategy.FineStrategy;
 import edu.univ.lms.strategy.JournalFine;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Scanner;
 import java.util.logging.Logger;
@@ -34,21 +45,34 @@ public class LibraryController {
 
     private static final Logger LOGGER = Logger.getLogger(LibraryController.class.getName());
 
+    /** Location of the write-ahead log replayed on top of the JSON snapshots. */
+    private static final Path JOURNAL_FILE = Paths.get("data", "journal.log");
+
     private final LibraryService libraryService;
     private final UserService userService;
     private final ReminderService reminderService;
     private final BookRepository bookRepository;
     private final List<User> users;
+    private final MutationLog mutationLog;
+    private final Checkpointer checkpointer;
+    private final PersistenceService persistenceService;
+    private final LoanHistoryStore loanHistory;
 
     /**
      * Constructs the controller by initializing repositories, services,
      * notifiers, and loading persisted data into memory.
      * It also ensures that a default admin and demo user are created
      * if the system is launched without stored users.
+     * <p>
+     * Mutations made since the last full save are recovered by replaying
+     * the write-ahead log on top of the loaded snapshots. While the console
+     * runs, journal appends are made durable in the background within a
+     * bounded delay, and a checkpointer folds the log back into the snapshots.
      */
     public LibraryController() {
         UserRepository userRepository = new UserRepository();
         bookRepository = new BookRepository();
+        mutationLog = openMutationLog(bookRepository.getFile(), userRepository.getFile());
 
         libraryService = new LibraryService();
         userService = new UserService(userRepository);
@@ -60,20 +84,137 @@ public class LibraryController {
         String senderAppPassword = "YOUR_APP_PASSWORD_HERE";
         reminderService.addObserver(new RealEmailNotifier(senderEmail, senderAppPassword));
 
-        users = userService.loadUsers();
+        users = new UserDirectory(userService.loadUsers());
         List<Book> items = bookRepository.loadBooks();
+        int replayed = replayJournal(items);
         libraryService.setItems(items);
-        libraryService.restoreIsbnCounter();
+        libraryService.restoreIndex(catalogIndex(items, replayed));
+
+        checkpointer = (mutationLog == null)
+                ? null
+                : new Checkpointer(mutationLog, bookRepository, userRepository, this::captureSnapshot);
 
         if (users.isEmpty()) {
             User admin = new User("1", "Admin User", "admin", "1234", true, "admin@gmail.com");
             User demo = new User("2", "Hamza", "hamza", "pass", false, "hamza@example.com");
             users.add(admin);
             users.add(demo);
-            userService.saveUsers(users);
+            saveAll();
+        } else if (replayed > 0) {
+            saveAll();
+        }
+
+        libraryService.setMutationLog(mutationLog);
+        userService.setMutationLog(mutationLog);
+        userService.setIdAllocator(new IdAllocator(UserService.highestNumericId(users)));
+
+        loanHistory = new LoanHistoryStore();
+        libraryService.setLoanHistory(loanHistory);
+
+        // Appends only reach the OS cache; the persistence service batches the fsyncs
+        persistenceService = (mutationLog == null) ? null : new PersistenceService(mutationLog::sync);
+        if (persistenceService != null) {
+            mutationLog.setSyncOnAppend(false);
+            libraryService.setPersistenceService(persistenceService);
+            userService.setPersistenceService(persistenceService);
         }
     }
 
+    /**
+     * Opens the write-ahead log, or returns {@code null} so the application
+     * falls back to full saves when the log cannot be used.
+     */
+    private static MutationLog openMutationLog(Path... snapshotFiles) {
+        try {
+            return new MutationLog(JOURNAL_FILE, snapshotFiles);
+        } catch (IOException e) {
+            System.out.println("Journal unavailable, using full saves only: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Applies journaled mutations to the freshly loaded snapshot data.
+     *
+     * @param items item list loaded from the repository
+     * @return number of records replayed
+     */
+    private int replayJournal(List<Book> items) {
+        if (mutationLog == null) {
+            return 0;
+        }
+        try {
+            return mutationLog.replay(items, users);
+        } catch (IOException e) {
+            System.out.println("Error replaying journal: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the catalog index for the loaded items. The persisted index is
+     * used as is when it matches the items file and nothing was replayed on
+     * top of it; otherwise the index is rebuilt from the items and, if the
+     * items file is current, saved for the next start.
+     *
+     * @param items    loaded items, after journal replay
+     * @param replayed number of journal records applied to them
+     * @return index describing {@code items}
+     */
+    private CatalogIndex catalogIndex(List<Book> items, int replayed) {
+        if (replayed == 0) {
+            CatalogIndex stored = bookRepository.loadIndex();
+            if (stored != null && stored.getItemCount() == items.size()) {
+                return stored;
+            }
+        }
+        CatalogIndex index = CatalogIndex.build(items);
+        if (replayed == 0 && !items.isEmpty()) {
+            bookRepository.saveIndex(items);
+        }
+        return index;
+    }
+
+    /**
+     * Copies items, users and the current journal position atomically.
+     * Both service and user-list locks are held, so every journal record up to
+     * the returned sequence number is reflected in the copies.
+     * <p>
+     * Dirty flags travel with the copies: the live objects are marked clean
+     * because the copies are what gets persisted. Incremental repositories
+     * re-write segments whose save failed on their own.
+     */
+    private Checkpointer.Snapshot captureSnapshot() {
+        synchronized (libraryService) {
+            synchronized (users) {
+                List<Book> bookCopies = libraryService.copyBooks();
+                for (Book b : libraryService.getAllBooks()) {
+                    b.markClean();
+                }
+                List<User> userCopies = new ArrayList<>(users.size());
+                for (User u : users) {
+                    userCopies.add(new User(u));
+                    u.markClean();
+                }
+                return new Checkpointer.Snapshot(mutationLog.getLastSequence(), bookCopies, userCopies);
+            }
+        }
+    }
+
+    /**
+     * Writes full snapshots of items and users. With a journal, this runs a
+     * checkpoint so the journal is compacted once its records are part of the
+     * snapshots.
+     */
+    private void saveAll() {
+        if (checkpointer != null) {
+            checkpointer.checkpointNow();
+            return;
+        }
+        bookRepository.saveBooks(libraryService.getAllBooks());
+        userService.saveUsers(users);
+    }
+
     /**
      * Prints a separator line to visually distinguish UI sections.
      */
@@ -147,15 +288,7 @@ public class LibraryController {
             if (username.isEmpty()) {
                 System.out.println("Username cannot be empty.");
             } else {
-                boolean exists = false;
-                for (User u : users) {
-                    if (u.getUsername().equalsIgnoreCase(username)) {
-                        exists = true;
-                        break;
-                    }
-                }
-
-                if (exists) {
+                if (userService.isUsernameTaken(users, username)) {
                     System.out.println("This username is already taken. Try another one.");
                 } else {
                     break;
@@ -199,6 +332,14 @@ public class LibraryController {
 
         System.out.println("===== Welcome to the Library Management System =====");
 
+        if (persistenceService != null) {
+            persistenceService.start();
+        }
+        if (checkpointer != null) {
+            checkpointer.start();
+        }
+        loanHistory.start();
+
         while (true) {
             clearScreen();
             System.out.println("1. Login");
@@ -210,8 +351,14 @@ public class LibraryController {
 
             if ("3".equals(choice)) {
                 System.out.println("Saving data...");
-                bookRepository.saveBooks(libraryService.getAllBooks());
-                userService.saveUsers(users);
+                if (persistenceService != null) {
+                    persistenceService.close();
+                }
+                if (checkpointer != null) {
+                    checkpointer.close();
+                }
+                loanHistory.close();
+                saveAll();
                 System.out.println("Goodbye!");
                 break;
             }
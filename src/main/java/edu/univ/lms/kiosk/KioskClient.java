@@ -0,0 +1,317 @@
+package edu.univ.lms.kiosk;
+
+import edu.univ.lms.model.Book;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * Blocking client for the kiosk protocol served by {@link KioskServer}.
+ * <p>
+ * The client supports two styles of use:
+ * <ul>
+ *     <li>Simple calls such as {@link #lookup(String)} that send one request
+ *         and wait for its answer</li>
+ *     <li>Pipelining: queue many requests with the {@code send...} methods,
+ *         then collect the answers in order with {@link #receive()}</li>
+ * </ul>
+ * Instances are not thread-safe; use one client per kiosk thread.
+ */
+public class KioskClient implements Closeable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(KioskProtocol.MAX_FRAME_SIZE);
+    private final ByteBuffer header = ByteBuffer.allocate(KioskProtocol.HEADER_SIZE);
+
+    /** Opcodes of requests still waiting for a response, in send order. */
+    private final Queue<Byte> inFlight = new ArrayDeque<>();
+
+    private int nextRequestId = 1;
+
+    private KioskClient(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens a connection to a kiosk server.
+     *
+     * @param host server host name
+     * @param port server port
+     * @return connected client
+     * @throws IOException if the connection cannot be established
+     */
+    public static KioskClient connect(String host, int port) throws IOException {
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        return new KioskClient(channel);
+    }
+
+    // ---------------------------------------------------------
+    // Simple calls
+    // ---------------------------------------------------------
+
+    /**
+     * Logs in a user for this connection.
+     *
+     * @param username login username
+     * @param password login password
+     * @return server response carrying the user ID on success
+     * @throws IOException on network failure
+     */
+    public KioskResponse login(String username, String password) throws IOException {
+        sendLogin(username, password);
+        return receive();
+    }
+
+    /**
+     * Looks up an item by ISBN.
+     *
+     * @param isbn item ISBN
+     * @return server response carrying the item on success
+     * @throws IOException on network failure
+     */
+    public KioskResponse lookup(String isbn) throws IOException {
+        sendLookup(isbn);
+        return receive();
+    }
+
+    /**
+     * Borrows an item for the logged-in user.
+     *
+     * @param isbn item ISBN
+     * @return server response carrying the due date on success
+     * @throws IOException on network failure
+     */
+    public KioskResponse borrow(String isbn) throws IOException {
+        sendBorrow(isbn);
+        return receive();
+    }
+
+    /**
+     * Returns an item for the logged-in user.
+     *
+     * @param isbn item ISBN
+     * @return server response carrying the charged fine on success
+     * @throws IOException on network failure
+     */
+    public KioskResponse returnItem(String isbn) throws IOException {
+        sendReturn(isbn);
+        return receive();
+    }
+
+    /**
+     * Ends the kiosk session while keeping the connection open.
+     *
+     * @return server response
+     * @throws IOException on network failure
+     */
+    public KioskResponse logout() throws IOException {
+        sendLogout();
+        return receive();
+    }
+
+    // ---------------------------------------------------------
+    // Pipelined calls
+    // ---------------------------------------------------------
+
+    /**
+     * Queues a login request.
+     *
+     * @param username login username
+     * @param password login password
+     * @return request identifier
+     * @throws IOException on network failure
+     */
+    public int sendLogin(String username, String password) throws IOException {
+        int size = 5 + KioskProtocol.stringSize(username) + KioskProtocol.stringSize(password);
+        int id = begin(KioskProtocol.OP_LOGIN, size);
+        KioskProtocol.putString(out, username);
+        KioskProtocol.putString(out, password);
+        return id;
+    }
+
+    /**
+     * Queues a lookup request.
+     *
+     * @param isbn item ISBN
+     * @return request identifier
+     * @throws IOException on network failure
+     */
+    public int sendLookup(String isbn) throws IOException {
+        return sendIsbn(KioskProtocol.OP_LOOKUP, isbn);
+    }
+
+    /**
+     * Queues a borrow request.
+     *
+     * @param isbn item ISBN
+     * @return request identifier
+     * @throws IOException on network failure
+     */
+    public int sendBorrow(String isbn) throws IOException {
+        return sendIsbn(KioskProtocol.OP_BORROW, isbn);
+    }
+
+    /**
+     * Queues a return request.
+     *
+     * @param isbn item ISBN
+     * @return request identifier
+     * @throws IOException on network failure
+     */
+    public int sendReturn(String isbn) throws IOException {
+        return sendIsbn(KioskProtocol.OP_RETURN, isbn);
+    }
+
+    /**
+     * Queues a logout request.
+     *
+     * @return request identifier
+     * @throws IOException on network failure
+     */
+    public int sendLogout() throws IOException {
+        return begin(KioskProtocol.OP_LOGOUT, 5);
+    }
+
+    /**
+     * Writes every queued request to the server.
+     *
+     * @throws IOException on network failure
+     */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /**
+     * Waits for the answer to the oldest outstanding request.
+     * Queued requests are flushed first.
+     *
+     * @return decoded response
+     * @throws IOException on network failure or if nothing is outstanding
+     */
+    public KioskResponse receive() throws IOException {
+        if (inFlight.isEmpty()) {
+            throw new IOException("No outstanding kiosk request.");
+        }
+        if (out.position() > 0) {
+            flush();
+        }
+
+        header.clear();
+        readFully(header);
+        header.flip();
+        int length = header.getInt();
+        if (length <= 0 || length > KioskProtocol.MAX_FRAME_SIZE) {
+            throw new IOException("Invalid kiosk frame length: " + length);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(body);
+        body.flip();
+
+        byte opcode = inFlight.poll();
+        KioskResponse response = new KioskResponse(body.getInt(), opcode, body.get());
+        if (response.isOk()) {
+            decodePayload(response, body);
+        }
+        return response;
+    }
+
+    /**
+     * Returns the number of requests sent but not yet answered.
+     *
+     * @return outstanding request count
+     */
+    public int getOutstanding() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------
+
+    private int sendIsbn(byte opcode, String isbn) throws IOException {
+        int id = begin(opcode, 5 + KioskProtocol.stringSize(isbn));
+        KioskProtocol.putString(out, isbn);
+        return id;
+    }
+
+    /**
+     * Writes the frame header, opcode and request ID for a new request.
+     */
+    private int begin(byte opcode, int bodySize) throws IOException {
+        if (bodySize > KioskProtocol.MAX_FRAME_SIZE) {
+            throw new IOException("Kiosk request too large: " + bodySize + " bytes");
+        }
+        if (out.remaining() < KioskProtocol.HEADER_SIZE + bodySize) {
+            flush();
+        }
+
+        int id = nextRequestId++;
+        out.putInt(bodySize);
+        out.put(opcode);
+        out.putInt(id);
+        inFlight.add(opcode);
+        return id;
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Kiosk server closed the connection.");
+            }
+        }
+    }
+
+    private void decodePayload(KioskResponse response, ByteBuffer body) {
+        switch (response.getOpcode()) {
+            case KioskProtocol.OP_LOGIN:
+                response.setUserId(KioskProtocol.getString(body));
+                break;
+            case KioskProtocol.OP_LOOKUP:
+                response.setBook(decodeBook(body));
+                break;
+            case KioskProtocol.OP_BORROW:
+                response.setDueDate(LocalDate.ofEpochDay(body.getLong()));
+                break;
+            case KioskProtocol.OP_RETURN:
+                response.setFine(body.getDouble());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Book decodeBook(ByteBuffer body) {
+        Book book = new Book(
+                KioskProtocol.getString(body),
+                KioskProtocol.getString(body),
+                KioskProtocol.getString(body)
+        );
+        book.setFineType(KioskProtocol.getString(body));
+        book.rebuildFineStrategy();
+        book.setBorrowed(body.get() != 0);
+
+        long due = body.getLong();
+        if (due != KioskProtocol.NO_DATE) {
+            book.setDueDate(LocalDate.ofEpochDay(due));
+        }
+        return book;
+    }
+}
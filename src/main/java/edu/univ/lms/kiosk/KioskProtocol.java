@@ -0,0 +1,125 @@
+package edu.univ.lms.kiosk;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format shared by {@link KioskServer} and {@link KioskClient}.
+ * <p>
+ * Every message is a length-prefixed frame:
+ * <pre>
+ *   [int length][body ...]
+ * </pre>
+ * Request bodies start with {@code [byte opcode][int requestId]} followed by
+ * the operation fields. Response bodies start with
+ * {@code [int requestId][byte status]} followed by the result fields.
+ * Strings are encoded as {@code [unsigned short length][UTF-8 bytes]} and dates
+ * as epoch days ({@code -1} when absent).
+ * <p>
+ * Requests on one connection may be pipelined: the client can send many
+ * frames without waiting, and the server answers them strictly in order.
+ */
+public final class KioskProtocol {
+
+    // ---------------------------------------------------------
+    // Opcodes
+    // ---------------------------------------------------------
+
+    /** Authenticates the connection: {@code username, password}. */
+    public static final byte OP_LOGIN = 1;
+
+    /** Looks up a single item: {@code isbn}. */
+    public static final byte OP_LOOKUP = 2;
+
+    /** Borrows an item for the logged-in user: {@code isbn}. */
+    public static final byte OP_BORROW = 3;
+
+    /** Returns an item for the logged-in user: {@code isbn}. */
+    public static final byte OP_RETURN = 4;
+
+    /** Ends the kiosk session without closing the connection. */
+    public static final byte OP_LOGOUT = 5;
+
+    // ---------------------------------------------------------
+    // Status codes
+    // ---------------------------------------------------------
+
+    /** The operation succeeded. */
+    public static final byte STATUS_OK = 0;
+
+    /** The requested item does not exist. */
+    public static final byte STATUS_NOT_FOUND = 1;
+
+    /** The library rules rejected the operation (limits, fines, ownership...). */
+    public static final byte STATUS_DENIED = 2;
+
+    /** The operation requires a logged-in user. */
+    public static final byte STATUS_NOT_LOGGED_IN = 3;
+
+    /** The frame could not be decoded or the opcode is unknown. */
+    public static final byte STATUS_BAD_REQUEST = 4;
+
+    // ---------------------------------------------------------
+    // Limits
+    // ---------------------------------------------------------
+
+    /** Size of the length prefix in bytes. */
+    public static final int HEADER_SIZE = 4;
+
+    /** Largest accepted frame body; larger frames close the connection. */
+    public static final int MAX_FRAME_SIZE = 64 * 1024;
+
+    /** Marker used for a missing date. */
+    public static final long NO_DATE = -1L;
+
+    private KioskProtocol() {
+    }
+
+    // ---------------------------------------------------------
+    // Encoding helpers
+    // ---------------------------------------------------------
+
+    /**
+     * Writes a string as {@code [unsigned short length][UTF-8 bytes]}.
+     * A {@code null} value is written as an empty string.
+     *
+     * @param buffer target buffer
+     * @param value  string to write
+     */
+    public static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for kiosk protocol: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, String)}.
+     *
+     * @param buffer source buffer
+     * @return decoded string (never {@code null})
+     * @throws BufferUnderflowException if the buffer is truncated
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of bytes {@link #putString(ByteBuffer, String)} will use.
+     *
+     * @param value string to measure
+     * @return encoded size in bytes
+     */
+    public static int stringSize(String value) {
+        return 2 + (value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+    }
+}
@@ -0,0 +1,138 @@
+package edu.univ.lms.kiosk;
+
+import edu.univ.lms.model.Book;
+
+import java.time.LocalDate;
+
+/**
+ * Decoded answer to a single kiosk request.
+ * <p>
+ * Only the fields that belong to the request's operation are set:
+ * <ul>
+ *     <li>Login: {@link #getUserId()}</li>
+ *     <li>Lookup: {@link #getBook()}</li>
+ *     <li>Borrow: {@link #getDueDate()}</li>
+ *     <li>Return: {@link #getFine()}</li>
+ * </ul>
+ */
+public class KioskResponse {
+
+    private final int requestId;
+    private final byte opcode;
+    private final byte status;
+
+    private String userId;
+    private Book book;
+    private LocalDate dueDate;
+    private double fine;
+
+    /**
+     * Creates a response without payload.
+     *
+     * @param requestId identifier echoed by the server
+     * @param opcode    operation of the matching request
+     * @param status    status code from {@link KioskProtocol}
+     */
+    public KioskResponse(int requestId, byte opcode, byte status) {
+        this.requestId = requestId;
+        this.opcode = opcode;
+        this.status = status;
+    }
+
+    /**
+     * Returns the identifier of the request this response answers.
+     *
+     * @return request identifier
+     */
+    public int getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * Returns the opcode of the request this response answers.
+     *
+     * @return request opcode
+     */
+    public byte getOpcode() {
+        return opcode;
+    }
+
+    /**
+     * Returns the status code reported by the server.
+     *
+     * @return status code from {@link KioskProtocol}
+     */
+    public byte getStatus() {
+        return status;
+    }
+
+    /**
+     * Indicates whether the operation succeeded.
+     *
+     * @return {@code true} if the status is {@link KioskProtocol#STATUS_OK}
+     */
+    public boolean isOk() {
+        return status == KioskProtocol.STATUS_OK;
+    }
+
+    /**
+     * Returns the user ID granted by a successful login.
+     *
+     * @return user ID, or {@code null} for other operations
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Returns the item described by a successful lookup.
+     *
+     * @return item snapshot, or {@code null} for other operations
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    void setBook(Book book) {
+        this.book = book;
+    }
+
+    /**
+     * Returns the due date assigned by a successful borrow.
+     *
+     * @return due date, or {@code null} for other operations
+     */
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    void setDueDate(LocalDate dueDate) {
+        this.dueDate = dueDate;
+    }
+
+    /**
+     * Returns the fine charged by a successful return.
+     *
+     * @return fine amount in NIS (0 when returned on time)
+     */
+    public double getFine() {
+        return fine;
+    }
+
+    void setFine(double fine) {
+        this.fine = fine;
+    }
+
+    @Override
+    public String toString() {
+        return "KioskResponse{" +
+                "requestId=" + requestId +
+                ", opcode=" + opcode +
+                ", status=" + status +
+                '}';
+    }
+}
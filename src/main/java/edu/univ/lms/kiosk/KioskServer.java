@@ -0,0 +1,494 @@
+package edu.univ.lms.kiosk;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.service.LibraryService;
+import edu.univ.lms.service.UserService;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Non-blocking server exposing the circulation operations of
+ * {@link LibraryService} to self-checkout kiosks.
+ * <p>
+ * The server speaks the compact binary protocol described in
+ * {@link KioskProtocol} and runs a single selector thread, so:
+ * <ul>
+ *     <li>No thread is created per kiosk connection</li>
+ *     <li>Pipelined requests on a connection are answered in order</li>
+ *     <li>Responses are written without blocking the selector</li>
+ * </ul>
+ * <p>
+ * Every service call is made while holding the {@link LibraryService}
+ * monitor, so kiosk traffic never interleaves with other callers that
+ * use the same lock.
+ * <p>
+ * A kiosk login is remembered by the connection only; the shared
+ * {@link User} is never logged in or out, so a kiosk cannot end the
+ * console session of the same account. A connection that stops reading
+ * its answers has at most {@link #MAX_PENDING_RESPONSES} of them queued;
+ * after that the server stops reading its requests until it catches up.
+ */
+public class KioskServer implements Closeable {
+
+    /** Initial size of a connection's read buffer. */
+    private static final int INITIAL_READ_BUFFER = 8 * 1024;
+
+    /** Responses queued per connection before its requests are no longer read. */
+    static final int MAX_PENDING_RESPONSES = 64;
+
+    /** Result of {@link #decodeFrames}: every complete frame was handled. */
+    private static final int DECODED_ALL = 0;
+
+    /** Result of {@link #decodeFrames}: stopped because the write queue is full. */
+    private static final int QUEUE_FULL = 1;
+
+    /** Result of {@link #decodeFrames}: the connection was closed. */
+    private static final int CLOSED = -1;
+
+    private final LibraryService libraryService;
+    private final UserService userService;
+    private final List<User> users;
+    private final int requestedPort;
+
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /** Scratch buffer used to assemble one response body at a time. */
+    private final ByteBuffer scratch = ByteBuffer.allocate(KioskProtocol.MAX_FRAME_SIZE);
+
+    /**
+     * Creates a kiosk server. Call {@link #start()} to begin accepting connections.
+     *
+     * @param libraryService service used for lookups, borrowing and returning
+     * @param userService    service used to authenticate kiosk logins
+     * @param users          list of all registered users
+     * @param port           TCP port to bind, or {@code 0} for an ephemeral port
+     */
+    public KioskServer(LibraryService libraryService, UserService userService, List<User> users, int port) {
+        this.libraryService = libraryService;
+        this.userService = userService;
+        this.users = users;
+        this.requestedPort = port;
+    }
+
+    // ---------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------
+
+    /**
+     * Binds the server socket and starts the selector thread.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(requestedPort));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "kiosk-server");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+
+        System.out.println("Kiosk server listening on port " + getPort());
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     *
+     * @return bound port, or {@code -1} if the server is not started
+     */
+    public int getPort() {
+        if (serverChannel == null) {
+            return -1;
+        }
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops the selector thread and closes every open connection.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            closeKey(key);
+        }
+        selector.close();
+        serverChannel.close();
+    }
+
+    // ---------------------------------------------------------
+    // Selector loop
+    // ---------------------------------------------------------
+
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.out.println("Kiosk server error: " + e.getMessage());
+                return;
+            }
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        write(key);
+                    }
+                } catch (IOException e) {
+                    closeKey(key);
+                } catch (RuntimeException e) {
+                    // Only this connection is dropped; the selector keeps serving the others
+                    System.out.println("Kiosk connection error: " + e);
+                    closeKey(key);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Session());
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Session session = (Session) key.attachment();
+
+        int n = channel.read(session.readBuffer);
+        if (n < 0) {
+            closeKey(key);
+            return;
+        }
+
+        // Fast path: try to answer immediately, fall back to OP_WRITE
+        pump(key);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        pump(key);
+    }
+
+    /**
+     * Handles buffered requests and writes queued responses until the
+     * socket would block or nothing is left to do, then sets the interest
+     * set: reading only while the write queue has room, writing only while
+     * it is not empty.
+     */
+    private void pump(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Session session = (Session) key.attachment();
+
+        int decoded;
+        do {
+            decoded = decodeFrames(key, session);
+            if (decoded == CLOSED) {
+                return;
+            }
+        } while (flush(channel, session) && decoded == QUEUE_FULL);
+
+        int ops = 0;
+        if (session.writeQueue.size() < MAX_PENDING_RESPONSES) {
+            ops |= SelectionKey.OP_READ;
+        }
+        if (!session.writeQueue.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+    }
+
+    /**
+     * Handles the complete frames in the read buffer, queueing one response
+     * each, until the buffer or the write queue runs out.
+     */
+    private int decodeFrames(SelectionKey key, Session session) {
+        ByteBuffer in = session.readBuffer;
+        in.flip();
+        int result = DECODED_ALL;
+        while (in.remaining() >= KioskProtocol.HEADER_SIZE) {
+            if (session.writeQueue.size() >= MAX_PENDING_RESPONSES) {
+                result = QUEUE_FULL;
+                break;
+            }
+            int length = in.getInt(in.position());
+            if (length <= 0 || length > KioskProtocol.MAX_FRAME_SIZE) {
+                closeKey(key);
+                return CLOSED;
+            }
+            if (in.remaining() < KioskProtocol.HEADER_SIZE + length) {
+                break;
+            }
+
+            ByteBuffer body = in.duplicate();
+            body.position(in.position() + KioskProtocol.HEADER_SIZE);
+            body.limit(body.position() + length);
+            in.position(body.limit());
+
+            session.writeQueue.add(handle(session, body));
+        }
+        in.compact();
+
+        // Grow the buffer when a single frame does not fit yet
+        if (result == DECODED_ALL && !in.hasRemaining()) {
+            ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            bigger.put(in);
+            session.readBuffer = bigger;
+        }
+        return result;
+    }
+
+    /**
+     * Writes queued responses until the queue is empty or the socket would block.
+     *
+     * @return {@code true} if every queued response was written
+     */
+    private boolean flush(SocketChannel channel, Session session) throws IOException {
+        while (!session.writeQueue.isEmpty()) {
+            ByteBuffer head = session.writeQueue.peek();
+            channel.write(head);
+            if (head.hasRemaining()) {
+                return false;
+            }
+            session.writeQueue.poll();
+        }
+        return true;
+    }
+
+    private void closeKey(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof Session) {
+            endSession((Session) attachment);
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Channel is being discarded anyway
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Request handling
+    // ---------------------------------------------------------
+
+    /**
+     * Decodes one request body and produces the complete response frame.
+     */
+    private ByteBuffer handle(Session session, ByteBuffer body) {
+        scratch.clear();
+        scratch.position(KioskProtocol.HEADER_SIZE);
+
+        int requestId = 0;
+        try {
+            byte op = body.get();
+            requestId = body.getInt();
+
+            switch (op) {
+                case KioskProtocol.OP_LOGIN:
+                    handleLogin(session, requestId, body);
+                    break;
+                case KioskProtocol.OP_LOOKUP:
+                    handleLookup(requestId, body);
+                    break;
+                case KioskProtocol.OP_BORROW:
+                    handleBorrow(session, requestId, body);
+                    break;
+                case KioskProtocol.OP_RETURN:
+                    handleReturn(session, requestId, body);
+                    break;
+                case KioskProtocol.OP_LOGOUT:
+                    endSession(session);
+                    status(requestId, KioskProtocol.STATUS_OK);
+                    break;
+                default:
+                    status(requestId, KioskProtocol.STATUS_BAD_REQUEST);
+                    break;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            badRequest(requestId);
+        } catch (RuntimeException e) {
+            // An answer too large for a frame or a failing service call
+            System.out.println("Kiosk request failed: " + e);
+            badRequest(requestId);
+        }
+
+        scratch.putInt(0, scratch.position() - KioskProtocol.HEADER_SIZE);
+        scratch.flip();
+
+        ByteBuffer frame = ByteBuffer.allocate(scratch.remaining());
+        frame.put(scratch);
+        frame.flip();
+        return frame;
+    }
+
+    private void handleLogin(Session session, int requestId, ByteBuffer body) {
+        String username = KioskProtocol.getString(body);
+        String password = KioskProtocol.getString(body);
+
+        synchronized (libraryService) {
+            User user = userService.authenticateUser(users, username, password);
+            if (user == null) {
+                status(requestId, KioskProtocol.STATUS_DENIED);
+                return;
+            }
+
+            session.user = user;
+
+            status(requestId, KioskProtocol.STATUS_OK);
+            KioskProtocol.putString(scratch, user.getUserId());
+        }
+    }
+
+    private void handleLookup(int requestId, ByteBuffer body) {
+        String isbn = KioskProtocol.getString(body);
+
+        synchronized (libraryService) {
+            Book book = libraryService.searchBookByIsbn(isbn);
+            if (book == null) {
+                status(requestId, KioskProtocol.STATUS_NOT_FOUND);
+                return;
+            }
+
+            status(requestId, KioskProtocol.STATUS_OK);
+            KioskProtocol.putString(scratch, book.getIsbn());
+            KioskProtocol.putString(scratch, book.getTitle());
+            KioskProtocol.putString(scratch, book.getAuthor());
+            KioskProtocol.putString(scratch, book.getItemType());
+            scratch.put(book.isBorrowed() ? (byte) 1 : (byte) 0);
+            scratch.putLong(book.isBorrowed() && book.getDueDate() != null
+                    ? book.getDueDate().toEpochDay()
+                    : KioskProtocol.NO_DATE);
+        }
+    }
+
+    private void handleBorrow(Session session, int requestId, ByteBuffer body) {
+        String isbn = KioskProtocol.getString(body);
+
+        if (session.user == null) {
+            status(requestId, KioskProtocol.STATUS_NOT_LOGGED_IN);
+            return;
+        }
+
+        synchronized (libraryService) {
+            if (libraryService.searchBookByIsbn(isbn) == null) {
+                status(requestId, KioskProtocol.STATUS_NOT_FOUND);
+                return;
+            }
+            if (!libraryService.borrowBookForSession(session.user, isbn)) {
+                status(requestId, KioskProtocol.STATUS_DENIED);
+                return;
+            }
+
+            status(requestId, KioskProtocol.STATUS_OK);
+            scratch.putLong(libraryService.searchBookByIsbn(isbn).getDueDate().toEpochDay());
+        }
+    }
+
+    private void handleReturn(Session session, int requestId, ByteBuffer body) {
+        String isbn = KioskProtocol.getString(body);
+
+        if (session.user == null) {
+            status(requestId, KioskProtocol.STATUS_NOT_LOGGED_IN);
+            return;
+        }
+
+        synchronized (libraryService) {
+            if (libraryService.searchBookByIsbn(isbn) == null) {
+                status(requestId, KioskProtocol.STATUS_NOT_FOUND);
+                return;
+            }
+
+            double finesBefore = session.user.getFineBalance();
+            if (!libraryService.returnBookForSession(session.user, isbn)) {
+                status(requestId, KioskProtocol.STATUS_DENIED);
+                return;
+            }
+
+            status(requestId, KioskProtocol.STATUS_OK);
+            scratch.putDouble(session.user.getFineBalance() - finesBefore);
+        }
+    }
+
+    private void status(int requestId, byte status) {
+        scratch.putInt(requestId);
+        scratch.put(status);
+    }
+
+    /** Discards a partly built answer and replaces it with a bad-request status. */
+    private void badRequest(int requestId) {
+        scratch.clear();
+        scratch.position(KioskProtocol.HEADER_SIZE);
+        status(requestId, KioskProtocol.STATUS_BAD_REQUEST);
+    }
+
+    private void endSession(Session session) {
+        session.user = null;
+    }
+
+    // ---------------------------------------------------------
+    // Connection state
+    // ---------------------------------------------------------
+
+    /**
+     * Per-connection state kept as the selection key attachment.
+     */
+    private static final class Session {
+        ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER);
+        final Queue<ByteBuffer> writeQueue = new ArrayDeque<>();
+
+        /** User logged in on this connection, or {@code null}. */
+        User user;
+    }
+}
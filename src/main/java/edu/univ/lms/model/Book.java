@@ -38,6 +38,12 @@ public class Book {
      */
     private String fineType;
 
+    /**
+     * Whether this item changed since it was last written to storage.
+     * Transient, so it is never persisted; loaded items start clean.
+     */
+    private transient boolean dirty;
+
     // ---------------------------------------------------------
     // Constructors
     // ---------------------------------------------------------
@@ -55,6 +61,7 @@ public class Book {
         this.author = author;
         this.fineStrategy = new BookFine();
         this.fineType = "BOOK";
+        this.dirty = true;
     }
 
     /**
@@ -78,6 +85,7 @@ public class Book {
         } else if (fineStrategy instanceof JournalFine) {
             fineType = "JOURNAL";
         }
+        this.dirty = true;
     }
 
     /**
@@ -86,6 +94,25 @@ public class Book {
     public Book() {
     }
 
+    /**
+     * Creates an independent copy of another item, including its borrowing
+     * state. Used to capture point-in-time snapshots of the catalog.
+     *
+     * @param other item to copy
+     */
+    public Book(Book other) {
+        this.isbn = other.isbn;
+        this.title = other.title;
+        this.author = other.author;
+        this.borrowed = other.borrowed;
+        this.borrowedByUserId = other.borrowedByUserId;
+        this.borrowDate = other.borrowDate;
+        this.dueDate = other.dueDate;
+        this.fineStrategy = other.fineStrategy;
+        this.fineType = other.fineType;
+        this.dirty = other.dirty;
+    }
+
     // ---------------------------------------------------------
     // Getters
     // ---------------------------------------------------------
@@ -173,6 +200,7 @@ public class Book {
      */
     public void setFineType(String fineType) {
         this.fineType = fineType;
+        dirty = true;
     }
 
     /**
@@ -182,6 +210,7 @@ public class Book {
      */
     public void setTitle(String title) {
         this.title = title;
+        dirty = true;
     }
 
     /**
@@ -191,6 +220,7 @@ public class Book {
      */
     public void setAuthor(String author) {
         this.author = author;
+        dirty = true;
     }
 
     /**
@@ -200,6 +230,7 @@ public class Book {
      */
     public void setBorrowed(boolean borrowed) {
         this.borrowed = borrowed;
+        dirty = true;
     }
 
     /**
@@ -209,6 +240,7 @@ public class Book {
      */
     public void setBorrowedByUserId(String borrowedByUserId) {
         this.borrowedByUserId = borrowedByUserId;
+        dirty = true;
     }
 
     /**
@@ -218,6 +250,7 @@ public class Book {
      */
     public void setBorrowDate(LocalDate borrowDate) {
         this.borrowDate = borrowDate;
+        dirty = true;
     }
 
     /**
@@ -227,6 +260,7 @@ public class Book {
      */
     public void setDueDate(LocalDate dueDate) {
         this.dueDate = dueDate;
+        dirty = true;
     }
 
     /**
@@ -236,6 +270,35 @@ public class Book {
      */
     public void setIsbn(String isbn) {
         this.isbn = isbn;
+        dirty = true;
+    }
+
+    // ---------------------------------------------------------
+    // Dirty tracking
+    // ---------------------------------------------------------
+
+    /**
+     * Indicates whether this item changed since it was last persisted.
+     * New items and every setter call mark the item dirty.
+     *
+     * @return {@code true} if the item must be written on the next save
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks this item as changed, e.g. after it was restored from the journal.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Marks this item as persisted.
+     */
+    public void markClean() {
+        dirty = false;
     }
 
     // ---------------------------------------------------------
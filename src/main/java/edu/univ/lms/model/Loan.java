@@ -0,0 +1,121 @@
+package edu.univ.lms.model;
+
+import java.time.LocalDate;
+
+/**
+ * A completed loan: which item was borrowed by whom, when it was due, when
+ * it came back and the fine charged for it.
+ * <p>
+ * Loans are immutable history records written once an item is returned.
+ */
+public class Loan {
+
+    /** ISBN of the borrowed item. */
+    private String isbn;
+
+    /** ID of the borrowing user. */
+    private String userId;
+
+    /** Date the item was borrowed. */
+    private LocalDate borrowDate;
+
+    /** Date the item was due. */
+    private LocalDate dueDate;
+
+    /** Date the item was returned. */
+    private LocalDate returnDate;
+
+    /** Fine charged for a late return, or 0. */
+    private double fine;
+
+    /**
+     * Creates a loan record.
+     *
+     * @param isbn       ISBN of the borrowed item
+     * @param userId     ID of the borrowing user
+     * @param borrowDate date the item was borrowed
+     * @param dueDate    date the item was due
+     * @param returnDate date the item was returned
+     * @param fine       fine charged for the return
+     */
+    public Loan(String isbn, String userId, LocalDate borrowDate, LocalDate dueDate,
+                LocalDate returnDate, double fine) {
+        this.isbn = isbn;
+        this.userId = userId;
+        this.borrowDate = borrowDate;
+        this.dueDate = dueDate;
+        this.returnDate = returnDate;
+        this.fine = fine;
+    }
+
+    /**
+     * No-arg constructor required for JSON deserialization.
+     */
+    private Loan() {
+    }
+
+    /**
+     * Returns the ISBN of the borrowed item.
+     *
+     * @return item ISBN
+     */
+    public String getIsbn() {
+        return isbn;
+    }
+
+    /**
+     * Returns the ID of the borrowing user.
+     *
+     * @return user identifier
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Returns the date the item was borrowed.
+     *
+     * @return borrow date
+     */
+    public LocalDate getBorrowDate() {
+        return borrowDate;
+    }
+
+    /**
+     * Returns the date the item was due.
+     *
+     * @return due date
+     */
+    public LocalDate getDueDate() {
+        return dueDate;
+    }
+
+    /**
+     * Returns the date the item was returned.
+     *
+     * @return return date
+     */
+    public LocalDate getReturnDate() {
+        return returnDate;
+    }
+
+    /**
+     * Returns the fine charged for the return.
+     *
+     * @return fine amount, 0 if returned on time
+     */
+    public double getFine() {
+        return fine;
+    }
+
+    /**
+     * Returns a human-readable representation of this loan.
+     *
+     * @return formatted loan description
+     */
+    @Override
+    public String toString() {
+        return "Loan{isbn='" + isbn + "', userId='" + userId + "', borrowed=" + borrowDate
+                + ", due=" + dueDate + ", returned=" + returnDate + ", fine=" + fine + "}";
+    }
+}
@@ -42,6 +42,12 @@ public class User {
     /** Email address used for notifications and reminders. */
     private String email;
 
+    /**
+     * Whether this account changed since it was last written to storage.
+     * Transient, so it is never persisted; loaded users start clean.
+     */
+    private transient boolean dirty;
+
     // ---------------------------------------------------------
     // Constructors
     // ---------------------------------------------------------
@@ -63,6 +69,7 @@ public class User {
         this.password = password;
         this.isAdmin = isAdmin;
         this.email = email;
+        this.dirty = true;
     }
 
     /**
@@ -71,6 +78,24 @@ public class User {
     public User() {
     }
 
+    /**
+     * Creates an independent copy of another user, including login state and
+     * fine balance. Used to capture point-in-time snapshots of the user list.
+     *
+     * @param other user to copy
+     */
+    public User(User other) {
+        this.userId = other.userId;
+        this.name = other.name;
+        this.username = other.username;
+        this.password = other.password;
+        this.isAdmin = other.isAdmin;
+        this.loggedIn = other.loggedIn;
+        this.fineBalance = other.fineBalance;
+        this.email = other.email;
+        this.dirty = other.dirty;
+    }
+
     // ---------------------------------------------------------
     // Getters & Setters
     // ---------------------------------------------------------
@@ -91,6 +116,7 @@ public class User {
      */
     public void setUserId(String userId) {
         this.userId = userId;
+        dirty = true;
     }
 
     /**
@@ -109,6 +135,7 @@ public class User {
      */
     public void setName(String name) {
         this.name = name;
+        dirty = true;
     }
 
     /**
@@ -127,6 +154,7 @@ public class User {
      */
     public void setUsername(String username) {
         this.username = username;
+        dirty = true;
     }
 
     /**
@@ -149,6 +177,7 @@ public class User {
      */
     public void setPassword(String password) {
         this.password = password;
+        dirty = true;
     }
 
     /**
@@ -167,6 +196,7 @@ public class User {
      */
     public void setAdmin(boolean admin) {
         isAdmin = admin;
+        dirty = true;
     }
 
     /**
@@ -185,6 +215,7 @@ public class User {
      */
     public void setEmail(String email) {
         this.email = email;
+        dirty = true;
     }
 
     /**
@@ -208,6 +239,7 @@ public class User {
     public void addFine(double amount) {
         if (amount > 0) {
             fineBalance += amount;
+            dirty = true;
         }
     }
 
@@ -235,11 +267,41 @@ public class User {
         } else {
             fineBalance -= amount;
         }
+        dirty = true;
 
         System.out.println(name + " paid " + amount + " NIS. Remaining fines: " + fineBalance + " NIS");
         return true;
     }
 
+    // ---------------------------------------------------------
+    // Dirty tracking
+    // ---------------------------------------------------------
+
+    /**
+     * Indicates whether this account changed since it was last persisted.
+     * New users, setters and fine changes mark the user dirty; logging in
+     * and out does not, as the session state is not worth a write.
+     *
+     * @return {@code true} if the user must be written on the next save
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Marks this account as changed, e.g. after it was restored from the journal.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Marks this account as persisted.
+     */
+    public void markClean() {
+        dirty = false;
+    }
+
     // ---------------------------------------------------------
     // Login / Logout
     // ---------------------------------------------------------
@@ -0,0 +1,235 @@
+package edu.univ.lms.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Crash-safe file replacement used by every repository save.
+ * <p>
+ * Content is written to a sibling <code>.tmp</code> file and forced to disk,
+ * then renamed over the target in one atomic step, and finally the parent
+ * directory is forced so the rename itself survives a power loss. A crash at
+ * any point leaves either the complete old file or the complete new one,
+ * never a torn mix.
+ * <p>
+ * Text formats without a built-in checksum get a <code>.crc</code> sidecar
+ * holding the CRC32, length and modification time of the file, so loads can
+ * detect damage.
+ */
+final class AtomicFiles {
+
+    /**
+     * Writes the content of a file to an open channel.
+     */
+    interface Content {
+        void writeTo(FileChannel channel) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Returns the temporary file used while replacing {@code target}.
+     *
+     * @param target file being replaced
+     * @return sibling temporary file
+     */
+    static Path tempFile(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    /**
+     * Returns the checksum sidecar of {@code target}.
+     *
+     * @param target data file
+     * @return sibling checksum file
+     */
+    static Path checksumFile(Path target) {
+        return target.resolveSibling(target.getFileName() + ".crc");
+    }
+
+    /**
+     * Atomically replaces {@code target} with new content.
+     *
+     * @param target  file to replace
+     * @param content writes the new content
+     * @throws IOException if writing, syncing or renaming fails; the target is
+     *                     then left unchanged
+     */
+    static void replace(Path target, Content content) throws IOException {
+        Path tmp = writeTemp(target, content);
+        try {
+            move(tmp, target);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        syncDirectory(target);
+    }
+
+    /**
+     * Atomically replaces {@code target} and its checksum sidecar.
+     * <p>
+     * The sidecar is replaced first and lists the checksum of the new content
+     * followed by the one of the current content. Whenever a crash (or a
+     * reader running concurrently) finds the old or the new data file, the
+     * sidecar vouches for it; the data rename is the single commit point.
+     *
+     * @param target  file to replace
+     * @param content writes the new content
+     * @throws IOException if either file cannot be replaced
+     */
+    static void replaceWithChecksum(Path target, Content content) throws IOException {
+        Path tmp = writeTemp(target, content);
+        try {
+            // Read back from the page cache rather than hashing every write call
+            CRC32 crc = new CRC32();
+            long length = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(JsonSupport.BUFFER_SIZE);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.READ)) {
+                while (channel.read(buffer) > 0) {
+                    buffer.flip();
+                    length += buffer.remaining();
+                    crc.update(buffer);
+                    buffer.clear();
+                }
+            }
+            // The rename keeps the modification time
+            long modified = Files.getLastModifiedTime(tmp).toMillis();
+
+            List<String> lines = readChecksums(target);
+            String current = lines.isEmpty() ? "" : lines.get(0) + System.lineSeparator();
+            byte[] sidecar = (checksumLine(crc.getValue(), length) + " " + modified + System.lineSeparator() + current)
+                    .getBytes(StandardCharsets.US_ASCII);
+            replace(checksumFile(target), channel -> {
+                ByteBuffer out = ByteBuffer.wrap(sidecar);
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            });
+
+            move(tmp, target);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        syncDirectory(target);
+    }
+
+    /**
+     * Compares a file's checksum with its sidecar.
+     * <p>
+     * The sidecar only vouches for the file versions it was written with,
+     * which it identifies by their modification time. A file without a
+     * sidecar, or replaced outside the application since (edited by hand,
+     * restored by version control), is accepted as it is. A mismatching
+     * file that still has a recorded modification time was damaged in
+     * place. A file replaced while it was being read is reported as a plain
+     * {@link IOException}; reading it again will succeed.
+     *
+     * @param target   file that was read
+     * @param crc      CRC32 of the bytes read
+     * @param length   number of bytes read
+     * @param modified modification time of the file before it was opened
+     * @throws ChecksumMismatchException if the file was damaged
+     * @throws IOException               if the file changed while it was read
+     */
+    static void verifyChecksum(Path target, long crc, long length, long modified) throws IOException {
+        List<String> lines;
+        try {
+            lines = readChecksums(target);
+        } catch (IOException e) {
+            System.out.println("Could not read checksum of " + target + ": " + e.getMessage());
+            return;
+        }
+
+        String expected = checksumLine(crc, length);
+        boolean known = false;
+        for (String line : lines) {
+            String[] fields = line.split(" ");
+            if (line.startsWith(expected + " ") || line.equals(expected)) {
+                return;
+            }
+            if (fields.length > 2 && fields[2].equals(String.valueOf(modified))) {
+                known = true;
+            }
+        }
+
+        if (Files.getLastModifiedTime(target).toMillis() != modified) {
+            throw new IOException(target + " was replaced while it was being read");
+        }
+        if (known) {
+            throw new ChecksumMismatchException(target);
+        }
+        if (!lines.isEmpty()) {
+            System.out.println(target + " was replaced outside the application; its checksum will be"
+                    + " written with the next save.");
+        }
+    }
+
+    /** Returns the checksum lines of a sidecar, newest first, or none if it is missing. */
+    private static List<String> readChecksums(Path target) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(checksumFile(target), StandardCharsets.US_ASCII)) {
+                if (!line.trim().isEmpty()) {
+                    lines.add(line.trim());
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing recorded
+        }
+        return lines;
+    }
+
+    private static String checksumLine(long crc, long length) {
+        return String.format("%08x %d", crc, length);
+    }
+
+    /** Writes the content to the temporary file of {@code target} and forces it to disk. */
+    private static Path writeTemp(Path target, Content content) throws IOException {
+        Path tmp = tempFile(target);
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            content.writeTo(channel);
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return tmp;
+    }
+
+    private static void move(Path tmp, Path target) throws IOException {
+        try {
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces the directory entry of a renamed file to disk. Not every
+     * platform can open a directory for syncing; there the rename is left to
+     * the operating system.
+     */
+    static void syncDirectory(Path target) {
+        Path dir = target.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Best effort only
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Consistent online backups of the catalog and the users.
+ * <p>
+ * A backup is taken from a {@link Checkpointer.Snapshot}: either the
+ * in-memory state copied under the service locks (as a checkpoint does), or
+ * the persisted state read with {@link #readPersisted(Path, Path, Path)},
+ * which replays the journal on top of the JSON snapshots without touching
+ * them. Either way circulation continues while the backup is written, and
+ * the backup records the journal sequence number it reflects.
+ * <p>
+ * Each backup is a directory under the backup root holding the records split
+ * into segment files by key hash, plus a <code>manifest.json</code> with the
+ * checksum of every segment. The directory is built under a temporary name
+ * and renamed once the manifest is on disk, so an interrupted backup never
+ * looks complete. Backups are incremental: a segment whose content equals
+ * the one in the previous backup is hard-linked instead of written again.
+ * Written bytes can be throttled with {@link #setMaxBytesPerSecond(long)} so
+ * a backup does not starve the live data files of disk bandwidth.
+ */
+public class BackupStore {
+
+    /** Default directory holding the backups. */
+    private static final String BACKUP_DIR = "data/backups";
+
+    /** Default number of segments per collection. */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /** Name of the file listing the segments of a backup. */
+    static final String MANIFEST = "manifest.json";
+
+    /** Suffix of a backup directory that is still being written. */
+    private static final String PARTIAL_SUFFIX = ".partial";
+
+    /** Number of bytes written between two throttle checks. */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /** Number of attempts to read a consistent persisted state. */
+    private static final int READ_ATTEMPTS = 10;
+
+    /** Pause before the second attempt; later attempts wait proportionally longer. */
+    private static final long RETRY_PAUSE_MILLIS = 5;
+
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    private static final Gson gson = JsonSupport.builder().create();
+    private static final Type BOOK_LIST = new TypeToken<List<Book>>() { }.getType();
+    private static final Type USER_LIST = new TypeToken<List<User>>() { }.getType();
+
+    private final Path root;
+    private final int segments;
+
+    /** Upper bound for written bytes per second, 0 for unlimited. */
+    private long maxBytesPerSecond;
+
+    private int lastWrittenSegments;
+    private int lastLinkedSegments;
+    private long lastWrittenBytes;
+
+    /**
+     * Creates a store keeping backups under <code>data/backups/</code>.
+     */
+    public BackupStore() {
+        this(Paths.get(BACKUP_DIR), DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Creates a store keeping backups in a specific directory.
+     *
+     * @param root     directory holding one subdirectory per backup
+     * @param segments number of segment files per collection
+     */
+    public BackupStore(Path root, int segments) {
+        if (segments <= 0) {
+            throw new IllegalArgumentException("segments must be positive");
+        }
+        this.root = root;
+        this.segments = segments;
+    }
+
+    /**
+     * Limits how fast a backup writes, leaving disk bandwidth to the live
+     * data files.
+     *
+     * @param maxBytesPerSecond byte rate limit, 0 for unlimited
+     */
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+    }
+
+    /**
+     * Returns the number of segment files written by the last backup.
+     *
+     * @return written segment count
+     */
+    public int getLastWrittenSegments() {
+        return lastWrittenSegments;
+    }
+
+    /**
+     * Returns the number of segment files the last backup took over from the
+     * previous one.
+     *
+     * @return linked segment count
+     */
+    public int getLastLinkedSegments() {
+        return lastLinkedSegments;
+    }
+
+    /**
+     * Returns the number of bytes written by the last backup.
+     *
+     * @return written byte count
+     */
+    public long getLastWrittenBytes() {
+        return lastWrittenBytes;
+    }
+
+    // ---------------------------------------------------------
+    // Backup
+    // ---------------------------------------------------------
+
+    /**
+     * Writes a backup of a snapshot.
+     *
+     * @param snapshot consistent copy of items and users
+     * @return directory of the new backup
+     * @throws IOException if the backup cannot be written; no partial backup
+     *                     is left behind as complete
+     */
+    public synchronized Path backup(Checkpointer.Snapshot snapshot) throws IOException {
+        Files.createDirectories(root);
+        Path previous = latestBackup();
+        Map<String, Manifest.Entry> previousEntries = new HashMap<>();
+        if (previous != null) {
+            for (Manifest.Entry entry : readManifest(previous).files) {
+                previousEntries.put(entry.name, entry);
+            }
+        }
+
+        String name = "backup-" + LocalDateTime.now().format(NAME_FORMAT) + "-" + snapshot.getSeq();
+        Path target = root.resolve(name);
+        for (int n = 1; Files.exists(target); n++) {
+            target = root.resolve(name + "-" + n);
+        }
+        name = target.getFileName().toString();
+        Path partial = root.resolve(name + PARTIAL_SUFFIX);
+        deleteRecursively(partial);
+        Files.createDirectories(partial);
+
+        Manifest manifest = new Manifest();
+        manifest.seq = snapshot.getSeq();
+        manifest.created = LocalDateTime.now().toString();
+        manifest.files = new ArrayList<>();
+        lastWrittenSegments = 0;
+        lastLinkedSegments = 0;
+        lastWrittenBytes = 0;
+        Throttle throttle = new Throttle(maxBytesPerSecond);
+
+        try {
+            List<List<Book>> bookSegments = split(snapshot.getBooks(), Book::getIsbn);
+            List<List<User>> userSegments = split(snapshot.getUsers(), User::getUserId);
+            for (int s = 0; s < segments; s++) {
+                byte[] content = gson.toJson(bookSegments.get(s), BOOK_LIST).getBytes(StandardCharsets.UTF_8);
+                manifest.files.add(writeSegment(partial, segmentName("items", s), content,
+                        previous, previousEntries, throttle));
+            }
+            for (int s = 0; s < segments; s++) {
+                byte[] content = gson.toJson(userSegments.get(s), USER_LIST).getBytes(StandardCharsets.UTF_8);
+                manifest.files.add(writeSegment(partial, segmentName("users", s), content,
+                        previous, previousEntries, throttle));
+            }
+
+            byte[] manifestBytes = gson.toJson(manifest).getBytes(StandardCharsets.UTF_8);
+            AtomicFiles.replace(partial.resolve(MANIFEST), channel -> {
+                ByteBuffer out = ByteBuffer.wrap(manifestBytes);
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            });
+            try {
+                Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial, target);
+            }
+            AtomicFiles.syncDirectory(target);
+            return target;
+        } catch (IOException | RuntimeException e) {
+            deleteRecursively(partial);
+            throw e;
+        }
+    }
+
+    private <T> List<List<T>> split(List<T> records, Function<T, String> key) {
+        List<List<T>> buckets = new ArrayList<>(segments);
+        for (int s = 0; s < segments; s++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (T record : records) {
+            String k = key.apply(record);
+            buckets.get(Math.floorMod(k == null ? 0 : k.hashCode(), segments)).add(record);
+        }
+        return buckets;
+    }
+
+    private static String segmentName(String prefix, int segment) {
+        return String.format("%s-%03d.json", prefix, segment);
+    }
+
+    /**
+     * Links the segment from the previous backup if its content is unchanged,
+     * otherwise writes it.
+     */
+    private Manifest.Entry writeSegment(Path dir, String name, byte[] content, Path previous,
+                                        Map<String, Manifest.Entry> previousEntries,
+                                        Throttle throttle) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        Manifest.Entry entry = new Manifest.Entry();
+        entry.name = name;
+        entry.length = content.length;
+        entry.crc = crc.getValue();
+
+        Path file = dir.resolve(name);
+        Manifest.Entry old = previousEntries.get(name);
+        if (old != null && old.length == entry.length && old.crc == entry.crc) {
+            try {
+                Files.createLink(file, previous.resolve(name));
+                lastLinkedSegments++;
+                return entry;
+            } catch (IOException | UnsupportedOperationException e) {
+                // No hard links on this file system: fall back to a copy
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE)) {
+            for (int offset = 0; offset < content.length; offset += CHUNK_SIZE) {
+                int chunk = Math.min(CHUNK_SIZE, content.length - offset);
+                ByteBuffer buffer = ByteBuffer.wrap(content, offset, chunk);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                throttle.acquire(chunk);
+            }
+            channel.force(true);
+        }
+        lastWrittenSegments++;
+        lastWrittenBytes += content.length;
+        return entry;
+    }
+
+    // ---------------------------------------------------------
+    // Listing and restore
+    // ---------------------------------------------------------
+
+    /**
+     * Lists the complete backups, oldest first.
+     *
+     * @return backup directories
+     * @throws IOException if the backup root cannot be listed
+     */
+    public List<Path> listBackups() throws IOException {
+        List<Path> backups = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return backups;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(root, "backup-*")) {
+            for (Path dir : stream) {
+                if (!dir.getFileName().toString().endsWith(PARTIAL_SUFFIX)
+                        && Files.isRegularFile(dir.resolve(MANIFEST))) {
+                    backups.add(dir);
+                }
+            }
+        }
+        // Names start with the creation time, so name order is age order
+        Collections.sort(backups);
+        return backups;
+    }
+
+    /**
+     * Returns the most recent complete backup.
+     *
+     * @return backup directory, or {@code null} if there is none
+     * @throws IOException if the backup root cannot be listed
+     */
+    public Path latestBackup() throws IOException {
+        List<Path> backups = listBackups();
+        return backups.isEmpty() ? null : backups.get(backups.size() - 1);
+    }
+
+    /**
+     * Reads a backup back, verifying every segment against the manifest.
+     * To bring the data up to date, replay the journal records after
+     * {@link Checkpointer.Snapshot#getSeq()} on top of it.
+     *
+     * @param backup backup directory
+     * @return items, users and the journal sequence number they reflect
+     * @throws IOException if a segment is missing or damaged
+     */
+    public static Checkpointer.Snapshot restore(Path backup) throws IOException {
+        Manifest manifest = readManifest(backup);
+        List<Book> books = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        for (Manifest.Entry entry : manifest.files) {
+            byte[] content = Files.readAllBytes(backup.resolve(entry.name));
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            if (content.length != entry.length || crc.getValue() != entry.crc) {
+                throw new IOException("Backup segment " + backup.resolve(entry.name) + " is damaged");
+            }
+            String json = new String(content, StandardCharsets.UTF_8);
+            if (entry.name.startsWith("items")) {
+                books.addAll(Arrays.asList(gson.fromJson(json, Book[].class)));
+            } else {
+                users.addAll(Arrays.asList(gson.fromJson(json, User[].class)));
+            }
+        }
+        return new Checkpointer.Snapshot(manifest.seq, books, users);
+    }
+
+    private static Manifest readManifest(Path backup) throws IOException {
+        byte[] content = Files.readAllBytes(backup.resolve(MANIFEST));
+        Manifest manifest = gson.fromJson(new String(content, StandardCharsets.UTF_8), Manifest.class);
+        if (manifest == null || manifest.files == null) {
+            throw new IOException("Backup manifest of " + backup + " is empty");
+        }
+        return manifest;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    // ---------------------------------------------------------
+    // Persisted state
+    // ---------------------------------------------------------
+
+    /**
+     * Reads the persisted state of a running (or stopped) application without
+     * writing to its files: the JSON snapshots plus the journal records after
+     * them. Snapshot files are only ever replaced atomically, so each read
+     * sees a complete file. The whole read is retried, after a short pause,
+     * until every snapshot matches its checksum sidecar and the journal's
+     * base sequence number did not change meanwhile; a checkpoint running
+     * alongside can break either.
+     *
+     * @param itemsFile items snapshot
+     * @param usersFile users snapshot
+     * @param journal   journal file, which may be missing
+     * @return state as of the last journaled mutation on stable storage
+     * @throws IOException if the files cannot be read consistently
+     */
+    public static Checkpointer.Snapshot readPersisted(Path itemsFile, Path usersFile, Path journal)
+            throws IOException {
+        IOException failure = null;
+        for (int attempt = 0; attempt < READ_ATTEMPTS; attempt++) {
+            if (attempt > 0) {
+                pauseBeforeRetry(attempt);
+            }
+            try {
+                long baseSeq = LogTailer.readBaseSequence(journal);
+                List<Book> books = new ArrayList<>();
+                List<User> users = new ArrayList<>();
+                readIfExists(itemsFile, Book.class, books);
+                readIfExists(usersFile, User.class, users);
+                if (LogTailer.readBaseSequence(journal) != baseSeq) {
+                    throw new IOException("A checkpoint completed while the snapshots were read");
+                }
+
+                LogTailer tailer = new LogTailer(journal, baseSeq);
+                LogRecord.applyAll(tailer.poll(), books, users);
+                return new Checkpointer.Snapshot(tailer.getLastSequence(), books, users);
+            } catch (IOException e) {
+                // A snapshot was replaced while we read it, or a checkpoint
+                // dropped records after we read the snapshots
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private static void pauseBeforeRetry(int attempt) throws IOException {
+        try {
+            Thread.sleep(RETRY_PAUSE_MILLIS * attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the persisted state");
+        }
+    }
+
+    private static <T> void readIfExists(Path file, Class<T> type, List<T> sink) throws IOException {
+        try {
+            JsonSupport.readArray(file, gson, type, null, sink::add);
+        } catch (NoSuchFileException e) {
+            // Nothing saved yet
+        }
+    }
+
+    /**
+     * Backs up the default data files of a running application. The first
+     * argument, if present, limits the write rate in KB per second.
+     *
+     * @param args optional rate limit
+     */
+    public static void main(String[] args) {
+        BackupStore store = new BackupStore();
+        if (args.length > 0) {
+            store.setMaxBytesPerSecond(Long.parseLong(args[0]) * 1024);
+        }
+        try {
+            Checkpointer.Snapshot snapshot = readPersisted(new BookRepository().getFile(),
+                    new UserRepository().getFile(), Paths.get("data", "journal.log"));
+            Path backup = store.backup(snapshot);
+            System.out.println("Backup written to " + backup + ": " + snapshot.getBooks().size()
+                    + " items, " + snapshot.getUsers().size() + " users, "
+                    + store.getLastWrittenSegments() + " segment(s) written, "
+                    + store.getLastLinkedSegments() + " unchanged.");
+        } catch (IOException e) {
+            System.out.println("Backup failed: " + e.getMessage());
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------
+
+    /**
+     * Content of <code>manifest.json</code>.
+     */
+    private static class Manifest {
+        long seq;
+        String created;
+        List<Entry> files;
+
+        private static class Entry {
+            String name;
+            long length;
+            long crc;
+        }
+    }
+
+    /**
+     * Spaces out writes so the average rate stays below a limit.
+     */
+    private static final class Throttle {
+
+        private final long bytesPerSecond;
+        private final long start = System.nanoTime();
+        private long bytes;
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(int written) throws IOException {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            bytes += written;
+            long due = start + (long) (bytes * 1e9 / bytesPerSecond);
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing backup");
+                }
+            }
+        }
+    }
+}
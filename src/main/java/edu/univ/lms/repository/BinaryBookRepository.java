@@ -0,0 +1,71 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BookRepository} backend storing the catalog in the compact binary
+ * format described in {@link BinaryFormat} instead of JSON.
+ * <p>
+ * Field names are not repeated per record, repeated strings are dictionary
+ * coded, and dates are stored as epoch days, which makes the file several
+ * times smaller and faster to read and write. Use {@link StorageConverter}
+ * to migrate an existing <code>items.json</code>.
+ */
+public class BinaryBookRepository extends BookRepository {
+
+    /** Default path of the binary catalog file. */
+    private static final String ITEMS_FILE = "data/items.bin";
+
+    /**
+     * Creates a repository backed by <code>data/items.bin</code>.
+     */
+    public BinaryBookRepository() {
+        this(Paths.get(ITEMS_FILE));
+    }
+
+    /**
+     * Creates a repository backed by a specific binary file.
+     *
+     * @param file binary file storing the books
+     */
+    public BinaryBookRepository(Path file) {
+        super(file);
+    }
+
+    /**
+     * Writes the books in binary form, replacing the file atomically.
+     *
+     * @param books the books to save
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void writeBooks(List<Book> books) throws IOException {
+        BinaryFormat.writeBooks(getFile(), books);
+    }
+
+    /**
+     * Loads the books from the binary file. Missing, truncated or corrupt
+     * files yield an empty list, like the JSON backend.
+     *
+     * @return loaded books with fine strategies rebuilt
+     */
+    @Override
+    public List<Book> loadBooks() {
+        try {
+            return BinaryFormat.readBooks(getFile());
+        } catch (NoSuchFileException e) {
+            System.out.println(getFile() + " not found, starting empty.");
+            return new ArrayList<>();
+        } catch (Exception e) {
+            System.out.println("Error loading items: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+}
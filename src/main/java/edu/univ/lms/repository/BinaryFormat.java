@@ -0,0 +1,483 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary encoding for {@link Book} and {@link User} snapshot files.
+ * Files are replaced atomically through {@link AtomicFiles}; the CRC32
+ * trailer makes a separate checksum sidecar unnecessary.
+ * <p>
+ * File layout:
+ * <pre>
+ *   [int magic "LMSB"][byte version][byte kind][varint count]
+ *   count x record
+ *   [int CRC32 of everything before it]
+ * </pre>
+ * Integers use unsigned LEB128 varints; dates are zig-zag varints of the
+ * epoch day. A string is {@code 0} for null or {@code 1} followed by its
+ * varint length and UTF-8 bytes. The low-cardinality fields marked
+ * <i>shared</i> below are dictionary coded: a new value gets the next
+ * dictionary slot and a later {@code n >= 2} refers to slot {@code n - 2},
+ * so repeated authors, fine types and borrower IDs cost one or two bytes.
+ * The dictionary stops growing at {@link #MAX_SHARED_STRINGS} entries;
+ * values seen after that are always written out. Both directions are
+ * single-pass and hold at most that dictionary besides the records
+ * themselves.
+ * <p>
+ * Record layouts (version 1):
+ * <pre>
+ *   book: isbn, title, shared author, shared fineType, [byte flags],
+ *         shared borrowedByUserId, [borrowDate if flag], [dueDate if flag]
+ *   user: userId, name, username, password, email, [byte flags],
+ *         [8-byte fine balance if flag]
+ * </pre>
+ * The session-only login state of a user is not stored.
+ */
+final class BinaryFormat {
+
+    /** File magic: ASCII "LMSB". */
+    static final int MAGIC = 0x4C4D5342;
+
+    /** Current format version. */
+    static final int VERSION = 1;
+
+    /** File kind byte for catalog snapshots. */
+    static final int KIND_BOOKS = 1;
+
+    /** File kind byte for user snapshots. */
+    static final int KIND_USERS = 2;
+
+    private static final int BOOK_BORROWED = 1;
+    private static final int BOOK_HAS_BORROW_DATE = 1 << 1;
+    private static final int BOOK_HAS_DUE_DATE = 1 << 2;
+
+    private static final int USER_ADMIN = 1;
+    private static final int USER_HAS_FINE = 1 << 1;
+
+    private static final int STRING_NULL = 0;
+    private static final int STRING_NEW = 1;
+    private static final int STRING_REF_BASE = 2;
+
+    /** Largest number of distinct shared strings given a dictionary slot. */
+    static final int MAX_SHARED_STRINGS = 1 << 16;
+
+    /** Size of the checksum trailer. */
+    private static final int TRAILER_SIZE = 4;
+
+    private BinaryFormat() {
+    }
+
+    // ---------------------------------------------------------
+    // Files
+    // ---------------------------------------------------------
+
+    /**
+     * Writes a complete catalog file.
+     *
+     * @param file  file to overwrite
+     * @param books items to write
+     * @throws IOException if the file cannot be written
+     */
+    static void writeBooks(Path file, List<Book> books) throws IOException {
+        AtomicFiles.replace(file, channel -> {
+            Encoder out = new Encoder(channel, KIND_BOOKS, books.size());
+            for (Book book : books) {
+                out.writeBook(book);
+            }
+            out.finish();
+        });
+    }
+
+    /**
+     * Reads a complete catalog file.
+     *
+     * @param file file to read
+     * @return decoded items with fine strategies rebuilt
+     * @throws IOException if the file is unreadable, corrupt or of another kind
+     */
+    static List<Book> readBooks(Path file) throws IOException {
+        try (Decoder in = new Decoder(file, KIND_BOOKS)) {
+            List<Book> books = new ArrayList<>(in.count);
+            for (int i = 0; i < in.count; i++) {
+                books.add(in.readBook());
+            }
+            in.verifyChecksum();
+            return books;
+        }
+    }
+
+    /**
+     * Writes a complete user file.
+     *
+     * @param file  file to overwrite
+     * @param users users to write
+     * @throws IOException if the file cannot be written
+     */
+    static void writeUsers(Path file, List<User> users) throws IOException {
+        AtomicFiles.replace(file, channel -> {
+            Encoder out = new Encoder(channel, KIND_USERS, users.size());
+            for (User user : users) {
+                out.writeUser(user);
+            }
+            out.finish();
+        });
+    }
+
+    /**
+     * Reads a complete user file.
+     *
+     * @param file file to read
+     * @return decoded users
+     * @throws IOException if the file is unreadable, corrupt or of another kind
+     */
+    static List<User> readUsers(Path file) throws IOException {
+        try (Decoder in = new Decoder(file, KIND_USERS)) {
+            List<User> users = new ArrayList<>(in.count);
+            for (int i = 0; i < in.count; i++) {
+                users.add(in.readUser());
+            }
+            in.verifyChecksum();
+            return users;
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Encoder
+    // ---------------------------------------------------------
+
+    /**
+     * Streaming writer for one binary file.
+     */
+    static final class Encoder {
+
+        private final OutputStream raw;
+        private final CheckedOutputStream out;
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        Encoder(WritableByteChannel channel, int kind, int count) throws IOException {
+            raw = new BufferedOutputStream(Channels.newOutputStream(channel), JsonSupport.BUFFER_SIZE);
+            out = new CheckedOutputStream(raw, new CRC32());
+            writeInt(MAGIC);
+            out.write(VERSION);
+            out.write(kind);
+            writeVarLong(count);
+        }
+
+        void writeBook(Book book) throws IOException {
+            writeString(book.getIsbn());
+            writeString(book.getTitle());
+            writeSharedString(book.getAuthor());
+            writeSharedString(book.getFineType());
+
+            int flags = 0;
+            if (book.isBorrowed()) {
+                flags |= BOOK_BORROWED;
+            }
+            if (book.getBorrowDate() != null) {
+                flags |= BOOK_HAS_BORROW_DATE;
+            }
+            if (book.getDueDate() != null) {
+                flags |= BOOK_HAS_DUE_DATE;
+            }
+            out.write(flags);
+
+            writeSharedString(book.getBorrowedByUserId());
+            if (book.getBorrowDate() != null) {
+                writeDate(book.getBorrowDate());
+            }
+            if (book.getDueDate() != null) {
+                writeDate(book.getDueDate());
+            }
+        }
+
+        void writeUser(User user) throws IOException {
+            writeString(user.getUserId());
+            writeString(user.getName());
+            writeString(user.getUsername());
+            writeString(user.getPassword());
+            writeString(user.getEmail());
+
+            int flags = 0;
+            if (user.isAdmin()) {
+                flags |= USER_ADMIN;
+            }
+            if (user.getFineBalance() != 0) {
+                flags |= USER_HAS_FINE;
+            }
+            out.write(flags);
+
+            if (user.getFineBalance() != 0) {
+                writeLong(Double.doubleToLongBits(user.getFineBalance()));
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                out.write(STRING_NULL);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.write(STRING_NEW);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeSharedString(String value) throws IOException {
+            Integer slot = value == null ? null : dictionary.get(value);
+            if (slot != null) {
+                writeVarLong(STRING_REF_BASE + (long) slot);
+                return;
+            }
+            // Mirrors Decoder.readSharedString, which assigns slots the same way
+            if (value != null && dictionary.size() < MAX_SHARED_STRINGS) {
+                dictionary.put(value, dictionary.size());
+            }
+            writeString(value);
+        }
+
+        private void writeDate(LocalDate date) throws IOException {
+            long day = date.toEpochDay();
+            writeVarLong((day << 1) ^ (day >> 63));
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private void writeInt(int value) throws IOException {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        private void writeLong(long value) throws IOException {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        /**
+         * Appends the checksum trailer and flushes. The channel stays open so
+         * the caller can force it to disk.
+         */
+        void finish() throws IOException {
+            // The trailer goes to the underlying stream, outside the checksum
+            int crc = (int) out.getChecksum().getValue();
+            raw.write(crc >>> 24);
+            raw.write(crc >>> 16);
+            raw.write(crc >>> 8);
+            raw.write(crc);
+            raw.flush();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Decoder
+    // ---------------------------------------------------------
+
+    /**
+     * Streaming reader for one binary file.
+     */
+    static final class Decoder implements AutoCloseable {
+
+        private final CheckedInputStream in;
+        private final List<String> dictionary = new ArrayList<>();
+        private final long fileSize;
+        private long position;
+        final int count;
+
+        Decoder(Path file, int kind) throws IOException {
+            fileSize = Files.size(file);
+            InputStream raw = new BufferedInputStream(Files.newInputStream(file), JsonSupport.BUFFER_SIZE);
+            in = new CheckedInputStream(raw, new CRC32());
+            try {
+                if (readInt() != MAGIC) {
+                    throw new IOException("Not a binary data file: " + file);
+                }
+                int version = readByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported binary format version " + version + ": " + file);
+                }
+                if (readByte() != kind) {
+                    throw new IOException("Unexpected record kind in " + file);
+                }
+                long n = readVarLong();
+                if (n < 0 || n > Integer.MAX_VALUE) {
+                    throw new IOException("Corrupt record count in " + file);
+                }
+                count = (int) n;
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        Book readBook() throws IOException {
+            String isbn = readString();
+            String title = readString();
+            String author = readSharedString();
+            String fineType = readSharedString();
+            int flags = readByte();
+
+            Book book = new Book(isbn, title, author);
+            if (fineType != null) {
+                book.setFineType(fineType);
+                book.rebuildFineStrategy();
+            }
+            book.setBorrowed((flags & BOOK_BORROWED) != 0);
+            book.setBorrowedByUserId(readSharedString());
+            if ((flags & BOOK_HAS_BORROW_DATE) != 0) {
+                book.setBorrowDate(readDate());
+            }
+            if ((flags & BOOK_HAS_DUE_DATE) != 0) {
+                book.setDueDate(readDate());
+            }
+            return book;
+        }
+
+        User readUser() throws IOException {
+            String userId = readString();
+            String name = readString();
+            String username = readString();
+            String password = readString();
+            String email = readString();
+            int flags = readByte();
+
+            User user = new User(userId, name, username, password, (flags & USER_ADMIN) != 0, email);
+            if ((flags & USER_HAS_FINE) != 0) {
+                user.addFine(Double.longBitsToDouble(readLong()));
+            }
+            return user;
+        }
+
+        /**
+         * Compares the running checksum with the trailer.
+         *
+         * @throws IOException if the file was modified or truncated
+         */
+        void verifyChecksum() throws IOException {
+            long expected = in.getChecksum().getValue();
+            long stored = readInt() & 0xFFFFFFFFL;
+            if (stored != expected) {
+                throw new IOException("Checksum mismatch, file is corrupt");
+            }
+        }
+
+        private String readString() throws IOException {
+            long tag = readVarLong();
+            if (tag == STRING_NULL) {
+                return null;
+            }
+            if (tag != STRING_NEW) {
+                throw new IOException("Corrupt string tag");
+            }
+            return readStringBytes();
+        }
+
+        private String readSharedString() throws IOException {
+            long tag = readVarLong();
+            if (tag == STRING_NULL) {
+                return null;
+            }
+            if (tag == STRING_NEW) {
+                String value = readStringBytes();
+                if (dictionary.size() < MAX_SHARED_STRINGS) {
+                    dictionary.add(value);
+                }
+                return value;
+            }
+            long slot = tag - STRING_REF_BASE;
+            if (slot >= dictionary.size()) {
+                throw new IOException("Corrupt string reference");
+            }
+            return dictionary.get((int) slot);
+        }
+
+        private String readStringBytes() throws IOException {
+            long length = readVarLong();
+            // Checked before allocating, since the CRC is only verified at the end
+            if (length < 0 || length > fileSize - position - TRAILER_SIZE) {
+                throw new IOException("Corrupt string length");
+            }
+            byte[] bytes = new byte[(int) length];
+            readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private LocalDate readDate() throws IOException {
+            long zigzag = readVarLong();
+            return LocalDate.ofEpochDay((zigzag >>> 1) ^ -(zigzag & 1));
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt varint");
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of file");
+            }
+            position++;
+            return b;
+        }
+
+        private int readInt() throws IOException {
+            return (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
+        }
+
+        private long readLong() throws IOException {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        private void readFully(byte[] bytes) throws IOException {
+            int off = 0;
+            while (off < bytes.length) {
+                int n = in.read(bytes, off, bytes.length - off);
+                if (n < 0) {
+                    throw new EOFException("Unexpected end of file");
+                }
+                off += n;
+            }
+            position += bytes.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.User;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link UserRepository} backend storing user accounts in the compact binary
+ * format described in {@link BinaryFormat} instead of JSON.
+ * Use {@link StorageConverter} to migrate an existing <code>users.json</code>.
+ */
+public class BinaryUserRepository extends UserRepository {
+
+    /** Default path of the binary user file. */
+    private static final String USERS_FILE = "data/users.bin";
+
+    /**
+     * Creates a repository backed by <code>data/users.bin</code>.
+     */
+    public BinaryUserRepository() {
+        this(Paths.get(USERS_FILE));
+    }
+
+    /**
+     * Creates a repository backed by a specific binary file.
+     *
+     * @param file binary file storing the users
+     */
+    public BinaryUserRepository(Path file) {
+        super(file);
+    }
+
+    /**
+     * Writes the users in binary form, replacing the file atomically.
+     *
+     * @param users the users to save
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void writeUsers(List<User> users) throws IOException {
+        BinaryFormat.writeUsers(getFile(), users);
+    }
+
+    /**
+     * Loads the users from the binary file. Missing, truncated or corrupt
+     * files yield an empty list, like the JSON backend.
+     *
+     * @return loaded users; never {@code null}
+     */
+    @Override
+    public List<User> loadUsers() {
+        try {
+            return BinaryFormat.readUsers(getFile());
+        } catch (NoSuchFileException e) {
+            System.out.println(getFile() + " not found, starting empty.");
+            return new ArrayList<>();
+        } catch (Exception e) {
+            System.out.println("Error loading users: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+}
@@ -4,7 +4,9 @@ import edu.univ.lms.model.Book;
 import com.google.gson.*;
 
 import java.io.*;
-import java.lang.reflect.Type;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
@@ -23,37 +25,32 @@ import java.util.List;
  */
 public class BookRepository {
 
-    /** Path to the JSON file storing all book entries. */
+    /** Default path to the JSON file storing all book entries. */
     private static final String ITEMS_FILE = "data/items.json";
 
-    // ---------------------------------------------------------
-    // GSON Type Adapters for LocalDate
-    // ---------------------------------------------------------
+    /** JSON file used by this repository instance. */
+    private final Path file;
 
-    /**
-     * Serializer converting a {@link LocalDate} instance into
-     * its ISO-8601 string representation in JSON.
-     */
-    private static final JsonSerializer<LocalDate> localDateSerializer =
-            (date, type, context) -> new JsonPrimitive(date.toString());
+    /** Whether saves omit indentation. */
+    private boolean compact;
 
-    /**
-     * Deserializer converting an ISO-8601 date string in JSON
-     * back into a {@link LocalDate} instance.
-     */
-    private static final JsonDeserializer<LocalDate> localDateDeserializer =
-            (json, type, context) -> LocalDate.parse(json.getAsString());
+    /** Compression applied when the file is saved. */
+    private Compression compression = Compression.NONE;
+
+    /** Receives progress updates while the data file is loaded. */
+    private LoadProgressListener progressListener = LoadProgressListener.console();
 
     /**
      * GSON instance configured for pretty-print JSON output and
      * serialization/deserialization of {@link LocalDate}.
      */
-    private static final Gson gson = new GsonBuilder()
+    private static final Gson gson = JsonSupport.builder()
             .setPrettyPrinting()
-            .registerTypeAdapter(LocalDate.class, localDateSerializer)
-            .registerTypeAdapter(LocalDate.class, localDateDeserializer)
             .create();
 
+    /** GSON instance writing the same JSON without indentation. */
+    private static final Gson compactGson = JsonSupport.builder().create();
+
     // ---------------------------------------------------------
     // Constructor
     // ---------------------------------------------------------
@@ -63,16 +60,27 @@ public class BookRepository {
      * so that book files can be safely stored.
      */
     public BookRepository() {
+        this(Paths.get(ITEMS_FILE));
+    }
+
+    /**
+     * Creates a repository backed by a specific JSON file and ensures its
+     * parent folder exists.
+     *
+     * @param file JSON file storing the books
+     */
+    public BookRepository(Path file) {
+        this.file = file;
         ensureDataFolder();
     }
 
     /**
-     * Ensures that the <code>data/</code> directory exists.
+     * Ensures that the data directory holding the items file exists.
      * If it is missing, attempts to create it.
      * Prints feedback to the console indicating success or failure.
      */
     private void ensureDataFolder() {
-        File dir = new File("data");
+        File dir = file.toAbsolutePath().getParent().toFile();
         if (!dir.exists()) {
             if (dir.mkdirs()) {
                 System.out.println("Created data folder.");
@@ -82,27 +90,100 @@ public class BookRepository {
         }
     }
 
+    /**
+     * Returns the location of the JSON file managed by this repository.
+     *
+     * @return path of the book data file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the location of the persisted {@link CatalogIndex}.
+     *
+     * @return sibling <code>.idx</code> file of the data file
+     */
+    public Path getIndexFile() {
+        return file.resolveSibling(file.getFileName() + ".idx");
+    }
+
+    /**
+     * Switches between pretty-printed and compact JSON output.
+     * Compact files are smaller and faster to write; both load the same way.
+     *
+     * @param compact {@code true} to write without indentation
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Selects the compression used when the file is saved. Loads detect
+     * compressed files by themselves, so this can be changed at any time.
+     *
+     * @param compression compression for future saves
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Sets the listener notified while the data file is loaded.
+     * By default, progress is printed for very large files only.
+     *
+     * @param progressListener listener, or {@code null} to load silently
+     */
+    public void setProgressListener(LoadProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
     // ---------------------------------------------------------
     // Save
     // ---------------------------------------------------------
 
     /**
-     * Saves the list of books into a formatted JSON file.
+     * Saves the list of books into a JSON file.
      * <p>
-     * Any existing file will be overwritten. Errors are caught and printed
-     * to the console without interrupting program flow.
+     * Errors are caught and printed to the console without interrupting
+     * program flow; use {@link #writeBooks(List)} to handle them instead.
+     * The catalog index is refreshed as well, see {@link #saveIndex(List)}.
      *
      * @param books the list of {@link Book} objects to save
+     * @return {@code true} if the file was written, {@code false} on error
      */
-    public void saveBooks(List<Book> books) {
-        try (Writer writer = new FileWriter(ITEMS_FILE)) {
-            gson.toJson(books, writer);
+    public boolean saveBooks(List<Book> books) {
+        try {
+            writeBooks(books);
+            saveIndex(books);
             System.out.println("Items saved.");
+            return true;
         } catch (Exception e) {
             System.out.println("Error saving items: " + e.getMessage());
+            return false;
         }
     }
 
+    /**
+     * Writes the list of books, reporting failures to the caller.
+     * <p>
+     * Books are streamed one at a time through a buffered channel, so saving
+     * a very large catalog needs no extra memory proportional to its size.
+     * Output is pretty-printed unless {@link #setCompact(boolean)} is enabled,
+     * and gzip compressed if {@link #setCompression(Compression)} selects it.
+     * <p>
+     * The file is replaced atomically: the data goes to a temporary file that
+     * is forced to disk and renamed over the old one, so a crash never leaves
+     * a half-written catalog. A CRC32 sidecar is written next to it.
+     *
+     * @param books the list of {@link Book} objects to save
+     * @throws IOException if the file could not be written; the previous
+     *                     file is then left unchanged
+     */
+    public void writeBooks(List<Book> books) throws IOException {
+        JsonSupport.writeArray(file, compact ? compactGson : gson, Book.class, books, compression);
+    }
+
     // ---------------------------------------------------------
     // Load
     // ---------------------------------------------------------
@@ -110,37 +191,77 @@ public class BookRepository {
     /**
      * Loads the list of books from the JSON file.
      * <p>
+     * The file is streamed through a buffered channel and decoded one book at
+     * a time, so startup never holds a second full copy of the catalog.
      * If the file does not exist or if an error occurs while reading or parsing,
-     * an empty list is returned to maintain application stability.
+     * an empty list is returned to maintain application stability. A file
+     * damaged on disk is the exception: startup must stop rather than save an
+     * empty catalog over it.
      * <p>
-     * After deserialization, each book's fine strategy is restored using
-     * {@link Book#rebuildFineStrategy()}, because strategy objects are transient
-     * and not stored directly in the JSON.
+     * Each book's fine strategy is restored from its stored type while it is
+     * decoded, because strategy objects are transient and not stored
+     * directly in the JSON.
      *
      * @return a list of fully reconstructed {@link Book} objects
+     * @throws UncheckedIOException wrapping a {@link ChecksumMismatchException}
+     *                              if the file was damaged
      */
     public List<Book> loadBooks() {
-        try (Reader reader = new FileReader(ITEMS_FILE)) {
-
-            Book[] array = gson.fromJson(reader, Book[].class);
-            List<Book> list = new ArrayList<>();
-
-            if (array != null) {
-                for (Book book : array) {
-                    // Rebuild strategy object after JSON load
-                    book.rebuildFineStrategy();
-                    list.add(book);
-                }
-            }
-
+        List<Book> list = new ArrayList<>();
+        try {
+            JsonSupport.readArray(file, gson, Book.class, progressListener, list::add);
             return list;
 
-        } catch (FileNotFoundException e) {
-            System.out.println("data/items.json not found, starting empty.");
+        } catch (NoSuchFileException e) {
+            System.out.println(file + " not found, starting empty.");
             return new ArrayList<>();
+        } catch (ChecksumMismatchException e) {
+            // An empty list would be saved over the only copy of the data
+            throw new UncheckedIOException(e);
         } catch (Exception e) {
             System.out.println("Error loading items: " + e.getMessage());
             return new ArrayList<>();
         }
     }
+
+    // ---------------------------------------------------------
+    // Index
+    // ---------------------------------------------------------
+
+    /**
+     * Persists the {@link CatalogIndex} of books that were just written, so
+     * the next start can skip rebuilding it. Repositories that do not keep
+     * the catalog in a single file have no index. Failures are printed; the
+     * index is then rebuilt on the next start.
+     *
+     * @param books the books that were written
+     * @return {@code true} if the index was written
+     */
+    public boolean saveIndex(List<Book> books) {
+        if (!file.toFile().isFile()) {
+            return false;
+        }
+        try {
+            CatalogIndex.build(books).write(getIndexFile(), file);
+            return true;
+        } catch (Exception e) {
+            System.out.println("Error saving item index: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Loads the persisted {@link CatalogIndex} if it still matches the data
+     * file.
+     *
+     * @return the index, or {@code null} if it is missing, stale or unreadable
+     */
+    public CatalogIndex loadIndex() {
+        try {
+            return CatalogIndex.load(getIndexFile(), file);
+        } catch (Exception e) {
+            System.out.println("Error loading item index: " + e.getMessage());
+            return null;
+        }
+    }
 }
@@ -0,0 +1,118 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Streaming GSON adapter for {@link Book}.
+ * <p>
+ * Writes exactly what reflective binding writes (same field names and
+ * order, {@code null} fields omitted), so existing files are unaffected.
+ * Reading pulls each field straight off the {@link JsonReader}: dates are
+ * parsed from their string token without building a JSON tree, and the fine
+ * strategy is resolved from {@code fineType} while the item is created, so
+ * callers no longer need {@link Book#rebuildFineStrategy()}. Items without
+ * a {@code fineType} are loaded as books. Unknown fields are skipped.
+ * Decoded items are clean.
+ */
+final class BookTypeAdapter extends TypeAdapter<Book> {
+
+    @Override
+    public void write(JsonWriter out, Book book) throws IOException {
+        if (book == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeString(out, "isbn", book.getIsbn());
+        writeString(out, "title", book.getTitle());
+        writeString(out, "author", book.getAuthor());
+        out.name("borrowed").value(book.isBorrowed());
+        writeString(out, "borrowedByUserId", book.getBorrowedByUserId());
+        writeDate(out, "borrowDate", book.getBorrowDate());
+        writeDate(out, "dueDate", book.getDueDate());
+        writeString(out, "fineType", book.getFineType());
+        out.endObject();
+    }
+
+    @Override
+    public Book read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String isbn = null;
+        String title = null;
+        String author = null;
+        boolean borrowed = false;
+        String borrowedByUserId = null;
+        LocalDate borrowDate = null;
+        LocalDate dueDate = null;
+        String fineType = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "isbn":
+                    isbn = JsonSupport.nextString(in);
+                    break;
+                case "title":
+                    title = JsonSupport.nextString(in);
+                    break;
+                case "author":
+                    author = JsonSupport.nextString(in);
+                    break;
+                case "borrowed":
+                    borrowed = JsonSupport.nextBoolean(in, false);
+                    break;
+                case "borrowedByUserId":
+                    borrowedByUserId = JsonSupport.nextString(in);
+                    break;
+                case "borrowDate":
+                    borrowDate = JsonSupport.nextDate(in);
+                    break;
+                case "dueDate":
+                    dueDate = JsonSupport.nextDate(in);
+                    break;
+                case "fineType":
+                    fineType = JsonSupport.nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        // The constructor installs the book strategy; other types replace it
+        Book book = new Book(isbn, title, author);
+        if (fineType != null && !"BOOK".equals(fineType)) {
+            book.setFineType(fineType);
+            book.rebuildFineStrategy();
+        }
+        book.setBorrowed(borrowed);
+        book.setBorrowedByUserId(borrowedByUserId);
+        book.setBorrowDate(borrowDate);
+        book.setDueDate(dueDate);
+        book.markClean();
+        return book;
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private static void writeDate(JsonWriter out, String name, LocalDate value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value.toString());
+        }
+    }
+}
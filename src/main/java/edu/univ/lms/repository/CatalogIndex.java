@@ -0,0 +1,219 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derived catalog data persisted next to the items file, so a restart does
+ * not have to scan every item to rebuild it: the position of each item by
+ * ISBN, and the highest numeric ISBN for the ISBN counter.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ *   [int magic][int version][long dataStamp][int itemCount][int maxNumericIsbn]
+ *   [int entryCount] entryCount x ([int isbnLength][UTF-8 isbn][int position])
+ * </pre>
+ * Entries follow {@code String.CASE_INSENSITIVE_ORDER}; when ISBNs differ
+ * only in case, the first item keeps the entry, matching
+ * {@code LibraryService.searchBookByIsbn}.
+ * {@code dataStamp} combines size and modification time of the items file
+ * the index was built from. {@link #load(Path, Path)} only returns an index
+ * whose version is current and whose stamp matches the items file as it is
+ * now; anything else (missing, older format, items file edited or replaced
+ * since) must be rebuilt from the loaded items with {@link #build(List)}.
+ * New sections bump {@link #VERSION}, which discards older files once.
+ */
+public final class CatalogIndex {
+
+    private static final int MAGIC = 0x4C4D5349; // "LMSI"
+
+    /** Current index format version. */
+    public static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4 + 4;
+
+    /** Value of {@link #getMaxNumericIsbn()} when no ISBN is numeric. */
+    public static final int NO_NUMERIC_ISBN = Integer.MIN_VALUE;
+
+    private final int itemCount;
+    private final int maxNumericIsbn;
+    private final TreeMap<String, Integer> isbnPositions;
+
+    private CatalogIndex(int itemCount, int maxNumericIsbn, TreeMap<String, Integer> isbnPositions) {
+        this.itemCount = itemCount;
+        this.maxNumericIsbn = maxNumericIsbn;
+        this.isbnPositions = isbnPositions;
+    }
+
+    /**
+     * Builds the index from a list of items.
+     *
+     * @param books catalog items
+     * @return index describing the items
+     */
+    public static CatalogIndex build(List<Book> books) {
+        int max = NO_NUMERIC_ISBN;
+        TreeMap<String, Integer> positions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < books.size(); i++) {
+            String isbn = books.get(i).getIsbn();
+            if (isbn == null) {
+                continue;
+            }
+            positions.putIfAbsent(isbn, i);
+            try {
+                max = Math.max(max, Integer.parseInt(isbn));
+            } catch (NumberFormatException ignored) {
+                // Non-numeric ISBNs never collide with generated ones
+            }
+        }
+        return new CatalogIndex(books.size(), max, positions);
+    }
+
+    /**
+     * Returns the number of items the index was built from.
+     *
+     * @return item count
+     */
+    public int getItemCount() {
+        return itemCount;
+    }
+
+    /**
+     * Returns the highest ISBN that parses as an integer.
+     *
+     * @return highest numeric ISBN, or {@link #NO_NUMERIC_ISBN}
+     */
+    public int getMaxNumericIsbn() {
+        return maxNumericIsbn;
+    }
+
+    /**
+     * Returns a new mutable map from ISBN to item position, ignoring case.
+     * The caller owns the map and may keep it up to date as items change.
+     *
+     * @return ISBN positions of the items the index was built from
+     */
+    public Map<String, Integer> copyIsbnPositions() {
+        return new TreeMap<>(isbnPositions);
+    }
+
+    // ---------------------------------------------------------
+    // Persistence
+    // ---------------------------------------------------------
+
+    /**
+     * Atomically writes the index, stamped with the current state of the
+     * items file. Must be called right after the items file was written.
+     *
+     * @param indexFile file to write
+     * @param dataFile  items file the index describes
+     * @throws IOException if the index cannot be written
+     */
+    public void write(Path indexFile, Path dataFile) throws IOException {
+        List<byte[]> keys = new ArrayList<>(isbnPositions.size());
+        int size = HEADER_SIZE;
+        for (String isbn : isbnPositions.keySet()) {
+            byte[] key = isbn.getBytes(StandardCharsets.UTF_8);
+            keys.add(key);
+            size += 4 + key.length + 4;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(stamp(dataFile));
+        buffer.putInt(itemCount);
+        buffer.putInt(maxNumericIsbn);
+        buffer.putInt(keys.size());
+        int k = 0;
+        for (Integer position : isbnPositions.values()) {
+            byte[] key = keys.get(k++);
+            buffer.putInt(key.length);
+            buffer.put(key);
+            buffer.putInt(position);
+        }
+        buffer.flip();
+        AtomicFiles.replace(indexFile, channel -> {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
+    }
+
+    /**
+     * Reads an index if it is still valid for the items file.
+     *
+     * @param indexFile index file
+     * @param dataFile  items file the index must describe
+     * @return the index, or {@code null} if it is missing, from another
+     *         format version, stale or truncated, or if the items are not
+     *         stored in a single regular file
+     * @throws IOException if the files cannot be read
+     */
+    public static CatalogIndex load(Path indexFile, Path dataFile) throws IOException {
+        if (!Files.isRegularFile(dataFile)) {
+            return null;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(indexFile);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (bytes.length < HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        if (buffer.getLong() != stamp(dataFile)) {
+            return null;
+        }
+        int count = buffer.getInt();
+        int max = buffer.getInt();
+        int entries = buffer.getInt();
+        TreeMap<String, Integer> positions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try {
+            for (int i = 0; i < entries; i++) {
+                int length = buffer.getInt();
+                if (length < 0 || length > buffer.remaining()) {
+                    return null;
+                }
+                String isbn = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+                int position = buffer.getInt();
+                if (position < 0 || position >= count) {
+                    return null;
+                }
+                positions.put(isbn, position);
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        if (buffer.hasRemaining()) {
+            return null;
+        }
+        return new CatalogIndex(count, max, positions);
+    }
+
+    /**
+     * Combines size and modification time of the items file into one value.
+     */
+    private static long stamp(Path dataFile) throws IOException {
+        long size = Files.size(dataFile);
+        long modified = Files.getLastModifiedTime(dataFile).to(TimeUnit.NANOSECONDS);
+        return 31 * (31 * 17 + size) + modified;
+    }
+}
@@ -0,0 +1,343 @@
+package edu.univ.lms.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ordered stream of catalog and user changes, fed by the {@link MutationLog}.
+ * <p>
+ * Every mutation already gets a sequence number when it is journaled, so the
+ * feed simply publishes the log's records in sequence order. Subscribers
+ * follow the {@link Flow} protocol: nothing is delivered beyond what they
+ * {@link Flow.Subscription#request(long) requested}, and signals for one
+ * subscriber never overlap. Only records that are on stable storage are
+ * published, so a consumer never sees a change that a crash could undo.
+ * <p>
+ * Recent records are kept in a bounded buffer. A subscriber that resumes
+ * from an older sequence number, or falls further behind than the buffer
+ * holds, reads forward through the log file with its own {@link LogTailer}
+ * until it catches up. Records already folded into
+ * the snapshots by a checkpoint are gone; such a subscriber receives an
+ * {@link IllegalStateException} and has to reload the JSON snapshots.
+ * <p>
+ * Published records are shared between subscribers and must be treated as
+ * read-only.
+ */
+public class ChangeFeed implements Flow.Publisher<LogRecord>, Closeable {
+
+    /** Default number of recent records kept in memory. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final MutationLog log;
+    private final Executor executor;
+    private final LogRecord[] buffer;
+
+    /** Receives appends and durability updates from the log. */
+    private final MutationLog.Listener listener = new MutationLog.Listener() {
+        @Override
+        public void onAppend(List<LogRecord> records) {
+            buffer(records);
+        }
+
+        @Override
+        public void onDurable(long seq) {
+            durableSeq = seq;
+            signalAll();
+        }
+    };
+
+    private final List<FeedSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /** Guards the buffer bounds. */
+    private final Object lock = new Object();
+
+    /** Sequence number of the oldest buffered record, or -1 while empty. */
+    private long bufferedFrom = -1;
+
+    /** Sequence number of the newest buffered record. */
+    private long bufferedTo = -1;
+
+    /** Sequence number of the last record on stable storage. */
+    private volatile long durableSeq;
+
+    private volatile boolean closed;
+
+    /**
+     * Creates a feed delivering on the common fork/join pool.
+     *
+     * @param log log whose records are published
+     */
+    public ChangeFeed(MutationLog log) {
+        this(log, ForkJoinPool.commonPool(), DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a feed.
+     *
+     * @param log      log whose records are published
+     * @param executor executor running the deliveries to subscribers
+     * @param capacity number of recent records kept in memory
+     */
+    public ChangeFeed(MutationLog log, Executor executor, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.log = log;
+        this.executor = executor;
+        this.buffer = new LogRecord[capacity];
+        log.addListener(listener);
+        durableSeq = log.getDurableSequence();
+    }
+
+    /**
+     * Subscribes to changes journaled from now on.
+     *
+     * @param subscriber subscriber to add
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super LogRecord> subscriber) {
+        subscribe(log.getLastSequence(), subscriber);
+    }
+
+    /**
+     * Subscribes to changes after a known sequence number, e.g. the last one
+     * a consumer processed before it stopped.
+     *
+     * @param afterSeq   sequence number of the last record already seen
+     * @param subscriber subscriber to add
+     */
+    public void subscribe(long afterSeq, Flow.Subscriber<? super LogRecord> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber");
+        }
+        FeedSubscription subscription = new FeedSubscription(subscriber, afterSeq + 1);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+        if (closed) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Returns the number of active subscribers.
+     *
+     * @return subscriber count
+     */
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    /**
+     * Detaches the feed from the log. Subscribers receive
+     * {@code onComplete} instead of further records.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        log.removeListener(listener);
+        signalAll();
+    }
+
+    // ---------------------------------------------------------
+    // Buffer
+    // ---------------------------------------------------------
+
+    private void buffer(List<LogRecord> records) {
+        synchronized (lock) {
+            for (LogRecord record : records) {
+                long seq = record.getSeq();
+                buffer[index(seq)] = record;
+                if (bufferedFrom < 0) {
+                    bufferedFrom = seq;
+                }
+                bufferedTo = seq;
+            }
+            bufferedFrom = Math.max(bufferedFrom, bufferedTo - buffer.length + 1);
+        }
+    }
+
+    private int index(long seq) {
+        return (int) (seq % buffer.length);
+    }
+
+    /**
+     * Returns up to {@code max} consecutive buffered records starting at
+     * {@code from} and ending at {@code upTo} at the latest.
+     *
+     * @return records, or {@code null} if {@code from} is not buffered
+     */
+    private List<LogRecord> fetchBuffered(long from, long upTo, long max) {
+        long end = Math.min(upTo, from + Math.min(max, Integer.MAX_VALUE) - 1);
+        synchronized (lock) {
+            if (bufferedFrom < 0 || from < bufferedFrom || from > bufferedTo) {
+                return null;
+            }
+            end = Math.min(end, bufferedTo);
+            List<LogRecord> records = new ArrayList<>((int) (end - from + 1));
+            for (long seq = from; seq <= end; seq++) {
+                records.add(buffer[index(seq)]);
+            }
+            return records;
+        }
+    }
+
+    private void signalAll() {
+        for (FeedSubscription subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Subscription
+    // ---------------------------------------------------------
+
+    /**
+     * Per-subscriber delivery state. All signals are emitted by
+     * {@link #drain()}, which runs on the executor and is entered by one
+     * thread at a time.
+     */
+    private final class FeedSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super LogRecord> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        /** Sequence number of the next record to deliver. */
+        private long nextSeq;
+
+        /** Reads the log file while this subscriber is behind the buffer. */
+        private LogTailer tailer;
+
+        private volatile Throwable error;
+        private volatile boolean cancelled;
+
+        FeedSubscription(Flow.Subscriber<? super LogRecord> subscriber, long nextSeq) {
+            this.subscriber = subscriber;
+            this.nextSeq = nextSeq;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Requested " + n + " records; must be positive");
+            } else {
+                long current;
+                long updated;
+                do {
+                    current = demand.get();
+                    updated = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!demand.compareAndSet(current, updated));
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+        }
+
+        void signal() {
+            if (wip.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            while (true) {
+                if (cancelled) {
+                    return;
+                }
+                if (error != null) {
+                    cancel();
+                    subscriber.onError(error);
+                    return;
+                }
+                if (closed) {
+                    cancel();
+                    subscriber.onComplete();
+                    return;
+                }
+
+                long wanted = demand.get();
+                long upTo = durableSeq;
+                while (wanted > 0 && nextSeq <= upTo && !cancelled) {
+                    List<LogRecord> records;
+                    try {
+                        records = fetch(upTo, wanted);
+                    } catch (IOException | IllegalStateException e) {
+                        error = e;
+                        break;
+                    }
+                    if (records.isEmpty()) {
+                        break;
+                    }
+                    for (LogRecord record : records) {
+                        if (!deliver(record)) {
+                            return;
+                        }
+                        nextSeq = record.getSeq() + 1;
+                    }
+                    wanted = demand.addAndGet(-records.size());
+                }
+
+                if (error != null) {
+                    continue;
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns up to {@code max} records starting at {@link #nextSeq}.
+         *
+         * @throws IllegalStateException if {@link #nextSeq} was compacted away
+         */
+        private List<LogRecord> fetch(long upTo, long max) throws IOException {
+            List<LogRecord> records = fetchBuffered(nextSeq, upTo, max);
+            if (records != null) {
+                tailer = null;
+                return records;
+            }
+
+            // Behind the buffer: read forward through the log file (never while
+            // holding the feed lock, the log calls the listener with its own lock held)
+            long baseSeq = log.getBaseSequence();
+            if (nextSeq <= baseSeq) {
+                throw new IllegalStateException("Changes " + nextSeq + ".." + baseSeq
+                        + " were folded into the snapshots; reload them and resume after " + baseSeq);
+            }
+            if (tailer == null || tailer.getLastSequence() != nextSeq - 1) {
+                tailer = new LogTailer(log.getFile(), nextSeq - 1);
+            }
+            return tailer.poll((int) Math.min(max, buffer.length));
+        }
+
+        private boolean deliver(LogRecord record) {
+            if (cancelled) {
+                return false;
+            }
+            try {
+                subscriber.onNext(record);
+                return true;
+            } catch (RuntimeException e) {
+                // A failing subscriber is dropped, as the Flow rules require
+                System.out.println("Change feed subscriber failed, cancelling it: " + e.getMessage());
+                cancel();
+                return false;
+            }
+        }
+    }
+}
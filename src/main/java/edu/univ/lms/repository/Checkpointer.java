@@ -0,0 +1,245 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Background checkpointing for the persistence layer.
+ * <p>
+ * A checkpoint writes full snapshots of books and users through
+ * {@link BookRepository} and {@link UserRepository}, then compacts the
+ * {@link MutationLog} so it only keeps records newer than the snapshots.
+ * This keeps the log short, which bounds startup replay time no matter how
+ * long the system has been running.
+ * <p>
+ * Circulation is never stopped for the file writes: the caller-supplied
+ * {@link Snapshot} source only copies the in-memory state under its locks,
+ * and the slow I/O happens on the copy. Mutations that land while the
+ * snapshot is written keep their log records and are replayed on top of it.
+ */
+public class Checkpointer implements Closeable {
+
+    /** Default interval between checkpoints when the log is not empty. */
+    public static final long DEFAULT_INTERVAL_SECONDS = 300;
+
+    /** Default log size that triggers an early checkpoint. */
+    public static final long DEFAULT_MAX_LOG_BYTES = 4L * 1024 * 1024;
+
+    /** How often the background thread checks whether a checkpoint is due. */
+    private static final long POLL_SECONDS = 5;
+
+    private final MutationLog mutationLog;
+    private final BookRepository bookRepository;
+    private final UserRepository userRepository;
+    private final Supplier<Snapshot> snapshotSource;
+    private final GroupCommitSaver saver = new GroupCommitSaver(this::writeCheckpoint);
+
+    private long intervalMillis = TimeUnit.SECONDS.toMillis(DEFAULT_INTERVAL_SECONDS);
+    private long maxLogBytes = DEFAULT_MAX_LOG_BYTES;
+
+    private ScheduledExecutorService scheduler;
+    private volatile long lastCheckpointMillis = System.currentTimeMillis();
+
+    /**
+     * Creates a checkpointer. Call {@link #start()} to enable background runs;
+     * {@link #checkpointNow()} can be used without starting it.
+     *
+     * @param mutationLog    log to compact after each snapshot
+     * @param bookRepository repository writing the items snapshot
+     * @param userRepository repository writing the users snapshot
+     * @param snapshotSource captures a consistent copy of the in-memory state
+     */
+    public Checkpointer(MutationLog mutationLog,
+                        BookRepository bookRepository,
+                        UserRepository userRepository,
+                        Supplier<Snapshot> snapshotSource) {
+        this.mutationLog = mutationLog;
+        this.bookRepository = bookRepository;
+        this.userRepository = userRepository;
+        this.snapshotSource = snapshotSource;
+    }
+
+    // ---------------------------------------------------------
+    // Configuration
+    // ---------------------------------------------------------
+
+    /**
+     * Sets the maximum time between checkpoints while the log has records.
+     *
+     * @param interval interval length
+     * @param unit     interval unit
+     */
+    public void setInterval(long interval, TimeUnit unit) {
+        this.intervalMillis = unit.toMillis(interval);
+    }
+
+    /**
+     * Sets the log size that triggers a checkpoint before the interval elapses.
+     *
+     * @param maxLogBytes size threshold in bytes
+     */
+    public void setMaxLogBytes(long maxLogBytes) {
+        this.maxLogBytes = maxLogBytes;
+    }
+
+    // ---------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------
+
+    /**
+     * Starts the background checkpoint thread.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::checkpointIfDue, POLL_SECONDS, POLL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the background thread, waiting for a running checkpoint to finish.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        try {
+            running.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Checkpointing
+    // ---------------------------------------------------------
+
+    /**
+     * Runs a checkpoint if the log is large enough or the interval elapsed.
+     */
+    void checkpointIfDue() {
+        boolean tooBig = mutationLog.size() >= maxLogBytes;
+        boolean tooOld = System.currentTimeMillis() - lastCheckpointMillis >= intervalMillis;
+        if (mutationLog.hasRecords() && (tooBig || tooOld)) {
+            try {
+                checkpointNow();
+            } catch (RuntimeException e) {
+                // Keep the schedule alive; the next run retries
+                System.out.println("Error during checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes fresh snapshots and compacts the log.
+     * <p>
+     * Concurrent calls are coalesced by a {@link GroupCommitSaver}: callers
+     * that arrive while a checkpoint is running share the next one. If either
+     * snapshot cannot be written the log is left untouched, so no journaled
+     * mutation is lost.
+     *
+     * @return {@code true} if a checkpoint covering this call completed
+     */
+    public boolean checkpointNow() {
+        try {
+            saver.save();
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error during checkpoint: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Performs one physical checkpoint. Snapshot files are replaced
+     * atomically, so a crash leaves each file either old or new.
+     */
+    private void writeCheckpoint() throws IOException {
+        Snapshot snapshot = snapshotSource.get();
+        mutationLog.beginCheckpoint();
+
+        bookRepository.writeBooks(snapshot.getBooks());
+        bookRepository.saveIndex(snapshot.getBooks());
+        userRepository.writeUsers(snapshot.getUsers());
+
+        mutationLog.completeCheckpoint(snapshot.getSeq());
+        lastCheckpointMillis = System.currentTimeMillis();
+    }
+
+    // ---------------------------------------------------------
+    // Snapshot
+    // ---------------------------------------------------------
+
+    /**
+     * Point-in-time copy of the in-memory state.
+     * <p>
+     * {@code seq} must be read while the lists are copied, so that every
+     * record up to {@code seq} is reflected in them.
+     */
+    public static class Snapshot {
+
+        private final long seq;
+        private final List<Book> books;
+        private final List<User> users;
+
+        /**
+         * Creates a snapshot.
+         *
+         * @param seq   last log sequence number reflected in the copies
+         * @param books copied items
+         * @param users copied users
+         */
+        public Snapshot(long seq, List<Book> books, List<User> users) {
+            this.seq = seq;
+            this.books = books;
+            this.users = users;
+        }
+
+        /**
+         * Returns the last log sequence number reflected in this snapshot.
+         *
+         * @return sequence number
+         */
+        public long getSeq() {
+            return seq;
+        }
+
+        /**
+         * Returns the copied items.
+         *
+         * @return items
+         */
+        public List<Book> getBooks() {
+            return books;
+        }
+
+        /**
+         * Returns the copied users.
+         *
+         * @return users
+         */
+        public List<User> getUsers() {
+            return users;
+        }
+    }
+}
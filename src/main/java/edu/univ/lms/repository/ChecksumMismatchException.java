@@ -0,0 +1,36 @@
+package edu.univ.lms.repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Signals that a data file no longer matches the checksum written with it,
+ * although nothing replaced the file since: its content was damaged on disk.
+ * <p>
+ * Unlike other load errors this must not be answered with an empty data set,
+ * since the next save would overwrite the only copy of the data.
+ */
+public class ChecksumMismatchException extends IOException {
+
+    private final Path file;
+
+    /**
+     * Creates the exception.
+     *
+     * @param file damaged data file
+     */
+    public ChecksumMismatchException(Path file) {
+        super("Checksum mismatch for " + file + ": the file is damaged. Restore it from a backup,"
+                + " or delete " + AtomicFiles.checksumFile(file).getFileName() + " to accept it as it is");
+        this.file = file;
+    }
+
+    /**
+     * Returns the damaged file.
+     *
+     * @return data file
+     */
+    public Path getFile() {
+        return file;
+    }
+}
@@ -0,0 +1,246 @@
+package edu.univ.lms.repository;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Size-bounded cache with CLOCK (second chance) eviction.
+ * <p>
+ * Entries live in a ring of slots with a "referenced" bit that every hit
+ * sets. To make room, a hand sweeps the ring, clearing set bits and
+ * evicting the first entry whose bit is already clear, so recently used
+ * entries survive one more sweep. Unlike LRU, a hit only sets a flag and
+ * never reorders anything.
+ * <p>
+ * Entries matching the {@code pinned} predicate are never evicted; this
+ * keeps modified records in memory until they are saved. If every entry is
+ * pinned the cache grows past its capacity rather than dropping one.
+ * All methods are synchronized.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ClockCache<K, V> {
+
+    private final int capacity;
+    private final Predicate<V> pinned;
+    private final Map<K, Integer> slots;
+
+    private Object[] keys;
+    private Object[] values;
+    private boolean[] referenced;
+    private int used;
+    private int hand;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity maximum number of unpinned entries kept
+     * @param pinned   entries that must not be evicted, or {@code null} for none
+     */
+    public ClockCache(int capacity, Predicate<V> pinned) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.pinned = pinned != null ? pinned : v -> false;
+        this.slots = new HashMap<>(Math.min(capacity, 1 << 16) * 2);
+        int initial = Math.min(capacity, 1024);
+        this.keys = new Object[initial];
+        this.values = new Object[initial];
+        this.referenced = new boolean[initial];
+    }
+
+    /**
+     * Returns a cached value and marks it as recently used.
+     *
+     * @param key key to look up
+     * @return value, or {@code null} if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(K key) {
+        Integer slot = slots.get(key);
+        if (slot == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        referenced[slot] = true;
+        return (V) values[slot];
+    }
+
+    /**
+     * Returns a cached value without counting a hit or marking it as used.
+     *
+     * @param key key to look up
+     * @return value, or {@code null} if not cached
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V peek(K key) {
+        Integer slot = slots.get(key);
+        return slot == null ? null : (V) values[slot];
+    }
+
+    /**
+     * Adds or replaces an entry, evicting an unpinned entry if the cache is full.
+     *
+     * @param key   key
+     * @param value value
+     */
+    public synchronized void put(K key, V value) {
+        Integer existing = slots.get(key);
+        if (existing != null) {
+            values[existing] = value;
+            referenced[existing] = true;
+            return;
+        }
+        int slot = used < capacity ? nextFreeSlot() : evict();
+        keys[slot] = key;
+        values[slot] = value;
+        // New entries start unreferenced so one-off reads are evicted first
+        referenced[slot] = false;
+        slots.put(key, slot);
+    }
+
+    /**
+     * Removes an entry.
+     *
+     * @param key key to remove
+     * @return removed value, or {@code null} if it was not cached
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(K key) {
+        Integer slot = slots.remove(key);
+        if (slot == null) {
+            return null;
+        }
+        V value = (V) values[slot];
+        // Move the last slot into the hole to keep the ring dense
+        int last = --used;
+        if (slot != last) {
+            keys[slot] = keys[last];
+            values[slot] = values[last];
+            referenced[slot] = referenced[last];
+            slots.put((K) keys[slot], slot);
+        }
+        keys[last] = null;
+        values[last] = null;
+        referenced[last] = false;
+        if (hand >= used) {
+            hand = 0;
+        }
+        return value;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        slots.clear();
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        Arrays.fill(referenced, false);
+        used = 0;
+        hand = 0;
+    }
+
+    /**
+     * Visits every cached value, in slot order.
+     *
+     * @param visitor receives each value
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void forEachValue(Consumer<V> visitor) {
+        for (int i = 0; i < used; i++) {
+            visitor.accept((V) values[i]);
+        }
+    }
+
+    /** Returns a free slot at the end of the ring, growing the arrays if needed. */
+    private int nextFreeSlot() {
+        if (used == keys.length) {
+            int grown = keys.length * 2;
+            keys = Arrays.copyOf(keys, grown);
+            values = Arrays.copyOf(values, grown);
+            referenced = Arrays.copyOf(referenced, grown);
+        }
+        return used++;
+    }
+
+    /** Sweeps the ring and frees one unpinned slot, or appends one if all are pinned. */
+    @SuppressWarnings("unchecked")
+    private int evict() {
+        // Two full turns: the first may only clear referenced bits
+        for (int step = 0; step < 2 * used; step++) {
+            int slot = hand;
+            hand = (hand + 1) % used;
+            if (pinned.test((V) values[slot])) {
+                continue;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+            slots.remove(keys[slot]);
+            evictions++;
+            return slot;
+        }
+        return nextFreeSlot();
+    }
+
+    // ---------------------------------------------------------
+    // Statistics
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return entry count
+     */
+    public synchronized int size() {
+        return used;
+    }
+
+    /**
+     * Returns the configured capacity.
+     *
+     * @return maximum number of unpinned entries
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached value.
+     *
+     * @return hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of lookups that found nothing.
+     *
+     * @return miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of entries evicted to make room.
+     *
+     * @return eviction count
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
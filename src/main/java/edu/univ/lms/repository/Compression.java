@@ -0,0 +1,105 @@
+package edu.univ.lms.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression applied to a data file when it is saved.
+ * <p>
+ * Compressed files use the standard gzip format, so they can also be
+ * inspected with ordinary tools. Loading does not depend on this setting:
+ * the gzip header is detected and decompressed transparently, so a
+ * repository can switch between settings without converting its file.
+ */
+public enum Compression {
+
+    /** Plain file. */
+    NONE(Deflater.NO_COMPRESSION),
+
+    /** gzip with the fastest level; most of the size gain for little CPU. */
+    GZIP_FAST(Deflater.BEST_SPEED),
+
+    /** gzip with the default level. */
+    GZIP(Deflater.DEFAULT_COMPRESSION),
+
+    /** gzip with the smallest output, at a much higher CPU cost. */
+    GZIP_BEST(Deflater.BEST_COMPRESSION);
+
+    /** First two bytes of every gzip stream. */
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    private final int level;
+
+    Compression(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Wraps a stream so that bytes written to it are compressed.
+     * Call {@link #finish(OutputStream)} when done instead of closing it.
+     *
+     * @param out        destination of the stored bytes
+     * @param bufferSize size of the compressor's output buffer
+     * @return stream accepting uncompressed bytes
+     * @throws IOException if the gzip header cannot be written
+     */
+    OutputStream compress(OutputStream out, int bufferSize) throws IOException {
+        if (this == NONE) {
+            return out;
+        }
+        return new GZIPOutputStream(out, bufferSize) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * Writes any buffered compressed data and the stream trailer without
+     * closing the underlying stream.
+     *
+     * @param compressed stream returned by {@link #compress(OutputStream, int)}
+     * @throws IOException if the data cannot be written
+     */
+    static void finish(OutputStream compressed) throws IOException {
+        if (compressed instanceof GZIPOutputStream) {
+            ((GZIPOutputStream) compressed).finish();
+        }
+        compressed.flush();
+    }
+
+    /**
+     * Checks whether a file starts with the gzip header. The channel
+     * position is not changed.
+     *
+     * @param channel open file
+     * @return {@code true} if the file is gzip compressed
+     * @throws IOException if the file cannot be read
+     */
+    static boolean isCompressed(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(2);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // Positional reads leave the channel position alone
+        }
+        return header.position() == 2 && (header.getShort(0) & 0xFFFF) == GZIP_MAGIC;
+    }
+
+    /**
+     * Wraps a stream so that compressed bytes are decompressed.
+     *
+     * @param in         stream of stored bytes
+     * @param compressed whether the stored bytes are gzip compressed
+     * @param bufferSize size of the decompressor's input buffer
+     * @return stream of uncompressed bytes
+     * @throws IOException if the gzip header is invalid
+     */
+    static InputStream decompress(InputStream in, boolean compressed, int bufferSize) throws IOException {
+        return compressed ? new GZIPInputStream(in, bufferSize) : in;
+    }
+}
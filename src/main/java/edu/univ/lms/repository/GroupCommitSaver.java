@@ -0,0 +1,109 @@
+package edu.univ.lms.repository;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Coalesces concurrent save requests into as few physical writes as possible.
+ * <p>
+ * Every {@link #save()} call joins the pending batch. If no write is running,
+ * the caller becomes the leader and performs one write of the current state
+ * for everyone in its batch; callers that arrive during that write form the
+ * next batch and are served by a single follow-up write. Each caller returns
+ * only after a write that started after its request has completed, so a
+ * successful return always means its changes are on disk.
+ * <p>
+ * This lets the application save after every change without multiplying
+ * I/O: under load, the number of writes is bounded by the write latency, not
+ * by the number of requests.
+ */
+public class GroupCommitSaver {
+
+    /**
+     * A physical write of the current state.
+     */
+    public interface Write {
+        void run() throws IOException;
+    }
+
+    /**
+     * Callers sharing one physical write.
+     */
+    private static final class Batch {
+        boolean done;
+        IOException error;
+    }
+
+    private final Write write;
+
+    private Batch pending = new Batch();
+    private boolean writing;
+    private long physicalWrites;
+
+    /**
+     * Creates a saver performing the given write.
+     *
+     * @param write writes a snapshot of the state as of when it runs
+     */
+    public GroupCommitSaver(Write write) {
+        this.write = write;
+    }
+
+    /**
+     * Requests a save and waits until it is durable.
+     *
+     * @throws IOException if the write serving this request failed
+     */
+    public void save() throws IOException {
+        Batch batch;
+        synchronized (this) {
+            batch = pending;
+            while (writing && !batch.done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for save");
+                }
+            }
+            if (batch.done) {
+                if (batch.error != null) {
+                    throw batch.error;
+                }
+                return;
+            }
+            // Lead this batch; later callers queue up behind it
+            writing = true;
+            pending = new Batch();
+        }
+
+        IOException error = null;
+        try {
+            write.run();
+        } catch (IOException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new IOException(e);
+        }
+
+        synchronized (this) {
+            batch.done = true;
+            batch.error = error;
+            writing = false;
+            physicalWrites++;
+            notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Returns how many physical writes were performed.
+     *
+     * @return write count
+     */
+    public synchronized long getPhysicalWrites() {
+        return physicalWrites;
+    }
+}
@@ -0,0 +1,190 @@
+package edu.univ.lms.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Hands out unique, increasing numeric IDs that survive restarts.
+ * <p>
+ * The allocator reserves IDs in blocks: the file only stores the highest ID
+ * reserved by anyone, and a process that runs out of IDs takes the next
+ * block under an exclusive file lock. Every other {@link #nextId()} is a
+ * counter increment in memory, so processes sharing the file only
+ * coordinate once per block. IDs of a block that is not used up before the
+ * process exits are skipped, never reused.
+ * <p>
+ * The file holds two slots, each with the reserved value and its checksum.
+ * An update overwrites the older slot and forces it to disk before any ID of
+ * the new block is returned, so a crash during the write leaves the other
+ * slot intact.
+ */
+public class IdAllocator {
+
+    /** Default location of the allocator state for user IDs. */
+    private static final String USER_IDS_FILE = "data/user-ids.seq";
+
+    /** Default number of IDs reserved at once. */
+    public static final int DEFAULT_BLOCK_SIZE = 100;
+
+    /** Marker identifying a written slot ("LMSA"). */
+    private static final int MAGIC = 0x4C4D5341;
+
+    /** Size of one slot: value, checksum and marker. */
+    private static final int SLOT_SIZE = 16;
+
+    /** Serializes reservations of allocators within this JVM. */
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path file;
+    private final int blockSize;
+    private final long floor;
+
+    /** Next ID to hand out. */
+    private long next;
+
+    /** Last ID of the current block; {@code next > last} means exhausted. */
+    private long last = -1;
+
+    /**
+     * Creates an allocator for user IDs stored in <code>data/user-ids.seq</code>.
+     *
+     * @param floor highest ID already in use, e.g. by users created before
+     *              the allocator existed
+     */
+    public IdAllocator(long floor) {
+        this(Paths.get(USER_IDS_FILE), DEFAULT_BLOCK_SIZE, floor);
+    }
+
+    /**
+     * Creates an allocator.
+     *
+     * @param file      file holding the highest reserved ID, shared by all
+     *                  processes allocating from the same sequence
+     * @param blockSize number of IDs reserved at once
+     * @param floor     highest ID already in use; allocated IDs are greater
+     */
+    public IdAllocator(Path file, int blockSize, long floor) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+        this.file = file;
+        this.blockSize = blockSize;
+        this.floor = floor;
+    }
+
+    /**
+     * Returns the next ID.
+     *
+     * @return an ID no other call, in this or another process, returned
+     * @throws IOException if a new block cannot be reserved
+     */
+    public synchronized long nextId() throws IOException {
+        if (next > last) {
+            reserveBlock();
+        }
+        return next++;
+    }
+
+    /**
+     * Returns the highest ID reserved by any process so far, as stored in
+     * the file.
+     *
+     * @return reserved high-water mark, or 0 if nothing was reserved
+     * @throws IOException if the file cannot be read
+     */
+    public long getReservedUpTo() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long[] slots = readSlots(channel);
+            return Math.max(slots[0], slots[1]);
+        }
+    }
+
+    private void reserveBlock() throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        // File locks exclude other processes only; allocators of this JVM queue here
+        synchronized (JVM_LOCK) {
+            reserveBlockLocked();
+        }
+    }
+
+    private void reserveBlockLocked() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.lock();
+            try {
+                long[] slots = readSlots(channel);
+                long reserved = Math.max(slots[0], slots[1]);
+
+                long start = Math.max(reserved, floor) + 1;
+                long end = start + blockSize - 1;
+
+                // Overwrite the older slot; the newer one stays valid if this write tears
+                int target = slots[0] <= slots[1] ? 0 : 1;
+                ByteBuffer slot = encodeSlot(end);
+                long position = (long) target * SLOT_SIZE;
+                while (slot.hasRemaining()) {
+                    position += channel.write(slot, position);
+                }
+                channel.force(true);
+
+                next = start;
+                last = end;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    /** Reads both slots; an empty or damaged slot reads as 0. */
+    private static long[] readSlots(FileChannel channel) throws IOException {
+        long[] values = new long[2];
+        for (int s = 0; s < 2; s++) {
+            ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+            long position = (long) s * SLOT_SIZE;
+            while (slot.hasRemaining()) {
+                int n = channel.read(slot, position + slot.position());
+                if (n < 0) {
+                    break;
+                }
+            }
+            if (slot.hasRemaining()) {
+                continue;
+            }
+            slot.flip();
+            long value = slot.getLong();
+            int crc = slot.getInt();
+            int magic = slot.getInt();
+            if (magic == MAGIC && crc == checksum(value)) {
+                values[s] = value;
+            }
+        }
+        return values;
+    }
+
+    private static ByteBuffer encodeSlot(long value) {
+        ByteBuffer slot = ByteBuffer.allocate(SLOT_SIZE);
+        slot.putLong(value);
+        slot.putInt(checksum(value));
+        slot.putInt(MAGIC);
+        slot.flip();
+        return slot;
+    }
+
+    private static int checksum(long value) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(value).array());
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,23 @@
+package edu.univ.lms.repository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Signals that a checkpoint already dropped journal records a reader had not
+ * read yet. The snapshots contain their effect now, so the reader has to
+ * reload them and continue after the journal's new base sequence number.
+ */
+public class JournalCompactedException extends IOException {
+
+    /**
+     * Creates the exception.
+     *
+     * @param file    journal file
+     * @param fromSeq first sequence number that is gone
+     * @param baseSeq last sequence number folded into the snapshots
+     */
+    public JournalCompactedException(Path file, long fromSeq, long baseSeq) {
+        super("Journal " + file + " no longer holds records " + fromSeq + ".." + baseSeq + "; reload the snapshots");
+    }
+}
@@ -0,0 +1,359 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Shared GSON configuration for every JSON file written by the repositories.
+ * <p>
+ * Keeping the type adapters in one place guarantees that snapshot files and
+ * the mutation log encode dates the same way. Also provides the streaming
+ * array reader and writer used for large snapshot files.
+ */
+final class JsonSupport {
+
+    // ---------------------------------------------------------
+    // GSON Type Adapters
+    // ---------------------------------------------------------
+
+    /**
+     * Streaming adapter converting a {@link LocalDate} to and from its
+     * ISO-8601 string representation, without an intermediate JSON tree.
+     */
+    private static final TypeAdapter<LocalDate> localDateAdapter = new TypeAdapter<LocalDate>() {
+        @Override
+        public void write(JsonWriter out, LocalDate date) throws IOException {
+            if (date == null) {
+                out.nullValue();
+            } else {
+                out.value(date.toString());
+            }
+        }
+
+        @Override
+        public LocalDate read(JsonReader in) throws IOException {
+            return nextDate(in);
+        }
+    };
+
+    /** Size of the byte buffer between the file channel and the JSON parser or writer. */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private JsonSupport() {
+    }
+
+    /**
+     * Returns a new builder with the shared type adapters registered.
+     * Callers add output options such as pretty printing themselves.
+     * <p>
+     * {@link Book} and {@link User} use hand-written streaming adapters
+     * instead of reflective binding; their output is identical.
+     *
+     * @return pre-configured GSON builder
+     */
+    static GsonBuilder builder() {
+        return new GsonBuilder()
+                .registerTypeAdapter(LocalDate.class, localDateAdapter)
+                .registerTypeAdapter(Book.class, new BookTypeAdapter())
+                .registerTypeAdapter(User.class, new UserTypeAdapter());
+    }
+
+    // ---------------------------------------------------------
+    // Field readers for the streaming adapters
+    // ---------------------------------------------------------
+
+    /**
+     * Reads a string value. Like GSON's own string adapter, numbers and
+     * booleans are accepted and returned as text.
+     *
+     * @param in reader positioned at a value
+     * @return string value, or {@code null} for a JSON null
+     * @throws IOException if the value is not a primitive
+     */
+    static String nextString(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(in.nextBoolean());
+        }
+        return in.nextString();
+    }
+
+    /**
+     * Reads a boolean value, also accepting the strings "true" and "false".
+     *
+     * @param in       reader positioned at a value
+     * @param ifAbsent value returned for a JSON null
+     * @return boolean value
+     * @throws IOException if the value is not a boolean or a string
+     */
+    static boolean nextBoolean(JsonReader in, boolean ifAbsent) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return ifAbsent;
+        }
+        if (token == JsonToken.STRING) {
+            return Boolean.parseBoolean(in.nextString());
+        }
+        return in.nextBoolean();
+    }
+
+    /**
+     * Reads an ISO-8601 date directly from its string token.
+     *
+     * @param in reader positioned at a value
+     * @return date, or {@code null} for a JSON null
+     * @throws IOException if the value is not a valid date
+     */
+    static LocalDate nextDate(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String text = in.nextString();
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new JsonSyntaxException("Invalid date '" + text + "' at " + in.getPath(), e);
+        }
+    }
+
+    /**
+     * Streams a JSON array from a file, decoding one element at a time.
+     * <p>
+     * Only the element being decoded is held by the parser, so the caller's
+     * collection is the single full copy of the data. A {@code null} document
+     * or an empty file yields no elements, like {@code Gson.fromJson} does.
+     * The bytes are checksummed on the way and compared with the sidecar
+     * written by {@link #writeArray}, if present, see
+     * {@link AtomicFiles#verifyChecksum(Path, long, long, long)}; on a
+     * mismatch the read fails after the elements were passed on, so callers
+     * must discard what the sink received when this method throws. Gzip compressed files are
+     * detected and decompressed on the fly; progress is reported in stored
+     * (compressed) bytes.
+     *
+     * @param file     file containing a JSON array
+     * @param gson     GSON instance providing the element adapter
+     * @param type     element type
+     * @param listener progress listener, may be {@code null}
+     * @param sink     receives every decoded element in file order
+     * @param <T>      element type
+     * @return number of elements read
+     * @throws ChecksumMismatchException if the file was damaged on disk
+     * @throws IOException if the file cannot be read, is not a JSON array or
+     *                     was replaced while it was read
+     */
+    static <T> int readArray(Path file, Gson gson, Class<T> type,
+                             LoadProgressListener listener, Consumer<T> sink) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            CRC32 crc = new CRC32();
+            ReadableByteChannel checked = new ChecksumChannel(channel, crc);
+            CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            InputStream raw = new BufferedInputStream(Channels.newInputStream(checked), BUFFER_SIZE);
+            Reader in = new InputStreamReader(
+                    Compression.decompress(raw, Compression.isCompressed(channel), BUFFER_SIZE), decoder);
+
+            int count;
+            try {
+                count = readElements(new JsonReader(in), file, channel, gson.getAdapter(type), listener, sink);
+            } catch (IOException | RuntimeException e) {
+                // Damage usually breaks the syntax too; report it as damage then
+                try {
+                    verifyRest(file, checked, crc, channel.size(), modified);
+                } catch (ChecksumMismatchException damaged) {
+                    damaged.addSuppressed(e);
+                    throw damaged;
+                } catch (IOException other) {
+                    e.addSuppressed(other);
+                }
+                throw e;
+            }
+            verifyRest(file, checked, crc, channel.size(), modified);
+            return count;
+        }
+    }
+
+    /** Hashes whatever the parser did not need, then compares with the sidecar. */
+    private static void verifyRest(Path file, ReadableByteChannel checked, CRC32 crc, long size, long modified)
+            throws IOException {
+        ByteBuffer rest = ByteBuffer.allocate(BUFFER_SIZE);
+        while (checked.read(rest) > 0) {
+            rest.clear();
+        }
+        AtomicFiles.verifyChecksum(file, crc.getValue(), size, modified);
+    }
+
+    private static <T> int readElements(JsonReader reader, Path file, FileChannel channel, TypeAdapter<T> adapter,
+                                        LoadProgressListener listener, Consumer<T> sink) throws IOException {
+        reader.setLenient(true);
+        long total = channel.size();
+
+        JsonToken first = reader.peek();
+        if (first == JsonToken.END_DOCUMENT) {
+            return 0;
+        }
+        if (first == JsonToken.NULL) {
+            reader.nextNull();
+            return 0;
+        }
+
+        int count = 0;
+        long nextReport = LoadProgressListener.REPORT_INTERVAL_BYTES;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            sink.accept(adapter.read(reader));
+            count++;
+
+            // The channel position runs at most one buffer ahead of the parser
+            if (listener != null && channel.position() >= nextReport) {
+                listener.onProgress(file, channel.position(), total, count);
+                nextReport = channel.position() + LoadProgressListener.REPORT_INTERVAL_BYTES;
+            }
+        }
+        reader.endArray();
+
+        if (listener != null) {
+            listener.onProgress(file, total, total, count);
+        }
+        return count;
+    }
+
+    /**
+     * Streams a collection to a file as a JSON array, encoding one element at
+     * a time into a large channel buffer.
+     * <p>
+     * The file is replaced atomically and gets a checksum sidecar, see
+     * {@link AtomicFiles#replaceWithChecksum(Path, AtomicFiles.Content)}.
+     * <p>
+     * No JSON tree or intermediate string is built, so the extra memory used
+     * does not depend on the number of elements. Output options (pretty
+     * printing, HTML escaping, nulls) follow the given GSON instance.
+     *
+     * @param file  file to overwrite
+     * @param gson  GSON instance providing the element adapter and output options
+     * @param type  element type
+     * @param items elements to write, in order
+     * @param <T>   element type
+     * @return number of elements written
+     * @throws IOException if the file cannot be written
+     */
+    static <T> int writeArray(Path file, Gson gson, Class<T> type, Iterable<T> items) throws IOException {
+        return writeArray(file, gson, type, items, Compression.NONE);
+    }
+
+    /**
+     * Streams a collection to a file as a JSON array, optionally compressed.
+     * The checksum sidecar covers the stored (compressed) bytes.
+     *
+     * @param file        file to overwrite
+     * @param gson        GSON instance providing the element adapter and output options
+     * @param type        element type
+     * @param items       elements to write, in order
+     * @param compression compression applied to the file
+     * @param <T>         element type
+     * @return number of elements written
+     * @throws IOException if the file cannot be written
+     */
+    static <T> int writeArray(Path file, Gson gson, Class<T> type, Iterable<T> items,
+                              Compression compression) throws IOException {
+        TypeAdapter<T> adapter = gson.getAdapter(type);
+        int[] count = new int[1];
+
+        AtomicFiles.replaceWithChecksum(file, channel -> {
+            CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            // Not closed: closing would close the channel before it is forced
+            OutputStream stored = compression.compress(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), BUFFER_SIZE);
+            Writer out = new BufferedWriter(new OutputStreamWriter(stored, encoder), BUFFER_SIZE);
+
+            JsonWriter writer = gson.newJsonWriter(out);
+            writer.beginArray();
+            for (T item : items) {
+                adapter.write(writer, item);
+                count[0]++;
+            }
+            writer.endArray();
+            writer.flush();
+            Compression.finish(stored);
+        });
+        return count[0];
+    }
+
+    /**
+     * Read-only channel wrapper that feeds every byte read into a checksum.
+     */
+    private static final class ChecksumChannel implements ReadableByteChannel {
+        private final ReadableByteChannel delegate;
+        private final CRC32 crc;
+
+        ChecksumChannel(ReadableByteChannel delegate, CRC32 crc) {
+            this.delegate = delegate;
+            this.crc = crc;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            int start = dst.position();
+            int n = delegate.read(dst);
+            if (n > 0) {
+                ByteBuffer view = dst.duplicate();
+                view.position(start);
+                view.limit(start + n);
+                crc.update(view);
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+}
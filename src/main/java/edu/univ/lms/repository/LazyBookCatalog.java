@@ -0,0 +1,226 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Catalog whose items are decoded on first access instead of at startup.
+ * <p>
+ * The key index is the sorted ISBN slot table of a {@link MappedCatalog},
+ * which lives in the page cache rather than on the heap, so opening the
+ * catalog costs the same for any number of items. {@link #get(String)}
+ * decodes an item once and keeps it in a {@link ClockCache} of bounded
+ * size; items that were not touched recently are dropped again and cost
+ * no heap.
+ * <p>
+ * Callers may modify the returned {@link Book}s directly. Modified items
+ * are dirty (see {@link Book#isDirty()}) and pinned in the cache, so no
+ * change is lost before {@link #save()} writes them back. Added items and
+ * removed ISBNs are kept aside until then as well.
+ */
+public class LazyBookCatalog implements Closeable {
+
+    /** Default number of decoded items kept in memory. */
+    public static final int DEFAULT_CACHE_CAPACITY = 10_000;
+
+    private final Path file;
+    private final ClockCache<String, Book> cache;
+
+    private MappedCatalog catalog;
+
+    /** Items added since the last save; not in the mapped file. */
+    private final Map<String, Book> added = new LinkedHashMap<>();
+
+    /** ISBNs of mapped items removed since the last save. */
+    private final Set<String> removed = new HashSet<>();
+
+    private LazyBookCatalog(Path file, MappedCatalog catalog, int cacheCapacity) {
+        this.file = file;
+        this.catalog = catalog;
+        this.cache = new ClockCache<>(cacheCapacity, Book::isDirty);
+    }
+
+    /**
+     * Opens a catalog file. Only the file header is read.
+     *
+     * @param file          catalog file in {@link MappedCatalog} layout
+     * @param cacheCapacity number of decoded items kept in memory
+     * @return lazy catalog; the caller must close it
+     * @throws IOException if the file is missing or invalid
+     */
+    public static LazyBookCatalog open(Path file, int cacheCapacity) throws IOException {
+        return new LazyBookCatalog(file, MappedCatalog.open(file), cacheCapacity);
+    }
+
+    // ---------------------------------------------------------
+    // Lookups
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the number of items, including unsaved additions and removals.
+     *
+     * @return item count
+     */
+    public synchronized int size() {
+        return catalog.size() - removed.size() + added.size();
+    }
+
+    /**
+     * Checks whether an item exists without decoding it.
+     *
+     * @param isbn ISBN to look up
+     * @return {@code true} if the item exists
+     */
+    public synchronized boolean contains(String isbn) {
+        if (added.containsKey(isbn)) {
+            return true;
+        }
+        return !removed.contains(isbn) && catalog.indexOf(isbn) >= 0;
+    }
+
+    /**
+     * Returns an item, decoding it from the mapped file on first access.
+     *
+     * @param isbn ISBN to look up
+     * @return the cached item, or {@code null} if it does not exist
+     */
+    public synchronized Book get(String isbn) {
+        Book book = added.get(isbn);
+        if (book != null) {
+            return book;
+        }
+        if (removed.contains(isbn)) {
+            return null;
+        }
+        book = cache.get(isbn);
+        if (book == null) {
+            int index = catalog.indexOf(isbn);
+            if (index < 0) {
+                return null;
+            }
+            book = catalog.get(index);
+            // Freshly decoded items match the file
+            book.markClean();
+            cache.put(isbn, book);
+        }
+        return book;
+    }
+
+    /**
+     * Visits every ISBN in the mapped file order, followed by unsaved
+     * additions, without decoding any item.
+     *
+     * @param visitor receives each ISBN
+     */
+    public synchronized void forEachIsbn(Consumer<String> visitor) {
+        for (int i = 0; i < catalog.size(); i++) {
+            String isbn = catalog.getIsbn(i);
+            if (!removed.contains(isbn)) {
+                visitor.accept(isbn);
+            }
+        }
+        added.keySet().forEach(visitor);
+    }
+
+    /**
+     * Returns the cache holding decoded items, e.g. for its hit statistics.
+     *
+     * @return item cache
+     */
+    public ClockCache<String, Book> getCache() {
+        return cache;
+    }
+
+    // ---------------------------------------------------------
+    // Changes
+    // ---------------------------------------------------------
+
+    /**
+     * Adds a new item or replaces an existing one.
+     *
+     * @param book item to add
+     */
+    public synchronized void add(Book book) {
+        book.markDirty();
+        if (catalog.indexOf(book.getIsbn()) >= 0) {
+            removed.remove(book.getIsbn());
+            cache.put(book.getIsbn(), book);
+        } else {
+            added.put(book.getIsbn(), book);
+        }
+    }
+
+    /**
+     * Removes an item.
+     *
+     * @param isbn ISBN of the item to remove
+     * @return {@code true} if the item existed
+     */
+    public synchronized boolean remove(String isbn) {
+        if (added.remove(isbn) != null) {
+            return true;
+        }
+        cache.remove(isbn);
+        return catalog.indexOf(isbn) >= 0 && removed.add(isbn);
+    }
+
+    /**
+     * Writes the catalog back to its file if anything changed, then maps the
+     * new file. Unchanged items that are not cached are decoded from the old
+     * mapping one at a time as they are written and not kept, so a save needs
+     * no more heap than the cache and the unsaved additions; cached items
+     * stay cached.
+     *
+     * @return {@code true} if the file was rewritten
+     * @throws IOException if the file cannot be written; changes are kept
+     */
+    public synchronized boolean save() throws IOException {
+        List<Book> dirty = new ArrayList<>();
+        cache.forEachValue(book -> {
+            if (book.isDirty()) {
+                dirty.add(book);
+            }
+        });
+        if (dirty.isEmpty() && added.isEmpty() && removed.isEmpty()) {
+            return false;
+        }
+
+        MappedCatalog.writeMerged(file, catalog, removed, cache::peek, added.values());
+
+        MappedCatalog previous = catalog;
+        catalog = MappedCatalog.open(file);
+        previous.close();
+
+        for (Book book : dirty) {
+            book.markClean();
+        }
+        for (Book book : added.values()) {
+            book.markClean();
+            cache.put(book.getIsbn(), book);
+        }
+        added.clear();
+        removed.clear();
+        return true;
+    }
+
+    /**
+     * Releases the mapped file. Unsaved changes are discarded.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        cache.clear();
+        catalog.close();
+    }
+}
@@ -0,0 +1,57 @@
+package edu.univ.lms.repository;
+
+import java.nio.file.Path;
+
+/**
+ * Receives progress updates while a repository streams a data file into memory.
+ * <p>
+ * Updates are sent roughly every {@link #REPORT_INTERVAL_BYTES} bytes and once
+ * more when the file has been read completely.
+ */
+public interface LoadProgressListener {
+
+    /** Approximate number of bytes read between two updates. */
+    long REPORT_INTERVAL_BYTES = 1024L * 1024;
+
+    /** Files at least this large get console progress from {@link #console()}. */
+    long LARGE_FILE_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Called while a file is being loaded.
+     *
+     * @param file       file being read
+     * @param bytesRead  bytes consumed so far
+     * @param totalBytes file size when loading started
+     * @param records    records decoded so far
+     */
+    void onProgress(Path file, long bytesRead, long totalBytes, int records);
+
+    /**
+     * Returns a listener printing a line per 10% to the console, but only for
+     * files of at least {@link #LARGE_FILE_BYTES}. Smaller files load quietly.
+     *
+     * @return console progress listener
+     */
+    static LoadProgressListener console() {
+        return new LoadProgressListener() {
+            private int lastTenth = -1;
+
+            @Override
+            public void onProgress(Path file, long bytesRead, long totalBytes, int records) {
+                if (totalBytes < LARGE_FILE_BYTES) {
+                    return;
+                }
+                int tenth = (int) (bytesRead * 10 / totalBytes);
+                if (tenth > lastTenth) {
+                    lastTenth = tenth;
+                    System.out.println("Loading " + file.getFileName() + ": "
+                            + (tenth * 10) + "% (" + records + " records)");
+                }
+                if (bytesRead >= totalBytes) {
+                    // Start over for the next load through the same repository
+                    lastTenth = -1;
+                }
+            }
+        };
+    }
+}
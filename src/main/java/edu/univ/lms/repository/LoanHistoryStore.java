@@ -0,0 +1,627 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Loan;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Append-only history of completed {@link Loan}s, partitioned by the month
+ * of the return date.
+ * <p>
+ * Every month is one NDJSON file, <code>loans-YYYY-MM.ndjson</code>, in the
+ * history directory. Loans are never changed after they are written.
+ * <ul>
+ *     <li>{@link #record(Loan)} only queues the loan; a background thread
+ *         appends queued loans in batches, one fsync per batch, so the
+ *         borrow/return path does not wait for the disk. If the writer falls
+ *         {@link #setMaxPending(int) far behind}, callers are blocked until
+ *         it catches up.</li>
+ *     <li>Range queries open only the partitions of the months in range.</li>
+ *     <li>{@link #compressBefore(YearMonth)} gzips closed months in place.
+ *         A loan recorded later for a compressed month goes to a separate,
+ *         uncompressed <code>loans-YYYY-MM.late.ndjson</code> file, which is
+ *         read after the partition and folded into it by the next
+ *         {@code compressBefore}. A compressed file is therefore only ever
+ *         written atomically.</li>
+ * </ul>
+ * A line torn by a crash is skipped with a warning when the partition is read.
+ * A crash between folding a late file into its partition and deleting it is
+ * detected when the store is opened.
+ */
+public class LoanHistoryStore implements Closeable {
+
+    /** Default directory holding the monthly partitions. */
+    private static final String HISTORY_DIR = "data/loans";
+
+    /** Default number of queued loans at which {@link #record(Loan)} blocks. */
+    public static final int DEFAULT_MAX_PENDING = 10_000;
+
+    private static final String PREFIX = "loans-";
+    private static final String SUFFIX = ".ndjson";
+    private static final String LATE_SUFFIX = ".late.ndjson";
+
+    /** Pause before the writer retries after a failed append. */
+    private static final long RETRY_MILLIS = 1000;
+
+    private static final Gson gson = JsonSupport.builder().create();
+
+    private final Path dir;
+
+    /** Loans recorded but not yet written, oldest first. Guarded by {@code this}. */
+    private final Deque<Loan> pending = new ArrayDeque<>();
+
+    /** Number of loans recorded and written so far. Guarded by {@code this}. */
+    private long recordedCount;
+    private long writtenCount;
+
+    private int maxPending = DEFAULT_MAX_PENDING;
+
+    private Thread worker;
+    private boolean running;
+
+    /** Serializes appends and compaction of partition files. */
+    private final Object fileLock = new Object();
+
+    /**
+     * Creates a store writing partitions under <code>data/loans/</code>.
+     */
+    public LoanHistoryStore() {
+        this(Paths.get(HISTORY_DIR));
+    }
+
+    /**
+     * Creates a store writing partitions under a specific directory, which
+     * is created if needed.
+     *
+     * @param dir directory holding the partitions
+     */
+    public LoanHistoryStore(Path dir) {
+        this.dir = dir;
+        if (!dir.toFile().exists() && !dir.toFile().mkdirs()) {
+            System.out.println("Could not create loan history folder.");
+        }
+        try {
+            dropMergedLateFiles();
+        } catch (IOException e) {
+            System.out.println("Error checking loan history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the directory holding the partitions.
+     *
+     * @return history directory
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Sets the number of queued loans at which {@link #record(Loan)} blocks.
+     *
+     * @param maxPending queue length
+     */
+    public synchronized void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    // ---------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------
+
+    /**
+     * Starts the background writer. Without it, queued loans are written by
+     * {@link #flush()}.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runWorker, "loan-history");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the background writer and writes whatever is still queued.
+     */
+    @Override
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = worker;
+            worker = null;
+            notifyAll();
+        }
+        if (stopping != null) {
+            try {
+                stopping.join(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println("Error writing loan history: " + e.getMessage());
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Recording
+    // ---------------------------------------------------------
+
+    /**
+     * Queues a completed loan for writing and returns immediately, unless
+     * the queue is full.
+     *
+     * @param loan loan to record; its return date selects the partition
+     */
+    public synchronized void record(Loan loan) {
+        pending.addLast(loan);
+        recordedCount++;
+        notifyAll();
+
+        while (running && pending.size() >= maxPending) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of recorded loans not yet written.
+     *
+     * @return queue length
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Writes every loan recorded before this call and forces it to disk.
+     *
+     * @throws IOException if the loans could not be written; they stay queued
+     */
+    public void flush() throws IOException {
+        long upTo;
+        synchronized (this) {
+            upTo = recordedCount;
+        }
+        while (true) {
+            synchronized (this) {
+                if (writtenCount >= upTo) {
+                    return;
+                }
+            }
+            writeBatch();
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            synchronized (this) {
+                while (running && pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+            try {
+                writeBatch();
+            } catch (IOException e) {
+                System.out.println("Error writing loan history: " + e.getMessage());
+                synchronized (this) {
+                    try {
+                        wait(RETRY_MILLIS);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes every queued loan and appends it to its partition. On failure
+     * the loans of the months not yet written go back to the front of the
+     * queue, so a retry never writes a loan twice.
+     */
+    private void writeBatch() throws IOException {
+        synchronized (fileLock) {
+            List<Loan> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+                notifyAll();
+            }
+
+            Map<YearMonth, List<Loan>> byMonth = new TreeMap<>();
+            for (Loan loan : batch) {
+                byMonth.computeIfAbsent(YearMonth.from(loan.getReturnDate()), m -> new ArrayList<>()).add(loan);
+            }
+            int written = 0;
+            try {
+                Iterator<Map.Entry<YearMonth, List<Loan>>> months = byMonth.entrySet().iterator();
+                while (months.hasNext()) {
+                    Map.Entry<YearMonth, List<Loan>> entry = months.next();
+                    append(entry.getKey(), entry.getValue());
+                    written += entry.getValue().size();
+                    months.remove();
+                }
+            } catch (IOException | RuntimeException e) {
+                // Only the months left in byMonth still need writing
+                synchronized (this) {
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        Loan loan = batch.get(i);
+                        if (byMonth.containsKey(YearMonth.from(loan.getReturnDate()))) {
+                            pending.addFirst(loan);
+                        }
+                    }
+                    writtenCount += written;
+                    notifyAll();
+                }
+                throw e;
+            }
+
+            synchronized (this) {
+                writtenCount += written;
+                notifyAll();
+            }
+        }
+    }
+
+    private void append(YearMonth month, List<Loan> loans) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(loans.size() * 160);
+        for (Loan loan : loans) {
+            lines.write(gson.toJson(loan, Loan.class).getBytes(StandardCharsets.UTF_8));
+            lines.write('\n');
+        }
+
+        Path file = partitionFile(month);
+        if (isCompressed(month)) {
+            file = lateFile(month);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            channel.position(size);
+            OutputStream out = Channels.newOutputStream(channel);
+            // Terminate a last line torn by a crash
+            if (size > 0) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                if (last.get(0) != '\n') {
+                    out.write('\n');
+                }
+            }
+            lines.writeTo(out);
+            out.flush();
+            channel.force(false);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Queries
+    // ---------------------------------------------------------
+
+    /**
+     * Visits the loans returned within a date range, reading only the
+     * partitions of the months involved. Queued loans are written first.
+     *
+     * @param from    first return date, inclusive
+     * @param to      last return date, inclusive
+     * @param visitor receives each matching loan, by partition in month order
+     * @throws IOException if a partition cannot be read
+     */
+    public void forEachReturned(LocalDate from, LocalDate to, Consumer<Loan> visitor) throws IOException {
+        flush();
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            Consumer<Loan> inRange = loan -> {
+                LocalDate returned = loan.getReturnDate();
+                if (!returned.isBefore(from) && !returned.isAfter(to)) {
+                    visitor.accept(loan);
+                }
+            };
+            synchronized (fileLock) {
+                Path file = partitionFile(month);
+                if (Files.exists(file)) {
+                    readPartition(file, inRange);
+                }
+                Path late = lateFile(month);
+                if (Files.exists(late)) {
+                    readPartition(late, inRange);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the loans returned within a date range.
+     *
+     * @param from first return date, inclusive
+     * @param to   last return date, inclusive
+     * @return matching loans
+     * @throws IOException if a partition cannot be read
+     */
+    public List<Loan> findReturned(LocalDate from, LocalDate to) throws IOException {
+        List<Loan> loans = new ArrayList<>();
+        forEachReturned(from, to, loans::add);
+        return loans;
+    }
+
+    /**
+     * Returns the loans of one user returned within a date range.
+     *
+     * @param userId user to look up
+     * @param from   first return date, inclusive
+     * @param to     last return date, inclusive
+     * @return matching loans
+     * @throws IOException if a partition cannot be read
+     */
+    public List<Loan> findByUser(String userId, LocalDate from, LocalDate to) throws IOException {
+        List<Loan> loans = new ArrayList<>();
+        forEachReturned(from, to, loan -> {
+            if (userId.equals(loan.getUserId())) {
+                loans.add(loan);
+            }
+        });
+        return loans;
+    }
+
+    private void readPartition(Path file, Consumer<Loan> sink) throws IOException {
+        synchronized (fileLock) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                InputStream raw = Channels.newInputStream(channel);
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        Compression.decompress(raw, Compression.isCompressed(channel), JsonSupport.BUFFER_SIZE),
+                        StandardCharsets.UTF_8), JsonSupport.BUFFER_SIZE);
+                String line;
+                try {
+                    while ((line = in.readLine()) != null) {
+                        parseLine(file, line, sink);
+                    }
+                } catch (EOFException e) {
+                    System.out.println("Warning: " + file + " ends with an incomplete block; later loans are missing.");
+                }
+            }
+        }
+    }
+
+    private static void parseLine(Path file, String line, Consumer<Loan> sink) {
+        if (line.trim().isEmpty()) {
+            return;
+        }
+        try {
+            Loan loan = gson.fromJson(line, Loan.class);
+            if (loan != null && loan.getReturnDate() != null) {
+                sink.accept(loan);
+                return;
+            }
+        } catch (JsonParseException e) {
+            // Reported below
+        }
+        System.out.println("Skipping damaged loan record in " + file);
+    }
+
+    // ---------------------------------------------------------
+    // Partitions
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the file holding the loans returned in a month.
+     *
+     * @param month partition month
+     * @return partition file; may not exist yet
+     */
+    public Path partitionFile(YearMonth month) {
+        return dir.resolve(PREFIX + month + SUFFIX);
+    }
+
+    private Path lateFile(YearMonth month) {
+        return dir.resolve(PREFIX + month + LATE_SUFFIX);
+    }
+
+    /**
+     * Lists the months that have a partition file.
+     *
+     * @return partition months in ascending order
+     * @throws IOException if the directory cannot be listed
+     */
+    public List<YearMonth> getPartitions() throws IOException {
+        List<YearMonth> months = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    months.add(YearMonth.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+                } catch (DateTimeParseException e) {
+                    // Not a partition
+                }
+            }
+        }
+        Collections.sort(months);
+        return months;
+    }
+
+    /**
+     * Checks whether a partition is stored gzip compressed.
+     *
+     * @param month partition month
+     * @return {@code true} if the partition exists and is compressed
+     * @throws IOException if the partition cannot be read
+     */
+    public boolean isCompressed(YearMonth month) throws IOException {
+        Path file = partitionFile(month);
+        if (!Files.exists(file)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return Compression.isCompressed(channel);
+        }
+    }
+
+    /**
+     * Gzips every uncompressed partition of a month before {@code month} and
+     * folds late loans into partitions that are already compressed. Each
+     * file is replaced atomically; its loans stay readable throughout.
+     *
+     * @param month first month left as is, typically the current one
+     * @return number of partitions rewritten
+     * @throws IOException if a partition cannot be rewritten
+     */
+    public int compressBefore(YearMonth month) throws IOException {
+        int compressed = 0;
+        for (YearMonth partition : getPartitions()) {
+            if (!partition.isBefore(month)) {
+                continue;
+            }
+            Path file = partitionFile(partition);
+            Path late = lateFile(partition);
+            synchronized (fileLock) {
+                boolean wasCompressed = isCompressed(partition);
+                if (wasCompressed && !Files.exists(late)) {
+                    continue;
+                }
+                ByteArrayOutputStream plain = new ByteArrayOutputStream();
+                byte[] current = readPlain(file);
+                plain.write(current);
+                if (wasCompressed) {
+                    if (!endsWithNewline(current)) {
+                        plain.write('\n');
+                    }
+                    plain.write(lateLines(late));
+                }
+                AtomicFiles.replace(file, channel -> {
+                    OutputStream out = Compression.GZIP.compress(Channels.newOutputStream(channel),
+                            JsonSupport.BUFFER_SIZE);
+                    plain.writeTo(out);
+                    Compression.finish(out);
+                });
+                // A crash before this delete is repaired by dropMergedLateFiles
+                Files.deleteIfExists(late);
+            }
+            compressed++;
+        }
+        return compressed;
+    }
+
+    /**
+     * Deletes late files whose loans a crashed {@link #compressBefore} had
+     * already folded into their partition: the partition then ends with
+     * exactly the late file's lines.
+     */
+    private void dropMergedLateFiles() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> lateFiles = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + "*" + LATE_SUFFIX)) {
+            for (Path file : files) {
+                lateFiles.add(file);
+            }
+        }
+        for (Path late : lateFiles) {
+            String name = late.getFileName().toString();
+            Path file = dir.resolve(name.substring(0, name.length() - LATE_SUFFIX.length()) + SUFFIX);
+            if (!Files.exists(file)) {
+                continue;
+            }
+            byte[] lines = lateLines(late);
+            byte[] plain = readPlain(file);
+            if (lines.length > 0 && endsWith(plain, lines)) {
+                Files.delete(late);
+            }
+        }
+    }
+
+    /** Reads a partition, decompressing it if needed. */
+    private static byte[] readPlain(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            InputStream in = Compression.decompress(Channels.newInputStream(channel),
+                    Compression.isCompressed(channel), JsonSupport.BUFFER_SIZE);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[JsonSupport.BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /** Reads a late file with its last line terminated, as it is folded in. */
+    private static byte[] lateLines(Path late) throws IOException {
+        byte[] lines = Files.readAllBytes(late);
+        if (endsWithNewline(lines)) {
+            return lines;
+        }
+        byte[] terminated = Arrays.copyOf(lines, lines.length + 1);
+        terminated[lines.length] = '\n';
+        return terminated;
+    }
+
+    private static boolean endsWithNewline(byte[] data) {
+        return data.length == 0 || data[data.length - 1] == '\n';
+    }
+
+    private static boolean endsWith(byte[] data, byte[] suffix) {
+        if (suffix.length > data.length) {
+            return false;
+        }
+        int offset = data.length - suffix.length;
+        for (int i = 0; i < suffix.length; i++) {
+            if (data[offset + i] != suffix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,208 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single entry of the {@link MutationLog}.
+ * <p>
+ * Records carry the full state of the changed entity rather than a delta,
+ * so applying a record is an idempotent upsert (or delete) keyed by ISBN or
+ * user ID. Replaying a record whose effect is already part of a snapshot is
+ * therefore harmless.
+ */
+public class LogRecord {
+
+    /**
+     * Kind of mutation described by a record.
+     */
+    public enum Type {
+        /** A new item was added to the catalog. */
+        ADD_ITEM,
+        /** An item was removed from the catalog (key = ISBN). */
+        REMOVE_ITEM,
+        /** An item's title or author changed. */
+        UPDATE_ITEM,
+        /** An item was borrowed. */
+        BORROW,
+        /** An item was returned. */
+        RETURN,
+        /** A user's fine balance changed. */
+        FINE,
+        /** A new user registered. */
+        REGISTER,
+        /** A user was removed (key = user ID). */
+        UNREGISTER;
+
+        /**
+         * Indicates whether records of this type carry a {@link Book}.
+         *
+         * @return {@code true} for item mutations
+         */
+        public boolean isItemMutation() {
+            return this == ADD_ITEM || this == REMOVE_ITEM || this == UPDATE_ITEM
+                    || this == BORROW || this == RETURN;
+        }
+    }
+
+    private long seq;
+    private Type type;
+    private String key;
+    private Book book;
+    private User user;
+
+    /**
+     * No-arg constructor required for JSON deserialization.
+     */
+    public LogRecord() {
+    }
+
+    /**
+     * Creates a record describing an item mutation.
+     *
+     * @param type mutation type
+     * @param book full state of the item after the change
+     */
+    public LogRecord(Type type, Book book) {
+        this.type = type;
+        this.key = book.getIsbn();
+        this.book = type == Type.REMOVE_ITEM ? null : book;
+    }
+
+    /**
+     * Creates a record describing a user mutation.
+     *
+     * @param type mutation type
+     * @param user full state of the user after the change
+     */
+    public LogRecord(Type type, User user) {
+        this.type = type;
+        this.key = user.getUserId();
+        this.user = type == Type.UNREGISTER ? null : user;
+    }
+
+    // ---------------------------------------------------------
+    // Getters
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the sequence number assigned when the record was appended.
+     *
+     * @return log sequence number
+     */
+    public long getSeq() {
+        return seq;
+    }
+
+    void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    /**
+     * Returns the mutation type.
+     *
+     * @return record type
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the ISBN or user ID of the changed entity.
+     *
+     * @return entity key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the item state carried by this record.
+     *
+     * @return item, or {@code null} for user mutations and removals
+     */
+    public Book getBook() {
+        return book;
+    }
+
+    /**
+     * Returns the user state carried by this record.
+     *
+     * @return user, or {@code null} for item mutations and removals
+     */
+    public User getUser() {
+        return user;
+    }
+
+    /**
+     * Returns a copy of this record whose entity no longer changes with the
+     * live object it was created from.
+     *
+     * @return detached copy
+     */
+    LogRecord copy() {
+        LogRecord copy = new LogRecord();
+        copy.seq = seq;
+        copy.type = type;
+        copy.key = key;
+        copy.book = book == null ? null : new Book(book);
+        copy.user = user == null ? null : new User(user);
+        return copy;
+    }
+
+    // ---------------------------------------------------------
+    // Replay
+    // ---------------------------------------------------------
+
+    /**
+     * Applies a sequence of records, in order, on top of loaded snapshot lists.
+     * <p>
+     * Both lists are indexed once, so replay costs O(books + users + records)
+     * instead of one list scan per record. Existing entries keep their
+     * position; new entries are appended in log order.
+     *
+     * @param records records to apply
+     * @param books   item list to update in place
+     * @param users   user list to update in place
+     */
+    public static void applyAll(List<LogRecord> records, List<Book> books, List<User> users) {
+        Map<String, Book> bookIndex = new LinkedHashMap<>();
+        for (Book b : books) {
+            bookIndex.put(b.getIsbn(), b);
+        }
+        Map<String, User> userIndex = new LinkedHashMap<>();
+        for (User u : users) {
+            userIndex.put(u.getUserId(), u);
+        }
+
+        for (LogRecord record : records) {
+            switch (record.type) {
+                case REMOVE_ITEM:
+                    bookIndex.remove(record.key);
+                    break;
+                case UNREGISTER:
+                    userIndex.remove(record.key);
+                    break;
+                default:
+                    // Replayed state is newer than the snapshot, so it must be saved again
+                    if (record.book != null) {
+                        record.book.markDirty();
+                        bookIndex.put(record.key, record.book);
+                    } else if (record.user != null) {
+                        record.user.markDirty();
+                        userIndex.put(record.key, record.user);
+                    }
+                    break;
+            }
+        }
+
+        books.clear();
+        books.addAll(bookIndex.values());
+        users.clear();
+        users.addAll(userIndex.values());
+    }
+}
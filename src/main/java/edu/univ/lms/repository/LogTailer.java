@@ -0,0 +1,161 @@
+package edu.univ.lms.repository;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Follows a {@link MutationLog} file from outside the writing process.
+ * <p>
+ * Each {@link #poll()} reopens the journal, so the tailer keeps working when
+ * a checkpoint replaces the file, and returns the records appended since the
+ * previous poll in sequence order. Only records up to the durable sequence
+ * number in the journal header are returned: frames that the writer has not
+ * forced to disk yet could be lost in a crash, and the restarted writer would
+ * then hand out their sequence numbers again. A frame that is not durable yet
+ * (or fails its checksum) ends the poll; it is read again by the next one.
+ * <p>
+ * If a checkpoint dropped records the tailer has not read yet, {@link #poll()}
+ * fails with a {@link JournalCompactedException}: the consumer has to reload the JSON snapshots and start again after
+ * {@link #readBaseSequence(Path)}.
+ */
+public class LogTailer {
+
+    private final Path file;
+
+    /** Sequence number of the last record returned. */
+    private long lastSeq;
+
+    /** Base sequence number of the file read by the previous poll. */
+    private long baseSeq = -1;
+
+    /** Offset of the next unread frame in that file. */
+    private long position;
+
+    /**
+     * Creates a tailer.
+     *
+     * @param file     journal file to follow
+     * @param afterSeq sequence number of the last record already processed
+     */
+    public LogTailer(Path file, long afterSeq) {
+        this.file = file;
+        this.lastSeq = afterSeq;
+    }
+
+    /**
+     * Reads the records appended since the previous poll.
+     *
+     * @return new records in sequence order, possibly empty
+     * @throws JournalCompactedException if records after {@link #getLastSequence()}
+     *                                   were already compacted
+     * @throws IOException if the journal cannot be read
+     */
+    public List<LogRecord> poll() throws IOException {
+        return poll(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Reads at most {@code max} of the records appended since the previous
+     * poll; the rest are returned by the next one.
+     *
+     * @param max maximum number of records to return
+     * @return new records in sequence order, possibly empty
+     * @throws JournalCompactedException if records after {@link #getLastSequence()}
+     *                                   were already compacted
+     * @throws IOException if the journal cannot be read
+     */
+    public List<LogRecord> poll(int max) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        if (!Files.isRegularFile(file)) {
+            return records;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            if (header == null) {
+                return records;
+            }
+            long base = header.getLong(MutationLog.BASE_SEQ_OFFSET);
+            long durable = header.getLong(MutationLog.DURABLE_SEQ_OFFSET);
+            if (base > lastSeq) {
+                throw new JournalCompactedException(file, lastSeq + 1, base);
+            }
+            if (base != baseSeq || channel.size() < position) {
+                // Rewritten by a checkpoint: scan again, skipping what was returned
+                baseSeq = base;
+                position = MutationLog.HEADER_SIZE;
+            }
+
+            while (records.size() < max) {
+                ByteBuffer payload = MutationLog.readFrame(channel, position);
+                if (payload == null) {
+                    break;
+                }
+                List<LogRecord> frame = MutationLog.decode(payload);
+                if (frame.get(frame.size() - 1).getSeq() > durable) {
+                    break;
+                }
+                for (LogRecord record : frame) {
+                    if (record.getSeq() > lastSeq) {
+                        if (records.size() == max) {
+                            // Rest of the frame is returned by the next poll
+                            return records;
+                        }
+                        records.add(record);
+                        lastSeq = record.getSeq();
+                    }
+                }
+                position += MutationLog.FRAME_HEADER_SIZE + payload.limit();
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Returns the sequence number of the last record returned by
+     * {@link #poll()}, or the starting point if none was returned yet.
+     *
+     * @return last sequence number
+     */
+    public long getLastSequence() {
+        return lastSeq;
+    }
+
+    /**
+     * Reads the sequence number up to which a journal's records were folded
+     * into the snapshots. A consumer that just loaded the snapshots starts
+     * tailing after it.
+     *
+     * @param file journal file
+     * @return base sequence number, or 0 if there is no valid journal
+     * @throws IOException if the file cannot be read
+     */
+    public static long readBaseSequence(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = readHeader(channel);
+            return header == null ? 0 : header.getLong(MutationLog.BASE_SEQ_OFFSET);
+        }
+    }
+
+    /** Reads the journal header, or returns {@code null} if it is not a journal. */
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        if (channel.size() < MutationLog.HEADER_SIZE) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(MutationLog.HEADER_SIZE);
+        MutationLog.readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt(0) != MutationLog.MAGIC || header.getInt(4) != MutationLog.VERSION) {
+            return null;
+        }
+        return header;
+    }
+}
@@ -0,0 +1,226 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.lsm.LsmStore;
+import com.google.gson.Gson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link BookRepository} backend storing one record per item in an
+ * embedded {@link LsmStore}, keyed by ISBN.
+ * <p>
+ * Saves write only the items that are dirty (see {@link Book#isDirty()})
+ * or new, plus deletes for removed ISBNs, so their cost follows the number
+ * of changes rather than the catalog size. {@link #findBook(String)},
+ * {@link #putBook(Book)} and {@link #deleteBook(String)} read and write a
+ * single item without loading the catalog. {@link #getFile()} returns the
+ * store directory.
+ */
+public class LsmBookRepository extends BookRepository implements Closeable {
+
+    /** Default directory holding the store files. */
+    private static final String ITEMS_DIR = "data/items.lsm";
+
+    private static final Gson gson = JsonSupport.builder().create();
+
+    private LsmStore store;
+
+    /** ISBNs present in the store as of the last load or save. */
+    private Set<String> storedKeys;
+
+    /**
+     * ISBNs of items a failed save was meant to write. The caller may have
+     * marked them clean already (checkpoints save copies), so the next save
+     * writes them regardless of their dirty flag.
+     */
+    private final Set<String> unsavedKeys = new HashSet<>();
+
+    /**
+     * Creates a repository storing items under <code>data/items.lsm/</code>.
+     */
+    public LsmBookRepository() {
+        this(Paths.get(ITEMS_DIR));
+    }
+
+    /**
+     * Creates a repository storing items in a specific directory.
+     *
+     * @param dir store directory
+     */
+    public LsmBookRepository(Path dir) {
+        super(dir);
+    }
+
+    /**
+     * Returns the underlying store, opening it on first use.
+     *
+     * @return open store
+     * @throws IOException if the store cannot be opened
+     */
+    public synchronized LsmStore getStore() throws IOException {
+        if (store == null) {
+            store = LsmStore.open(getFile());
+        }
+        return store;
+    }
+
+    // ---------------------------------------------------------
+    // Point access
+    // ---------------------------------------------------------
+
+    /**
+     * Reads a single item.
+     *
+     * @param isbn ISBN to look up
+     * @return the item, or {@code null} if it is not stored
+     * @throws IOException if the store cannot be read
+     */
+    public Book findBook(String isbn) throws IOException {
+        byte[] value = getStore().get(isbn);
+        return value == null ? null : decode(value);
+    }
+
+    /**
+     * Writes a single item, replacing any stored item with the same ISBN.
+     * The change is logged but only forced to disk by the next save or
+     * {@link LsmStore#sync()}.
+     *
+     * @param book item to store
+     * @throws IOException if the change cannot be logged
+     */
+    public synchronized void putBook(Book book) throws IOException {
+        getStore().put(book.getIsbn(), encode(book));
+        book.markClean();
+        if (storedKeys != null) {
+            storedKeys.add(book.getIsbn());
+        }
+    }
+
+    /**
+     * Deletes a single item.
+     *
+     * @param isbn ISBN of the item to delete
+     * @throws IOException if the change cannot be logged
+     */
+    public synchronized void deleteBook(String isbn) throws IOException {
+        getStore().delete(isbn);
+        if (storedKeys != null) {
+            storedKeys.remove(isbn);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Save / Load
+    // ---------------------------------------------------------
+
+    /**
+     * Writes the items that changed since the last load or save and deletes
+     * the ones no longer in the list, then forces the changes to disk.
+     * Before the first load every item is written, and the keys already
+     * in the store are read first so that removed items are still deleted.
+     *
+     * @param books the complete catalog
+     * @throws IOException if the changes could not be written; the items
+     *                     that were to be written are written again by the
+     *                     next save, even if they were marked clean meanwhile
+     */
+    @Override
+    public synchronized void writeBooks(List<Book> books) throws IOException {
+        LsmStore lsm = getStore();
+        boolean writeAll = storedKeys == null;
+        Set<String> stored = writeAll ? readStoredKeys(lsm) : storedKeys;
+        Set<String> keys = new HashSet<>();
+        List<Book> written = new ArrayList<>();
+        for (Book book : books) {
+            keys.add(book.getIsbn());
+            if (writeAll || book.isDirty() || !stored.contains(book.getIsbn())
+                    || unsavedKeys.contains(book.getIsbn())) {
+                written.add(book);
+            }
+        }
+
+        try {
+            for (Book book : written) {
+                lsm.put(book.getIsbn(), encode(book));
+            }
+            for (String isbn : stored) {
+                if (!keys.contains(isbn)) {
+                    lsm.delete(isbn);
+                }
+            }
+            lsm.sync();
+        } catch (IOException | RuntimeException e) {
+            for (Book book : written) {
+                unsavedKeys.add(book.getIsbn());
+            }
+            throw e;
+        }
+
+        for (Book book : written) {
+            book.markClean();
+        }
+        unsavedKeys.clear();
+        storedKeys = keys;
+    }
+
+    /**
+     * Loads every stored item in ISBN order. Items come back clean.
+     *
+     * @return loaded books, or an empty list if the store cannot be read
+     */
+    @Override
+    public synchronized List<Book> loadBooks() {
+        List<Book> list = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        try {
+            getStore().forEach((isbn, value) -> {
+                Book book = decode(value);
+                list.add(book);
+                keys.add(isbn);
+            });
+            storedKeys = keys;
+            unsavedKeys.clear();
+            return list;
+        } catch (Exception e) {
+            System.out.println("Error loading items: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Closes the store. Changes not yet forced to disk are forced first.
+     *
+     * @throws IOException if the store cannot be closed cleanly
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+    }
+
+    /** Reads the keys of every stored item, ignoring the values. */
+    private static Set<String> readStoredKeys(LsmStore lsm) throws IOException {
+        Set<String> keys = new HashSet<>();
+        lsm.forEach((key, value) -> keys.add(key));
+        return keys;
+    }
+
+    private static byte[] encode(Book book) {
+        return gson.toJson(book, Book.class).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Book decode(byte[] value) {
+        return gson.fromJson(new String(value, StandardCharsets.UTF_8), Book.class);
+    }
+}
@@ -0,0 +1,228 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.lsm.LsmStore;
+import com.google.gson.Gson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@link UserRepository} backend storing one record per user in an
+ * embedded {@link LsmStore}, keyed by user ID.
+ * <p>
+ * Saves write only the users that are dirty (see {@link User#isDirty()})
+ * or new, plus deletes for removed user IDs, so their cost follows the number
+ * of changes rather than the number of users. {@link #findUser(String)},
+ * {@link #putUser(User)} and {@link #deleteUser(String)} read and write a
+ * single user without loading every user. {@link #getFile()} returns the
+ * store directory.
+ */
+public class LsmUserRepository extends UserRepository implements Closeable {
+
+    /** Default directory holding the store files. */
+    private static final String USERS_DIR = "data/users.lsm";
+
+    private static final Gson gson = JsonSupport.builder().create();
+
+    private LsmStore store;
+
+    /** User IDs present in the store as of the last load or save. */
+    private Set<String> storedKeys;
+
+    /**
+     * User IDs of users a failed save was meant to write. The caller may have
+     * marked them clean already (checkpoints save copies), so the next save
+     * writes them regardless of their dirty flag.
+     */
+    private final Set<String> unsavedKeys = new HashSet<>();
+
+    /**
+     * Creates a repository storing users under <code>data/users.lsm/</code>.
+     */
+    public LsmUserRepository() {
+        this(Paths.get(USERS_DIR));
+    }
+
+    /**
+     * Creates a repository storing users in a specific directory.
+     *
+     * @param dir store directory
+     */
+    public LsmUserRepository(Path dir) {
+        super(dir);
+    }
+
+    /**
+     * Returns the underlying store, opening it on first use.
+     *
+     * @return open store
+     * @throws IOException if the store cannot be opened
+     */
+    public synchronized LsmStore getStore() throws IOException {
+        if (store == null) {
+            store = LsmStore.open(getFile());
+        }
+        return store;
+    }
+
+    // ---------------------------------------------------------
+    // Point access
+    // ---------------------------------------------------------
+
+    /**
+     * Reads a single user.
+     *
+     * @param userId user ID to look up
+     * @return the user, or {@code null} if it is not stored
+     * @throws IOException if the store cannot be read
+     */
+    public User findUser(String userId) throws IOException {
+        byte[] value = getStore().get(userId);
+        return value == null ? null : decode(value);
+    }
+
+    /**
+     * Writes a single user, replacing any stored user with the same user ID.
+     * The change is logged but only forced to disk by the next save or
+     * {@link LsmStore#sync()}.
+     *
+     * @param user user to store
+     * @throws IOException if the change cannot be logged
+     */
+    public synchronized void putUser(User user) throws IOException {
+        getStore().put(user.getUserId(), encode(user));
+        user.markClean();
+        if (storedKeys != null) {
+            storedKeys.add(user.getUserId());
+        }
+    }
+
+    /**
+     * Deletes a single user.
+     *
+     * @param userId ID of the user to delete
+     * @throws IOException if the change cannot be logged
+     */
+    public synchronized void deleteUser(String userId) throws IOException {
+        getStore().delete(userId);
+        if (storedKeys != null) {
+            storedKeys.remove(userId);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Save / Load
+    // ---------------------------------------------------------
+
+    /**
+     * Writes the users that changed since the last load or save and deletes
+     * the ones no longer in the list, then forces the changes to disk.
+     * Before the first load every user is written, and the keys already
+     * in the store are read first so that removed users are still deleted.
+     *
+     * @param users the complete user list
+     * @throws IOException if the changes could not be written; the users
+     *                     that were to be written are written again by the
+     *                     next save, even if they were marked clean meanwhile
+     */
+    @Override
+    public synchronized void writeUsers(List<User> users) throws IOException {
+        LsmStore lsm = getStore();
+        boolean writeAll = storedKeys == null;
+        Set<String> stored = writeAll ? readStoredKeys(lsm) : storedKeys;
+        Set<String> keys = new HashSet<>();
+        List<User> written = new ArrayList<>();
+        for (User user : users) {
+            keys.add(user.getUserId());
+            if (writeAll || user.isDirty() || !stored.contains(user.getUserId())
+                    || unsavedKeys.contains(user.getUserId())) {
+                written.add(user);
+            }
+        }
+
+        try {
+            for (User user : written) {
+                lsm.put(user.getUserId(), encode(user));
+            }
+            for (String userId : stored) {
+                if (!keys.contains(userId)) {
+                    lsm.delete(userId);
+                }
+            }
+            lsm.sync();
+        } catch (IOException | RuntimeException e) {
+            for (User user : written) {
+                unsavedKeys.add(user.getUserId());
+            }
+            throw e;
+        }
+
+        for (User user : written) {
+            user.markClean();
+        }
+        unsavedKeys.clear();
+        storedKeys = keys;
+    }
+
+    /**
+     * Loads every stored user in user ID order. Users come back clean.
+     *
+     * @return loaded users, or an empty list if the store cannot be read
+     */
+    @Override
+    public synchronized List<User> loadUsers() {
+        List<User> list = new ArrayList<>();
+        Set<String> keys = new HashSet<>();
+        try {
+            getStore().forEach((userId, value) -> {
+                User user = decode(value);
+                list.add(user);
+                keys.add(userId);
+            });
+            storedKeys = keys;
+            unsavedKeys.clear();
+            return list;
+        } catch (Exception e) {
+            System.out.println("Error loading users: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Closes the store. Changes not yet forced to disk are forced first.
+     *
+     * @throws IOException if the store cannot be closed cleanly
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+    }
+
+    /** Reads the keys of every stored user, ignoring the values. */
+    private static Set<String> readStoredKeys(LsmStore lsm) throws IOException {
+        Set<String> keys = new HashSet<>();
+        lsm.forEach((key, value) -> keys.add(key));
+        return keys;
+    }
+
+    private static byte[] encode(User user) {
+        return gson.toJson(user, User.class).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static User decode(byte[] value) {
+        User user = gson.fromJson(new String(value, StandardCharsets.UTF_8), User.class);
+        user.markClean();
+        return user;
+    }
+}
@@ -0,0 +1,93 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BookRepository} backend using the fixed-layout file of
+ * {@link MappedCatalog}.
+ * <p>
+ * {@link #loadBooks()} still returns a full list for code that needs one,
+ * but large deployments should call {@link #openCatalog()} and look items up
+ * in the mapped file instead of decoding the whole catalog at startup, or
+ * {@link #openLazyCatalog(int)} to work with cached, writable items.
+ */
+public class MappedBookRepository extends BookRepository {
+
+    /** Default path of the mapped catalog file. */
+    private static final String ITEMS_FILE = "data/items.map";
+
+    /**
+     * Creates a repository backed by <code>data/items.map</code>.
+     */
+    public MappedBookRepository() {
+        this(Paths.get(ITEMS_FILE));
+    }
+
+    /**
+     * Creates a repository backed by a specific mapped catalog file.
+     *
+     * @param file catalog file
+     */
+    public MappedBookRepository(Path file) {
+        super(file);
+    }
+
+    /**
+     * Maps the catalog file for zero-copy lookups. Only the header is read.
+     *
+     * @return mapped catalog; the caller must close it
+     * @throws IOException if the file is missing or invalid
+     */
+    public MappedCatalog openCatalog() throws IOException {
+        return MappedCatalog.open(getFile());
+    }
+
+    /**
+     * Opens the catalog file for lazy access: items are decoded on first use
+     * and only a bounded number of them is kept in memory.
+     *
+     * @param cacheCapacity number of decoded items kept in memory
+     * @return lazy catalog; the caller must close it
+     * @throws IOException if the file is missing or invalid
+     */
+    public LazyBookCatalog openLazyCatalog(int cacheCapacity) throws IOException {
+        return LazyBookCatalog.open(getFile(), cacheCapacity);
+    }
+
+    /**
+     * Writes the books in mapped layout, sorted by ISBN. The file is replaced
+     * atomically, so catalogs that are already open keep their old mapping.
+     *
+     * @param books the list of {@link Book} objects to save
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void writeBooks(List<Book> books) throws IOException {
+        MappedCatalog.write(getFile(), books);
+    }
+
+    /**
+     * Decodes every item of the mapped file into a list, in ISBN order.
+     *
+     * @return loaded books, or an empty list if the file is missing or invalid
+     */
+    @Override
+    public List<Book> loadBooks() {
+        try (MappedCatalog catalog = openCatalog()) {
+            return catalog.toList();
+        } catch (NoSuchFileException e) {
+            System.out.println(getFile() + " not found, starting empty.");
+            return new ArrayList<>();
+        } catch (Exception e) {
+            System.out.println("Error loading items: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+}
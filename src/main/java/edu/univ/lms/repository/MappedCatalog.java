@@ -0,0 +1,596 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Read-only view of a catalog file that is memory mapped instead of loaded.
+ * <p>
+ * Opening the catalog only maps the file and validates its header, so it
+ * takes the same time for ten items or ten million. Lookups read fields
+ * straight from the mapped region; a {@link Book} object is only created for
+ * items that are actually requested. The operating system's page cache holds
+ * the working set instead of the Java heap.
+ * <p>
+ * File layout (all integers big-endian):
+ * <pre>
+ *   header (64 bytes):
+ *     [int magic "LMSM"][int version][int count][int slotSize]
+ *     [long heapOffset][long heapLength][reserved]
+ *   count x slot (48 bytes), sorted by the UTF-8 bytes of the ISBN:
+ *     [isbn ref][title ref][author ref][borrowedBy ref]
+ *     [byte fineType][byte flags][2 bytes padding]
+ *     [int borrowDate epoch day][int dueDate epoch day]
+ *   string heap: UTF-8 bytes referenced by slots
+ * </pre>
+ * A string reference is an {@code int} heap offset followed by an {@code int}
+ * byte length; a length of {@code -1} stands for {@code null}. Missing dates
+ * are stored as {@link Integer#MIN_VALUE}. Because slots have a fixed size
+ * and are sorted, an ISBN lookup is a binary search over the mapped slots.
+ * <p>
+ * Files are limited to 2 GB, the maximum size of a single mapping.
+ */
+public final class MappedCatalog implements Closeable {
+
+    /** File magic: ASCII "LMSM". */
+    static final int MAGIC = 0x4C4D534D;
+
+    /** Current layout version. */
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+    static final int SLOT_SIZE = 48;
+
+    private static final int ISBN = 0;
+    private static final int TITLE = 8;
+    private static final int AUTHOR = 16;
+    private static final int BORROWED_BY = 24;
+    private static final int FINE_TYPE = 32;
+    private static final int FLAGS = 33;
+    private static final int BORROW_DATE = 36;
+    private static final int DUE_DATE = 40;
+
+    private static final int FLAG_BORROWED = 1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NULL_LENGTH = -1;
+
+    /** Fine types by their stored code; unknown codes fall back to BOOK. */
+    private static final String[] FINE_TYPES = {"BOOK", "DVD", "JOURNAL"};
+
+    /** Strings repeated across items (authors, borrowers) are stored once, up to this many. */
+    private static final int MAX_SHARED_STRINGS = 1 << 16;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int heapOffset;
+
+    private MappedCatalog(Path file, FileChannel channel, MappedByteBuffer buffer,
+                          int count, int heapOffset) {
+        this.file = file;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.count = count;
+        this.heapOffset = heapOffset;
+    }
+
+    // ---------------------------------------------------------
+    // Open
+    // ---------------------------------------------------------
+
+    /**
+     * Maps a catalog file and validates its header. Record data is not read.
+     *
+     * @param file catalog file written by {@link #write(Path, List)}
+     * @return mapped catalog; close it to release the file
+     * @throws IOException if the file cannot be mapped or its header is invalid
+     */
+    public static MappedCatalog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a mapped catalog file: " + file);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Mapped catalog larger than 2 GB: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a mapped catalog file: " + file);
+            }
+            int version = buffer.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported mapped catalog version " + version + ": " + file);
+            }
+            int count = buffer.getInt(8);
+            int slotSize = buffer.getInt(12);
+            long heapOffset = buffer.getLong(16);
+            long heapLength = buffer.getLong(24);
+            if (count < 0 || slotSize != SLOT_SIZE
+                    || heapOffset != HEADER_SIZE + (long) count * SLOT_SIZE
+                    || heapLength < 0 || heapOffset + heapLength != size) {
+                throw new IOException("Corrupt mapped catalog header: " + file);
+            }
+
+            return new MappedCatalog(file, channel, buffer, count, (int) heapOffset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Lookups
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the number of items in the catalog.
+     *
+     * @return item count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the file this catalog is mapped from.
+     *
+     * @return catalog file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Finds the position of an item by ISBN using binary search over the slots.
+     *
+     * @param isbn ISBN to look up
+     * @return slot index, or {@code -1} if no item has this ISBN
+     */
+    public int indexOf(String isbn) {
+        if (isbn == null) {
+            return -1;
+        }
+        byte[] key = isbn.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareIsbn(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the item with the given ISBN as a new {@link Book}.
+     *
+     * @param isbn ISBN to look up
+     * @return decoded item, or {@code null} if not found
+     */
+    public Book find(String isbn) {
+        int index = indexOf(isbn);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * Decodes the item stored in a slot.
+     *
+     * @param index slot index, {@code 0 <= index < size()}
+     * @return new {@link Book} with its fine strategy rebuilt
+     */
+    public Book get(int index) {
+        int slot = slotOffset(index);
+        Book book = new Book(readString(slot + ISBN), readString(slot + TITLE), readString(slot + AUTHOR));
+        book.setFineType(fineType(slot));
+        book.rebuildFineStrategy();
+        book.setBorrowed((buffer.get(slot + FLAGS) & FLAG_BORROWED) != 0);
+        book.setBorrowedByUserId(readString(slot + BORROWED_BY));
+        book.setBorrowDate(readDate(slot + BORROW_DATE));
+        book.setDueDate(readDate(slot + DUE_DATE));
+        return book;
+    }
+
+    /**
+     * Returns the ISBN stored in a slot without decoding the rest of the item.
+     *
+     * @param index slot index
+     * @return ISBN
+     */
+    public String getIsbn(int index) {
+        return readString(slotOffset(index) + ISBN);
+    }
+
+    /**
+     * Reads the borrowed flag of a slot without decoding the item.
+     *
+     * @param index slot index
+     * @return {@code true} if the item is on loan
+     */
+    public boolean isBorrowed(int index) {
+        return (buffer.get(slotOffset(index) + FLAGS) & FLAG_BORROWED) != 0;
+    }
+
+    /**
+     * Reads the due date of a slot without decoding the item.
+     *
+     * @param index slot index
+     * @return due date, or {@code null} if none
+     */
+    public LocalDate getDueDate(int index) {
+        return readDate(slotOffset(index) + DUE_DATE);
+    }
+
+    /**
+     * Decodes every item, in ISBN order.
+     *
+     * @return all items as {@link Book} objects
+     */
+    public List<Book> toList() {
+        List<Book> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            books.add(get(i));
+        }
+        return books;
+    }
+
+    /**
+     * Closes the file channel. The mapping itself is released by the garbage
+     * collector; the catalog must not be used after closing.
+     *
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // ---------------------------------------------------------
+    // Slot access
+    // ---------------------------------------------------------
+
+    private int slotOffset(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        return HEADER_SIZE + index * SLOT_SIZE;
+    }
+
+    private String fineType(int slot) {
+        int code = buffer.get(slot + FINE_TYPE);
+        return code >= 0 && code < FINE_TYPES.length ? FINE_TYPES[code] : FINE_TYPES[0];
+    }
+
+    private String readString(int ref) {
+        int length = buffer.getInt(ref + 4);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        // Duplicate so concurrent readers never share a buffer position
+        ByteBuffer view = buffer.duplicate();
+        view.position(heapOffset + buffer.getInt(ref));
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private LocalDate readDate(int offset) {
+        int day = buffer.getInt(offset);
+        return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    private int compareIsbn(int index, byte[] key) {
+        int ref = slotOffset(index) + ISBN;
+        int start = heapOffset + buffer.getInt(ref);
+        int length = buffer.getInt(ref + 4);
+        if (length == NULL_LENGTH) {
+            return -1;
+        }
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (buffer.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    // ---------------------------------------------------------
+    // Write
+    // ---------------------------------------------------------
+
+    /**
+     * Writes a catalog file in the mapped layout, replacing the file
+     * atomically. Items are sorted by ISBN; the given list is not modified.
+     *
+     * @param file  file to write
+     * @param books items to store
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, List<Book> books) throws IOException {
+        List<Entry> entries = new ArrayList<>(books.size());
+        for (Book b : books) {
+            entries.add(new Entry(b));
+        }
+        entries.sort(Entry::compareTo);
+
+        AtomicFiles.replace(file, channel -> {
+            CatalogWriter out = new CatalogWriter(channel, entries.size());
+            for (Entry e : entries) {
+                out.add(e.book, e.isbn);
+            }
+            out.finish();
+        });
+    }
+
+    /**
+     * Writes a new catalog file from an existing mapping plus changes. The
+     * unchanged items are decoded from the mapping one at a time while they
+     * are written, so the heap never holds the whole catalog.
+     *
+     * @param file    file to write; may be the file {@code base} maps
+     * @param base    catalog the new file starts from
+     * @param removed ISBNs of {@code base} items to leave out
+     * @param changed returns the current version of a {@code base} item, or
+     *                {@code null} if it is unchanged
+     * @param added   items whose ISBN is not in {@code base}
+     * @throws IOException if the file cannot be written
+     */
+    static void writeMerged(Path file, MappedCatalog base, Set<String> removed,
+                            Function<String, Book> changed, Collection<Book> added) throws IOException {
+        List<Entry> additions = new ArrayList<>(added.size());
+        for (Book b : added) {
+            additions.add(new Entry(b));
+        }
+        additions.sort(Entry::compareTo);
+        int count = base.size() - removed.size() + additions.size();
+
+        AtomicFiles.replace(file, channel -> {
+            CatalogWriter out = new CatalogWriter(channel, count);
+            int next = 0;
+            for (int i = 0; i < base.size(); i++) {
+                String isbn = base.getIsbn(i);
+                if (removed.contains(isbn)) {
+                    continue;
+                }
+                byte[] key = utf8(isbn);
+                // Both sides are sorted, so additions slot in between base items
+                while (next < additions.size() && compareBytes(additions.get(next).isbn, key) < 0) {
+                    Entry e = additions.get(next++);
+                    out.add(e.book, e.isbn);
+                }
+                Book current = changed.apply(isbn);
+                out.add(current != null ? current : base.get(i), key);
+            }
+            while (next < additions.size()) {
+                Entry e = additions.get(next++);
+                out.add(e.book, e.isbn);
+            }
+            out.finish();
+        });
+    }
+
+    /**
+     * Streams items, already in ISBN order, into the slot and heap regions
+     * of a file whose item count is known up front.
+     */
+    private static final class CatalogWriter {
+        private final FileChannel channel;
+        private final int count;
+        private final long heapOffset;
+        private final RegionWriter slots;
+        private final RegionWriter heap;
+        private final Map<String, Integer> shared = new HashMap<>();
+        private int written;
+
+        CatalogWriter(FileChannel channel, int count) {
+            this.channel = channel;
+            this.count = count;
+            this.heapOffset = HEADER_SIZE + (long) count * SLOT_SIZE;
+            this.slots = new RegionWriter(channel, HEADER_SIZE);
+            this.heap = new RegionWriter(channel, heapOffset);
+        }
+
+        void add(Book b, byte[] isbn) throws IOException {
+            if (written == count) {
+                throw new IOException("More items than the " + count + " announced");
+            }
+            slots.putRef(heap, isbn);
+            slots.putRef(heap, utf8(b.getTitle()));
+            slots.putSharedRef(heap, shared, b.getAuthor());
+            slots.putSharedRef(heap, shared, b.getBorrowedByUserId());
+            slots.put((byte) fineTypeCode(b.getFineType()));
+            slots.put((byte) (b.isBorrowed() ? FLAG_BORROWED : 0));
+            slots.put((byte) 0);
+            slots.put((byte) 0);
+            slots.putInt(b.getBorrowDate() == null ? NO_DATE : (int) b.getBorrowDate().toEpochDay());
+            slots.putInt(b.getDueDate() == null ? NO_DATE : (int) b.getDueDate().toEpochDay());
+            slots.putInt(0);
+            written++;
+        }
+
+        void finish() throws IOException {
+            if (written != count) {
+                throw new IOException("Wrote " + written + " items, expected " + count);
+            }
+            slots.flush();
+            heap.flush();
+
+            long heapLength = heap.position - heapOffset;
+            if (heapOffset + heapLength > Integer.MAX_VALUE) {
+                throw new IOException("Mapped catalog larger than 2 GB");
+            }
+
+            // Header last, so a half-written file never validates
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(SLOT_SIZE)
+                    .putLong(heapOffset).putLong(heapLength);
+            header.rewind();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+    }
+
+    private static int fineTypeCode(String fineType) {
+        for (int i = 0; i < FINE_TYPES.length; i++) {
+            if (FINE_TYPES[i].equals(fineType)) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Item paired with its encoded ISBN, ordered by unsigned byte comparison
+     * to match {@link #compareIsbn(int, byte[])}.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        final Book book;
+        final byte[] isbn;
+
+        Entry(Book book) {
+            this.book = book;
+            this.isbn = utf8(book.getIsbn());
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return compareBytes(isbn, other.isbn);
+        }
+    }
+
+    /** Unsigned byte order of encoded ISBNs; {@code null} sorts first. */
+    private static int compareBytes(byte[] a, byte[] b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Buffered sequential writer for one region of the file.
+     */
+    private static final class RegionWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(JsonSupport.BUFFER_SIZE);
+        private final long start;
+        private long position;
+
+        RegionWriter(FileChannel channel, long start) {
+            this.channel = channel;
+            this.start = start;
+            this.position = start;
+        }
+
+        void put(byte b) throws IOException {
+            ensure(1);
+            buf.put(b);
+        }
+
+        void putInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int off = 0;
+            while (off < bytes.length) {
+                ensure(1);
+                int n = Math.min(buf.remaining(), bytes.length - off);
+                buf.put(bytes, off, n);
+                off += n;
+            }
+        }
+
+        /** Appends bytes to the heap region and writes a reference to them here. */
+        void putRef(RegionWriter heap, byte[] bytes) throws IOException {
+            if (bytes == null) {
+                putInt(0);
+                putInt(NULL_LENGTH);
+                return;
+            }
+            putInt(heap.append(bytes));
+            putInt(bytes.length);
+        }
+
+        /** Like {@link #putRef} but stores repeated values once. */
+        void putSharedRef(RegionWriter heap, Map<String, Integer> shared, String value) throws IOException {
+            if (value == null) {
+                putRef(heap, null);
+                return;
+            }
+            byte[] bytes = utf8(value);
+            Integer offset = shared.get(value);
+            if (offset == null) {
+                offset = heap.append(bytes);
+                if (shared.size() < MAX_SHARED_STRINGS) {
+                    shared.put(value, offset);
+                }
+            }
+            putInt(offset);
+            putInt(bytes.length);
+        }
+
+        /** Appends bytes and returns their offset relative to the region start. */
+        int append(byte[] bytes) throws IOException {
+            long offset = position + buf.position() - start;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Mapped catalog larger than 2 GB");
+            }
+            putBytes(bytes);
+            return (int) offset;
+        }
+
+        private void ensure(int n) throws IOException {
+            if (buf.remaining() < n) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                position += channel.write(buf, position);
+            }
+            buf.clear();
+        }
+    }
+}
@@ -0,0 +1,755 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import com.google.gson.Gson;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log recording every catalog and user mutation.
+ * <p>
+ * Instead of rewriting <code>data/items.json</code> or
+ * <code>data/users.json</code> after each change, services append one small
+ * {@link LogRecord} here. On startup the log is replayed on top of the JSON
+ * snapshots. A checkpoint folds the log back into the snapshots:
+ * <ol>
+ *     <li>{@link #beginCheckpoint()} marks the header as pending</li>
+ *     <li>the caller writes snapshots captured at some sequence number</li>
+ *     <li>{@link #completeCheckpoint(long)} drops the records the snapshots
+ *         cover, keeping any appended meanwhile</li>
+ * </ol>
+ * <p>
+ * File layout:
+ * <pre>
+ *   header: [int magic][int version][long snapshotStamp][long baseSeq][int flags][int reserved]
+ *           [long durableSeq]
+ *   frame:  [int length][int crc32][JSON record, or JSON array of records]
+ * </pre>
+ * A frame holding an array is a {@link UnitOfWork}: its records were
+ * committed together, and since the checksum covers the whole frame a crash
+ * either keeps all of them or none.
+ * The header remembers which snapshot files the log was started against
+ * (size and modification time). If the snapshots are rewritten by anything
+ * other than a checkpoint, the log no longer describes them and is discarded
+ * on replay instead of being applied to unrelated data. If a checkpoint was
+ * interrupted, the whole log is replayed instead; records are full-state
+ * upserts, so applying ones the new snapshot already covers is harmless.
+ * <p>
+ * Durability uses group commit: a writer that finds its frame already
+ * covered by another thread's {@code fsync} returns without forcing again,
+ * so concurrent mutations share one physical flush. After each flush the
+ * header's {@code durableSeq} is advanced, so a {@link LogTailer} in another
+ * process can stop at records a crash cannot take back.
+ */
+public class MutationLog implements Closeable {
+
+    /** Magic number identifying a log file ("LMSJ"). */
+    static final int MAGIC = 0x4C4D534A;
+
+    /** Current on-disk format version. */
+    static final int VERSION = 1;
+
+    /** Size of the file header in bytes. */
+    static final int HEADER_SIZE = 40;
+
+    /** Offset of the base sequence number in the header. */
+    static final int BASE_SEQ_OFFSET = 16;
+
+    /** Offset of the flags field in the header. */
+    private static final int FLAGS_OFFSET = 24;
+
+    /** Offset of the durable sequence number in the header. */
+    static final int DURABLE_SEQ_OFFSET = 32;
+
+    /** Header flag: a checkpoint started and has not completed yet. */
+    private static final int FLAG_CHECKPOINT_PENDING = 1;
+
+    /** Size of a frame header (length + checksum) in bytes. */
+    static final int FRAME_HEADER_SIZE = 8;
+
+    /** Upper bound for a single record, used to reject corrupted lengths. */
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    /** Compact GSON instance used to encode records. */
+    private static final Gson gson = JsonSupport.builder().create();
+
+    private final Path file;
+    private final Path[] snapshotFiles;
+    private FileChannel channel;
+
+    /** Sequence number of the last appended record. */
+    private long lastSeq;
+
+    /** Sequence number preceding the first record of the current file. */
+    private long baseSeq;
+
+    /** Stamp of the snapshot files stored in the header. */
+    private long snapshotStamp;
+
+    /** Header flags. */
+    private int flags;
+
+    /** Number of bytes written so far, including the header. */
+    private volatile long writtenPosition;
+
+    /** Number of bytes known to be on stable storage. */
+    private long durablePosition;
+
+    /**
+     * Sequence number of the last record covered by {@link #writtenPosition}.
+     * Written after the position, so a reader that reads it first sees a
+     * position that includes the record.
+     */
+    private volatile long appendedSeq;
+
+    /** Sequence number of the last record known to be on stable storage. */
+    private volatile long durableSeq;
+
+    /** Observers of appended and durable records. */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /** Lock serializing {@code fsync} calls for group commit. */
+    private final Object syncLock = new Object();
+
+    /** Whether {@link #append(LogRecord)} waits for its record to be durable. */
+    private volatile boolean syncOnAppend = true;
+
+    /**
+     * Opens (or creates) a mutation log.
+     * <p>
+     * A torn record at the end of the file, left by a crash during an append,
+     * is detected through its checksum and truncated.
+     *
+     * @param file          log file location
+     * @param snapshotFiles snapshot files this log is replayed on top of
+     * @throws IOException if the file cannot be opened
+     */
+    public MutationLog(Path file, Path... snapshotFiles) throws IOException {
+        this.file = file;
+        this.snapshotFiles = snapshotFiles.clone();
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        if (channel.size() < HEADER_SIZE || !readHeader()) {
+            writeHeader(0L);
+        } else {
+            recoverTail();
+            // Records that survived in the file are durable from now on
+            channel.force(false);
+            writeDurableSequence(lastSeq);
+        }
+        appendedSeq = lastSeq;
+        durableSeq = lastSeq;
+    }
+
+    // ---------------------------------------------------------
+    // Append
+    // ---------------------------------------------------------
+
+    /**
+     * Appends an item mutation.
+     *
+     * @param type mutation type
+     * @param book item state after the change
+     * @return sequence number of the record
+     * @throws IOException if the record cannot be written
+     */
+    public long appendBook(LogRecord.Type type, Book book) throws IOException {
+        return append(new LogRecord(type, book));
+    }
+
+    /**
+     * Appends a user mutation.
+     *
+     * @param type mutation type
+     * @param user user state after the change
+     * @return sequence number of the record
+     * @throws IOException if the record cannot be written
+     */
+    public long appendUser(LogRecord.Type type, User user) throws IOException {
+        return append(new LogRecord(type, user));
+    }
+
+    /**
+     * Appends a record and, unless disabled, waits until it is durable.
+     *
+     * @param record record to append; its sequence number is assigned here
+     * @return sequence number of the record
+     * @throws IOException if the record cannot be written
+     */
+    public long append(LogRecord record) throws IOException {
+        return append(Collections.singletonList(record));
+    }
+
+    /**
+     * Appends records as one frame, so that after a crash either all of them
+     * or none are replayed, and waits (unless disabled) until they are
+     * durable. Sequence numbers are consecutive.
+     *
+     * @param records records to append; their sequence numbers are assigned here
+     * @return sequence number of the last record
+     * @throws IOException if the records cannot be written
+     */
+    public long append(List<LogRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            throw new IllegalArgumentException("No records to append");
+        }
+        long end;
+        long seq;
+
+        synchronized (this) {
+            seq = lastSeq;
+            for (LogRecord record : records) {
+                record.setSeq(++seq);
+            }
+
+            Object body = records.size() == 1 ? records.get(0) : records;
+            byte[] payload = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+            if (payload.length > MAX_RECORD_SIZE) {
+                throw new IOException("Journal frame too large: " + payload.length + " bytes");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+
+            ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+            frame.putInt(payload.length);
+            frame.putInt((int) crc.getValue());
+            frame.put(payload);
+            frame.flip();
+
+            writeFully(frame, writtenPosition);
+            writtenPosition += frame.limit();
+            lastSeq = seq;
+            appendedSeq = seq;
+            end = writtenPosition;
+
+            if (!listeners.isEmpty()) {
+                // Copies, so listeners see the state as journaled
+                List<LogRecord> copies = new ArrayList<>(records.size());
+                for (LogRecord record : records) {
+                    copies.add(record.copy());
+                }
+                for (Listener listener : listeners) {
+                    listener.onAppend(copies);
+                }
+            }
+        }
+
+        if (syncOnAppend) {
+            awaitDurable(end);
+        }
+        return seq;
+    }
+
+    /**
+     * Forces every appended record to stable storage.
+     *
+     * @throws IOException if the flush fails
+     */
+    public void sync() throws IOException {
+        awaitDurable(writtenPosition);
+    }
+
+    /**
+     * Group commit: waits until {@code position} is durable, issuing at most
+     * one {@code fsync} for all threads that queue up behind the current one.
+     */
+    private void awaitDurable(long position) throws IOException {
+        synchronized (syncLock) {
+            if (durablePosition >= position) {
+                return;
+            }
+            long targetSeq = appendedSeq;
+            long target = writtenPosition;
+            channel.force(false);
+            durablePosition = target;
+            // Written after the force, so the header never claims records that
+            // are not on disk; the next force persists it
+            writeDurableSequence(targetSeq);
+            markDurable(targetSeq);
+        }
+    }
+
+    private void markDurable(long seq) {
+        if (seq > durableSeq) {
+            durableSeq = seq;
+            for (Listener listener : listeners) {
+                listener.onDurable(seq);
+            }
+        }
+    }
+
+    /**
+     * Chooses whether appends wait for {@code fsync}. When disabled, callers
+     * must invoke {@link #sync()} themselves to bound the loss window.
+     *
+     * @param syncOnAppend {@code true} to force on every append (default)
+     */
+    public void setSyncOnAppend(boolean syncOnAppend) {
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    // ---------------------------------------------------------
+    // Replay
+    // ---------------------------------------------------------
+
+    /**
+     * Reads every valid record currently in the log.
+     *
+     * @return records in append order
+     * @throws IOException if the file cannot be read
+     */
+    public synchronized List<LogRecord> readAll() throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        long position = HEADER_SIZE;
+        while (position < writtenPosition) {
+            ByteBuffer payload = readFrame(position);
+            if (payload == null) {
+                break;
+            }
+            records.addAll(decode(payload));
+            position += FRAME_HEADER_SIZE + payload.limit();
+        }
+        return records;
+    }
+
+    /**
+     * Replays the log on top of freshly loaded snapshot lists.
+     * <p>
+     * If the snapshot files changed since the log was started, the log is
+     * stale: it is discarded and nothing is applied, unless a checkpoint was
+     * interrupted, in which case every record is reapplied.
+     *
+     * @param books item list loaded from the snapshot, updated in place
+     * @param users user list loaded from the snapshot, updated in place
+     * @return number of records applied
+     * @throws IOException if the log cannot be read
+     */
+    public synchronized int replay(List<Book> books, List<User> users) throws IOException {
+        if (snapshotStamp != computeSnapshotStamp()) {
+            if ((flags & FLAG_CHECKPOINT_PENDING) == 0) {
+                if (lastSeq > baseSeq) {
+                    System.out.println("Snapshot files changed outside a checkpoint; discarding stale journal.");
+                }
+                reset();
+                return 0;
+            }
+            System.out.println("Recovering from an interrupted checkpoint.");
+        }
+
+        List<LogRecord> records = readAll();
+        LogRecord.applyAll(records, books, users);
+        if (!records.isEmpty()) {
+            System.out.println("Replayed " + records.size() + " journal record(s).");
+        }
+        return records.size();
+    }
+
+    // ---------------------------------------------------------
+    // Checkpoints
+    // ---------------------------------------------------------
+
+    /**
+     * Marks a checkpoint as started. Must be called before the snapshot
+     * files are rewritten, so a crash in between is recognized on replay.
+     *
+     * @throws IOException if the header cannot be updated
+     */
+    public synchronized void beginCheckpoint() throws IOException {
+        flags |= FLAG_CHECKPOINT_PENDING;
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.putInt(flags);
+        buffer.flip();
+        writeFully(buffer, FLAGS_OFFSET);
+        channel.force(false);
+    }
+
+    /**
+     * Completes a checkpoint after the snapshot files were written.
+     * <p>
+     * Records up to {@code upToSeq} are dropped because the snapshots contain
+     * their effect; records appended while the snapshots were being written
+     * are kept. The header is restamped with the new snapshot files. The log
+     * is rewritten to a temporary file and atomically renamed into place.
+     *
+     * @param upToSeq last sequence number reflected in the snapshots
+     * @throws IOException if the log cannot be rewritten
+     */
+    public synchronized void completeCheckpoint(long upToSeq) throws IOException {
+        rewrite(Math.min(upToSeq, lastSeq), computeSnapshotStamp(), 0);
+    }
+
+    /**
+     * Empties the log after its content was folded into fresh snapshots.
+     * The header is restamped with the current snapshot files; sequence
+     * numbers keep increasing across resets.
+     *
+     * @throws IOException if the file cannot be truncated
+     */
+    public synchronized void reset() throws IOException {
+        completeCheckpoint(lastSeq);
+    }
+
+    /**
+     * Indicates whether the log holds records not yet folded into snapshots.
+     *
+     * @return {@code true} if at least one record is present
+     */
+    public synchronized boolean hasRecords() {
+        return lastSeq > baseSeq;
+    }
+
+    // ---------------------------------------------------------
+    // Accessors
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the sequence number of the most recent record.
+     *
+     * @return last sequence number, or the base sequence if the log is empty
+     */
+    public synchronized long getLastSequence() {
+        return lastSeq;
+    }
+
+    /**
+     * Returns the sequence number preceding the first record still in the
+     * log. Records up to it were folded into the snapshots and dropped.
+     *
+     * @return base sequence number
+     */
+    public synchronized long getBaseSequence() {
+        return baseSeq;
+    }
+
+    /**
+     * Returns the sequence number of the last record known to be on stable
+     * storage.
+     *
+     * @return durable sequence number
+     */
+    public long getDurableSequence() {
+        return durableSeq;
+    }
+
+    /**
+     * Registers a listener for appended and durable records.
+     *
+     * @param listener listener to add
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener listener to remove
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the current size of the log file in bytes.
+     *
+     * @return log size including the header
+     */
+    public synchronized long size() {
+        return writtenPosition;
+    }
+
+    /**
+     * Returns the location of the log file.
+     *
+     * @return log path
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    // ---------------------------------------------------------
+    // File format helpers
+    // ---------------------------------------------------------
+
+    private void writeHeader(long newBaseSeq) throws IOException {
+        snapshotStamp = computeSnapshotStamp();
+        baseSeq = newBaseSeq;
+        lastSeq = newBaseSeq;
+
+        flags = 0;
+
+        channel.truncate(0);
+        writeFully(encodeHeader(snapshotStamp, baseSeq, flags, baseSeq), 0);
+        channel.force(true);
+        writtenPosition = HEADER_SIZE;
+        durablePosition = HEADER_SIZE;
+    }
+
+    /** Records that frames up to {@code seq} are on stable storage. */
+    private void writeDurableSequence(long seq) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(seq);
+        buffer.flip();
+        writeFully(buffer, DURABLE_SEQ_OFFSET);
+    }
+
+    private static ByteBuffer encodeHeader(long stamp, long base, int headerFlags, long durable) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(stamp);
+        header.putLong(base);
+        header.putInt(headerFlags);
+        header.putInt(0);
+        header.putLong(durable);
+        header.flip();
+        return header;
+    }
+
+    private boolean readHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+
+        int magic = header.getInt();
+        int version = header.getInt();
+        if (magic != MAGIC || version != VERSION) {
+            System.out.println("Journal " + file + " has an unknown format, starting a new one.");
+            return false;
+        }
+        snapshotStamp = header.getLong();
+        baseSeq = header.getLong();
+        lastSeq = baseSeq;
+        flags = header.getInt();
+        return true;
+    }
+
+    /**
+     * Rewrites the log into a temporary file containing only the records
+     * after {@code dropUpToSeq}, then atomically replaces the current file.
+     */
+    private void rewrite(long dropUpToSeq, long stamp, int newFlags) throws IOException {
+        synchronized (syncLock) {
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+                ByteBuffer header = encodeHeader(stamp, dropUpToSeq, newFlags, lastSeq);
+                while (header.hasRemaining()) {
+                    out.write(header);
+                }
+
+                long position = HEADER_SIZE;
+                while (position < writtenPosition) {
+                    ByteBuffer payload = readFrame(position);
+                    if (payload == null) {
+                        break;
+                    }
+                    int length = payload.limit();
+                    if (lastSeqOf(decode(payload)) > dropUpToSeq) {
+                        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + length);
+                        readFully(frame, position);
+                        frame.flip();
+                        while (frame.hasRemaining()) {
+                            out.write(frame);
+                        }
+                    }
+                    position += FRAME_HEADER_SIZE + length;
+                }
+                out.force(true);
+            }
+
+            channel.close();
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+            snapshotStamp = stamp;
+            baseSeq = dropUpToSeq;
+            flags = newFlags;
+            writtenPosition = channel.size();
+            durablePosition = writtenPosition;
+            markDurable(appendedSeq);
+        }
+    }
+
+    /**
+     * Scans all frames to find the last valid one and cuts off a torn tail.
+     */
+    private void recoverTail() throws IOException {
+        long size = channel.size();
+        long position = HEADER_SIZE;
+        writtenPosition = size;
+
+        while (position < size) {
+            ByteBuffer payload = readFrame(position);
+            if (payload == null) {
+                break;
+            }
+            lastSeq = lastSeqOf(decode(payload));
+            position += FRAME_HEADER_SIZE + payload.limit();
+        }
+
+        if (position < size) {
+            System.out.println("Journal " + file + " ends with a torn record; truncating "
+                    + (size - position) + " byte(s).");
+            channel.truncate(position);
+            channel.force(true);
+        }
+        writtenPosition = position;
+        durablePosition = position;
+    }
+
+    /**
+     * Reads and verifies the frame at {@code position}.
+     *
+     * @return payload bytes, or {@code null} if the frame is incomplete or corrupt
+     */
+    private ByteBuffer readFrame(long position) throws IOException {
+        return readFrame(channel, position);
+    }
+
+    /**
+     * Reads and verifies the frame at {@code position} of a log file.
+     *
+     * @return payload bytes, or {@code null} if the frame is incomplete or corrupt
+     */
+    static ByteBuffer readFrame(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position + FRAME_HEADER_SIZE > size) {
+            return null;
+        }
+
+        ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+        readFully(channel, frameHeader, position);
+        frameHeader.flip();
+        int length = frameHeader.getInt();
+        int expectedCrc = frameHeader.getInt();
+
+        if (length <= 0 || length > MAX_RECORD_SIZE
+                || position + FRAME_HEADER_SIZE + length > size) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, position + FRAME_HEADER_SIZE);
+        payload.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+        return payload;
+    }
+
+    /** Decodes the records of one frame, in append order. */
+    static List<LogRecord> decode(ByteBuffer payload) {
+        String json = new String(payload.array(), 0, payload.limit(), StandardCharsets.UTF_8);
+        if (json.startsWith("[")) {
+            return Arrays.asList(gson.fromJson(json, LogRecord[].class));
+        }
+        return Collections.singletonList(gson.fromJson(json, LogRecord.class));
+    }
+
+    private static long lastSeqOf(List<LogRecord> frame) {
+        return frame.get(frame.size() - 1).getSeq();
+    }
+
+    /**
+     * Combines size and modification time of every snapshot file into one value.
+     * Missing files contribute a fixed marker.
+     */
+    private long computeSnapshotStamp() throws IOException {
+        long stamp = 17;
+        for (Path snapshot : snapshotFiles) {
+            long size = -1;
+            long modified = -1;
+            if (Files.exists(snapshot)) {
+                size = Files.size(snapshot);
+                modified = Files.getLastModifiedTime(snapshot).to(TimeUnit.NANOSECONDS);
+            }
+            stamp = 31 * stamp + size;
+            stamp = 31 * stamp + modified;
+        }
+        return stamp;
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        readFully(channel, buffer, position);
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+            position += n;
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Listener
+    // ---------------------------------------------------------
+
+    /**
+     * Observer of the log, e.g. a change feed. Callbacks run on the
+     * appending or syncing thread while the log is locked, so they must be
+     * short and must not call back into the log.
+     */
+    public interface Listener {
+
+        /**
+         * Called after records were appended, in sequence order. The records
+         * may not be durable yet.
+         *
+         * @param records copies of the appended records
+         */
+        void onAppend(List<LogRecord> records);
+
+        /**
+         * Called when every record up to {@code seq} is on stable storage.
+         *
+         * @param seq durable sequence number
+         */
+        void onDurable(long seq);
+    }
+}
@@ -0,0 +1,392 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * {@link BookRepository} backend storing the catalog as newline-delimited
+ * JSON: one compact, UTF-8 encoded item per line.
+ * <p>
+ * The format is meant for exchanging catalog data with other systems:
+ * <ul>
+ *     <li>Items are read and written one line at a time.</li>
+ *     <li>{@link #appendBooks(List)} adds items without rewriting the file.</li>
+ *     <li>{@link #split(int)} cuts the file into byte ranges at line
+ *         boundaries that can be parsed independently, and
+ *         {@link #loadBooks(int)} does so on several cores.</li>
+ *     <li>A line that cannot be parsed is rejected and reported (see
+ *         {@link #getRejectedLines()}); all other lines still load.</li>
+ * </ul>
+ * Blank lines are ignored. No checksum sidecar is written, since appends
+ * would invalidate it; damage is contained to the lines it touches.
+ */
+public class NdjsonBookRepository extends BookRepository {
+
+    /** Default path of the NDJSON catalog file. */
+    private static final String ITEMS_FILE = "data/items.ndjson";
+
+    private static final Gson gson = JsonSupport.builder().create();
+
+    private static final int BUFFER_SIZE = JsonSupport.BUFFER_SIZE;
+
+    /** Lines rejected by the most recent load. */
+    private volatile List<RejectedLine> rejectedLines = Collections.emptyList();
+
+    /**
+     * Creates a repository backed by <code>data/items.ndjson</code>.
+     */
+    public NdjsonBookRepository() {
+        this(Paths.get(ITEMS_FILE));
+    }
+
+    /**
+     * Creates a repository backed by a specific NDJSON file.
+     *
+     * @param file NDJSON file storing the books
+     */
+    public NdjsonBookRepository(Path file) {
+        super(file);
+    }
+
+    // ---------------------------------------------------------
+    // Save
+    // ---------------------------------------------------------
+
+    /**
+     * Writes the books, one per line. The file is replaced atomically.
+     *
+     * @param books the list of {@link Book} objects to save
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void writeBooks(List<Book> books) throws IOException {
+        AtomicFiles.replace(getFile(), channel -> writeLines(Channels.newOutputStream(channel), books));
+    }
+
+    /**
+     * Appends books to the end of the file and forces them to disk. A
+     * missing file is created.
+     *
+     * @param books items to append
+     * @throws IOException if the file could not be written
+     */
+    public void appendBooks(List<Book> books) throws IOException {
+        try (FileChannel channel = FileChannel.open(getFile(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Terminate a last line that was written without a newline
+            long size = channel.size();
+            channel.position(size);
+            if (size > 0) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, size - 1);
+                if (last.get(0) != '\n') {
+                    channel.write(ByteBuffer.wrap(new byte[]{'\n'}));
+                }
+            }
+            writeLines(Channels.newOutputStream(channel), books);
+            channel.force(true);
+        }
+    }
+
+    private static void writeLines(OutputStream channelOut, List<Book> books) throws IOException {
+        // Not closed: closing would close the channel before it is forced
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+        for (Book book : books) {
+            buffer.write(gson.toJson(book, Book.class).getBytes(StandardCharsets.UTF_8));
+            buffer.write('\n');
+            if (buffer.size() >= BUFFER_SIZE) {
+                buffer.writeTo(channelOut);
+                buffer.reset();
+            }
+        }
+        buffer.writeTo(channelOut);
+        channelOut.flush();
+    }
+
+    // ---------------------------------------------------------
+    // Load
+    // ---------------------------------------------------------
+
+    /**
+     * Loads every valid line. Malformed lines are skipped, printed and
+     * available from {@link #getRejectedLines()} afterwards.
+     *
+     * @return loaded books; empty if the file is missing or unreadable
+     */
+    @Override
+    public List<Book> loadBooks() {
+        return loadBooks(1);
+    }
+
+    /**
+     * Loads every valid line, parsing up to {@code parallelism} ranges of the
+     * file at once. The result is in file order for any parallelism.
+     *
+     * @param parallelism number of ranges parsed concurrently
+     * @return loaded books; empty if the file is missing or unreadable
+     */
+    public List<Book> loadBooks(int parallelism) {
+        List<Book> books = new ArrayList<>();
+        List<RejectedLine> rejected = new ArrayList<>();
+        try {
+            List<Split> splits = split(Math.max(1, parallelism));
+            if (splits.size() == 1) {
+                readSplit(splits.get(0), books::add, rejected::add);
+            } else {
+                loadInParallel(splits, parallelism, books, rejected);
+            }
+        } catch (NoSuchFileException e) {
+            System.out.println(getFile() + " not found, starting empty.");
+            books.clear();
+        } catch (Exception e) {
+            System.out.println("Error loading items: " + e.getMessage());
+            books.clear();
+        }
+
+        for (RejectedLine line : rejected) {
+            System.out.println("Rejected item at byte " + line.getOffset() + " of " + getFile()
+                    + ": " + line.getReason());
+        }
+        rejectedLines = Collections.unmodifiableList(rejected);
+        return books;
+    }
+
+    private void loadInParallel(List<Split> splits, int parallelism,
+                                List<Book> books, List<RejectedLine> rejected) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<ForkJoinTask<Split.Result>> tasks = new ArrayList<>();
+            for (Split split : splits) {
+                tasks.add(pool.submit(() -> {
+                    Split.Result result = new Split.Result();
+                    readSplit(split, result.books::add, result.rejected::add);
+                    return result;
+                }));
+            }
+            // Join in split order so the result does not depend on scheduling
+            for (ForkJoinTask<Split.Result> task : tasks) {
+                Split.Result result = task.get();
+                books.addAll(result.books);
+                rejected.addAll(result.rejected);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading items");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the lines rejected by the most recent load.
+     *
+     * @return rejected lines in file order; empty if every line loaded
+     */
+    public List<RejectedLine> getRejectedLines() {
+        return rejectedLines;
+    }
+
+    // ---------------------------------------------------------
+    // Splits
+    // ---------------------------------------------------------
+
+    /**
+     * Cuts the file into at most {@code parts} byte ranges of similar size.
+     * Every range starts at the beginning of a line and ends after a newline
+     * (or at the end of the file), so each can be parsed on its own.
+     *
+     * @param parts desired number of ranges
+     * @return non-empty ranges covering the whole file, in file order
+     * @throws IOException if the file cannot be read
+     */
+    public List<Split> split(int parts) throws IOException {
+        List<Split> splits = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(getFile(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long target = Math.max(1, size / Math.max(1, parts));
+            long start = 0;
+            ByteBuffer one = ByteBuffer.allocate(1);
+            while (start < size) {
+                long end = Math.min(size, start + target);
+                // Move the cut forward to just after the next newline
+                while (end < size) {
+                    one.clear();
+                    channel.read(one, end - 1);
+                    if (one.get(0) == '\n') {
+                        break;
+                    }
+                    end++;
+                }
+                splits.add(new Split(start, end));
+                start = end;
+            }
+        }
+        if (splits.isEmpty()) {
+            splits.add(new Split(0, 0));
+        }
+        return splits;
+    }
+
+    /**
+     * Parses the lines of one range.
+     *
+     * @param split    range returned by {@link #split(int)}
+     * @param sink     receives each parsed item, in file order
+     * @param rejected receives each line that could not be parsed
+     * @throws IOException if the file cannot be read
+     */
+    public void readSplit(Split split, Consumer<Book> sink, Consumer<RejectedLine> rejected) throws IOException {
+        try (FileChannel channel = FileChannel.open(getFile(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            ByteArrayOutputStream line = new ByteArrayOutputStream(512);
+            long position = split.getStart();
+            long lineStart = position;
+            while (position < split.getEnd()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(BUFFER_SIZE, split.getEnd() - position));
+                int n = channel.read(buffer, position);
+                if (n < 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                int from = 0;
+                for (int i = 0; i < n; i++) {
+                    if (bytes[i] == '\n') {
+                        line.write(bytes, from, i - from);
+                        parseLine(line, lineStart, sink, rejected);
+                        line.reset();
+                        from = i + 1;
+                        lineStart = position + from;
+                    }
+                }
+                line.write(bytes, from, n - from);
+                position += n;
+            }
+            parseLine(line, lineStart, sink, rejected);
+        }
+    }
+
+    private static void parseLine(ByteArrayOutputStream bytes, long offset,
+                                  Consumer<Book> sink, Consumer<RejectedLine> rejected) {
+        String text = new String(bytes.toByteArray(), StandardCharsets.UTF_8).trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        try {
+            Book book = gson.fromJson(text, Book.class);
+            if (book == null || book.getIsbn() == null || book.getIsbn().isEmpty()) {
+                rejected.accept(new RejectedLine(offset, text, "missing ISBN"));
+                return;
+            }
+            // Records from other systems may omit the item type; they load as books
+            sink.accept(book);
+        } catch (RuntimeException e) {
+            rejected.accept(new RejectedLine(offset, text, e.getMessage()));
+        }
+    }
+
+    /**
+     * Byte range of the file that starts at a line boundary.
+     */
+    public static final class Split {
+        private final long start;
+        private final long end;
+
+        Split(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns the offset of the first byte of the range.
+         *
+         * @return start offset, inclusive
+         */
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Returns the offset just past the range.
+         *
+         * @return end offset, exclusive
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        /** Items and rejections of one range, collected by a worker. */
+        private static final class Result {
+            final List<Book> books = new ArrayList<>();
+            final List<RejectedLine> rejected = new ArrayList<>();
+        }
+    }
+
+    /**
+     * A line that could not be loaded.
+     */
+    public static final class RejectedLine {
+        private final long offset;
+        private final String content;
+        private final String reason;
+
+        RejectedLine(long offset, String content, String reason) {
+            this.offset = offset;
+            this.content = content;
+            this.reason = reason;
+        }
+
+        /**
+         * Returns the byte offset of the line in the file.
+         *
+         * @return line offset
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Returns the text of the line.
+         *
+         * @return line content
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * Returns why the line was rejected.
+         *
+         * @return parser message
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+}
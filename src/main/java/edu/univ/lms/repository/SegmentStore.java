@@ -0,0 +1,240 @@
+package edu.univ.lms.repository;
+
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Stores a collection as a fixed number of JSON segment files and rewrites
+ * only the segments that changed.
+ * <p>
+ * Every record belongs to the segment chosen by the hash of its key. A
+ * segment is rewritten when one of its records is dirty or when its
+ * membership changed (a record was added or removed), which the store
+ * detects from a per-segment count and key-hash sum recorded at the last
+ * load or save. A single change therefore costs one segment write instead
+ * of a rewrite of the whole collection.
+ * <p>
+ * Records come back grouped by segment, not in their original order.
+ *
+ * @param <T> record type
+ */
+final class SegmentStore<T> {
+
+    private final Path dir;
+    private final String prefix;
+    private final int segmentCount;
+    private final Gson gson;
+    private final Class<T> type;
+    private final Function<T, String> key;
+    private final Predicate<T> isDirty;
+    private final Consumer<T> markClean;
+
+    /** Record count per segment as last loaded or saved. */
+    private final int[] counts;
+
+    /** Sum of key hashes per segment as last loaded or saved. */
+    private final long[] keySums;
+
+    /** Segments whose on-disk content is unknown or stale; always rewritten. */
+    private final boolean[] stale;
+
+    private int lastWrittenSegments;
+
+    SegmentStore(Path dir, String prefix, int segmentCount, Gson gson, Class<T> type,
+                 Function<T, String> key, Predicate<T> isDirty, Consumer<T> markClean) {
+        if (segmentCount <= 0) {
+            throw new IllegalArgumentException("segmentCount must be positive");
+        }
+        this.dir = dir;
+        this.prefix = prefix;
+        this.segmentCount = segmentCount;
+        this.gson = gson;
+        this.type = type;
+        this.key = key;
+        this.isDirty = isDirty;
+        this.markClean = markClean;
+        this.counts = new int[segmentCount];
+        this.keySums = new long[segmentCount];
+        this.stale = new boolean[segmentCount];
+        // Until the first load, nothing is known about the files on disk
+        Arrays.fill(stale, true);
+    }
+
+    /**
+     * Returns the file holding a segment.
+     *
+     * @param segment segment number
+     * @return segment file path
+     */
+    Path segmentFile(int segment) {
+        return dir.resolve(String.format("%s-%03d.json", prefix, segment));
+    }
+
+    /**
+     * Returns the number of segments rewritten by the last {@link #save(List)}.
+     *
+     * @return segment write count
+     */
+    int getLastWrittenSegments() {
+        return lastWrittenSegments;
+    }
+
+    private int segmentOf(String k) {
+        return Math.floorMod(k == null ? 0 : k.hashCode(), segmentCount);
+    }
+
+    private static long hashOf(String k) {
+        return k == null ? 0 : k.hashCode();
+    }
+
+    /**
+     * Reads all segment files, parsing up to {@code parallelism} of them at
+     * once. Missing segments are treated as empty.
+     * <p>
+     * Each segment is parsed into its own list on a {@link ForkJoinPool}
+     * worker; the lists are handed to {@code sink} on the calling thread in
+     * segment order, each as soon as it and all segments before it are done.
+     * The result is therefore the same as a sequential load, whatever order
+     * the workers finish in.
+     *
+     * @param parallelism number of segments parsed concurrently; 1 parses on
+     *                    the calling thread
+     * @param each        called for every record, possibly on a worker thread
+     * @param sink        receives the records of each segment, in segment order
+     * @throws IOException if a segment exists but cannot be read
+     */
+    void load(int parallelism, Consumer<T> each, Consumer<List<T>> sink) throws IOException {
+        if (parallelism <= 1 || segmentCount == 1) {
+            for (int s = 0; s < segmentCount; s++) {
+                sink.accept(loadSegment(s, each));
+            }
+            return;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, segmentCount));
+        try {
+            List<ForkJoinTask<List<T>>> tasks = new ArrayList<>(segmentCount);
+            for (int s = 0; s < segmentCount; s++) {
+                int segment = s;
+                tasks.add(pool.submit(() -> loadSegment(segment, each)));
+            }
+            for (ForkJoinTask<List<T>> task : tasks) {
+                sink.accept(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading segments");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Error loading segment: " + cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Parses one segment and records its membership. Only touches the
+     * bookkeeping slots of that segment, so segments can load concurrently.
+     */
+    private List<T> loadSegment(int segment, Consumer<T> each) throws IOException {
+        List<T> records = new ArrayList<>();
+        int count = 0;
+        long keySum = 0;
+        Path file = segmentFile(segment);
+        if (Files.exists(file)) {
+            JsonSupport.readArray(file, gson, type, null, records::add);
+            for (T record : records) {
+                each.accept(record);
+                count++;
+                keySum += hashOf(key.apply(record));
+            }
+        }
+        counts[segment] = count;
+        keySums[segment] = keySum;
+        stale[segment] = false;
+        return records;
+    }
+
+    /**
+     * Writes the segments that changed since the last load or save and marks
+     * their records clean. A segment that fails to write stays stale and is
+     * rewritten on the next save.
+     *
+     * @param records complete current collection
+     * @throws IOException the first segment failure, after all other
+     *                     changed segments were attempted
+     */
+    void save(List<T> records) throws IOException {
+        List<List<T>> buckets = new ArrayList<>(segmentCount);
+        for (int s = 0; s < segmentCount; s++) {
+            buckets.add(new ArrayList<>());
+        }
+        int[] newCounts = new int[segmentCount];
+        long[] newSums = new long[segmentCount];
+        boolean[] changed = new boolean[segmentCount];
+
+        for (T record : records) {
+            String k = key.apply(record);
+            int s = segmentOf(k);
+            buckets.get(s).add(record);
+            newCounts[s]++;
+            newSums[s] += hashOf(k);
+            if (isDirty.test(record)) {
+                changed[s] = true;
+            }
+        }
+
+        IOException failure = null;
+        int written = 0;
+        for (int s = 0; s < segmentCount; s++) {
+            if (!stale[s] && !changed[s] && newCounts[s] == counts[s] && newSums[s] == keySums[s]) {
+                continue;
+            }
+            try {
+                writeSegment(s, buckets.get(s));
+                for (T record : buckets.get(s)) {
+                    markClean.accept(record);
+                }
+                counts[s] = newCounts[s];
+                keySums[s] = newSums[s];
+                stale[s] = false;
+                written++;
+            } catch (IOException e) {
+                stale[s] = true;
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        lastWrittenSegments = written;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeSegment(int segment, List<T> records) throws IOException {
+        Path file = segmentFile(segment);
+        if (records.isEmpty()) {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(AtomicFiles.checksumFile(file));
+        } else {
+            JsonSupport.writeArray(file, gson, type, records);
+        }
+    }
+}
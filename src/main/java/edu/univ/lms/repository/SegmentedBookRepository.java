@@ -0,0 +1,126 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link BookRepository} backend that splits the catalog into segment files
+ * and saves incrementally.
+ * <p>
+ * Each save rewrites only the segments containing dirty items (see
+ * {@link Book#isDirty()}) or items that were added or removed, so returning
+ * one item costs a few KB of I/O instead of a rewrite of the whole catalog.
+ * {@link #getFile()} returns the directory holding the segments.
+ */
+public class SegmentedBookRepository extends BookRepository {
+
+    /** Default directory holding the catalog segments. */
+    private static final String ITEMS_DIR = "data/items";
+
+    /** Default number of segments. */
+    public static final int DEFAULT_SEGMENTS = 64;
+
+    private static final Gson gson = JsonSupport.builder().create();
+
+    private final SegmentStore<Book> store;
+
+    /** Number of segments parsed concurrently by a load. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a repository storing segments under <code>data/items/</code>.
+     */
+    public SegmentedBookRepository() {
+        this(Paths.get(ITEMS_DIR), DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Creates a repository storing segments in a specific directory.
+     *
+     * @param dir      directory holding the segment files
+     * @param segments number of segments; must stay the same for existing data
+     */
+    public SegmentedBookRepository(Path dir, int segments) {
+        super(dir);
+        dir.toFile().mkdirs();
+        store = new SegmentStore<>(dir, "items", segments, gson, Book.class,
+                Book::getIsbn, Book::isDirty, Book::markClean);
+    }
+
+    /**
+     * Sets how many segment files a load parses concurrently. The loaded
+     * books and their order do not depend on this setting.
+     *
+     * @param parallelism worker count; 1 loads on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of segment files written by the last save.
+     *
+     * @return rewritten segment count
+     */
+    public int getLastWrittenSegments() {
+        return store.getLastWrittenSegments();
+    }
+
+    /**
+     * Writes the segments whose items changed since the last load or save.
+     * Each segment is replaced atomically.
+     *
+     * @param books the complete catalog
+     * @throws IOException if a changed segment could not be written; it is
+     *                     retried on the next save
+     */
+    @Override
+    public void writeBooks(List<Book> books) throws IOException {
+        store.save(books);
+    }
+
+    /**
+     * Loads all segments, parsing them in parallel (see
+     * {@link #setParallelism(int)}). Items come back clean, grouped by
+     * segment, in the same order for any parallelism.
+     *
+     * @return loaded books, or an empty list if a segment cannot be read
+     * @throws UncheckedIOException wrapping a {@link ChecksumMismatchException}
+     *                              if a segment was damaged
+     */
+    @Override
+    public List<Book> loadBooks() {
+        List<Book> all = new ArrayList<>();
+        try {
+            loadBooks(all::addAll);
+            return all;
+        } catch (ChecksumMismatchException e) {
+            // An empty list would be saved over the only copy of the data
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            System.out.println("Error loading items: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Loads all segments and hands over the items of each segment as soon
+     * as it is parsed, so callers can build indexes while later segments
+     * are still loading. Segments arrive in segment order on the calling
+     * thread.
+     *
+     * @param sink receives the items of each segment
+     * @throws IOException if a segment exists but cannot be read
+     */
+    public void loadBooks(Consumer<List<Book>> sink) throws IOException {
+        store.load(parallelism, b -> { }, sink);
+    }
+}
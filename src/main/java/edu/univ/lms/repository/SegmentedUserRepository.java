@@ -0,0 +1,120 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.User;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * {@link UserRepository} backend that splits accounts into segment files and
+ * rewrites only the segments holding changed users (see {@link User#isDirty()}).
+ * {@link #getFile()} returns the directory holding the segments.
+ */
+public class SegmentedUserRepository extends UserRepository {
+
+    /** Default directory holding the user segments. */
+    private static final String USERS_DIR = "data/users";
+
+    /** Default number of segments. */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    private static final Gson gson = JsonSupport.builder().create();
+
+    private final SegmentStore<User> store;
+
+    /** Number of segments parsed concurrently by a load. */
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Creates a repository storing segments under <code>data/users/</code>.
+     */
+    public SegmentedUserRepository() {
+        this(Paths.get(USERS_DIR), DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * Creates a repository storing segments in a specific directory.
+     *
+     * @param dir      directory holding the segment files
+     * @param segments number of segments; must stay the same for existing data
+     */
+    public SegmentedUserRepository(Path dir, int segments) {
+        super(dir);
+        dir.toFile().mkdirs();
+        store = new SegmentStore<>(dir, "users", segments, gson, User.class,
+                User::getUserId, User::isDirty, User::markClean);
+    }
+
+    /**
+     * Sets how many segment files a load parses concurrently. The loaded
+     * users and their order do not depend on this setting.
+     *
+     * @param parallelism worker count; 1 loads on the calling thread
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the number of segment files written by the last save.
+     *
+     * @return rewritten segment count
+     */
+    public int getLastWrittenSegments() {
+        return store.getLastWrittenSegments();
+    }
+
+    /**
+     * Writes the segments whose users changed since the last load or save.
+     * Each segment is replaced atomically.
+     *
+     * @param users the complete user list
+     * @throws IOException if a changed segment could not be written; it is
+     *                     retried on the next save
+     */
+    @Override
+    public void writeUsers(List<User> users) throws IOException {
+        store.save(users);
+    }
+
+    /**
+     * Loads all segments, parsing them in parallel (see
+     * {@link #setParallelism(int)}). Users come back clean, grouped by
+     * segment, in the same order for any parallelism.
+     *
+     * @return loaded users; never {@code null}
+     * @throws UncheckedIOException wrapping a {@link ChecksumMismatchException}
+     *                              if a segment was damaged
+     */
+    @Override
+    public List<User> loadUsers() {
+        List<User> all = new ArrayList<>();
+        try {
+            loadUsers(all::addAll);
+            return all;
+        } catch (ChecksumMismatchException e) {
+            // An empty list would be saved over the only copy of the data
+            throw new UncheckedIOException(e);
+        } catch (Exception e) {
+            System.out.println("Error loading users: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Loads all segments and hands over the users of each segment as soon
+     * as it is parsed. Segments arrive in segment order on the calling thread.
+     *
+     * @param sink receives the users of each segment
+     * @throws IOException if a segment exists but cannot be read
+     */
+    public void loadUsers(Consumer<List<User>> sink) throws IOException {
+        store.load(parallelism, u -> { }, sink);
+    }
+}
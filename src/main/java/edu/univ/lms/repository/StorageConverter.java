@@ -0,0 +1,63 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Converts the JSON data files into the binary storage format.
+ * <p>
+ * Run without arguments to convert <code>data/items.json</code> and
+ * <code>data/users.json</code> into <code>data/items.bin</code> and
+ * <code>data/users.bin</code>. The JSON files are left untouched.
+ */
+public final class StorageConverter {
+
+    private StorageConverter() {
+    }
+
+    /**
+     * Copies every book from one repository into another.
+     *
+     * @param from source repository, typically JSON
+     * @param to   target repository, typically binary
+     * @return number of books converted, or {@code -1} if the target could not be written
+     */
+    public static int convertBooks(BookRepository from, BookRepository to) {
+        List<Book> books = from.loadBooks();
+        return to.saveBooks(books) ? books.size() : -1;
+    }
+
+    /**
+     * Copies every user from one repository into another.
+     *
+     * @param from source repository, typically JSON
+     * @param to   target repository, typically binary
+     * @return number of users converted, or {@code -1} if the target could not be written
+     */
+    public static int convertUsers(UserRepository from, UserRepository to) {
+        List<User> users = from.loadUsers();
+        return to.saveUsers(users) ? users.size() : -1;
+    }
+
+    /**
+     * Converts the default JSON data files to binary.
+     *
+     * @param args ignored
+     */
+    public static void main(String[] args) {
+        BookRepository jsonBooks = new BookRepository();
+        if (Files.exists(jsonBooks.getFile())) {
+            int n = convertBooks(jsonBooks, new BinaryBookRepository());
+            System.out.println("Converted " + n + " items.");
+        }
+
+        UserRepository jsonUsers = new UserRepository();
+        if (Files.exists(jsonUsers.getFile())) {
+            int n = convertUsers(jsonUsers, new BinaryUserRepository());
+            System.out.println("Converted " + n + " users.");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Groups related item and user mutations so they are journaled together.
+ * <p>
+ * An operation such as a late return changes an item (no longer borrowed)
+ * and a user (new fine) that are persisted by different repositories.
+ * Registering both changes here and calling {@link #commit()} writes them to
+ * the {@link MutationLog} as a single frame: one write and one
+ * {@code fsync}, and after a crash the replay sees either both changes or
+ * neither. Snapshots written by a checkpoint always contain whole units,
+ * because checkpoints copy the in-memory state under the same locks the
+ * mutating operations hold.
+ * <p>
+ * Records keep references to the registered objects, so the state that is
+ * journaled is the state at commit time. A unit is single-use and not
+ * thread-safe.
+ */
+public class UnitOfWork {
+
+    private final MutationLog mutationLog;
+    private final List<LogRecord> records = new ArrayList<>();
+    private boolean committed;
+
+    /**
+     * Starts a unit of work.
+     *
+     * @param mutationLog log receiving the changes, or {@code null} if the
+     *                    changes are only persisted by the next full save
+     */
+    public UnitOfWork(MutationLog mutationLog) {
+        this.mutationLog = mutationLog;
+    }
+
+    /**
+     * Registers an item mutation.
+     *
+     * @param type mutation type
+     * @param book changed item
+     * @return this unit, for chaining
+     */
+    public UnitOfWork registerBook(LogRecord.Type type, Book book) {
+        checkOpen();
+        records.add(new LogRecord(type, book));
+        return this;
+    }
+
+    /**
+     * Registers a user mutation.
+     *
+     * @param type mutation type
+     * @param user changed user
+     * @return this unit, for chaining
+     */
+    public UnitOfWork registerUser(LogRecord.Type type, User user) {
+        checkOpen();
+        records.add(new LogRecord(type, user));
+        return this;
+    }
+
+    /**
+     * Returns the number of registered mutations.
+     *
+     * @return record count
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Journals every registered mutation in one atomic log write.
+     *
+     * @return sequence number of the last record, or 0 if nothing was
+     *         registered or no log is attached
+     * @throws IOException if the log cannot be written; then none of the
+     *                     mutations is journaled
+     */
+    public long commit() throws IOException {
+        checkOpen();
+        committed = true;
+        if (mutationLog == null || records.isEmpty()) {
+            return 0;
+        }
+        return mutationLog.append(records);
+    }
+
+    private void checkOpen() {
+        if (committed) {
+            throw new IllegalStateException("Unit of work already committed");
+        }
+    }
+}
@@ -4,6 +4,8 @@ import edu.univ.lms.model.User;
 import com.google.gson.*;
 
 import java.io.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -16,29 +18,55 @@ import java.util.List;
  */
 public class UserRepository {
 
-    /** Path to the JSON file storing all user accounts. */
+    /** Default path to the JSON file storing all user accounts. */
     private static final String USERS_FILE = "data/users.json";
 
+    /** JSON file used by this repository instance. */
+    private final Path file;
+
+    /** Whether saves omit indentation. */
+    private boolean compact;
+
+    /** Compression applied when the file is saved. */
+    private Compression compression = Compression.NONE;
+
+    /** Receives progress updates while the data file is loaded. */
+    private LoadProgressListener progressListener = LoadProgressListener.console();
+
     /** GSON instance used for serialization and deserialization. */
-    private static final Gson gson = new GsonBuilder()
+    private static final Gson gson = JsonSupport.builder()
             .setPrettyPrinting()
             .create();
 
+    /** GSON instance writing the same JSON without indentation. */
+    private static final Gson compactGson = JsonSupport.builder().create();
+
     /**
      * Constructs a new {@code UserRepository} and ensures the data directory exists.
      */
     public UserRepository() {
+        this(Paths.get(USERS_FILE));
+    }
+
+    /**
+     * Constructs a repository backed by a specific JSON file and ensures its
+     * parent folder exists.
+     *
+     * @param file JSON file storing the users
+     */
+    public UserRepository(Path file) {
+        this.file = file;
         ensureDataFolder();
     }
 
     /**
-     * Ensures that the <code>data/</code> directory exists before any file access.
+     * Ensures that the data directory holding the users file exists before any file access.
      * <p>
      * Creates the directory if it does not already exist.
      * Prints feedback indicating whether creation succeeded or failed.
      */
     private void ensureDataFolder() {
-        File dir = new File("data");
+        File dir = file.toAbsolutePath().getParent().toFile();
         if (!dir.exists()) {
             if (dir.mkdirs()) {
                 System.out.println("Created data folder.");
@@ -48,6 +76,45 @@ public class UserRepository {
         }
     }
 
+    /**
+     * Returns the location of the JSON file managed by this repository.
+     *
+     * @return path of the user data file
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Switches between pretty-printed and compact JSON output.
+     * Compact files are smaller and faster to write; both load the same way.
+     *
+     * @param compact {@code true} to write without indentation
+     */
+    public void setCompact(boolean compact) {
+        this.compact = compact;
+    }
+
+    /**
+     * Selects the compression used when the file is saved. Loads detect
+     * compressed files by themselves, so this can be changed at any time.
+     *
+     * @param compression compression for future saves
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Sets the listener notified while the data file is loaded.
+     * By default, progress is printed for very large files only.
+     *
+     * @param progressListener listener, or {@code null} to load silently
+     */
+    public void setProgressListener(LoadProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
     // ---------------------------------------------------------
     // Save Users
     // ---------------------------------------------------------
@@ -56,19 +123,40 @@ public class UserRepository {
      * Saves the provided list of users to a JSON file.
      * <p>
      * This operation overwrites any existing user file. In case of errors,
-     * the exception message is printed, and the application continues running.
+     * the exception message is printed, and the application continues running;
+     * use {@link #writeUsers(List)} to handle them instead.
      *
      * @param users list of {@link User} objects to be serialized
+     * @return {@code true} if the file was written, {@code false} on error
      */
-    public void saveUsers(List<User> users) {
-        try (Writer writer = new FileWriter(USERS_FILE)) {
-            gson.toJson(users, writer);
-            System.out.println("Users saved to: " + new File(USERS_FILE).getAbsolutePath());
+    public boolean saveUsers(List<User> users) {
+        try {
+            writeUsers(users);
+            System.out.println("Users saved to: " + file.toAbsolutePath());
+            return true;
         } catch (Exception e) {
             System.out.println("Error saving users: " + e.getMessage());
+            return false;
         }
     }
 
+    /**
+     * Writes the list of users, reporting failures to the caller.
+     * <p>
+     * Users are streamed one at a time through a buffered channel; output is
+     * pretty-printed unless {@link #setCompact(boolean)} is enabled, and gzip
+     * compressed if {@link #setCompression(Compression)} selects it. The file
+     * is replaced atomically (temporary file, fsync, rename) and gets a CRC32
+     * sidecar.
+     *
+     * @param users list of {@link User} objects to be serialized
+     * @throws IOException if the file could not be written; the previous
+     *                     file is then left unchanged
+     */
+    public void writeUsers(List<User> users) throws IOException {
+        JsonSupport.writeArray(file, compact ? compactGson : gson, User.class, users, compression);
+    }
+
     // ---------------------------------------------------------
     // Load Users
     // ---------------------------------------------------------
@@ -76,39 +164,40 @@ public class UserRepository {
     /**
      * Loads all user accounts stored in the JSON file.
      * <p>
+     * The file is streamed through a buffered channel and decoded one user
+     * at a time instead of being materialized as an intermediate array.
+     * <p>
      * This method performs several safety checks:
      * <ul>
      *     <li>If the file does not exist, an empty list is returned.</li>
      *     <li>If deserialization fails, an empty list is returned.</li>
+     *     <li>If the file was damaged on disk, the load fails instead, so
+     *         that no empty user list is saved over it.</li>
      * </ul>
      * <p>
      * The method prints diagnostic information, including the absolute
      * file path being accessed, which helps with debugging.
      *
      * @return list of restored {@link User} objects; never {@code null}
+     * @throws UncheckedIOException wrapping a {@link ChecksumMismatchException}
+     *                              if the file was damaged
      */
     public List<User> loadUsers() {
-        File file = new File(USERS_FILE);
-        System.out.println("Trying to load users from: " + file.getAbsolutePath());
+        System.out.println("Trying to load users from: " + file.toAbsolutePath());
 
-        if (!file.exists()) {
-            System.out.println("data/users.json not found, starting empty.");
+        if (!file.toFile().exists()) {
+            System.out.println(file + " not found, starting empty.");
             return new ArrayList<>();
         }
 
-        try (Reader reader = new FileReader(file)) {
-
-            User[] array = gson.fromJson(reader, User[].class);
-            List<User> list = new ArrayList<>();
-
-            if (array != null) {
-                for (User user : array) {
-                    list.add(user);
-                }
-            }
-
+        List<User> list = new ArrayList<>();
+        try {
+            JsonSupport.readArray(file, gson, User.class, progressListener, list::add);
             return list;
 
+        } catch (ChecksumMismatchException e) {
+            // An empty list would be saved over the only copy of the data
+            throw new UncheckedIOException(e);
         } catch (Exception e) {
             System.out.println("Error loading users: " + e.getMessage());
             return new ArrayList<>();
@@ -0,0 +1,100 @@
+package edu.univ.lms.repository;
+
+import edu.univ.lms.model.User;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+
+/**
+ * Streaming GSON adapter for {@link User}.
+ * <p>
+ * Writes exactly what reflective binding writes (same field names and
+ * order, {@code null} fields omitted) and reads fields straight off the
+ * {@link JsonReader}, skipping unknown ones. {@code loggedIn} is still
+ * written for compatibility but ignored on read: a loaded account always
+ * starts logged out. Decoded users are clean.
+ */
+final class UserTypeAdapter extends TypeAdapter<User> {
+
+    @Override
+    public void write(JsonWriter out, User user) throws IOException {
+        if (user == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        writeString(out, "userId", user.getUserId());
+        writeString(out, "name", user.getName());
+        writeString(out, "username", user.getUsername());
+        writeString(out, "password", user.getPassword());
+        out.name("isAdmin").value(user.isAdmin());
+        out.name("loggedIn").value(user.isLoggedIn());
+        out.name("fineBalance").value(user.getFineBalance());
+        writeString(out, "email", user.getEmail());
+        out.endObject();
+    }
+
+    @Override
+    public User read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        String userId = null;
+        String name = null;
+        String username = null;
+        String password = null;
+        boolean admin = false;
+        double fineBalance = 0.0;
+        String email = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "userId":
+                    userId = JsonSupport.nextString(in);
+                    break;
+                case "name":
+                    name = JsonSupport.nextString(in);
+                    break;
+                case "username":
+                    username = JsonSupport.nextString(in);
+                    break;
+                case "password":
+                    password = JsonSupport.nextString(in);
+                    break;
+                case "isAdmin":
+                    admin = JsonSupport.nextBoolean(in, false);
+                    break;
+                case "fineBalance":
+                    if (in.peek() == JsonToken.NULL) {
+                        in.nextNull();
+                    } else {
+                        fineBalance = in.nextDouble();
+                    }
+                    break;
+                case "email":
+                    email = JsonSupport.nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+                    break;
+            }
+        }
+        in.endObject();
+
+        User user = new User(userId, name, username, password, admin, email);
+        user.addFine(fineBalance);
+        user.markClean();
+        return user;
+    }
+
+    private static void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package edu.univ.lms.repository.lsm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import edu.univ.lms.util.KeyHash;
+
+/**
+ * Fixed-size Bloom filter over string keys.
+ * <p>
+ * Answers "definitely absent" or "possibly present". Each segment file keeps
+ * one, so a point read skips every segment whose filter rules the key out
+ * without touching the disk. With the default ten bits per key the false
+ * positive rate is about one percent.
+ */
+public final class BloomFilter {
+
+    /** Default number of filter bits per expected key. */
+    public static final int DEFAULT_BITS_PER_KEY = 10;
+
+    private final long[] bits;
+    private final int numBits;
+    private final int numHashes;
+
+    private BloomFilter(long[] bits, int numHashes) {
+        this.bits = bits;
+        this.numBits = bits.length * 64;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Creates an empty filter sized for a number of keys.
+     *
+     * @param expectedKeys number of keys that will be added
+     * @param bitsPerKey   filter bits per key; more bits mean fewer false positives
+     * @return empty filter
+     */
+    public static BloomFilter create(long expectedKeys, int bitsPerKey) {
+        long wantedBits = Math.max(64, expectedKeys * bitsPerKey);
+        int words = (int) Math.min(Integer.MAX_VALUE / 64, (wantedBits + 63) / 64);
+        // k = ln 2 * bits per key minimises false positives
+        int hashes = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * 0.69)));
+        return new BloomFilter(new long[words], hashes);
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param key key to add
+     */
+    public void add(String key) {
+        add(hash(key));
+    }
+
+    void add(long h) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Tests whether a key may have been added.
+     *
+     * @param key key to test
+     * @return {@code false} if the key was definitely never added
+     */
+    public boolean mightContain(String key) {
+        return mightContain(hash(key));
+    }
+
+    /**
+     * Tests a key by its precomputed {@link #hash(String)}, so a key checked
+     * against many filters is hashed once.
+     */
+    boolean mightContain(long h) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the filter.
+     *
+     * @param out destination
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(numHashes);
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in source
+     * @return filter
+     * @throws IOException if the data is truncated or invalid
+     */
+    public static BloomFilter readFrom(DataInput in) throws IOException {
+        int hashes = in.readInt();
+        int words = in.readInt();
+        if (hashes <= 0 || words <= 0) {
+            throw new IOException("Corrupt bloom filter");
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits, hashes);
+    }
+
+    /**
+     * Hash used for filter positions, see {@link KeyHash#hash64(String)}.
+     * Segment files store filters built with it, so it must not change.
+     */
+    static long hash(String key) {
+        return KeyHash.hash64(key);
+    }
+}
@@ -0,0 +1,846 @@
+package edu.univ.lms.repository.lsm;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Embedded log-structured key-value store.
+ * <p>
+ * Writes go to a write-ahead log and a sorted in-memory memtable. When the
+ * memtable is full it is frozen and written, on a background thread, as an
+ * immutable sorted segment file ({@link SSTable}) with a sparse index and
+ * a {@link BloomFilter}; writers only wait if the previous memtable is
+ * still being flushed. A point read checks the memtables, then the
+ * segments from newest to oldest, skipping every segment whose filter
+ * rules the key out.
+ * <p>
+ * Segments carry a level. When a level holds {@link #setCompactionFanout
+ * fanout} segments, a second background thread merges them into one
+ * segment of the next level, so every record is rewritten only a
+ * logarithmic number of times as the store grows. Deletes are tombstones
+ * until a merge that produces the oldest segment drops them.
+ * <p>
+ * The live segments are listed, newest first, in a <code>MANIFEST</code>
+ * file that is replaced atomically; files not named there are leftovers of
+ * an interrupted flush or merge and are deleted on open. Log records are
+ * buffered until {@link #sync()}, or written through on every change with
+ * {@link #setSyncWrites(boolean)}.
+ */
+public final class LsmStore implements Closeable {
+
+    /** Default memtable size that triggers a flush. */
+    public static final long DEFAULT_MEMTABLE_BYTES = 8L * 1024 * 1024;
+
+    /** Default number of segments per level that triggers a merge. */
+    public static final int DEFAULT_COMPACTION_FANOUT = 4;
+
+    /** Marker value for deleted keys; compared by identity. */
+    static final byte[] TOMBSTONE = new byte[0];
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final String SEGMENT_SUFFIX = ".sst";
+    private static final String LOG_SUFFIX = ".log";
+
+    /** Approximate per-entry memtable overhead (skip list node, entry, array headers). */
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final Path dir;
+
+    private long memTableBytes = DEFAULT_MEMTABLE_BYTES;
+    private int compactionFanout = DEFAULT_COMPACTION_FANOUT;
+    private boolean syncWrites;
+
+    /** Guards segment files against being closed while a read uses them. */
+    private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+
+    private volatile MemTable active;
+    private volatile MemTable flushing;
+    private volatile List<Segment> segments = Collections.emptyList();
+
+    private WriteAheadLog log;
+    private long nextFileNumber;
+    private IOException backgroundError;
+    private boolean closed;
+
+    private final ExecutorService flusher = daemonExecutor("lsm-flush");
+    private final ExecutorService compactor = daemonExecutor("lsm-compaction");
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+
+    private LsmStore(Path dir) {
+        this.dir = dir;
+    }
+
+    // ---------------------------------------------------------
+    // Opening
+    // ---------------------------------------------------------
+
+    /**
+     * Opens a store, creating the directory if needed. Changes left in
+     * write-ahead logs by an earlier run are replayed and flushed.
+     *
+     * @param dir directory holding the store files
+     * @return open store
+     * @throws IOException if the store cannot be read
+     */
+    public static LsmStore open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        LsmStore store = new LsmStore(dir);
+        try {
+            store.recover();
+        } catch (IOException | RuntimeException e) {
+            store.closeQuietly();
+            throw e;
+        }
+        return store;
+    }
+
+    private void recover() throws IOException {
+        List<Segment> live = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        Path manifest = dir.resolve(MANIFEST);
+        if (Files.exists(manifest)) {
+            for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.trim().split(" ");
+                if (parts.length != 2) {
+                    throw new IOException("Corrupt manifest line: " + line);
+                }
+                names.add(parts[1]);
+                live.add(new Segment(SSTable.open(dir.resolve(parts[1])), Integer.parseInt(parts[0])));
+            }
+        }
+        segments = Collections.unmodifiableList(live);
+
+        // Remove leftovers and collect logs to replay
+        List<Path> logs = new ArrayList<>();
+        long maxNumber = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long number = fileNumber(name);
+                if (number < 0) {
+                    continue;
+                }
+                maxNumber = Math.max(maxNumber, number);
+                if (name.endsWith(LOG_SUFFIX)) {
+                    logs.add(file);
+                } else if (name.endsWith(SEGMENT_SUFFIX) && !names.contains(name)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        nextFileNumber = maxNumber + 1;
+        logs.sort(Comparator.comparingLong(p -> fileNumber(p.getFileName().toString())));
+
+        active = new MemTable();
+        for (Path file : logs) {
+            WriteAheadLog.replay(file, active::put);
+        }
+        if (!active.isEmpty()) {
+            writeSegment(active);
+        }
+        for (Path file : logs) {
+            Files.deleteIfExists(file);
+        }
+        active = new MemTable();
+        log = new WriteAheadLog(newFile(LOG_SUFFIX));
+    }
+
+    // ---------------------------------------------------------
+    // Configuration
+    // ---------------------------------------------------------
+
+    /**
+     * Sets the memtable size that triggers a flush to a segment file.
+     *
+     * @param memTableBytes approximate memtable size in bytes
+     */
+    public synchronized void setMemTableBytes(long memTableBytes) {
+        this.memTableBytes = memTableBytes;
+    }
+
+    /**
+     * Sets how many segments of one level are merged into the next level.
+     *
+     * @param compactionFanout segments per level, at least 2
+     */
+    public synchronized void setCompactionFanout(int compactionFanout) {
+        if (compactionFanout < 2) {
+            throw new IllegalArgumentException("compactionFanout must be at least 2");
+        }
+        this.compactionFanout = compactionFanout;
+    }
+
+    /**
+     * Sets whether every change is forced to disk before it returns.
+     * When off (the default), call {@link #sync()} after a batch.
+     *
+     * @param syncWrites {@code true} to force each write
+     */
+    public synchronized void setSyncWrites(boolean syncWrites) {
+        this.syncWrites = syncWrites;
+    }
+
+    // ---------------------------------------------------------
+    // Reads
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the value stored under a key.
+     *
+     * @param key key to look up
+     * @return value, or {@code null} if the key is absent or deleted
+     * @throws IOException if a segment file cannot be read
+     */
+    public byte[] get(String key) throws IOException {
+        Objects.requireNonNull(key, "key");
+        byte[] value = active.get(key);
+        if (value == null) {
+            MemTable frozen = flushing;
+            if (frozen != null) {
+                value = frozen.get(key);
+            }
+        }
+        if (value == null) {
+            long hash = BloomFilter.hash(key);
+            segmentLock.readLock().lock();
+            try {
+                for (Segment segment : segments) {
+                    value = segment.table.get(key, hash);
+                    if (value != null) {
+                        break;
+                    }
+                }
+            } finally {
+                segmentLock.readLock().unlock();
+            }
+        }
+        return value == TOMBSTONE ? null : value;
+    }
+
+    /**
+     * Visits every live key and value in key order. Changes made during the
+     * scan may or may not be seen; segments are not merged away under it.
+     *
+     * @param visitor receives each key and value
+     * @return number of entries visited
+     * @throws IOException if a segment file cannot be read
+     */
+    public long forEach(BiConsumer<String, byte[]> visitor) throws IOException {
+        segmentLock.readLock().lock();
+        List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>();
+        try {
+            sources.add(active.iterator());
+            MemTable frozen = flushing;
+            if (frozen != null) {
+                sources.add(frozen.iterator());
+            }
+            for (Segment segment : segments) {
+                sources.add(segment.table.scan());
+            }
+            MergeIterator merged = new MergeIterator(sources, true);
+            long count = 0;
+            while (merged.hasNext()) {
+                Map.Entry<String, byte[]> entry = merged.next();
+                visitor.accept(entry.getKey(), entry.getValue());
+                count++;
+            }
+            return count;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            closeAll(sources);
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of live segment files.
+     *
+     * @return segment count
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Returns the directory holding the store files.
+     *
+     * @return store directory
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    // ---------------------------------------------------------
+    // Writes
+    // ---------------------------------------------------------
+
+    /**
+     * Stores a value under a key, replacing any previous value.
+     *
+     * @param key   key
+     * @param value value; the array must not be modified afterwards
+     * @throws IOException if the change cannot be logged or a background flush failed
+     */
+    public void put(String key, byte[] value) throws IOException {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        // An empty value must not be mistaken for the tombstone marker
+        write(key, value == TOMBSTONE ? new byte[0] : value);
+    }
+
+    /**
+     * Deletes a key. Deleting a missing key is allowed.
+     *
+     * @param key key
+     * @throws IOException if the change cannot be logged or a background flush failed
+     */
+    public void delete(String key) throws IOException {
+        Objects.requireNonNull(key, "key");
+        write(key, TOMBSTONE);
+    }
+
+    private synchronized void write(String key, byte[] value) throws IOException {
+        ensureUsable();
+        log.append(key, value);
+        if (syncWrites) {
+            log.sync();
+        }
+        active.put(key, value);
+        if (active.bytes() >= memTableBytes) {
+            rotate();
+        }
+    }
+
+    /**
+     * Forces every logged change to disk.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized void sync() throws IOException {
+        ensureUsable();
+        log.sync();
+    }
+
+    /**
+     * Writes the memtable to a segment file and waits until it is done.
+     *
+     * @throws IOException if the segment cannot be written
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            ensureUsable();
+            if (!active.isEmpty()) {
+                rotate();
+            }
+            awaitFlush();
+        }
+    }
+
+    /**
+     * Merges every segment into one, dropping deleted and overwritten
+     * entries, and waits until it is done.
+     *
+     * @throws IOException if the merge fails
+     */
+    public void compact() throws IOException {
+        synchronized (this) {
+            ensureUsable();
+        }
+        Future<?> done = compactor.submit(() -> {
+            List<Segment> inputs = segments;
+            if (inputs.size() > 1) {
+                int level = 0;
+                for (Segment s : inputs) {
+                    level = Math.max(level, s.level);
+                }
+                merge(inputs, level + 1);
+            }
+            return null;
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compacting", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException("Compaction failed", e.getCause());
+        }
+    }
+
+    /** Freezes the memtable and hands it to the flush thread. Caller holds the monitor. */
+    private void rotate() throws IOException {
+        awaitFlush();
+        WriteAheadLog frozenLog = log;
+        log = new WriteAheadLog(newFile(LOG_SUFFIX));
+        frozenLog.close();
+
+        MemTable frozen = active;
+        frozen.log = frozenLog.getFile();
+        // Publish as flushing before replacing active so readers never miss it
+        flushing = frozen;
+        active = new MemTable();
+        flusher.execute(() -> flushInBackground(frozen));
+    }
+
+    /** Waits until no memtable is being flushed. Caller holds the monitor. */
+    private void awaitFlush() throws IOException {
+        boolean interrupted = false;
+        while (flushing != null && backgroundError == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        ensureUsable();
+    }
+
+    private void flushInBackground(MemTable frozen) {
+        try {
+            writeSegment(frozen);
+            synchronized (this) {
+                flushing = null;
+                notifyAll();
+            }
+            Files.deleteIfExists(frozen.log);
+            scheduleCompaction();
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                // The frozen memtable stays readable and its log stays on disk
+                backgroundError = e instanceof IOException ? (IOException) e : new IOException(e);
+                notifyAll();
+            }
+            System.out.println("Error flushing storage segment: " + e.getMessage());
+        }
+    }
+
+    /** Writes a memtable as a new level-0 segment and publishes it. */
+    private void writeSegment(MemTable table) throws IOException {
+        Path file;
+        synchronized (this) {
+            file = newFile(SEGMENT_SUFFIX);
+        }
+        SSTable written = SSTable.write(file, table.iterator(), table.size());
+        segmentLock.writeLock().lock();
+        try {
+            List<Segment> next = new ArrayList<>();
+            next.add(new Segment(written, 0));
+            next.addAll(segments);
+            writeManifest(next);
+            segments = Collections.unmodifiableList(next);
+        } catch (IOException e) {
+            written.close();
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Compaction
+    // ---------------------------------------------------------
+
+    private void scheduleCompaction() {
+        if (compactionQueued.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                compactionQueued.set(false);
+                try {
+                    compactLevels();
+                } catch (IOException | RuntimeException e) {
+                    // Segments stay as they are; the next flush retries
+                    System.out.println("Error compacting storage segments: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /** Merges full levels, lowest first, until no level reaches the fanout. */
+    private void compactLevels() throws IOException {
+        while (true) {
+            List<Segment> current = segments;
+            int fanout;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                fanout = compactionFanout;
+            }
+            List<Segment> run = null;
+            int i = 0;
+            while (i < current.size()) {
+                int level = current.get(i).level;
+                int j = i;
+                while (j < current.size() && current.get(j).level == level) {
+                    j++;
+                }
+                if (j - i >= fanout) {
+                    run = current.subList(i, j);
+                    break;
+                }
+                i = j;
+            }
+            if (run == null) {
+                return;
+            }
+            merge(new ArrayList<>(run), run.get(0).level + 1);
+        }
+    }
+
+    /**
+     * Merges consecutive segments (newest first) into one segment that takes
+     * their place. Runs on the compaction thread only, so the inputs stay
+     * consecutive: flushes only ever add segments at the front.
+     */
+    private void merge(List<Segment> inputs, int level) throws IOException {
+        List<Segment> before = segments;
+        boolean oldest = before.get(before.size() - 1) == inputs.get(inputs.size() - 1);
+
+        List<Iterator<Map.Entry<String, byte[]>>> sources = new ArrayList<>();
+        long expected = 0;
+        Path file;
+        synchronized (this) {
+            file = newFile(SEGMENT_SUFFIX);
+        }
+        SSTable merged;
+        try {
+            for (Segment s : inputs) {
+                sources.add(s.table.scan());
+                expected += s.table.getEntryCount();
+            }
+            // Tombstones can only be dropped when nothing older could resurface
+            merged = SSTable.write(file, new MergeIterator(sources, oldest), expected);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            closeAll(sources);
+        }
+
+        segmentLock.writeLock().lock();
+        try {
+            List<Segment> next = new ArrayList<>(segments);
+            int at = next.indexOf(inputs.get(0));
+            next.removeAll(inputs);
+            next.add(at, new Segment(merged, level));
+            writeManifest(next);
+            segments = Collections.unmodifiableList(next);
+            for (Segment s : inputs) {
+                s.table.close();
+                Files.deleteIfExists(s.table.getFile());
+            }
+        } catch (IOException e) {
+            merged.close();
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Files
+    // ---------------------------------------------------------
+
+    /** Allocates a new numbered file name. Caller holds the monitor. */
+    private Path newFile(String suffix) {
+        return dir.resolve(String.format("%06d%s", nextFileNumber++, suffix));
+    }
+
+    private static long fileNumber(String name) {
+        int dot = name.indexOf('.');
+        if (dot <= 0 || !(name.endsWith(SEGMENT_SUFFIX) || name.endsWith(LOG_SUFFIX))) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(0, dot));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Atomically replaces the manifest with the given segment list. */
+    private void writeManifest(List<Segment> list) throws IOException {
+        Path manifest = dir.resolve(MANIFEST);
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Segment s : list) {
+                out.write(s.level + " " + s.table.getFile().getFileName());
+                out.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        try {
+            Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, manifest, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------
+
+    private void ensureUsable() throws IOException {
+        if (closed) {
+            throw new IOException("Store is closed: " + dir);
+        }
+        if (backgroundError != null) {
+            throw new IOException("Store flush failed: " + backgroundError.getMessage(), backgroundError);
+        }
+    }
+
+    /**
+     * Waits for background work, forces the log and closes every file.
+     * Unflushed memtable contents stay in the log and are replayed on the
+     * next {@link #open(Path)}.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            while (flushing != null && backgroundError == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            closed = true;
+        }
+        flusher.shutdown();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            synchronized (this) {
+                if (log != null) {
+                    log.close();
+                }
+            }
+        } finally {
+            segmentLock.writeLock().lock();
+            try {
+                for (Segment s : segments) {
+                    s.table.close();
+                }
+            } finally {
+                segmentLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException | RuntimeException e) {
+            // Already failing; keep the original error
+        }
+    }
+
+    private static void closeAll(List<Iterator<Map.Entry<String, byte[]>>> sources) {
+        for (Iterator<Map.Entry<String, byte[]>> source : sources) {
+            if (source instanceof Closeable) {
+                try {
+                    ((Closeable) source).close();
+                } catch (IOException e) {
+                    // Read-only stream; nothing to recover
+                }
+            }
+        }
+    }
+
+    private static ExecutorService daemonExecutor(String name) {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // ---------------------------------------------------------
+    // Internals
+    // ---------------------------------------------------------
+
+    /** A segment file with its level. */
+    private static final class Segment {
+        final SSTable table;
+        final int level;
+
+        Segment(SSTable table, int level) {
+            this.table = table;
+            this.level = level;
+        }
+    }
+
+    /** Sorted in-memory table with an approximate byte size. */
+    private static final class MemTable {
+        private final ConcurrentSkipListMap<String, byte[]> map = new ConcurrentSkipListMap<>();
+        private final AtomicLong bytes = new AtomicLong();
+
+        /** Log file holding this table's changes, set when it is frozen. */
+        Path log;
+
+        void put(String key, byte[] value) {
+            byte[] previous = map.put(key, value);
+            long delta = value.length;
+            if (previous == null) {
+                delta += ENTRY_OVERHEAD + 2L * key.length();
+            } else {
+                delta -= previous.length;
+            }
+            bytes.addAndGet(delta);
+        }
+
+        byte[] get(String key) {
+            return map.get(key);
+        }
+
+        long bytes() {
+            return bytes.get();
+        }
+
+        int size() {
+            return map.size();
+        }
+
+        boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        Iterator<Map.Entry<String, byte[]>> iterator() {
+            return map.entrySet().iterator();
+        }
+    }
+
+    /**
+     * K-way merge of sorted sources given newest first. For a key present in
+     * several sources the newest value wins; tombstones are dropped on request.
+     */
+    static final class MergeIterator implements Iterator<Map.Entry<String, byte[]>> {
+
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>();
+        private final boolean dropTombstones;
+        private Map.Entry<String, byte[]> next;
+
+        MergeIterator(List<Iterator<Map.Entry<String, byte[]>>> sources, boolean dropTombstones) {
+            this.dropTombstones = dropTombstones;
+            for (int i = 0; i < sources.size(); i++) {
+                Cursor cursor = new Cursor(sources.get(i), i);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                }
+            }
+            next = computeNext();
+        }
+
+        private Map.Entry<String, byte[]> computeNext() {
+            while (!queue.isEmpty()) {
+                Cursor newest = queue.poll();
+                Map.Entry<String, byte[]> winner = newest.current;
+                // Skip older versions of the same key
+                while (!queue.isEmpty() && queue.peek().current.getKey().equals(winner.getKey())) {
+                    Cursor older = queue.poll();
+                    if (older.advance()) {
+                        queue.add(older);
+                    }
+                }
+                if (newest.advance()) {
+                    queue.add(newest);
+                }
+                if (!(dropTombstones && winner.getValue() == TOMBSTONE)) {
+                    return winner;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, byte[]> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<String, byte[]> result = next;
+            next = computeNext();
+            return result;
+        }
+
+        private static final class Cursor implements Comparable<Cursor> {
+            final Iterator<Map.Entry<String, byte[]>> source;
+            final int age;
+            Map.Entry<String, byte[]> current;
+
+            Cursor(Iterator<Map.Entry<String, byte[]>> source, int age) {
+                this.source = source;
+                this.age = age;
+            }
+
+            boolean advance() {
+                current = source.hasNext() ? source.next() : null;
+                return current != null;
+            }
+
+            @Override
+            public int compareTo(Cursor other) {
+                int cmp = current.getKey().compareTo(other.current.getKey());
+                return cmp != 0 ? cmp : Integer.compare(age, other.age);
+            }
+        }
+    }
+}
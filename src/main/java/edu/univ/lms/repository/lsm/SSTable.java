@@ -0,0 +1,427 @@
+package edu.univ.lms.repository.lsm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable, sorted segment file of the {@link LsmStore}.
+ * <p>
+ * Layout:
+ * <pre>
+ * entries  keyLength varint, key UTF-8, valueCode varint, value bytes
+ *          (valueCode 0 = tombstone, otherwise value length + 1), sorted by key
+ * index    count varint, then every {@value #INDEX_INTERVAL}th key with its entry offset
+ * bloom    {@link BloomFilter} over every key in the file
+ * footer   indexOffset long, bloomOffset long, entryCount long, magic int, version int
+ * </pre>
+ * The sparse index and the Bloom filter are loaded when the table is opened,
+ * so a point read costs at most one positional read of a few hundred bytes,
+ * and none at all when the filter rules the key out.
+ */
+final class SSTable implements Closeable {
+
+    static final int MAGIC = 0x4C534D54;
+    static final int VERSION = 1;
+    static final int FOOTER_SIZE = 32;
+
+    /** Number of entries between two sparse index keys. */
+    static final int INDEX_INTERVAL = 16;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final String[] indexKeys;
+    private final long[] indexOffsets;
+    private final long indexOffset;
+    private final long entryCount;
+    private final BloomFilter bloom;
+
+    private SSTable(Path file, FileChannel channel, String[] indexKeys, long[] indexOffsets,
+                    long indexOffset, long entryCount, BloomFilter bloom) {
+        this.file = file;
+        this.channel = channel;
+        this.indexKeys = indexKeys;
+        this.indexOffsets = indexOffsets;
+        this.indexOffset = indexOffset;
+        this.entryCount = entryCount;
+        this.bloom = bloom;
+    }
+
+    // ---------------------------------------------------------
+    // Reading
+    // ---------------------------------------------------------
+
+    /**
+     * Opens a table and loads its index and Bloom filter.
+     *
+     * @param file table file
+     * @return open table
+     * @throws IOException if the file cannot be read or is not a table
+     */
+    static SSTable open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_SIZE) {
+                throw new IOException("Not a segment file: " + file);
+            }
+            ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            long entryCount = footer.getLong();
+            if (footer.getInt() != MAGIC || footer.getInt() != VERSION
+                    || indexOffset < 0 || bloomOffset < indexOffset || bloomOffset > size - FOOTER_SIZE) {
+                throw new IOException("Not a segment file: " + file);
+            }
+
+            ByteBuffer index = readFully(channel, indexOffset, (int) (bloomOffset - indexOffset));
+            int count = (int) readVarLong(index);
+            String[] keys = new String[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = readString(index);
+                offsets[i] = readVarLong(index);
+            }
+
+            ByteBuffer bloomBytes = readFully(channel, bloomOffset, (int) (size - FOOTER_SIZE - bloomOffset));
+            BloomFilter bloom = BloomFilter.readFrom(new DataInputStream(
+                    new ByteArrayInputStream(bloomBytes.array())));
+
+            return new SSTable(file, channel, keys, offsets, indexOffset, entryCount, bloom);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e instanceof IOException ? (IOException) e : new IOException("Corrupt segment file: " + file, e);
+        }
+    }
+
+    /**
+     * Returns the file backing this table.
+     *
+     * @return table file
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of entries, tombstones included.
+     *
+     * @return entry count
+     */
+    long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Looks up a key.
+     *
+     * @param key  key to find
+     * @param hash {@link BloomFilter#hash(String)} of the key
+     * @return the value, {@link LsmStore#TOMBSTONE} if the key was deleted
+     *         here, or {@code null} if this table does not mention the key
+     * @throws IOException if the file cannot be read
+     */
+    byte[] get(String key, long hash) throws IOException {
+        if (indexKeys.length == 0 || !bloom.mightContain(hash)) {
+            return null;
+        }
+        int block = floorIndex(key);
+        if (block < 0) {
+            return null;
+        }
+        long start = indexOffsets[block];
+        long end = block + 1 < indexOffsets.length ? indexOffsets[block + 1] : indexOffset;
+        ByteBuffer entries = readFully(channel, start, (int) (end - start));
+
+        while (entries.hasRemaining()) {
+            int cmp = readString(entries).compareTo(key);
+            int code = (int) readVarLong(entries);
+            if (cmp == 0) {
+                if (code == 0) {
+                    return LsmStore.TOMBSTONE;
+                }
+                byte[] value = new byte[code - 1];
+                entries.get(value);
+                return value;
+            }
+            if (cmp > 0) {
+                return null;
+            }
+            if (code > 0) {
+                entries.position(entries.position() + code - 1);
+            }
+        }
+        return null;
+    }
+
+    /** Returns the last index slot whose key is at most {@code key}, or -1. */
+    private int floorIndex(String key) {
+        int low = 0;
+        int high = indexKeys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = indexKeys[mid].compareTo(key);
+            if (cmp == 0) {
+                return mid;
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Returns a sequential cursor over every entry in key order. The cursor
+     * reads through its own stream, so it does not disturb point reads.
+     *
+     * @return entry cursor; must be closed
+     * @throws IOException if the file cannot be opened
+     */
+    Scanner scan() throws IOException {
+        FileChannel own = FileChannel.open(file, StandardOpenOption.READ);
+        return new Scanner(new DataInputStream(new BufferedInputStream(Channels.newInputStream(own), BUFFER_SIZE)),
+                entryCount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Sequential iterator over the entries of a table. Values are
+     * {@link LsmStore#TOMBSTONE} for deleted keys.
+     */
+    static final class Scanner implements Iterator<Map.Entry<String, byte[]>>, Closeable {
+        private final DataInputStream in;
+        private long remaining;
+
+        private Scanner(DataInputStream in, long remaining) {
+            this.in = in;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Map.Entry<String, byte[]> next() {
+            if (remaining <= 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                byte[] keyBytes = new byte[(int) readVarLong(in)];
+                in.readFully(keyBytes);
+                int code = (int) readVarLong(in);
+                byte[] value = LsmStore.TOMBSTONE;
+                if (code > 0) {
+                    value = new byte[code - 1];
+                    in.readFully(value);
+                }
+                remaining--;
+                return new AbstractMap.SimpleImmutableEntry<>(new String(keyBytes, StandardCharsets.UTF_8), value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Writing
+    // ---------------------------------------------------------
+
+    /**
+     * Writes a table from entries that are already sorted by key and forces
+     * it to disk. The file only becomes part of the store once the manifest
+     * names it, so a crash mid-write leaves an orphan that is removed on the
+     * next open.
+     *
+     * @param file         file to create
+     * @param entries      sorted entries; {@link LsmStore#TOMBSTONE} values are kept as tombstones
+     * @param expectedKeys upper bound of the entry count, used to size the Bloom filter
+     * @return the table, opened for reading
+     * @throws IOException if the file cannot be written
+     */
+    static SSTable write(Path file, Iterator<Map.Entry<String, byte[]>> entries, long expectedKeys)
+            throws IOException {
+        BloomFilter bloom = BloomFilter.create(expectedKeys, BloomFilter.DEFAULT_BITS_PER_KEY);
+        List<String> indexKeys = new ArrayList<>();
+        List<Long> indexOffsets = new ArrayList<>();
+        long count = 0;
+
+        try (FileOutputStream fileOut = new FileOutputStream(file.toFile())) {
+            CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(counter);
+            String previous = null;
+
+            try {
+                while (entries.hasNext()) {
+                    Map.Entry<String, byte[]> entry = entries.next();
+                    String key = entry.getKey();
+                    if (previous != null && previous.compareTo(key) >= 0) {
+                        throw new IllegalArgumentException("Keys out of order: " + previous + ", " + key);
+                    }
+                    if (count % INDEX_INTERVAL == 0) {
+                        indexKeys.add(key);
+                        indexOffsets.add(counter.position);
+                    }
+                    writeString(out, key);
+                    byte[] value = entry.getValue();
+                    if (value == LsmStore.TOMBSTONE) {
+                        writeVarLong(out, 0);
+                    } else {
+                        writeVarLong(out, value.length + 1L);
+                        out.write(value);
+                    }
+                    bloom.add(BloomFilter.hash(key));
+                    previous = key;
+                    count++;
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            long indexOffset = counter.position;
+            writeVarLong(out, indexKeys.size());
+            for (int i = 0; i < indexKeys.size(); i++) {
+                writeString(out, indexKeys.get(i));
+                writeVarLong(out, indexOffsets.get(i));
+            }
+
+            long bloomOffset = counter.position;
+            bloom.writeTo(out);
+
+            out.writeLong(indexOffset);
+            out.writeLong(bloomOffset);
+            out.writeLong(count);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        return open(file);
+    }
+
+    /** Output stream tracking how many bytes went through it. */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long position;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Encoding helpers (shared with the write-ahead log)
+    // ---------------------------------------------------------
+
+    static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (!in.hasRemaining()) {
+                throw new EOFException("Truncated varint");
+            }
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Truncated varint");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static void writeString(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length > in.remaining()) {
+            throw new EOFException("Truncated string");
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of segment file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
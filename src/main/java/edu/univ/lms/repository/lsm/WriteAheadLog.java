@@ -0,0 +1,145 @@
+package edu.univ.lms.repository.lsm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log protecting the {@link LsmStore} memtable until it is
+ * flushed to a segment file.
+ * <p>
+ * Each frame is {@code length int, crc int, payload}, where the payload
+ * holds one key and its value or a tombstone. Replay stops at the first
+ * short or damaged frame, which is where a crash interrupted the last
+ * append.
+ */
+final class WriteAheadLog implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final FileOutputStream fileOut;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+
+    WriteAheadLog(Path file) throws IOException {
+        this.file = file;
+        this.fileOut = new FileOutputStream(file.toFile(), true);
+        this.out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+    }
+
+    /**
+     * Returns the log file.
+     *
+     * @return file path
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Appends one change. The frame is buffered until {@link #sync()}.
+     *
+     * @param key   changed key
+     * @param value new value, or {@link LsmStore#TOMBSTONE} for a delete
+     * @throws IOException if the buffer cannot be flushed to the file
+     */
+    void append(String key, byte[] value) throws IOException {
+        frame.reset();
+        SSTable.writeString(frame, key);
+        if (value == LsmStore.TOMBSTONE) {
+            SSTable.writeVarLong(frame, 0);
+        } else {
+            SSTable.writeVarLong(frame, value.length + 1L);
+            frame.write(value);
+        }
+        crc.reset();
+        byte[] payload = frame.toByteArray();
+        crc.update(payload, 0, payload.length);
+
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    /**
+     * Flushes buffered frames and forces them to disk.
+     *
+     * @throws IOException if the data cannot be written
+     */
+    void sync() throws IOException {
+        out.flush();
+        fileOut.getFD().sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Replays every intact frame of a log file, in append order.
+     *
+     * @param file log file
+     * @param sink receives each key with its value or {@link LsmStore#TOMBSTONE}
+     * @return number of frames replayed
+     * @throws IOException if the file cannot be read
+     */
+    static int replay(Path file, BiConsumer<String, byte[]> sink) throws IOException {
+        int count = 0;
+        long fileSize = Files.size(file);
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+            CRC32 check = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int expected = in.readInt();
+                    if (length < 0 || length > fileSize) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    check.reset();
+                    check.update(payload, 0, length);
+                    if ((int) check.getValue() != expected) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                byte[] keyBytes = new byte[(int) SSTable.readVarLong(record)];
+                record.readFully(keyBytes);
+                int code = (int) SSTable.readVarLong(record);
+                byte[] value = LsmStore.TOMBSTONE;
+                if (code > 0) {
+                    value = new byte[code - 1];
+                    record.readFully(value);
+                }
+                sink.accept(new String(keyBytes, StandardCharsets.UTF_8), value);
+                count++;
+            }
+        }
+        return count;
+    }
+}
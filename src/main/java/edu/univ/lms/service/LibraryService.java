@@ -1,12 +1,21 @@
 package edu.univ.lms.service;
 
 import edu.univ.lms.model.Book;
+import edu.univ.lms.model.Loan;
 import edu.univ.lms.model.User;
+import edu.univ.lms.repository.CatalogIndex;
+import edu.univ.lms.repository.LoanHistoryStore;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.MutationLog;
+import edu.univ.lms.repository.UnitOfWork;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Service layer for all library-related business logic.
@@ -22,6 +31,11 @@ import java.util.List;
  * <p>
  * The service does not handle user authentication or persistence,
  * which is delegated to {@code UserService} and repository classes.
+ * When a {@link MutationLog} is attached, every successful mutation is
+ * journaled so it survives a crash without a full save.
+ * <p>
+ * Public operations synchronize on the service instance, so kiosk threads
+ * and background checkpoints can use it alongside the console.
  */
 public class LibraryService {
 
@@ -31,12 +45,29 @@ public class LibraryService {
     /** Internal list of books currently in the library system. */
     private List<Book> books = new ArrayList<>();
 
+    /**
+     * Position of each item by ISBN (ignoring case, first match wins like
+     * {@link #searchBookByIsbn}), restored from the persisted catalog index
+     * or built on the first {@link #upsertItem} or {@link #removeItem}, and
+     * dropped when an item is removed or the list is replaced.
+     */
+    private Map<String, Integer> isbnPositions;
+
     /** Maximum number of items a regular user may borrow. */
     private int maxBorrowPerUser = 3;
 
     /** Counter used to auto-generate new ISBN values. */
     private int isbnCounter = 100;
 
+    /** Optional write-ahead log receiving every successful mutation. */
+    private MutationLog mutationLog;
+
+    /** Optional background service told about every successful mutation. */
+    private PersistenceService persistenceService;
+
+    /** Optional store receiving every completed loan. */
+    private LoanHistoryStore loanHistory;
+
     /**
      * Default constructor for creating a new library service.
      * Initializes an empty book list and default borrowing rules.
@@ -52,6 +83,35 @@ public class LibraryService {
         this.maxBorrowPerUser = max;
     }
 
+    /**
+     * Attaches a write-ahead log. Pass {@code null} to stop journaling.
+     *
+     * @param mutationLog log receiving item and fine mutations
+     */
+    public void setMutationLog(MutationLog mutationLog) {
+        this.mutationLog = mutationLog;
+    }
+
+    /**
+     * Attaches a background persistence service that makes mutations durable
+     * asynchronously. Pass {@code null} to detach it.
+     *
+     * @param persistenceService service notified after each mutation
+     */
+    public void setPersistenceService(PersistenceService persistenceService) {
+        this.persistenceService = persistenceService;
+    }
+
+    /**
+     * Attaches a loan history store that records every return. Pass
+     * {@code null} to stop recording.
+     *
+     * @param loanHistory store receiving completed loans
+     */
+    public void setLoanHistory(LoanHistoryStore loanHistory) {
+        this.loanHistory = loanHistory;
+    }
+
     /**
      * Generates the next ISBN number for a new library item.
      * <p>
@@ -69,23 +129,79 @@ public class LibraryService {
      *
      * @param loadedBooks list of books loaded from the repository
      */
-    public void setItems(List<Book> loadedBooks) {
+    public synchronized void setItems(List<Book> loadedBooks) {
         this.books = (loadedBooks != null) ? loadedBooks : new ArrayList<>();
+        isbnPositions = null;
     }
 
     /**
-     * Recomputes the ISBN counter based on the highest stored ISBN.
-     * Must be called once after loading items from persistence.
+     * Stores an item, replacing the one with the same ISBN if there is one,
+     * without checking permissions or journaling. Used to apply changes
+     * replicated from another process's journal. The item is found through
+     * an ISBN index, so the cost does not grow with the catalog.
+     *
+     * @param book item state to store
      */
-    public void restoreIsbnCounter() {
-        int max = 100;
-        for (Book b : books) {
-            try {
-                int num = Integer.parseInt(b.getIsbn());
-                if (num > max) max = num;
-            } catch (Exception ignored) {}
+    public synchronized void upsertItem(Book book) {
+        Map<String, Integer> positions = isbnPositions();
+        Integer position = positions.get(book.getIsbn());
+        if (position != null) {
+            books.set(position, book);
+        } else {
+            positions.put(book.getIsbn(), books.size());
+            books.add(book);
         }
-        this.isbnCounter = max;
+    }
+
+    /**
+     * Removes the item with the given ISBN without checking permissions or
+     * journaling. Used to apply changes replicated from another process's
+     * journal. Removing shifts the items behind it, so the ISBN index is
+     * rebuilt on its next use.
+     *
+     * @param isbn ISBN of the item to remove
+     * @return true if an item was removed
+     */
+    public synchronized boolean removeItem(String isbn) {
+        Integer position = isbnPositions().get(isbn);
+        if (position == null) {
+            return false;
+        }
+        books.remove((int) position);
+        isbnPositions = null;
+        return true;
+    }
+
+    private Map<String, Integer> isbnPositions() {
+        if (isbnPositions == null) {
+            // Same matching as equalsIgnoreCase in searchBookByIsbn
+            Map<String, Integer> positions = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (int i = 0; i < books.size(); i++) {
+                positions.putIfAbsent(books.get(i).getIsbn(), i);
+            }
+            isbnPositions = positions;
+        }
+        return isbnPositions;
+    }
+
+    /**
+     * Recomputes the ISBN counter based on the highest stored ISBN.
+     * Must be called once after loading items from persistence, unless a
+     * valid persisted index is applied with {@link #restoreIndex(CatalogIndex)}.
+     */
+    public synchronized void restoreIsbnCounter() {
+        restoreIndex(CatalogIndex.build(books));
+    }
+
+    /**
+     * Restores the ISBN counter and the ISBN index from a catalog index
+     * describing the current items, without scanning them.
+     *
+     * @param index index built from, or validated against, the loaded items
+     */
+    public synchronized void restoreIndex(CatalogIndex index) {
+        this.isbnCounter = Math.max(100, index.getMaxNumericIsbn());
+        this.isbnPositions = index.copyIsbnPositions();
     }
 
     // =========================================================
@@ -102,7 +218,7 @@ public class LibraryService {
      * @param book the book to add
      * @return true if the addition is successful, false otherwise
      */
-    public boolean addBook(User user, Book book) {
+    public synchronized boolean addBook(User user, Book book) {
         if (!user.isLoggedIn() || !user.isAdmin()) {
             System.out.println("Only admins can add items.");
             return false;
@@ -113,6 +229,10 @@ public class LibraryService {
         String generatedISBN = generateIsbn();
         book.setIsbn(generatedISBN);
         books.add(book);
+        if (isbnPositions != null) {
+            isbnPositions.putIfAbsent(generatedISBN, books.size() - 1);
+        }
+        journal(LogRecord.Type.ADD_ITEM, book);
 
         System.out.println("Item added successfully with ISBN: " + generatedISBN);
         return true;
@@ -132,7 +252,7 @@ public class LibraryService {
      * @param isbn ISBN of the item to remove
      * @return true if removed, false otherwise
      */
-    public boolean removeBook(User user, String isbn) {
+    public synchronized boolean removeBook(User user, String isbn) {
         if (!user.isLoggedIn() || !user.isAdmin()) {
             System.out.println("Only admins can remove items.");
             return false;
@@ -149,6 +269,8 @@ public class LibraryService {
                 }
 
                 books.remove(b);
+                isbnPositions = null;
+                journal(LogRecord.Type.REMOVE_ITEM, b);
                 System.out.println("Item removed successfully.");
                 return true;
             }
@@ -168,7 +290,7 @@ public class LibraryService {
      * @param newAuthor new author (optional)
      * @return true if update is successful
      */
-    public boolean updateBook(User user, String isbn, String newTitle, String newAuthor) {
+    public synchronized boolean updateBook(User user, String isbn, String newTitle, String newAuthor) {
         if (!user.isLoggedIn() || !user.isAdmin()) {
             System.out.println("Only admins can update items.");
             return false;
@@ -178,6 +300,7 @@ public class LibraryService {
             if (b.getIsbn().equalsIgnoreCase(isbn)) {
                 if (newTitle != null && !newTitle.isBlank()) b.setTitle(newTitle);
                 if (newAuthor != null && !newAuthor.isBlank()) b.setAuthor(newAuthor);
+                journal(LogRecord.Type.UPDATE_ITEM, b);
 
                 System.out.println("Item updated successfully.");
                 return true;
@@ -207,13 +330,28 @@ public class LibraryService {
      * @param isbn ISBN of the item
      * @return true if the borrow operation succeeds
      */
-    public boolean borrowBook(User user, String isbn) {
+    public synchronized boolean borrowBook(User user, String isbn) {
 
         if (!user.isLoggedIn()) {
             System.out.println("You must be logged in to borrow items.");
             return false;
         }
 
+        return borrowBookForSession(user, isbn);
+    }
+
+    /**
+     * Borrows an item for a user whose credentials the caller has already
+     * verified and whose login state it keeps itself, such as a kiosk
+     * connection. Every rule of {@link #borrowBook(User, String)} applies
+     * except the check of the user's own login flag.
+     *
+     * @param user the borrower
+     * @param isbn ISBN of the item
+     * @return true if the borrow operation succeeds
+     */
+    public synchronized boolean borrowBookForSession(User user, String isbn) {
+
         if (user.isAdmin()) {
             System.out.println("Admins cannot borrow items.");
             return false;
@@ -263,6 +401,7 @@ public class LibraryService {
         book.setBorrowed(true);
         book.setBorrowedByUserId(user.getUserId());
         book.setBorrowDate(today);
+        journal(LogRecord.Type.BORROW, book);
 
         System.out.println(user.getName() + " borrowed \"" +
                 book.getTitle() + "\". Due: " + book.getDueDate());
@@ -285,13 +424,27 @@ public class LibraryService {
      * @param isbn ISBN of the item
      * @return true if return is successful
      */
-    public boolean returnBook(User user, String isbn) {
+    public synchronized boolean returnBook(User user, String isbn) {
 
         if (!user.isLoggedIn()) {
             System.out.println("You must be logged in to return items.");
             return false;
         }
 
+        return returnBookForSession(user, isbn);
+    }
+
+    /**
+     * Returns an item for a user whose login state the caller keeps itself,
+     * see {@link #borrowBookForSession(User, String)}. Every rule of
+     * {@link #returnBook(User, String)} applies except the login check.
+     *
+     * @param user returning user
+     * @param isbn ISBN of the item
+     * @return true if return is successful
+     */
+    public synchronized boolean returnBookForSession(User user, String isbn) {
+
         if (user.isAdmin()) {
             System.out.println("Admins cannot return items.");
             return false;
@@ -311,21 +464,33 @@ public class LibraryService {
         }
 
         LocalDate today = LocalDate.now();
+        double fine = 0;
+        // Item and fine are journaled together, so a crash cannot keep only one
+        UnitOfWork unit = new UnitOfWork(mutationLog);
 
         // Late return logic
         if (today.isAfter(book.getDueDate())) {
             long overdueDays = java.time.temporal.ChronoUnit.DAYS
                     .between(book.getDueDate(), today);
 
-            double fine = book.calculateFine(overdueDays);
+            fine = book.calculateFine(overdueDays);
             user.addFine(fine);
+            unit.registerUser(LogRecord.Type.FINE, user);
 
             System.out.println("Late return! Overdue by " + overdueDays +
                     " days. Fine: " + fine + " NIS");
         }
 
+        if (loanHistory != null) {
+            // Only queued here; written in the background
+            loanHistory.record(new Loan(book.getIsbn(), user.getUserId(),
+                    book.getBorrowDate(), book.getDueDate(), today, fine));
+        }
+
         book.setBorrowed(false);
         book.setBorrowedByUserId(null);
+        unit.registerBook(LogRecord.Type.RETURN, book);
+        journal(unit);
 
         System.out.println("Item returned successfully.");
         return true;
@@ -341,7 +506,7 @@ public class LibraryService {
      * @param isbn ISBN string to search for
      * @return matching {@link Book}, or null if not found
      */
-    public Book searchBookByIsbn(String isbn) {
+    public synchronized Book searchBookByIsbn(String isbn) {
         for (Book b : books) {
             if (b.getIsbn().equalsIgnoreCase(isbn)) return b;
         }
@@ -355,7 +520,7 @@ public class LibraryService {
      * @param title keyword to search for
      * @return list of matching books
      */
-    public List<Book> searchBooksByTitle(String title) {
+    public synchronized List<Book> searchBooksByTitle(String title) {
         List<Book> list = new ArrayList<>();
         for (Book b : books) {
             if (b.getTitle().toLowerCase().contains(title.toLowerCase())) {
@@ -372,7 +537,7 @@ public class LibraryService {
      * @param author keyword to search for
      * @return list of matching books
      */
-    public List<Book> searchBooksByAuthor(String author) {
+    public synchronized List<Book> searchBooksByAuthor(String author) {
         List<Book> list = new ArrayList<>();
         for (Book b : books) {
             if (b.getAuthor().toLowerCase().contains(author.toLowerCase())) {
@@ -390,7 +555,7 @@ public class LibraryService {
      * Displays all items in the library with basic status information,
      * including whether they are available, borrowed, or overdue.
      */
-    public void showAllBooks() {
+    public synchronized void showAllBooks() {
         if (books.isEmpty()) {
             System.out.println("No items in the library.");
             return;
@@ -424,7 +589,7 @@ public class LibraryService {
      *
      * @param user the user reviewing their borrowed items
      */
-    public void showBorrowedBooks(User user) {
+    public synchronized void showBorrowedBooks(User user) {
         System.out.println("--- Your Items ---");
         for (Book b : books) {
             if (b.isBorrowed() &&
@@ -442,7 +607,7 @@ public class LibraryService {
     /**
      * Displays all overdue items currently in the system.
      */
-    public void showOverdueBooks() {
+    public synchronized void showOverdueBooks() {
         LocalDate today = LocalDate.now();
         System.out.println("--- Overdue Items ---");
 
@@ -463,7 +628,7 @@ public class LibraryService {
      * @param user user to check
      * @return true if the user has overdue items
      */
-    public boolean hasOverdueBooks(User user) {
+    public synchronized boolean hasOverdueBooks(User user) {
         LocalDate today = LocalDate.now();
         for (Book b : books) {
             if (b.isBorrowed() &&
@@ -481,7 +646,7 @@ public class LibraryService {
      * @param user user whose borrowed items should be counted
      * @return number of books borrowed
      */
-    public int countBorrowedBooksByUser(User user) {
+    public synchronized int countBorrowedBooksByUser(User user) {
         int count = 0;
         for (Book b : books) {
             if (b.isBorrowed() &&
@@ -507,7 +672,7 @@ public class LibraryService {
      * @param allUsers list of all registered users
      * @return true if the user is successfully removed
      */
-    public boolean unregisterUser(User admin, User target, List<User> allUsers) {
+    public synchronized boolean unregisterUser(User admin, User target, List<User> allUsers) {
         if (!admin.isAdmin()) return false;
         if (target.isAdmin()) return false;
         if (target.getFineBalance() > 0) return false;
@@ -519,7 +684,69 @@ public class LibraryService {
             }
         }
 
-        return allUsers.remove(target);
+        boolean removed = allUsers.remove(target);
+        if (removed) {
+            journal(LogRecord.Type.UNREGISTER, target);
+        }
+        return removed;
+    }
+
+    /**
+     * Appends an item mutation to the write-ahead log, if one is attached,
+     * and notifies the persistence service. Journal failures are reported but
+     * do not undo the in-memory change.
+     *
+     * @param type mutation type
+     * @param book item state after the change
+     */
+    private void journal(LogRecord.Type type, Book book) {
+        if (mutationLog != null) {
+            try {
+                mutationLog.appendBook(type, book);
+            } catch (IOException e) {
+                System.out.println("Error writing journal: " + e.getMessage());
+            }
+        }
+        if (persistenceService != null) {
+            persistenceService.markDirty();
+        }
+    }
+
+    /**
+     * Appends a user mutation to the write-ahead log, if one is attached,
+     * and notifies the persistence service.
+     *
+     * @param type mutation type
+     * @param user user state after the change
+     */
+    private void journal(LogRecord.Type type, User user) {
+        if (mutationLog != null) {
+            try {
+                mutationLog.appendUser(type, user);
+            } catch (IOException e) {
+                System.out.println("Error writing journal: " + e.getMessage());
+            }
+        }
+        if (persistenceService != null) {
+            persistenceService.markDirty();
+        }
+    }
+
+    /**
+     * Commits a unit of work to the write-ahead log, if one is attached,
+     * and notifies the persistence service.
+     *
+     * @param unit related mutations to journal atomically
+     */
+    private void journal(UnitOfWork unit) {
+        try {
+            unit.commit();
+        } catch (IOException e) {
+            System.out.println("Error writing journal: " + e.getMessage());
+        }
+        if (persistenceService != null) {
+            persistenceService.markDirty();
+        }
     }
 
     /**
@@ -530,4 +757,18 @@ public class LibraryService {
     public List<Book> getAllBooks() {
         return Collections.unmodifiableList(books);
     }
+
+    /**
+     * Returns independent copies of all books, taken atomically with respect
+     * to every other operation of this service.
+     *
+     * @return point-in-time copy of the catalog
+     */
+    public synchronized List<Book> copyBooks() {
+        List<Book> copy = new ArrayList<>(books.size());
+        for (Book b : books) {
+            copy.add(new Book(b));
+        }
+        return copy;
+    }
 }
@@ -0,0 +1,274 @@
+package edu.univ.lms.service;
+
+import edu.univ.lms.repository.GroupCommitSaver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background persistence with debouncing, a size threshold and backpressure.
+ * <p>
+ * Services call {@link #markDirty()} after each in-memory change and return
+ * immediately; a worker thread performs the actual flush later. A flush runs
+ * when:
+ * <ul>
+ *     <li>no new change arrived for the debounce interval, or</li>
+ *     <li>the oldest unflushed change is older than the maximum delay, or</li>
+ *     <li>the number of unflushed changes reaches the flush threshold.</li>
+ * </ul>
+ * The maximum delay is the administrator's bound on the data-loss window
+ * (plus the duration of one flush). If the disk cannot keep up and the number
+ * of unflushed changes reaches the backpressure limit, {@link #markDirty()}
+ * blocks until a flush completes, so memory and loss window stay bounded.
+ * <p>
+ * The flush action must not take locks that callers of {@link #markDirty()}
+ * may hold, otherwise backpressure could deadlock. Syncing the mutation log
+ * satisfies this.
+ */
+public class PersistenceService implements Closeable {
+
+    /** Default quiet period before a flush. */
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+    /** Default upper bound on how long a change may stay unflushed. */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+
+    /** Default number of changes that triggers an immediate flush. */
+    public static final int DEFAULT_FLUSH_THRESHOLD = 500;
+
+    /** Default number of unflushed changes at which callers are blocked. */
+    public static final int DEFAULT_MAX_PENDING = 5000;
+
+    private final GroupCommitSaver saver;
+
+    private long debounceNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_DEBOUNCE_MILLIS);
+    private long maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_DELAY_MILLIS);
+    private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+    private int maxPending = DEFAULT_MAX_PENDING;
+
+    /** Number of changes reported so far. */
+    private long changeCount;
+
+    /** Highest change number known to be durable. */
+    private long flushedCount;
+
+    private long firstUnflushedNanos;
+    private long lastChangeNanos;
+
+    private Thread worker;
+    private boolean running;
+
+    /**
+     * Creates a persistence service.
+     *
+     * @param flush writes all changes made so far to durable storage
+     */
+    public PersistenceService(GroupCommitSaver.Write flush) {
+        this.saver = new GroupCommitSaver(flush);
+    }
+
+    // ---------------------------------------------------------
+    // Configuration
+    // ---------------------------------------------------------
+
+    /**
+     * Sets the quiet period after the last change before a flush runs.
+     *
+     * @param debounce period length
+     * @param unit     period unit
+     */
+    public synchronized void setDebounce(long debounce, TimeUnit unit) {
+        this.debounceNanos = unit.toNanos(debounce);
+    }
+
+    /**
+     * Sets the maximum time a change may stay unflushed, i.e. the data-loss
+     * window on a crash.
+     *
+     * @param maxDelay delay bound
+     * @param unit     delay unit
+     */
+    public synchronized void setMaxDelay(long maxDelay, TimeUnit unit) {
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+    }
+
+    /**
+     * Sets the number of unflushed changes that triggers an immediate flush.
+     *
+     * @param flushThreshold change count
+     */
+    public synchronized void setFlushThreshold(int flushThreshold) {
+        this.flushThreshold = flushThreshold;
+    }
+
+    /**
+     * Sets the number of unflushed changes at which {@link #markDirty()} blocks.
+     *
+     * @param maxPending change count
+     */
+    public synchronized void setMaxPending(int maxPending) {
+        this.maxPending = maxPending;
+    }
+
+    // ---------------------------------------------------------
+    // Lifecycle
+    // ---------------------------------------------------------
+
+    /**
+     * Starts the background flush thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        worker = new Thread(this::runWorker, "persistence");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stops the background thread and flushes whatever is still pending.
+     */
+    @Override
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            running = false;
+            stopping = worker;
+            worker = null;
+            notifyAll();
+        }
+        if (stopping != null) {
+            try {
+                stopping.join(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            System.out.println("Error flushing data: " + e.getMessage());
+        }
+    }
+
+    // ---------------------------------------------------------
+    // Changes
+    // ---------------------------------------------------------
+
+    /**
+     * Records that in-memory state changed. Returns immediately unless the
+     * backpressure limit is reached.
+     */
+    public synchronized void markDirty() {
+        long now = System.nanoTime();
+        if (changeCount == flushedCount) {
+            firstUnflushedNanos = now;
+        }
+        changeCount++;
+        lastChangeNanos = now;
+        notifyAll();
+
+        while (running && changeCount - flushedCount >= maxPending) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of changes not yet known to be durable.
+     *
+     * @return unflushed change count
+     */
+    public synchronized long getPendingChanges() {
+        return changeCount - flushedCount;
+    }
+
+    /**
+     * Flushes synchronously. On return, every change reported before the
+     * call is durable.
+     *
+     * @throws IOException if the flush failed
+     */
+    public void flush() throws IOException {
+        long upTo;
+        synchronized (this) {
+            upTo = changeCount;
+            if (upTo == flushedCount) {
+                return;
+            }
+        }
+        // The write starts after this point, so it covers every change up to upTo
+        saver.save();
+        synchronized (this) {
+            if (upTo > flushedCount) {
+                flushedCount = upTo;
+                firstUnflushedNanos = System.nanoTime();
+            }
+            notifyAll();
+        }
+    }
+
+    private void runWorker() {
+        while (true) {
+            synchronized (this) {
+                if (!awaitFlushDue()) {
+                    return;
+                }
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                System.out.println("Error flushing data: " + e.getMessage());
+                synchronized (this) {
+                    // Back off before retrying; the changes stay pending
+                    waitNanos(Math.max(debounceNanos, TimeUnit.MILLISECONDS.toNanos(1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits until a flush is due. Must hold the monitor.
+     *
+     * @return {@code false} when the service was stopped
+     */
+    private boolean awaitFlushDue() {
+        while (running) {
+            long pending = changeCount - flushedCount;
+            if (pending == 0) {
+                waitNanos(0);
+                continue;
+            }
+            if (pending >= flushThreshold) {
+                return true;
+            }
+            long now = System.nanoTime();
+            long due = Math.min(lastChangeNanos + debounceNanos, firstUnflushedNanos + maxDelayNanos);
+            if (now - due >= 0) {
+                return true;
+            }
+            waitNanos(due - now);
+        }
+        return false;
+    }
+
+    private void waitNanos(long nanos) {
+        try {
+            if (nanos <= 0) {
+                wait();
+            } else {
+                TimeUnit.NANOSECONDS.timedWait(this, nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package edu.univ.lms.service;
+
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BackupStore;
+import edu.univ.lms.repository.Checkpointer;
+import edu.univ.lms.repository.JournalCompactedException;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.LogTailer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-only copy of the catalog and users for search terminals.
+ * <p>
+ * A replica opens the data directory of a primary process without writing
+ * to it: it loads the JSON snapshots plus the journal records after them,
+ * then keeps following the journal with a {@link LogTailer}. Each refresh
+ * applies the new records one by one to its own {@link LibraryService} and
+ * {@link UserDirectory}, holding both locks, so searches always see a state
+ * the primary actually had. Additions and updates find their item or user
+ * through an ISBN or user ID index, so their cost does not grow with the
+ * catalog; a removal shifts the list behind it, and the next record then
+ * rebuilds the index once.
+ * Polling every few milliseconds keeps the replica that far behind the
+ * primary's appends.
+ * <p>
+ * If the replica falls so far behind that a checkpoint of the primary has
+ * already dropped records it did not read, it reloads the snapshots, which
+ * then contain those records. Any other read error, such as a snapshot or
+ * journal being replaced while it is read, is left to the next refresh. The
+ * replica never writes to the primary's directory.
+ * <p>
+ * Mutating operations of the replica's service only change its memory and
+ * are overwritten by later records; terminals should only search.
+ */
+public class ReadReplica implements Closeable {
+
+    /** Default delay between two journal polls. */
+    public static final long DEFAULT_POLL_MILLIS = 20;
+
+    private final Path itemsFile;
+    private final Path usersFile;
+    private final Path journal;
+
+    private final LibraryService libraryService = new LibraryService();
+    private final UserDirectory users = new UserDirectory();
+
+    private LogTailer tailer;
+    private ScheduledExecutorService scheduler;
+    private int reloadCount;
+
+    /**
+     * Creates a replica of the default data directory.
+     */
+    public ReadReplica() {
+        this(Paths.get("data", "items.json"), Paths.get("data", "users.json"), Paths.get("data", "journal.log"));
+    }
+
+    /**
+     * Creates a replica of specific data files. Call {@link #open()} to load them.
+     *
+     * @param itemsFile items snapshot of the primary
+     * @param usersFile users snapshot of the primary
+     * @param journal   journal of the primary
+     */
+    public ReadReplica(Path itemsFile, Path usersFile, Path journal) {
+        this.itemsFile = itemsFile;
+        this.usersFile = usersFile;
+        this.journal = journal;
+    }
+
+    /**
+     * Loads the current state of the primary.
+     *
+     * @throws IOException if the data files cannot be read
+     */
+    public synchronized void open() throws IOException {
+        Checkpointer.Snapshot snapshot = BackupStore.readPersisted(itemsFile, usersFile, journal);
+        synchronized (libraryService) {
+            synchronized (users) {
+                libraryService.setItems(snapshot.getBooks());
+                users.clear();
+                users.addAll(snapshot.getUsers());
+                tailer = new LogTailer(journal, snapshot.getSeq());
+            }
+        }
+    }
+
+    /**
+     * Applies the records the primary journaled since the last refresh.
+     *
+     * @return number of records applied
+     * @throws IOException if the data files cannot be read; the next refresh
+     *                     tries again
+     */
+    public synchronized int refresh() throws IOException {
+        List<LogRecord> records;
+        try {
+            records = tailer.poll();
+        } catch (JournalCompactedException e) {
+            // Records were compacted before we read them: the snapshots have them now
+            open();
+            reloadCount++;
+            return 0;
+        }
+        if (records.isEmpty()) {
+            return 0;
+        }
+        synchronized (libraryService) {
+            synchronized (users) {
+                for (LogRecord record : records) {
+                    apply(record);
+                }
+            }
+        }
+        return records.size();
+    }
+
+    /** Applies one journaled change, like {@link LogRecord#applyAll}. */
+    private void apply(LogRecord record) {
+        switch (record.getType()) {
+            case REMOVE_ITEM:
+                libraryService.removeItem(record.getKey());
+                break;
+            case UNREGISTER:
+                User removed = users.findById(record.getKey());
+                if (removed != null) {
+                    users.remove(users.indexOf(removed));
+                }
+                break;
+            default:
+                if (record.getBook() != null) {
+                    libraryService.upsertItem(record.getBook());
+                } else if (record.getUser() != null) {
+                    User current = users.findById(record.getKey());
+                    if (current == null) {
+                        users.add(record.getUser());
+                    } else {
+                        users.set(users.indexOf(current), record.getUser());
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Starts refreshing in the background.
+     *
+     * @param pollMillis delay between two polls
+     */
+    public synchronized void start(long pollMillis) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "read-replica");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException | RuntimeException e) {
+                // Keep the schedule alive; the next poll retries
+                System.out.println("Error refreshing replica: " + e.getMessage());
+            }
+        }, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background refresh.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running == null) {
+            return;
+        }
+        running.shutdown();
+        try {
+            running.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the service answering searches on the replicated catalog.
+     *
+     * @return replica library service
+     */
+    public LibraryService getLibraryService() {
+        return libraryService;
+    }
+
+    /**
+     * Returns the replicated users. Synchronize on the directory while iterating.
+     *
+     * @return replica user directory
+     */
+    public UserDirectory getUsers() {
+        return users;
+    }
+
+    /**
+     * Returns the sequence number of the last journaled change applied.
+     *
+     * @return replicated sequence number
+     */
+    public synchronized long getLastSequence() {
+        return tailer.getLastSequence();
+    }
+
+    /**
+     * Returns how often the replica had to reload the snapshots because it
+     * fell behind a checkpoint.
+     *
+     * @return reload count
+     */
+    public synchronized int getReloadCount() {
+        return reloadCount;
+    }
+}
@@ -6,7 +6,7 @@ import edu.univ.lms.observer.Observer;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -77,8 +77,8 @@ public class ReminderService {
     public void sendOverdueReminders(LibraryService libraryService, List<User> allUsers) {
         LocalDate today = LocalDate.now();
 
-        // Map: userId → overdue count
-        Map<String, Integer> overdueCount = new HashMap<>();
+        // Map: userId → overdue count, in catalog order
+        Map<String, Integer> overdueCount = new LinkedHashMap<>();
 
         // Step 1 — Count overdue items per user
         for (Book item : libraryService.getAllBooks()) {
@@ -91,17 +91,30 @@ public class ReminderService {
             }
         }
 
-        // Step 2 — Notify each affected user
+        // Step 2 — Notify each affected user; a directory finds them by ID
+        if (allUsers instanceof UserDirectory) {
+            UserDirectory directory = (UserDirectory) allUsers;
+            for (Map.Entry<String, Integer> entry : overdueCount.entrySet()) {
+                User user = directory.findById(entry.getKey());
+                if (user != null) {
+                    notifyOverdue(user, entry.getValue());
+                }
+            }
+            return;
+        }
         for (User user : allUsers) {
             if (overdueCount.containsKey(user.getUserId())) {
-                int count = overdueCount.get(user.getUserId());
-                String message = "You have " + count + " overdue item(s).";
-
-                // Notify all observers (email, console, etc.)
-                for (Observer observer : observers) {
-                    observer.notify(user, message);
-                }
+                notifyOverdue(user, overdueCount.get(user.getUserId()));
             }
         }
     }
+
+    private void notifyOverdue(User user, int count) {
+        String message = "You have " + count + " overdue item(s).";
+
+        // Notify all observers (email, console, etc.)
+        for (Observer observer : observers) {
+            observer.notify(user, message);
+        }
+    }
 }
@@ -0,0 +1,312 @@
+package edu.univ.lms.service;
+
+import edu.univ.lms.model.User;
+import edu.univ.lms.util.CountingBloomFilter;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * List of all users, indexed by username and by user ID.
+ * <p>
+ * The directory is a regular {@link List}, so it can be passed wherever the
+ * user list was passed before, but it also keeps a case-insensitive username
+ * map and a user ID map up to date on every add and remove. Login and the
+ * duplicate-username check of a registration are then hash lookups instead
+ * of scans over every patron.
+ * <p>
+ * A {@link CountingBloomFilter} over the case-folded usernames sits in front
+ * of the username map. Availability checks for usernames nobody has (the
+ * common case while someone types a new username) are answered by the
+ * filter alone, which keeps them cheap once the map is replaced by a
+ * disk-backed store. The filter grows with the directory.
+ * <p>
+ * Like {@link java.util.Collections#synchronizedList(List)}, every method
+ * locks the directory itself; iterate while holding that lock. A user's
+ * username or ID must not be changed while the user is in the directory.
+ * <p>
+ * Data saved by older versions may contain two users whose usernames differ
+ * only in case, or two users sharing an ID. Each index keeps the first such
+ * user, matching what a scan would find; while such duplicates exist,
+ * lookups that need an exact match fall back to scanning.
+ */
+public class UserDirectory extends AbstractList<User> implements RandomAccess {
+
+    private final List<User> users = new ArrayList<>();
+    private final Map<String, User> byUsername = new HashMap<>();
+    private final Map<String, User> byId = new HashMap<>();
+
+    /** Number of index entries lost to duplicate keys. */
+    private int shadowed;
+
+    /**
+     * Position of each user, built on the first {@link #indexOf(Object)} and
+     * kept while users are appended or replaced; other changes drop it.
+     */
+    private Map<User, Integer> positions;
+
+    /** Initial number of usernames the filter is sized for. */
+    private static final int INITIAL_FILTER_CAPACITY = 1024;
+
+    /** Every username in the list, including shadowed duplicates. */
+    private CountingBloomFilter usernameFilter;
+
+    /** Number of usernames the filter is sized for. */
+    private int filterCapacity;
+
+    /**
+     * Creates an empty directory.
+     */
+    public UserDirectory() {
+        resetFilter(INITIAL_FILTER_CAPACITY);
+    }
+
+    /**
+     * Creates a directory holding the given users, in order.
+     *
+     * @param initial users to add
+     */
+    public UserDirectory(Collection<User> initial) {
+        resetFilter(Math.max(INITIAL_FILTER_CAPACITY, initial.size() * 2));
+        addAll(initial);
+    }
+
+    // ---------------------------------------------------------
+    // Lookups
+    // ---------------------------------------------------------
+
+    /**
+     * Finds a user by username, ignoring case.
+     *
+     * @param username username to look up
+     * @return matching user, or {@code null} if there is none
+     */
+    public synchronized User findByUsername(String username) {
+        String key = usernameKey(username);
+        if (key != null && !usernameFilter.mightContain(key)) {
+            return null;
+        }
+        return byUsername.get(key);
+    }
+
+    /**
+     * Finds a user by ID.
+     *
+     * @param userId user ID to look up
+     * @return matching user, or {@code null} if there is none
+     */
+    public synchronized User findById(String userId) {
+        return byId.get(userId);
+    }
+
+    /**
+     * Indicates whether a username is taken, ignoring case.
+     *
+     * @param username username to check
+     * @return {@code true} if a user already has this username
+     */
+    public synchronized boolean containsUsername(String username) {
+        String key = usernameKey(username);
+        if (key != null && !usernameFilter.mightContain(key)) {
+            return false;
+        }
+        return byUsername.containsKey(key);
+    }
+
+    /**
+     * Indicates whether a user ID is taken.
+     *
+     * @param userId user ID to check
+     * @return {@code true} if a user already has this ID
+     */
+    public synchronized boolean containsId(String userId) {
+        return byId.containsKey(userId);
+    }
+
+    /**
+     * Returns the user whose credentials match, see
+     * {@link User#authenticate(String, String)}.
+     *
+     * @param username username entered (case-sensitive, like the check itself)
+     * @param password password entered
+     * @return authenticated user, or {@code null} if the credentials are invalid
+     */
+    public synchronized User authenticate(String username, String password) {
+        User candidate = findByUsername(username);
+        if (candidate != null && candidate.authenticate(username, password)) {
+            return candidate;
+        }
+        if (shadowed > 0) {
+            for (User u : users) {
+                if (u.authenticate(username, password)) {
+                    return u;
+                }
+            }
+        }
+        return null;
+    }
+
+    // ---------------------------------------------------------
+    // List operations
+    // ---------------------------------------------------------
+
+    /**
+     * Returns the position of a user. Without duplicate keys this is a hash
+     * lookup, so replacing a user in place does not scan the list.
+     *
+     * @param o user to look for
+     * @return position, or -1 if the user is not in the directory
+     */
+    @Override
+    public synchronized int indexOf(Object o) {
+        if (shadowed > 0) {
+            // The same user object could be listed twice
+            return super.indexOf(o);
+        }
+        if (positions == null) {
+            positions = new IdentityHashMap<>();
+            for (int i = 0; i < users.size(); i++) {
+                positions.putIfAbsent(users.get(i), i);
+            }
+        }
+        Integer position = positions.get(o);
+        return position == null ? -1 : position;
+    }
+
+    @Override
+    public synchronized User get(int index) {
+        return users.get(index);
+    }
+
+    @Override
+    public synchronized int size() {
+        return users.size();
+    }
+
+    @Override
+    public synchronized void add(int index, User user) {
+        users.add(index, user);
+        modCount++;
+        if (users.size() > filterCapacity) {
+            // Past its capacity the filter would answer "maybe" too often
+            rebuild();
+        } else if (index == users.size() - 1) {
+            index(user);
+            if (positions != null) {
+                positions.putIfAbsent(user, index);
+            }
+        } else {
+            // An earlier position can change which duplicate an index keeps
+            rebuild();
+        }
+    }
+
+    @Override
+    public synchronized User set(int index, User user) {
+        User old = users.set(index, user);
+        if (shadowed > 0) {
+            rebuild();
+        } else {
+            unindex(old);
+            index(user);
+            if (shadowed > 0) {
+                // The duplicate may sit after this position, so let a full pass decide
+                rebuild();
+            } else if (positions != null) {
+                positions.remove(old);
+                positions.put(user, index);
+            }
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized User remove(int index) {
+        User old = users.remove(index);
+        modCount++;
+        positions = null;
+        if (shadowed > 0) {
+            rebuild();
+        } else {
+            unindex(old);
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        users.clear();
+        modCount++;
+        byUsername.clear();
+        byId.clear();
+        shadowed = 0;
+        positions = null;
+        resetFilter(INITIAL_FILTER_CAPACITY);
+    }
+
+    // ---------------------------------------------------------
+    // Index maintenance
+    // ---------------------------------------------------------
+
+    /**
+     * Folds a username so that two usernames get the same key exactly when
+     * {@link String#equalsIgnoreCase(String)} considers them equal, which is
+     * what a scan compares with. That method compares char by char through
+     * upper and then lower case; {@code toLowerCase} of the whole string
+     * differs for chars such as the dotless i or the long s.
+     */
+    private static String usernameKey(String username) {
+        if (username == null) {
+            return null;
+        }
+        char[] chars = username.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    private void index(User user) {
+        String key = usernameKey(user.getUsername());
+        if (byUsername.putIfAbsent(key, user) != null) {
+            shadowed++;
+        }
+        if (key != null) {
+            usernameFilter.add(key);
+        }
+        if (byId.putIfAbsent(user.getUserId(), user) != null) {
+            shadowed++;
+        }
+    }
+
+    private void unindex(User user) {
+        String key = usernameKey(user.getUsername());
+        byUsername.remove(key);
+        byId.remove(user.getUserId());
+        if (key != null) {
+            usernameFilter.remove(key);
+        }
+    }
+
+    private void rebuild() {
+        byUsername.clear();
+        byId.clear();
+        shadowed = 0;
+        positions = null;
+        resetFilter(Math.max(INITIAL_FILTER_CAPACITY, users.size() * 2));
+        for (User u : users) {
+            index(u);
+        }
+    }
+
+    private void resetFilter(int capacity) {
+        usernameFilter = CountingBloomFilter.create(capacity, CountingBloomFilter.DEFAULT_COUNTERS_PER_KEY);
+        filterCapacity = capacity;
+    }
+}
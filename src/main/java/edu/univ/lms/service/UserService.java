@@ -1,8 +1,12 @@
 package edu.univ.lms.service;
 
 import edu.univ.lms.model.User;
+import edu.univ.lms.repository.IdAllocator;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.MutationLog;
 import edu.univ.lms.repository.UserRepository;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
@@ -23,6 +27,15 @@ public class UserService {
     /** Repository used for saving and loading user data. */
     private final UserRepository userRepository;
 
+    /** Optional write-ahead log; when set, registrations are journaled instead of saved in full. */
+    private MutationLog mutationLog;
+
+    /** Optional background service making journaled registrations durable. */
+    private PersistenceService persistenceService;
+
+    /** Optional durable source of new user IDs. */
+    private IdAllocator idAllocator;
+
     /**
      * Creates a new UserService using the specified repository.
      *
@@ -32,6 +45,37 @@ public class UserService {
         this.userRepository = userRepository;
     }
 
+    /**
+     * Attaches a write-ahead log. With a log attached, a registration appends
+     * one small record instead of rewriting the whole user file.
+     *
+     * @param mutationLog log receiving user mutations, or {@code null}
+     */
+    public void setMutationLog(MutationLog mutationLog) {
+        this.mutationLog = mutationLog;
+    }
+
+    /**
+     * Attaches a background persistence service. Together with a mutation
+     * log, registration then returns without waiting for the disk.
+     *
+     * @param persistenceService service notified after each registration, or {@code null}
+     */
+    public void setPersistenceService(PersistenceService persistenceService) {
+        this.persistenceService = persistenceService;
+    }
+
+    /**
+     * Attaches a durable ID allocator. New users then get IDs that are never
+     * reused, even after unregistrations or restarts, and that do not depend
+     * on the size of the user list.
+     *
+     * @param idAllocator allocator handing out user IDs, or {@code null}
+     */
+    public void setIdAllocator(IdAllocator idAllocator) {
+        this.idAllocator = idAllocator;
+    }
+
     // ---------------------------------------------------------
     // Registration
     // ---------------------------------------------------------
@@ -41,11 +85,16 @@ public class UserService {
      * <p>
      * Validation rules:
      * <ul>
-     *     <li>Username must be unique</li>
-     *     <li>A sequential userId is generated automatically</li>
+     *     <li>Username must be unique (ignoring case)</li>
+     *     <li>A userId is generated automatically: from the
+     *         {@link IdAllocator} if one is attached, otherwise sequentially,
+     *         skipping IDs still held by other users. If the allocator cannot
+     *         reserve an ID, the registration fails</li>
      *     <li>New users are non-admin by default</li>
      * </ul>
-     * The user list is persisted immediately after registration.
+     * The new user is persisted immediately after registration, either as a
+     * journal record or, without a journal, by saving the full user list.
+     * With a {@link UserDirectory} both checks are hash lookups.
      *
      * @param users    current list of all users
      * @param name     full name of the new user
@@ -60,27 +109,92 @@ public class UserService {
                                 String password,
                                 String email) {
 
-        // Check for existing username
-        for (User u : users) {
-            if (u.getUsername().equalsIgnoreCase(username)) {
+        // Lock the list so concurrent checkpoints see a consistent view
+        synchronized (users) {
+            // Check for existing username
+            if (isUsernameTaken(users, username)) {
                 System.out.println("This username is already taken. Try another one.");
                 return false;
             }
-        }
 
-        // Generate a simple incremental userId
-        String userId = String.valueOf(users.size() + 1);
+            String userId;
+            try {
+                userId = nextUserId(users);
+            } catch (IOException e) {
+                // A list-derived ID could collide with one another process allocated
+                System.out.println("Error allocating user ID: " + e.getMessage());
+                return false;
+            }
 
-        User newUser = new User(userId, name, username, password, false, email);
-        users.add(newUser);
+            User newUser = new User(userId, name, username, password, false, email);
+            users.add(newUser);
 
-        // Persist updated list
-        userRepository.saveUsers(users);
+            // Persist the new user
+            persistRegistration(users, newUser);
+        }
 
         System.out.println("User registered successfully. You can now login.");
         return true;
     }
 
+    /**
+     * Returns the ID for a new user. Without an allocator, a simple
+     * incremental ID is derived from the list; after an unregistration the
+     * count can point at an ID that is still in use.
+     *
+     * @throws IOException if the allocator cannot reserve an ID
+     */
+    private String nextUserId(List<User> users) throws IOException {
+        if (idAllocator != null) {
+            return String.valueOf(idAllocator.nextId());
+        }
+        long next = users.size() + 1;
+        while (isUserIdTaken(users, String.valueOf(next))) {
+            next++;
+        }
+        return String.valueOf(next);
+    }
+
+    /**
+     * Returns the highest numeric user ID in a list, which is the floor for
+     * an {@link IdAllocator}. IDs that are not numbers are ignored.
+     *
+     * @param users list of all registered users
+     * @return highest numeric ID, or 0 if there is none
+     */
+    public static long highestNumericId(List<User> users) {
+        long max = 0;
+        synchronized (users) {
+            for (User u : users) {
+                try {
+                    max = Math.max(max, Long.parseLong(u.getUserId()));
+                } catch (NumberFormatException e) {
+                    // Not allocated by us
+                }
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Journals a registration, falling back to a full save when no journal
+     * is attached or the append fails.
+     */
+    private void persistRegistration(List<User> users, User newUser) {
+        if (mutationLog != null) {
+            try {
+                mutationLog.appendUser(LogRecord.Type.REGISTER, newUser);
+                if (persistenceService != null) {
+                    persistenceService.markDirty();
+                }
+                return;
+            } catch (IOException e) {
+                System.out.println("Error writing journal: " + e.getMessage());
+            }
+        }
+        userRepository.saveUsers(users);
+    }
+
     // ---------------------------------------------------------
     // Authentication
     // ---------------------------------------------------------
@@ -96,6 +210,9 @@ public class UserService {
      * @return the authenticated {@link User}, or {@code null} if credentials are invalid
      */
     public User authenticateUser(List<User> users, String username, String password) {
+        if (users instanceof UserDirectory) {
+            return ((UserDirectory) users).authenticate(username, password);
+        }
         for (User u : users) {
             if (u.authenticate(username, password)) {
                 return u;
@@ -104,6 +221,37 @@ public class UserService {
         return null;
     }
 
+    /**
+     * Indicates whether a username is already registered, ignoring case.
+     *
+     * @param users    list of all registered users
+     * @param username username to check
+     * @return {@code true} if another user has this username
+     */
+    public boolean isUsernameTaken(List<User> users, String username) {
+        if (users instanceof UserDirectory) {
+            return ((UserDirectory) users).containsUsername(username);
+        }
+        for (User u : users) {
+            if (u.getUsername().equalsIgnoreCase(username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isUserIdTaken(List<User> users, String userId) {
+        if (users instanceof UserDirectory) {
+            return ((UserDirectory) users).containsId(userId);
+        }
+        for (User u : users) {
+            if (userId.equals(u.getUserId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     // ---------------------------------------------------------
     // Persistence operations
     // ---------------------------------------------------------
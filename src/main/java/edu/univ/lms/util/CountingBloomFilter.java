@@ -0,0 +1,109 @@
+package edu.univ.lms.util;
+
+/**
+ * Bloom filter over string keys that also supports removal.
+ * <p>
+ * Each position holds a 4-bit counter instead of a bit, so removing a key
+ * decrements what adding it incremented and the filter can follow a set of
+ * keys that shrinks as well as grows. Like the segment filters of the LSM
+ * store it answers "definitely absent" or "possibly present" and uses the
+ * same {@link KeyHash}, at four times the memory. A counter that reaches
+ * 15 sticks there, which can only cause extra "possibly present" answers,
+ * never a missed key.
+ * <p>
+ * Only keys that were added may be removed. Not thread-safe.
+ */
+public final class CountingBloomFilter {
+
+    /** Default number of counters per expected key (about one percent false positives). */
+    public static final int DEFAULT_COUNTERS_PER_KEY = 10;
+
+    /** Value at which a counter saturates. */
+    private static final int MAX_COUNT = 15;
+
+    private final long[] counters;
+    private final int numCounters;
+    private final int numHashes;
+
+    private CountingBloomFilter(int words, int numHashes) {
+        this.counters = new long[words];
+        this.numCounters = words * 16;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Creates an empty filter sized for a number of keys.
+     *
+     * @param expectedKeys    number of keys present at the same time
+     * @param countersPerKey  counters per key; more mean fewer false positives
+     * @return empty filter
+     */
+    public static CountingBloomFilter create(long expectedKeys, int countersPerKey) {
+        long wanted = Math.max(64, expectedKeys * countersPerKey);
+        int words = (int) Math.min(Integer.MAX_VALUE / 16, (wanted + 15) / 16);
+        int hashes = Math.max(1, Math.min(30, (int) Math.round(countersPerKey * 0.69)));
+        return new CountingBloomFilter(words, hashes);
+    }
+
+    /**
+     * Adds a key. Adding a key twice requires removing it twice.
+     *
+     * @param key key to add
+     */
+    public void add(String key) {
+        long h = KeyHash.hash64(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int position = Math.floorMod(h1 + i * h2, numCounters);
+            if (count(position) < MAX_COUNT) {
+                counters[position >>> 4] += 1L << shift(position);
+            }
+        }
+    }
+
+    /**
+     * Removes a key that was added before.
+     *
+     * @param key key to remove
+     */
+    public void remove(String key) {
+        long h = KeyHash.hash64(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            int position = Math.floorMod(h1 + i * h2, numCounters);
+            int count = count(position);
+            // A saturated counter no longer knows how many keys it covers
+            if (count > 0 && count < MAX_COUNT) {
+                counters[position >>> 4] -= 1L << shift(position);
+            }
+        }
+    }
+
+    /**
+     * Tests whether a key may be present.
+     *
+     * @param key key to test
+     * @return {@code false} if the key is definitely not present
+     */
+    public boolean mightContain(String key) {
+        long h = KeyHash.hash64(key);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32);
+        for (int i = 0; i < numHashes; i++) {
+            if (count(Math.floorMod(h1 + i * h2, numCounters)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int count(int position) {
+        return (int) (counters[position >>> 4] >>> shift(position)) & 0xF;
+    }
+
+    private static int shift(int position) {
+        return (position & 15) << 2;
+    }
+}
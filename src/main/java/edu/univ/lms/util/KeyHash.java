@@ -0,0 +1,34 @@
+package edu.univ.lms.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hash function shared by the Bloom filters.
+ */
+public final class KeyHash {
+
+    private KeyHash() {
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with a MurmurHash3 mixer.
+     * Unlike {@link String#hashCode()} the result is stable across JVMs and
+     * has good bits in both halves for double hashing.
+     *
+     * @param key key to hash
+     * @return 64-bit hash of the key
+     */
+    public static long hash64(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,177 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.ChecksumMismatchException;
+import edu.univ.lms.repository.GroupCommitSaver;
+
+public class AtomicSaveTest {
+
+    @TempDir
+    Path dir;
+
+    private List<Book> catalog(int n) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add(new Book(String.valueOf(i), "Title " + i, "Author " + i));
+        }
+        return books;
+    }
+
+    @Test
+    void writeBooks_shouldLeaveNoTempFileAndWriteChecksum() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+
+        repo.writeBooks(catalog(10));
+
+        assertTrue(Files.exists(dir.resolve("items.json.crc")));
+        assertFalse(Files.exists(dir.resolve("items.json.tmp")));
+        assertEquals(10, repo.loadBooks().size());
+    }
+
+    @Test
+    void writeBooks_failingMidWrite_shouldKeepPreviousFile() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        repo.writeBooks(catalog(5));
+
+        // A list that breaks while it is being serialized
+        List<Book> broken = new AbstractList<Book>() {
+            @Override
+            public Book get(int index) {
+                if (index == 3) {
+                    throw new IllegalStateException("boom");
+                }
+                return new Book("x" + index, "Partial", "Author");
+            }
+
+            @Override
+            public int size() {
+                return 10;
+            }
+        };
+
+        assertThrows(IllegalStateException.class, () -> repo.writeBooks(broken));
+        assertFalse(repo.saveBooks(broken), "saveBooks reports the failure");
+
+        List<Book> loaded = repo.loadBooks();
+        assertEquals(5, loaded.size(), "The old catalog must survive a failed save");
+        assertFalse(Files.exists(dir.resolve("items.json.tmp")));
+    }
+
+    @Test
+    void loadBooks_damagedInPlace_shouldFailInsteadOfStartingEmpty() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        repo.writeBooks(catalog(2));
+        FileTime written = Files.getLastModifiedTime(repo.getFile());
+        byte[] bytes = Files.readAllBytes(repo.getFile());
+        bytes[bytes.length / 2] ^= 0x01;
+        Files.write(repo.getFile(), bytes);
+        // Damage on disk does not touch the modification time
+        Files.setLastModifiedTime(repo.getFile(), written);
+
+        UncheckedIOException e = assertThrows(UncheckedIOException.class, repo::loadBooks);
+
+        assertTrue(e.getCause() instanceof ChecksumMismatchException);
+        assertArrayEquals(bytes, Files.readAllBytes(repo.getFile()), "The file is left as it is");
+        assertFalse(Files.exists(dir.resolve("items.json.damaged")));
+    }
+
+    @Test
+    void loadBooks_afterExternalEdit_shouldAcceptReplacedFile() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        repo.writeBooks(catalog(2));
+        FileTime written = Files.getLastModifiedTime(repo.getFile());
+        Files.write(repo.getFile(), "[{\"isbn\":\"9\",\"title\":\"Edited\",\"fineType\":\"BOOK\"}]".getBytes());
+        // Like a checkout by version control, which leaves the sidecar alone
+        Files.setLastModifiedTime(repo.getFile(), FileTime.fromMillis(written.toMillis() + 60000));
+
+        assertEquals(1, repo.loadBooks().size());
+    }
+
+    @Test
+    void loadBooks_afterCrashBeforeDataRename_shouldAcceptOldFile() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        repo.writeBooks(catalog(2));
+        byte[] old = Files.readAllBytes(repo.getFile());
+        FileTime oldTime = Files.getLastModifiedTime(repo.getFile());
+        repo.writeBooks(catalog(3));
+
+        // The new sidecar is in place, the data rename never happened
+        Files.write(repo.getFile(), old);
+        Files.setLastModifiedTime(repo.getFile(), oldTime);
+
+        assertEquals(2, repo.loadBooks().size());
+    }
+
+    @Test
+    void loadBooks_withoutSidecar_shouldAcceptHandWrittenFile() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        Files.write(repo.getFile(), "[{\"isbn\":\"9\",\"title\":\"Edited\",\"fineType\":\"BOOK\"}]".getBytes());
+
+        assertEquals(1, repo.loadBooks().size());
+    }
+
+    @Test
+    void groupCommit_shouldCoalesceConcurrentSaves() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        GroupCommitSaver saver = new GroupCommitSaver(() -> {
+            writes.incrementAndGet();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        int callers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(pool.submit(() -> {
+                start.await();
+                saver.save();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : results) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(writes.get() >= 1);
+        assertTrue(writes.get() < callers, "Concurrent saves should share physical writes");
+        assertEquals(writes.get(), saver.getPhysicalWrites());
+    }
+
+    @Test
+    void groupCommit_shouldReportFailureToCaller() {
+        GroupCommitSaver saver = new GroupCommitSaver(() -> {
+            throw new IOException("disk full");
+        });
+
+        IOException e = assertThrows(IOException.class, saver::save);
+        assertEquals("disk full", e.getMessage());
+    }
+}
@@ -0,0 +1,181 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BackupStore;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.Checkpointer;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.MutationLog;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.strategy.DvdFine;
+
+public class BackupStoreTest {
+
+    private static final int SEGMENTS = 4;
+
+    @TempDir
+    Path dir;
+
+    private static List<Book> books(int count) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            books.add(new Book(String.valueOf(100 + i), "Title " + i, "Author " + i));
+        }
+        return books;
+    }
+
+    private static List<User> users() {
+        List<User> users = new ArrayList<>();
+        users.add(new User("1", "Admin", "admin", "pw", true, "a@b.c"));
+        users.add(new User("2", "Reader", "reader", "pw", false, "r@b.c"));
+        return users;
+    }
+
+    @Test
+    void restore_shouldReturnBackedUpState() throws Exception {
+        List<Book> books = books(10);
+        Book dvd = new Book("900", "Film", "Director", new DvdFine());
+        dvd.setBorrowed(true);
+        dvd.setBorrowedByUserId("2");
+        dvd.setDueDate(LocalDate.of(2025, 3, 1));
+        books.add(dvd);
+        BackupStore store = new BackupStore(dir.resolve("backups"), SEGMENTS);
+
+        Path backup = store.backup(new Checkpointer.Snapshot(42, books, users()));
+        Checkpointer.Snapshot restored = BackupStore.restore(backup);
+
+        assertEquals(backup, store.latestBackup());
+        assertEquals(42, restored.getSeq());
+        assertEquals(11, restored.getBooks().size());
+        assertEquals(2, restored.getUsers().size());
+        Book restoredDvd = null;
+        for (Book b : restored.getBooks()) {
+            if (b.getIsbn().equals("900")) {
+                restoredDvd = b;
+            }
+        }
+        assertNotNull(restoredDvd);
+        assertTrue(restoredDvd.isBorrowed());
+        assertEquals("DVD", restoredDvd.getFineType());
+        assertEquals(LocalDate.of(2025, 3, 1), restoredDvd.getDueDate());
+    }
+
+    @Test
+    void backup_shouldOnlyWriteChangedSegments() throws Exception {
+        List<Book> books = books(50);
+        BackupStore store = new BackupStore(dir.resolve("backups"), SEGMENTS);
+        store.backup(new Checkpointer.Snapshot(1, books, users()));
+        assertEquals(2 * SEGMENTS, store.getLastWrittenSegments());
+
+        books.get(7).setTitle("Changed");
+        Path second = store.backup(new Checkpointer.Snapshot(2, books, users()));
+
+        assertEquals(1, store.getLastWrittenSegments());
+        assertEquals(2 * SEGMENTS - 1, store.getLastLinkedSegments());
+        assertEquals(2, store.listBackups().size());
+        boolean found = false;
+        for (Book b : BackupStore.restore(second).getBooks()) {
+            found |= b.getTitle().equals("Changed");
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    void backup_shouldRespectRateLimit() throws Exception {
+        BackupStore store = new BackupStore(dir.resolve("backups"), 1);
+        store.setMaxBytesPerSecond(200 * 1024);
+
+        long start = System.nanoTime();
+        store.backup(new Checkpointer.Snapshot(1, books(1000), users()));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        long expected = store.getLastWrittenBytes() * 1000 / (200 * 1024);
+        assertTrue(expected >= 100, "Backup should be large enough to throttle");
+        assertTrue(millis >= expected * 8 / 10, "Took " + millis + " ms, expected about " + expected);
+        assertEquals(1000, BackupStore.restore(store.latestBackup()).getBooks().size());
+    }
+
+    @Test
+    void restore_shouldRejectDamagedSegment() throws Exception {
+        BackupStore store = new BackupStore(dir.resolve("backups"), 1);
+        Path backup = store.backup(new Checkpointer.Snapshot(1, books(3), users()));
+        Files.write(backup.resolve("items-000.json"), "[]".getBytes());
+
+        assertThrows(IOException.class, () -> BackupStore.restore(backup));
+    }
+
+    @Test
+    void readPersisted_shouldApplyJournalOnTopOfSnapshots() throws Exception {
+        Path items = dir.resolve("items.json");
+        Path usersFile = dir.resolve("users.json");
+        Path journal = dir.resolve("journal.log");
+        assertTrue(new BookRepository(items).saveBooks(books(2)));
+        assertTrue(new UserRepository(usersFile).saveUsers(users()));
+
+        try (MutationLog log = new MutationLog(journal, items, usersFile)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, new Book("555", "Journaled", "Author"));
+            log.appendBook(LogRecord.Type.REMOVE_ITEM, new Book("100", "Title 0", "Author 0"));
+
+            Checkpointer.Snapshot snapshot = BackupStore.readPersisted(items, usersFile, journal);
+
+            assertEquals(2, snapshot.getSeq());
+            assertEquals(2, snapshot.getBooks().size());
+            assertEquals("101", snapshot.getBooks().get(0).getIsbn());
+            assertEquals("555", snapshot.getBooks().get(1).getIsbn());
+            assertEquals(2, snapshot.getUsers().size());
+        }
+    }
+
+    @Test
+    void readPersisted_shouldRetryWhileCheckpointsReplaceSnapshots() throws Exception {
+        Path items = dir.resolve("items.json");
+        Path usersFile = dir.resolve("users.json");
+        Path journal = dir.resolve("journal.log");
+        BookRepository repo = new BookRepository(items);
+        List<Book> catalog = books(2);
+        assertTrue(repo.saveBooks(catalog));
+        assertTrue(new UserRepository(usersFile).saveUsers(users()));
+
+        AtomicReference<Throwable> primaryFailure = new AtomicReference<>();
+        try (MutationLog log = new MutationLog(journal, items, usersFile)) {
+            Thread primary = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        Book book = new Book(String.valueOf(1000 + i), "Added " + i, "Author");
+                        catalog.add(book);
+                        long seq = log.appendBook(LogRecord.Type.ADD_ITEM, book);
+                        log.beginCheckpoint();
+                        repo.writeBooks(catalog);
+                        log.completeCheckpoint(seq);
+                    }
+                } catch (IOException e) {
+                    primaryFailure.set(e);
+                }
+            });
+            primary.start();
+            int reads = 0;
+            while (primary.isAlive()) {
+                Checkpointer.Snapshot snapshot = BackupStore.readPersisted(items, usersFile, journal);
+                assertEquals(2 + snapshot.getSeq(), snapshot.getBooks().size());
+                reads++;
+            }
+            primary.join();
+            assertNull(primaryFailure.get());
+            assertTrue(reads > 0);
+        }
+    }
+}
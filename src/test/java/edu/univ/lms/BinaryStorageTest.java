@@ -0,0 +1,168 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BinaryBookRepository;
+import edu.univ.lms.repository.BinaryUserRepository;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.StorageConverter;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.strategy.DvdFine;
+import edu.univ.lms.strategy.JournalFine;
+
+public class BinaryStorageTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void books_shouldRoundTripAllFields() {
+        Book dvd = new Book("101", "Inception", "Nolan", new DvdFine());
+        dvd.setBorrowed(true);
+        dvd.setBorrowedByUserId("7");
+        dvd.setBorrowDate(LocalDate.of(2024, 12, 20));
+        dvd.setDueDate(LocalDate.of(2025, 1, 10));
+        Book journal = new Book("102", "Nature", "Various", new JournalFine());
+        Book old = new Book("103", "Ancient", null);
+        old.setDueDate(LocalDate.of(1900, 1, 1)); // negative epoch day
+
+        BinaryBookRepository repo = new BinaryBookRepository(dir.resolve("items.bin"));
+        List<Book> books = new ArrayList<>();
+        books.add(dvd);
+        books.add(journal);
+        books.add(old);
+        assertTrue(repo.saveBooks(books));
+
+        List<Book> loaded = repo.loadBooks();
+
+        assertEquals(3, loaded.size());
+        Book a = loaded.get(0);
+        assertEquals("101", a.getIsbn());
+        assertEquals("Inception", a.getTitle());
+        assertEquals("DVD", a.getItemType());
+        assertTrue(a.isBorrowed());
+        assertEquals("7", a.getBorrowedByUserId());
+        assertEquals(LocalDate.of(2024, 12, 20), a.getBorrowDate());
+        assertEquals(LocalDate.of(2025, 1, 10), a.getDueDate());
+        assertEquals("JOURNAL", loaded.get(1).getItemType());
+        assertFalse(loaded.get(1).isBorrowed());
+        assertNull(loaded.get(1).getDueDate());
+        assertNull(loaded.get(2).getAuthor());
+        assertEquals(LocalDate.of(1900, 1, 1), loaded.get(2).getDueDate());
+    }
+
+    @Test
+    void users_shouldRoundTripAllFields() {
+        User admin = new User("1", "Admin", "admin", "1234", true, "admin@test.com");
+        User member = new User("2", "Mahmoud", "mahmoud", "pass", false, "m@test.com");
+        member.addFine(12.5);
+
+        BinaryUserRepository repo = new BinaryUserRepository(dir.resolve("users.bin"));
+        List<User> users = new ArrayList<>();
+        users.add(admin);
+        users.add(member);
+        assertTrue(repo.saveUsers(users));
+
+        List<User> loaded = repo.loadUsers();
+
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.get(0).isAdmin());
+        assertEquals("admin@test.com", loaded.get(0).getEmail());
+        assertEquals(0.0, loaded.get(0).getFineBalance());
+        assertEquals("mahmoud", loaded.get(1).getUsername());
+        assertEquals("pass", loaded.get(1).getPassword());
+        assertEquals(12.5, loaded.get(1).getFineBalance());
+    }
+
+    @Test
+    void loadBooks_withCorruptFile_shouldReturnEmptyList() throws Exception {
+        BinaryBookRepository repo = new BinaryBookRepository(dir.resolve("items.bin"));
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("101", "Clean Code", "Martin"));
+        repo.saveBooks(books);
+
+        // Flip one byte inside the record data
+        byte[] bytes = Files.readAllBytes(repo.getFile());
+        bytes[bytes.length / 2] ^= 0x55;
+        Files.write(repo.getFile(), bytes);
+
+        assertTrue(repo.loadBooks().isEmpty());
+    }
+
+    @Test
+    void loadBooks_withHugeStringLength_shouldFailBeforeAllocating() throws Exception {
+        BinaryBookRepository repo = new BinaryBookRepository(dir.resolve("items.bin"));
+        // Header for one book, then an ISBN claiming to be 2 GB long
+        Files.write(repo.getFile(), new byte[] {
+                0x4C, 0x4D, 0x53, 0x42, 1, 1, 1,
+                1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07,
+                0, 0, 0, 0});
+
+        assertTrue(repo.loadBooks().isEmpty());
+    }
+
+    @Test
+    void books_withMoreAuthorsThanDictionarySlots_shouldRoundTrip() {
+        BinaryBookRepository repo = new BinaryBookRepository(dir.resolve("items.bin"));
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 70000; i++) {
+            books.add(new Book(String.valueOf(i), "Title " + i, "Author " + (i % 68000)));
+        }
+        repo.saveBooks(books);
+
+        List<Book> loaded = repo.loadBooks();
+        assertEquals(70000, loaded.size());
+        assertEquals("Author 67999", loaded.get(67999).getAuthor());
+        assertEquals("Author 1999", loaded.get(69999).getAuthor());
+        assertEquals("Title 69999", loaded.get(69999).getTitle());
+    }
+
+    @Test
+    void loadBooks_withMissingFile_shouldReturnEmptyList() {
+        assertTrue(new BinaryBookRepository(dir.resolve("missing.bin")).loadBooks().isEmpty());
+    }
+
+    @Test
+    void loadUsers_withBookFile_shouldBeRejected() {
+        BinaryBookRepository books = new BinaryBookRepository(dir.resolve("items.bin"));
+        books.saveBooks(new ArrayList<>());
+
+        assertTrue(new BinaryUserRepository(books.getFile()).loadUsers().isEmpty());
+    }
+
+    @Test
+    void converter_shouldCopyJsonIntoSmallerBinaryFile() throws Exception {
+        BookRepository json = new BookRepository(dir.resolve("items.json"));
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            books.add(new Book(String.valueOf(1000 + i), "Title " + i, "Author " + (i % 10)));
+        }
+        json.saveBooks(books);
+        UserRepository jsonUsers = new UserRepository(dir.resolve("users.json"));
+        List<User> users = new ArrayList<>();
+        users.add(new User("1", "Admin", "admin", "1234", true, "admin@test.com"));
+        jsonUsers.saveUsers(users);
+
+        BinaryBookRepository binary = new BinaryBookRepository(dir.resolve("items.bin"));
+        assertEquals(500, StorageConverter.convertBooks(json, binary));
+        assertEquals(1, StorageConverter.convertUsers(jsonUsers,
+                new BinaryUserRepository(dir.resolve("users.bin"))));
+
+        assertTrue(Files.size(binary.getFile()) * 4 < Files.size(json.getFile()),
+                "Binary file should be several times smaller");
+        List<Book> loaded = binary.loadBooks();
+        assertEquals(500, loaded.size());
+        assertEquals("Author 9", loaded.get(499).getAuthor());
+    }
+}
@@ -0,0 +1,122 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.CatalogIndex;
+import edu.univ.lms.repository.SegmentedBookRepository;
+import edu.univ.lms.service.LibraryService;
+
+public class CatalogIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<Book> books() {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("150", "A", "X"));
+        books.add(new Book("isbn-abc", "B", "Y"));
+        books.add(new Book("420", "C", "Z"));
+        return books;
+    }
+
+    @Test
+    void build_shouldFindHighestNumericIsbn() {
+        CatalogIndex index = CatalogIndex.build(books());
+
+        assertEquals(3, index.getItemCount());
+        assertEquals(420, index.getMaxNumericIsbn());
+        assertEquals(CatalogIndex.NO_NUMERIC_ISBN, CatalogIndex.build(new ArrayList<>()).getMaxNumericIsbn());
+    }
+
+    @Test
+    void saveBooks_shouldPersistIndexValidForTheWrittenFile() {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        assertNull(repo.loadIndex(), "No index before the first save");
+
+        assertTrue(repo.saveBooks(books()));
+        CatalogIndex index = repo.loadIndex();
+
+        assertNotNull(index);
+        assertEquals(3, index.getItemCount());
+        assertEquals(420, index.getMaxNumericIsbn());
+        Map<String, Integer> positions = index.copyIsbnPositions();
+        assertEquals(3, positions.size());
+        assertEquals(Integer.valueOf(1), positions.get("ISBN-ABC"), "Lookups ignore case");
+        assertEquals(Integer.valueOf(2), positions.get("420"));
+    }
+
+    @Test
+    void loadIndex_shouldRejectTruncatedIndex() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        assertTrue(repo.saveBooks(books()));
+        byte[] bytes = Files.readAllBytes(repo.getIndexFile());
+        FileTime modified = Files.getLastModifiedTime(repo.getFile());
+
+        Files.write(repo.getIndexFile(), Arrays.copyOf(bytes, bytes.length - 3));
+        Files.setLastModifiedTime(repo.getFile(), modified);
+
+        assertNull(repo.loadIndex());
+    }
+
+    @Test
+    void loadIndex_shouldRejectIndexOfAnotherFileVersion() throws Exception {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        assertTrue(repo.saveBooks(books()));
+
+        // Edited outside the application
+        Files.write(repo.getFile(), "\n".getBytes(), StandardOpenOption.APPEND);
+
+        assertNull(repo.loadIndex());
+    }
+
+    @Test
+    void saveIndex_shouldSkipRepositoriesWithoutSingleFile() {
+        SegmentedBookRepository repo = new SegmentedBookRepository(dir.resolve("items"), 2);
+        assertTrue(repo.saveBooks(books()));
+
+        assertNull(repo.loadIndex());
+        assertFalse(Files.exists(repo.getIndexFile()));
+    }
+
+    @Test
+    void restoreIndex_shouldContinueAfterIndexedIsbn() {
+        LibraryService service = new LibraryService();
+        service.setItems(books());
+        service.restoreIndex(CatalogIndex.build(books()));
+
+        User admin = new User("1", "Admin", "admin", "pw", true, "a@b.c");
+        admin.login("admin", "pw");
+        Book added = new Book(null, "New", "Author");
+        assertTrue(service.addBook(admin, added));
+
+        assertEquals("421", added.getIsbn());
+    }
+
+    @Test
+    void restoreIndex_shouldLocateItemsThroughIndexedPositions() {
+        LibraryService service = new LibraryService();
+        service.setItems(books());
+        service.restoreIndex(CatalogIndex.build(books()));
+
+        service.upsertItem(new Book("420", "C2", "Z"));
+        assertTrue(service.removeItem("ISBN-ABC"));
+
+        assertEquals(2, service.getAllBooks().size());
+        assertEquals("C2", service.getAllBooks().get(1).getTitle());
+    }
+}
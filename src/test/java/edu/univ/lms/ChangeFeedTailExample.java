@@ -0,0 +1,40 @@
+package edu.univ.lms;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.LogTailer;
+
+/**
+ * Prints catalog and user changes as the running application journals them
+ * (not run by Surefire).
+ * <p>
+ * Polls <code>data/journal.log</code> once a second from a separate process.
+ * Pass the sequence number of the last change already processed as the first
+ * argument to resume; without it the example starts after the records that
+ * were already folded into the JSON snapshots. Run it with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.univ.lms.ChangeFeedTailExample -Dexec.args=0
+ * </pre>
+ */
+public class ChangeFeedTailExample {
+
+    private static final Path JOURNAL_FILE = Paths.get("data", "journal.log");
+
+    public static void main(String[] args) throws Exception {
+        long afterSeq = args.length > 0 ? Long.parseLong(args[0]) : LogTailer.readBaseSequence(JOURNAL_FILE);
+        LogTailer tailer = new LogTailer(JOURNAL_FILE, afterSeq);
+        System.out.println("Following " + JOURNAL_FILE + " after change " + afterSeq);
+
+        while (true) {
+            List<LogRecord> records = tailer.poll();
+            for (LogRecord record : records) {
+                System.out.println("#" + record.getSeq() + " " + record.getType() + " " + record.getKey());
+            }
+            Thread.sleep(1000);
+        }
+    }
+}
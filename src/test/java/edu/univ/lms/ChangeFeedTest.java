@@ -0,0 +1,287 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.ChangeFeed;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.LogTailer;
+import edu.univ.lms.repository.MutationLog;
+import edu.univ.lms.repository.UnitOfWork;
+
+public class ChangeFeedTest {
+
+    /** Delivers on the calling thread so the tests need no waiting. */
+    private static final Executor DIRECT = Runnable::run;
+
+    @TempDir
+    Path dir;
+
+    private Path logFile;
+    private Path snapshot;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        logFile = dir.resolve("journal.log");
+        snapshot = dir.resolve("items.json");
+        Files.write(snapshot, "[]".getBytes());
+    }
+
+    /** Subscriber recording every signal; requests nothing on its own. */
+    private static class Recorder implements Flow.Subscriber<LogRecord> {
+        final List<LogRecord> received = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(LogRecord item) {
+            received.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+
+        List<String> keys() {
+            List<String> keys = new ArrayList<>();
+            for (LogRecord record : received) {
+                keys.add(record.getKey());
+            }
+            return keys;
+        }
+    }
+
+    private static Book book(String isbn) {
+        return new Book(isbn, "Title " + isbn, "Author");
+    }
+
+    @Test
+    void subscriber_shouldReceiveOnlyRequestedRecordsInOrder() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot);
+             ChangeFeed feed = new ChangeFeed(log, DIRECT, 16)) {
+            Recorder recorder = new Recorder();
+            feed.subscribe(recorder);
+
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("1"));
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("2"));
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("3"));
+            assertTrue(recorder.received.isEmpty(), "Nothing was requested yet");
+
+            recorder.subscription.request(2);
+            assertEquals(Arrays.asList("1", "2"), recorder.keys());
+
+            recorder.subscription.request(5);
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("4"));
+            assertEquals(Arrays.asList("1", "2", "3", "4"), recorder.keys());
+            assertEquals(4, recorder.received.get(3).getSeq());
+        }
+    }
+
+    @Test
+    void subscriber_shouldNotSeeRecordsBeforeTheyAreDurable() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot);
+             ChangeFeed feed = new ChangeFeed(log, DIRECT, 16)) {
+            log.setSyncOnAppend(false);
+            Recorder recorder = new Recorder();
+            feed.subscribe(recorder);
+            recorder.subscription.request(Long.MAX_VALUE);
+
+            new UnitOfWork(log)
+                    .registerBook(LogRecord.Type.RETURN, book("1"))
+                    .registerUser(LogRecord.Type.FINE, new User("7", "R", "r", "pw", false, "r@x.y"))
+                    .commit();
+            assertTrue(recorder.received.isEmpty());
+
+            log.sync();
+            assertEquals(Arrays.asList("1", "7"), recorder.keys());
+        }
+    }
+
+    @Test
+    void subscribe_shouldResumeFromLogFile() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            for (int i = 1; i <= 5; i++) {
+                log.appendBook(LogRecord.Type.ADD_ITEM, book(String.valueOf(i)));
+            }
+        }
+
+        try (MutationLog log = new MutationLog(logFile, snapshot);
+             ChangeFeed feed = new ChangeFeed(log, DIRECT, 2)) {
+            Recorder recorder = new Recorder();
+            feed.subscribe(2, recorder);
+            recorder.subscription.request(Long.MAX_VALUE);
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("6"));
+
+            assertEquals(Arrays.asList("3", "4", "5", "6"), recorder.keys());
+            assertNull(recorder.error);
+        }
+    }
+
+    @Test
+    void subscribe_shouldCatchUpThroughLogFileInRequestedChunks() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot);
+             ChangeFeed feed = new ChangeFeed(log, DIRECT, 2)) {
+            for (int i = 1; i <= 50; i++) {
+                log.appendBook(LogRecord.Type.ADD_ITEM, book(String.valueOf(i)));
+            }
+
+            Recorder recorder = new Recorder();
+            feed.subscribe(0, recorder);
+            for (int i = 0; i < 17; i++) {
+                recorder.subscription.request(3);
+            }
+
+            assertEquals(50, recorder.received.size());
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i + 1, recorder.received.get(i).getSeq());
+            }
+            assertNull(recorder.error);
+        }
+    }
+
+    @Test
+    void subscribe_shouldFailWhenRecordsWereCompacted() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot);
+             ChangeFeed feed = new ChangeFeed(log, DIRECT, 1)) {
+            for (int i = 1; i <= 3; i++) {
+                log.appendBook(LogRecord.Type.ADD_ITEM, book(String.valueOf(i)));
+            }
+            log.reset();
+
+            Recorder recorder = new Recorder();
+            feed.subscribe(0, recorder);
+            recorder.subscription.request(10);
+
+            assertTrue(recorder.error instanceof IllegalStateException);
+            assertTrue(recorder.received.isEmpty());
+            assertEquals(0, feed.getSubscriberCount());
+        }
+    }
+
+    @Test
+    void request_shouldRejectNonPositiveDemand() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot);
+             ChangeFeed feed = new ChangeFeed(log, DIRECT, 16)) {
+            Recorder recorder = new Recorder();
+            feed.subscribe(recorder);
+            recorder.subscription.request(0);
+
+            assertTrue(recorder.error instanceof IllegalArgumentException);
+        }
+    }
+
+    @Test
+    void close_shouldCompleteSubscribers() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            ChangeFeed feed = new ChangeFeed(log, DIRECT, 16);
+            Recorder recorder = new Recorder();
+            feed.subscribe(recorder);
+
+            feed.close();
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("1"));
+
+            assertTrue(recorder.completed);
+            assertTrue(recorder.received.isEmpty());
+        }
+    }
+
+    @Test
+    void tailer_shouldFollowAppendsAcrossCheckpoints() throws Exception {
+        LogTailer tailer = new LogTailer(logFile, 0);
+        assertTrue(tailer.poll().isEmpty(), "No journal yet");
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("1"));
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("2"));
+            assertEquals(2, tailer.poll().size());
+
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("3"));
+            log.beginCheckpoint();
+            log.completeCheckpoint(2);
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("4"));
+
+            List<LogRecord> records = tailer.poll();
+            assertEquals(2, records.size());
+            assertEquals("3", records.get(0).getKey());
+            assertEquals("4", records.get(1).getKey());
+            assertEquals(4, tailer.getLastSequence());
+            assertTrue(tailer.poll().isEmpty());
+        }
+    }
+
+    @Test
+    void tailer_shouldNotReturnRecordsBeforeTheyAreDurable() throws Exception {
+        LogTailer tailer = new LogTailer(logFile, 0);
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.setSyncOnAppend(false);
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("1"));
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("2"));
+            assertTrue(tailer.poll().isEmpty(), "A crash could still undo these");
+
+            log.sync();
+            assertEquals(2, tailer.poll().size());
+            assertEquals(2, tailer.getLastSequence());
+        }
+    }
+
+    @Test
+    void tailer_shouldStopAtTheRequestedCountInsideAFrame() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.append(Arrays.asList(new LogRecord(LogRecord.Type.ADD_ITEM, book("1")),
+                    new LogRecord(LogRecord.Type.ADD_ITEM, book("2")),
+                    new LogRecord(LogRecord.Type.ADD_ITEM, book("3"))));
+        }
+
+        LogTailer tailer = new LogTailer(logFile, 0);
+        List<LogRecord> first = tailer.poll(2);
+        assertEquals(2, first.size());
+        assertEquals("2", first.get(1).getKey());
+        List<LogRecord> rest = tailer.poll(2);
+        assertEquals(1, rest.size());
+        assertEquals("3", rest.get(0).getKey());
+    }
+
+    @Test
+    void tailer_shouldReportGapAfterCompaction() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("1"));
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("2"));
+            log.reset();
+            log.appendBook(LogRecord.Type.ADD_ITEM, book("3"));
+        }
+
+        assertThrows(IOException.class, () -> new LogTailer(logFile, 0).poll());
+
+        LogTailer tailer = new LogTailer(logFile, LogTailer.readBaseSequence(logFile));
+        List<LogRecord> records = tailer.poll();
+        assertEquals(1, records.size());
+        assertEquals("3", records.get(0).getKey());
+    }
+}
@@ -0,0 +1,116 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.Checkpointer;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.MutationLog;
+import edu.univ.lms.repository.UserRepository;
+
+public class CheckpointerTest {
+
+    @TempDir
+    Path dir;
+
+    private BookRepository bookRepository;
+    private UserRepository userRepository;
+    private List<Book> books;
+    private List<User> users;
+
+    @BeforeEach
+    void setUp() {
+        bookRepository = new BookRepository(dir.resolve("items.json"));
+        userRepository = new UserRepository(dir.resolve("users.json"));
+        books = new ArrayList<>();
+        users = new ArrayList<>();
+        bookRepository.saveBooks(books);
+        userRepository.saveUsers(users);
+    }
+
+    private MutationLog openLog() throws Exception {
+        return new MutationLog(dir.resolve("journal.log"),
+                bookRepository.getFile(), userRepository.getFile());
+    }
+
+    @Test
+    void checkpointNow_shouldWriteSnapshotsAndCompactLog() throws Exception {
+        try (MutationLog log = openLog()) {
+            Book book = new Book("101", "Clean Code", "Martin");
+            books.add(book);
+            log.appendBook(LogRecord.Type.ADD_ITEM, book);
+            User user = new User("1", "Mahmoud", "mahmoud", "1234", false, "m@test.com");
+            users.add(user);
+            log.appendUser(LogRecord.Type.REGISTER, user);
+
+            Checkpointer checkpointer = new Checkpointer(log, bookRepository, userRepository,
+                    () -> new Checkpointer.Snapshot(log.getLastSequence(),
+                            new ArrayList<>(books), new ArrayList<>(users)));
+
+            assertTrue(checkpointer.checkpointNow());
+            assertFalse(log.hasRecords(), "Records are part of the snapshot now");
+            assertEquals(2, log.getLastSequence(), "Sequence numbers keep increasing");
+        }
+
+        assertEquals(1, bookRepository.loadBooks().size());
+        assertEquals(1, userRepository.loadUsers().size());
+    }
+
+    @Test
+    void checkpointNow_shouldKeepRecordsNewerThanSnapshot() throws Exception {
+        try (MutationLog log = openLog()) {
+            Book first = new Book("101", "First", "A");
+            books.add(first);
+            log.appendBook(LogRecord.Type.ADD_ITEM, first);
+
+            // Capture the state, then let a mutation land while the snapshot is written
+            long seq = log.getLastSequence();
+            List<Book> copy = new ArrayList<>(books);
+            Book second = new Book("102", "Second", "B");
+            log.appendBook(LogRecord.Type.ADD_ITEM, second);
+
+            Checkpointer checkpointer = new Checkpointer(log, bookRepository, userRepository,
+                    () -> new Checkpointer.Snapshot(seq, copy, new ArrayList<>(users)));
+            assertTrue(checkpointer.checkpointNow());
+
+            assertTrue(log.hasRecords());
+            assertEquals(1, log.readAll().size());
+        }
+
+        // Restart: snapshot plus the remaining record gives the full state
+        List<Book> loaded = bookRepository.loadBooks();
+        List<User> loadedUsers = userRepository.loadUsers();
+        try (MutationLog log = openLog()) {
+            assertEquals(1, log.replay(loaded, loadedUsers));
+        }
+        assertEquals(2, loaded.size());
+    }
+
+    @Test
+    void checkpointNow_withFailingSnapshot_shouldKeepLog() throws Exception {
+        // A repository pointing at a directory cannot be written
+        BookRepository broken = new BookRepository(dir);
+
+        try (MutationLog log = openLog()) {
+            Book book = new Book("101", "Clean Code", "Martin");
+            log.appendBook(LogRecord.Type.ADD_ITEM, book);
+
+            Checkpointer checkpointer = new Checkpointer(log, broken, userRepository,
+                    () -> new Checkpointer.Snapshot(log.getLastSequence(),
+                            new ArrayList<>(books), new ArrayList<>(users)));
+
+            assertFalse(checkpointer.checkpointNow());
+            assertTrue(log.hasRecords(), "Journal must survive a failed checkpoint");
+        }
+    }
+}
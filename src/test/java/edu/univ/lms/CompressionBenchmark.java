@@ -0,0 +1,71 @@
+package edu.univ.lms;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.Compression;
+
+/**
+ * Compares uncompressed and compressed catalog files (not run by Surefire).
+ * <p>
+ * Saves and loads the same synthetic catalog with each {@link Compression}
+ * setting and prints file size, ratio and timings. On network storage the
+ * time saved on transfer should be weighed against the CPU time shown here.
+ * Run it with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.univ.lms.CompressionBenchmark
+ * </pre>
+ */
+public class CompressionBenchmark {
+
+    private static final int ITEMS = 300_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        List<Book> books = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            Book b = new Book(String.valueOf(1_000_000 + i), "Title " + i, "Author " + (i % 5_000));
+            if (i % 3 == 0) {
+                b.setBorrowed(true);
+                b.setBorrowedByUserId(String.valueOf(i % 2_000));
+                b.setBorrowDate(LocalDate.of(2025, 1, 1).plusDays(i % 60));
+                b.setDueDate(b.getBorrowDate().plusDays(28));
+            }
+            books.add(b);
+        }
+
+        Path dir = Files.createTempDirectory("lms-compression-bench");
+        long plainSize = 0;
+        for (Compression compression : Compression.values()) {
+            BookRepository repo = new BookRepository(dir.resolve("items-" + compression + ".json"));
+            repo.setCompact(true);
+            repo.setCompression(compression);
+            repo.setProgressListener(null);
+
+            long save = Long.MAX_VALUE;
+            long load = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                repo.writeBooks(books);
+                save = Math.min(save, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                repo.loadBooks();
+                load = Math.min(load, System.nanoTime() - start);
+            }
+
+            long size = Files.size(repo.getFile());
+            if (compression == Compression.NONE) {
+                plainSize = size;
+            }
+            System.out.printf("%-10s %,12d bytes  ratio %5.1fx  save %6.0f ms  load %6.0f ms%n",
+                    compression, size, (double) plainSize / size, save / 1e6, load / 1e6);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import edu.univ.lms.model.User;
+import edu.univ.lms.util.CountingBloomFilter;
+import edu.univ.lms.service.UserDirectory;
+
+public class CountingBloomFilterTest {
+
+    @Test
+    void mightContain_shouldNeverMissAddedKeys() {
+        CountingBloomFilter filter = CountingBloomFilter.create(1000, CountingBloomFilter.DEFAULT_COUNTERS_PER_KEY);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("user" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; i++) {
+            if (filter.mightContain("user" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 500, "False positive rate too high: " + falsePositives);
+    }
+
+    @Test
+    void remove_shouldMakeKeyAbsentAndKeepOthers() {
+        CountingBloomFilter filter = CountingBloomFilter.create(100, CountingBloomFilter.DEFAULT_COUNTERS_PER_KEY);
+        filter.add("alice");
+        filter.add("bob");
+        filter.add("bob");
+
+        filter.remove("alice");
+        filter.remove("bob");
+
+        assertFalse(filter.mightContain("alice"));
+        assertTrue(filter.mightContain("bob"), "Added twice, removed once");
+    }
+
+    @Test
+    void remove_shouldNotForgetKeysBehindSaturatedCounters() {
+        CountingBloomFilter filter = CountingBloomFilter.create(1, 1);
+        for (int i = 0; i < 200; i++) {
+            filter.add("key" + i);
+        }
+        for (int i = 1; i < 200; i++) {
+            filter.remove("key" + i);
+        }
+
+        assertTrue(filter.mightContain("key0"));
+    }
+
+    @Test
+    void containsUsername_shouldFollowRegistrationsAndRemovals() {
+        User bob = new User("2", "Bob", "Bob", "pw", false, "b@x.y");
+        UserDirectory directory = new UserDirectory(Arrays.asList(
+                new User("1", "Alice", "alice", "pw", false, "a@x.y"), bob));
+        for (int i = 3; i < 3000; i++) {
+            directory.add(new User(String.valueOf(i), "U", "user" + i, "pw", false, "u@x.y"));
+        }
+
+        assertTrue(directory.containsUsername("BOB"));
+        assertTrue(directory.containsUsername("user2999"), "Still found after the filter grew");
+        assertFalse(directory.containsUsername("carol"));
+
+        directory.remove(bob);
+        assertFalse(directory.containsUsername("bob"));
+        assertNull(directory.findByUsername("bob"));
+        assertNotNull(directory.findByUsername("ALICE"));
+    }
+}
@@ -0,0 +1,127 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.IdAllocator;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.service.UserDirectory;
+import edu.univ.lms.service.UserService;
+
+public class IdAllocatorTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void nextId_shouldStartAboveFloorAndIncrease() throws Exception {
+        IdAllocator allocator = new IdAllocator(dir.resolve("ids.seq"), 10, 41);
+
+        assertEquals(42, allocator.nextId());
+        assertEquals(43, allocator.nextId());
+        assertEquals(51, allocator.getReservedUpTo(), "One block of 10 reserved");
+    }
+
+    @Test
+    void nextId_shouldNeverReuseIdsAfterRestart() throws Exception {
+        Path file = dir.resolve("ids.seq");
+        IdAllocator first = new IdAllocator(file, 10, 0);
+        for (int i = 0; i < 15; i++) {
+            first.nextId();
+        }
+
+        // A new process skips the rest of the first one's block
+        IdAllocator second = new IdAllocator(file, 10, 0);
+        assertEquals(21, second.nextId());
+    }
+
+    @Test
+    void nextId_shouldNotCollideBetweenAllocators() throws Exception {
+        Path file = dir.resolve("ids.seq");
+        List<Long> ids = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            IdAllocator allocator = new IdAllocator(file, 7, 0);
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < 500; i++) {
+                        ids.add(allocator.nextId());
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Set<Long> unique = new HashSet<>(ids);
+        assertEquals(2000, ids.size());
+        assertEquals(2000, unique.size());
+    }
+
+    @Test
+    void nextId_shouldIgnoreTornSlot() throws Exception {
+        Path file = dir.resolve("ids.seq");
+        new IdAllocator(file, 10, 0).nextId();
+
+        // A crash while the next reservation was written to the other slot
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(16);
+            raf.write(new byte[] {0, 0, 0, 0, 0, 0, 0, 20, 1, 2});
+        }
+
+        IdAllocator allocator = new IdAllocator(file, 10, 0);
+        assertEquals(10, allocator.getReservedUpTo());
+        assertEquals(11, allocator.nextId());
+        assertEquals(20, allocator.getReservedUpTo());
+    }
+
+    @Test
+    void registerUser_shouldUseAllocator() throws Exception {
+        UserDirectory users = new UserDirectory(Arrays.asList(
+                new User("1", "A", "a", "pw", true, "a@x.y"),
+                new User("2", "B", "b", "pw", false, "b@x.y")));
+        UserService service = new UserService(new UserRepository(dir.resolve("users.json")));
+        service.setIdAllocator(new IdAllocator(dir.resolve("ids.seq"), 100,
+                UserService.highestNumericId(users)));
+
+        users.remove(1);
+        assertTrue(service.registerUser(users, "C", "c", "pw", "c@x.y"));
+        assertTrue(service.registerUser(users, "D", "d", "pw", "d@x.y"));
+
+        assertEquals("3", users.findByUsername("c").getUserId());
+        assertEquals("4", users.findByUsername("d").getUserId());
+    }
+
+    @Test
+    void registerUser_shouldFailWhenAllocatorCannotReserve() throws Exception {
+        UserDirectory users = new UserDirectory(Arrays.asList(new User("1", "A", "a", "pw", true, "a@x.y")));
+        UserService service = new UserService(new UserRepository(dir.resolve("users.json")));
+        // A directory where the sequence file should be makes every reservation fail
+        Path blocked = Files.createDirectory(dir.resolve("ids.seq"));
+        service.setIdAllocator(new IdAllocator(blocked, 10, 1));
+
+        assertFalse(service.registerUser(users, "B", "b", "pw", "b@x.y"));
+
+        assertEquals(1, users.size());
+        assertNull(users.findByUsername("b"));
+    }
+}
@@ -0,0 +1,188 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.univ.lms.kiosk.KioskClient;
+import edu.univ.lms.kiosk.KioskProtocol;
+import edu.univ.lms.kiosk.KioskResponse;
+import edu.univ.lms.kiosk.KioskServer;
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.service.LibraryService;
+import edu.univ.lms.service.UserService;
+import edu.univ.lms.strategy.BookFine;
+import edu.univ.lms.strategy.DvdFine;
+
+public class KioskServerTest {
+
+    private LibraryService libraryService;
+    private List<User> users;
+    private KioskServer server;
+    private KioskClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        libraryService = new LibraryService();
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("101", "Clean Code", "Martin", new BookFine()));
+        books.add(new Book("102", "Inception", "Nolan", new DvdFine()));
+        libraryService.setItems(books);
+
+        users = new ArrayList<>();
+        users.add(new User("2", "Hamza", "hamza", "pass", false, "hamza@example.com"));
+
+        // Port 0 lets the OS pick a free port for each test
+        server = new KioskServer(libraryService, new UserService(new UserRepository()), users, 0);
+        server.start();
+        client = KioskClient.connect("localhost", server.getPort());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void lookup_shouldReturnItemDetails() throws Exception {
+        KioskResponse response = client.lookup("102");
+
+        assertTrue(response.isOk());
+        assertEquals("102", response.getBook().getIsbn());
+        assertEquals("Inception", response.getBook().getTitle());
+        assertEquals("DVD", response.getBook().getItemType());
+        assertFalse(response.getBook().isBorrowed());
+    }
+
+    @Test
+    void lookup_unknownIsbn_shouldReturnNotFound() throws Exception {
+        KioskResponse response = client.lookup("999");
+
+        assertEquals(KioskProtocol.STATUS_NOT_FOUND, response.getStatus());
+        assertNull(response.getBook());
+    }
+
+    @Test
+    void borrow_withoutLogin_shouldBeRejected() throws Exception {
+        KioskResponse response = client.borrow("101");
+
+        assertEquals(KioskProtocol.STATUS_NOT_LOGGED_IN, response.getStatus());
+        assertFalse(libraryService.searchBookByIsbn("101").isBorrowed());
+    }
+
+    @Test
+    void login_withWrongPassword_shouldBeDenied() throws Exception {
+        KioskResponse response = client.login("hamza", "wrong");
+
+        assertEquals(KioskProtocol.STATUS_DENIED, response.getStatus());
+    }
+
+    @Test
+    void borrowAndReturn_shouldUpdateLibraryState() throws Exception {
+        assertEquals("2", client.login("hamza", "pass").getUserId());
+
+        KioskResponse borrowed = client.borrow("101");
+        assertTrue(borrowed.isOk());
+        assertEquals(LocalDate.now().plusDays(28), borrowed.getDueDate());
+        assertTrue(libraryService.searchBookByIsbn("101").isBorrowed());
+
+        // Borrowing the same item twice is refused by the library rules
+        assertEquals(KioskProtocol.STATUS_DENIED, client.borrow("101").getStatus());
+
+        KioskResponse returned = client.returnItem("101");
+        assertTrue(returned.isOk());
+        assertEquals(0.0, returned.getFine());
+        assertFalse(libraryService.searchBookByIsbn("101").isBorrowed());
+    }
+
+    @Test
+    void pipelinedRequests_shouldBeAnsweredInOrder() throws Exception {
+        int login = client.sendLogin("hamza", "pass");
+        int lookup = client.sendLookup("102");
+        int borrow = client.sendBorrow("102");
+        int missing = client.sendLookup("404");
+        int logout = client.sendLogout();
+
+        assertEquals(5, client.getOutstanding());
+
+        assertEquals(login, client.receive().getRequestId());
+
+        KioskResponse lookupResponse = client.receive();
+        assertEquals(lookup, lookupResponse.getRequestId());
+        assertFalse(lookupResponse.getBook().isBorrowed());
+
+        KioskResponse borrowResponse = client.receive();
+        assertEquals(borrow, borrowResponse.getRequestId());
+        assertEquals(LocalDate.now().plusDays(7), borrowResponse.getDueDate());
+
+        assertEquals(missing, client.receive().getRequestId());
+        assertEquals(logout, client.receive().getRequestId());
+        assertEquals(0, client.getOutstanding());
+    }
+
+    @Test
+    void logout_shouldRequireNewLoginForCirculation() throws Exception {
+        client.login("hamza", "pass");
+        assertTrue(client.logout().isOk());
+
+        assertEquals(KioskProtocol.STATUS_NOT_LOGGED_IN, client.borrow("101").getStatus());
+    }
+
+    @Test
+    void kioskSession_shouldNotChangeSharedLoginState() throws Exception {
+        User hamza = users.get(0);
+        assertTrue(hamza.login("hamza", "pass"), "Logged in at the console");
+
+        assertTrue(client.login("hamza", "pass").isOk());
+        assertTrue(client.borrow("101").isOk());
+        assertTrue(client.logout().isOk());
+        client.close();
+
+        client = KioskClient.connect("localhost", server.getPort());
+        assertTrue(client.lookup("101").isOk(), "Server has processed the closed connection");
+        assertTrue(hamza.isLoggedIn(), "Console session survives the kiosk");
+    }
+
+    @Test
+    void oversizedAnswer_shouldBeBadRequestAndKeepServing() throws Exception {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            longText.append('x');
+        }
+        List<Book> books = new ArrayList<>(libraryService.getAllBooks());
+        books.add(new Book("103", longText.toString(), longText.toString(), new BookFine()));
+        libraryService.setItems(books);
+
+        assertEquals(KioskProtocol.STATUS_BAD_REQUEST, client.lookup("103").getStatus());
+        assertTrue(client.lookup("101").isOk());
+
+        KioskClient other = KioskClient.connect("localhost", server.getPort());
+        assertTrue(other.lookup("102").isOk());
+        other.close();
+    }
+
+    @Test
+    void pipelinedRequests_beyondQueueLimit_shouldAllBeAnswered() throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ids.add(client.sendLookup(i % 2 == 0 ? "101" : "404"));
+        }
+        client.flush();
+        // The server must stop reading instead of queueing every answer
+        Thread.sleep(200);
+
+        for (int id : ids) {
+            assertEquals(id, client.receive().getRequestId());
+        }
+        assertEquals(0, client.getOutstanding());
+    }
+}
@@ -0,0 +1,75 @@
+package edu.univ.lms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.univ.lms.kiosk.KioskClient;
+import edu.univ.lms.kiosk.KioskServer;
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.service.LibraryService;
+import edu.univ.lms.service.UserService;
+import edu.univ.lms.strategy.BookFine;
+
+/**
+ * Throughput benchmark for the kiosk protocol (not run by Surefire).
+ * <p>
+ * Starts an in-process {@link KioskServer} and measures lookups per second
+ * for several pipeline depths. Run it with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.univ.lms.KioskThroughputBenchmark
+ * </pre>
+ */
+public class KioskThroughputBenchmark {
+
+    private static final int ITEMS = 1_000;
+    private static final int REQUESTS = 200_000;
+    private static final int[] DEPTHS = {1, 8, 64, 256};
+
+    public static void main(String[] args) throws Exception {
+        LibraryService libraryService = new LibraryService();
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            books.add(new Book(String.valueOf(1000 + i), "Title " + i, "Author " + i, new BookFine()));
+        }
+        libraryService.setItems(books);
+
+        List<User> users = new ArrayList<>();
+        try (KioskServer server = new KioskServer(
+                libraryService, new UserService(new UserRepository()), users, 0)) {
+            server.start();
+
+            try (KioskClient client = KioskClient.connect("localhost", server.getPort())) {
+                // Warm up the JIT before measuring
+                run(client, 20_000, 64);
+
+                for (int depth : DEPTHS) {
+                    long start = System.nanoTime();
+                    run(client, REQUESTS, depth);
+                    long elapsed = System.nanoTime() - start;
+
+                    double opsPerSecond = REQUESTS / (elapsed / 1e9);
+                    double micros = elapsed / 1e3 / REQUESTS;
+                    System.out.printf("depth=%4d  %,12.0f lookups/s  %8.2f us/lookup%n",
+                            depth, opsPerSecond, micros);
+                }
+            }
+        }
+    }
+
+    private static void run(KioskClient client, int requests, int depth) throws Exception {
+        int sent = 0;
+        while (sent < requests) {
+            int batch = Math.min(depth, requests - sent);
+            for (int i = 0; i < batch; i++) {
+                client.sendLookup(String.valueOf(1000 + (sent + i) % ITEMS));
+            }
+            for (int i = 0; i < batch; i++) {
+                client.receive();
+            }
+            sent += batch;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.ClockCache;
+import edu.univ.lms.repository.LazyBookCatalog;
+import edu.univ.lms.repository.MappedBookRepository;
+
+public class LazyCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    private MappedBookRepository repository(int n) {
+        MappedBookRepository repo = new MappedBookRepository(dir.resolve("items.map"));
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add(new Book(String.format("ISBN-%04d", i), "Title " + i, "Author " + i));
+        }
+        assertTrue(repo.saveBooks(books));
+        return repo;
+    }
+
+    @Test
+    void clockCache_shouldEvictUnreferencedEntriesFirst() {
+        ClockCache<String, String> cache = new ClockCache<>(2, null);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+
+        cache.put("c", "C");
+
+        assertEquals("A", cache.peek("a"), "Recently used entry gets a second chance");
+        assertNull(cache.peek("b"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    void clockCache_shouldNeverEvictPinnedEntries() {
+        ClockCache<String, StringBuilder> cache = new ClockCache<>(1, v -> v.length() > 0);
+        cache.put("pinned", new StringBuilder("x"));
+        cache.put("other", new StringBuilder());
+
+        assertNotNull(cache.peek("pinned"));
+        assertEquals(2, cache.size(), "Cache grows instead of dropping a pinned entry");
+    }
+
+    @Test
+    void lazyCatalog_shouldHydrateOnlyRequestedItems() throws Exception {
+        try (LazyBookCatalog catalog = repository(1000).openLazyCatalog(10)) {
+            assertEquals(1000, catalog.size());
+            assertEquals(0, catalog.getCache().size(), "Opening decodes nothing");
+            assertTrue(catalog.contains("ISBN-0500"));
+
+            for (int i = 0; i < 100; i++) {
+                assertEquals("Title " + i, catalog.get(String.format("ISBN-%04d", i)).getTitle());
+            }
+            assertTrue(catalog.getCache().size() <= 10);
+            assertSame(catalog.get("ISBN-0099"), catalog.get("ISBN-0099"));
+            assertNull(catalog.get("missing"));
+        }
+    }
+
+    @Test
+    void lazyCatalog_shouldKeepAndSaveChanges() throws Exception {
+        MappedBookRepository repo = repository(100);
+        try (LazyBookCatalog catalog = repo.openLazyCatalog(5)) {
+            catalog.get("ISBN-0001").setTitle("Changed");
+            // Touch enough items to cycle the cache several times
+            for (int i = 10; i < 100; i++) {
+                catalog.get(String.format("ISBN-%04d", i));
+            }
+            assertEquals("Changed", catalog.get("ISBN-0001").getTitle(), "Dirty items are pinned");
+
+            catalog.add(new Book("ISBN-NEW", "New", "Author"));
+            assertTrue(catalog.remove("ISBN-0002"));
+            assertEquals(100, catalog.size());
+
+            assertTrue(catalog.save());
+            assertFalse(catalog.save(), "Nothing left to write");
+        }
+
+        try (LazyBookCatalog catalog = repo.openLazyCatalog(5)) {
+            assertEquals("Changed", catalog.get("ISBN-0001").getTitle());
+            assertEquals("New", catalog.get("ISBN-NEW").getTitle());
+            assertFalse(catalog.contains("ISBN-0002"));
+        }
+    }
+
+    @Test
+    void lazyCatalog_save_shouldMergeAdditionsInIsbnOrderWithoutCachingEverything() throws Exception {
+        MappedBookRepository repo = repository(200);
+        try (LazyBookCatalog catalog = repo.openLazyCatalog(5)) {
+            catalog.add(new Book("AAA", "First", "Author"));
+            catalog.add(new Book("ISBN-0050a", "Middle", "Author"));
+            catalog.add(new Book("ZZZ", "Last", "Author"));
+            catalog.remove("ISBN-0100");
+            catalog.get("ISBN-0150").setTitle("Changed");
+
+            assertTrue(catalog.save());
+            assertTrue(catalog.getCache().size() <= 5 + 3, "Save decodes the rest without caching it");
+        }
+
+        try (LazyBookCatalog catalog = repo.openLazyCatalog(5)) {
+            assertEquals(202, catalog.size());
+            // Lookups binary search the slots, so they only work if the file is sorted
+            assertEquals("First", catalog.get("AAA").getTitle());
+            assertEquals("Middle", catalog.get("ISBN-0050a").getTitle());
+            assertEquals("Last", catalog.get("ZZZ").getTitle());
+            assertEquals("Title 51", catalog.get("ISBN-0051").getTitle());
+            assertEquals("Changed", catalog.get("ISBN-0150").getTitle());
+            assertNull(catalog.get("ISBN-0100"));
+
+            List<String> isbns = new ArrayList<>();
+            catalog.forEachIsbn(isbns::add);
+            List<String> sorted = new ArrayList<>(isbns);
+            sorted.sort(null);
+            assertEquals(sorted, isbns);
+        }
+    }
+}
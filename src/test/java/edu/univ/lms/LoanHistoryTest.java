@@ -0,0 +1,161 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.Loan;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.LoanHistoryStore;
+import edu.univ.lms.service.LibraryService;
+
+public class LoanHistoryTest {
+
+    @TempDir
+    Path dir;
+
+    private static Loan loan(String isbn, String userId, LocalDate returned) {
+        return new Loan(isbn, userId, returned.minusDays(10), returned.minusDays(3), returned, 1.5);
+    }
+
+    @Test
+    void record_shouldPartitionByReturnMonth() throws Exception {
+        LoanHistoryStore store = new LoanHistoryStore(dir);
+        store.record(loan("1", "u1", LocalDate.of(2025, 1, 31)));
+        store.record(loan("2", "u2", LocalDate.of(2025, 2, 1)));
+        store.record(loan("3", "u1", LocalDate.of(2025, 3, 15)));
+        assertEquals(3, store.getPendingCount(), "Nothing is written on the caller's thread");
+
+        store.flush();
+
+        assertEquals(0, store.getPendingCount());
+        assertEquals(Arrays.asList(YearMonth.of(2025, 1), YearMonth.of(2025, 2), YearMonth.of(2025, 3)),
+                store.getPartitions());
+        List<Loan> february = store.findReturned(LocalDate.of(2025, 2, 1), LocalDate.of(2025, 2, 28));
+        assertEquals(1, february.size());
+        assertEquals("2", february.get(0).getIsbn());
+        assertEquals(LocalDate.of(2025, 1, 22), february.get(0).getBorrowDate());
+        assertEquals(1.5, february.get(0).getFine());
+
+        assertEquals(2, store.findByUser("u1", LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31)).size());
+    }
+
+    @Test
+    void compressBefore_shouldKeepOldPartitionsReadable() throws Exception {
+        LoanHistoryStore store = new LoanHistoryStore(dir);
+        for (int i = 0; i < 50; i++) {
+            store.record(loan("A" + i, "u", LocalDate.of(2025, 1, 1 + i % 28)));
+            store.record(loan("B" + i, "u", LocalDate.of(2025, 2, 1 + i % 28)));
+        }
+        store.flush();
+
+        assertEquals(1, store.compressBefore(YearMonth.of(2025, 2)));
+        assertTrue(store.isCompressed(YearMonth.of(2025, 1)));
+        assertFalse(store.isCompressed(YearMonth.of(2025, 2)));
+
+        // A late record for a compressed month goes to a separate plain file
+        store.record(loan("late", "u", LocalDate.of(2025, 1, 30)));
+        List<Loan> january = store.findReturned(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31));
+
+        assertEquals(51, january.size());
+        assertEquals("late", january.get(50).getIsbn());
+        assertTrue(Files.exists(dir.resolve("loans-2025-01.late.ndjson")));
+
+        // The next compaction folds it into the compressed partition
+        assertEquals(1, store.compressBefore(YearMonth.of(2025, 2)));
+        assertFalse(Files.exists(dir.resolve("loans-2025-01.late.ndjson")));
+        assertTrue(store.isCompressed(YearMonth.of(2025, 1)));
+        january = store.findReturned(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31));
+        assertEquals(51, january.size());
+        assertEquals("late", january.get(50).getIsbn());
+        assertEquals(0, store.compressBefore(YearMonth.of(2025, 2)), "Nothing left to fold in");
+    }
+
+    @Test
+    void open_shouldDropLateFileAlreadyFoldedIn() throws Exception {
+        LoanHistoryStore store = new LoanHistoryStore(dir);
+        store.record(loan("1", "u", LocalDate.of(2025, 1, 5)));
+        store.flush();
+        store.compressBefore(YearMonth.of(2025, 2));
+        store.record(loan("late", "u", LocalDate.of(2025, 1, 6)));
+        store.flush();
+        Path late = dir.resolve("loans-2025-01.late.ndjson");
+        byte[] lines = Files.readAllBytes(late);
+        store.compressBefore(YearMonth.of(2025, 2));
+
+        // A crash after the partition was replaced but before the delete
+        Files.write(late, lines);
+
+        List<Loan> loans = new LoanHistoryStore(dir).findReturned(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 1, 31));
+        assertEquals(2, loans.size());
+        assertFalse(Files.exists(late));
+    }
+
+    @Test
+    void flush_afterPartialFailure_shouldNotRewriteWrittenMonths() throws Exception {
+        LoanHistoryStore store = new LoanHistoryStore(dir);
+        // A directory in place of the March partition makes that append fail
+        Path blocked = store.partitionFile(YearMonth.of(2025, 3));
+        Files.createDirectory(blocked);
+        store.record(loan("1", "u", LocalDate.of(2025, 1, 5)));
+        store.record(loan("2", "u", LocalDate.of(2025, 3, 5)));
+
+        assertThrows(Exception.class, store::flush);
+        assertEquals(1, store.getPendingCount(), "Only the failed month is queued again");
+
+        Files.delete(blocked);
+        store.flush();
+
+        assertEquals(2, store.findReturned(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 12, 31)).size());
+    }
+
+    @Test
+    void findReturned_shouldSkipTornLine() throws Exception {
+        LoanHistoryStore store = new LoanHistoryStore(dir);
+        store.record(loan("1", "u", LocalDate.of(2025, 5, 2)));
+        store.flush();
+        Files.write(store.partitionFile(YearMonth.of(2025, 5)), "{\"isbn\":\"2\",\"us".getBytes(),
+                StandardOpenOption.APPEND);
+
+        store.record(loan("3", "u", LocalDate.of(2025, 5, 3)));
+        List<Loan> loans = store.findReturned(LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 31));
+
+        assertEquals(2, loans.size());
+        assertEquals("3", loans.get(1).getIsbn());
+    }
+
+    @Test
+    void returnBook_shouldRecordLoanInBackground() throws Exception {
+        LoanHistoryStore store = new LoanHistoryStore(dir);
+        store.start();
+
+        LibraryService service = new LibraryService();
+        service.setLoanHistory(store);
+        Book book = new Book("100", "Title", "Author");
+        service.setItems(new ArrayList<>(Arrays.asList(book)));
+        User user = new User("7", "Reader", "reader", "pw", false, "r@x.y");
+        user.login("reader", "pw");
+
+        assertTrue(service.borrowBook(user, "100"));
+        assertTrue(service.returnBook(user, "100"));
+        store.close();
+
+        LocalDate today = LocalDate.now();
+        List<Loan> loans = store.findByUser("7", today, today);
+        assertEquals(1, loans.size());
+        assertEquals("100", loans.get(0).getIsbn());
+        assertEquals(today, loans.get(0).getBorrowDate());
+        assertEquals(0.0, loans.get(0).getFine());
+    }
+}
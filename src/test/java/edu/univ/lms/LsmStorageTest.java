@@ -0,0 +1,248 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.LsmBookRepository;
+import edu.univ.lms.repository.LsmUserRepository;
+import edu.univ.lms.repository.lsm.BloomFilter;
+import edu.univ.lms.repository.lsm.LsmStore;
+
+public class LsmStorageTest {
+
+    @TempDir
+    Path dir;
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(byte[] b) {
+        return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void store_shouldReadOwnWritesAndDeletes() throws Exception {
+        try (LsmStore store = LsmStore.open(dir)) {
+            store.put("a", bytes("1"));
+            store.put("b", bytes("2"));
+            store.put("a", bytes("3"));
+            store.delete("b");
+            store.put("empty", new byte[0]);
+
+            assertEquals("3", string(store.get("a")));
+            assertNull(store.get("b"));
+            assertNull(store.get("missing"));
+            assertEquals(0, store.get("empty").length, "Empty values are not deletes");
+        }
+    }
+
+    @Test
+    void store_shouldReplayLogAfterReopen() throws Exception {
+        try (LsmStore store = LsmStore.open(dir)) {
+            store.put("k", bytes("v"));
+            store.sync();
+        }
+        try (LsmStore store = LsmStore.open(dir)) {
+            assertEquals("v", string(store.get("k")));
+            assertEquals(1, store.getSegmentCount(), "Replayed changes are flushed on open");
+        }
+    }
+
+    @Test
+    void store_shouldReadThroughSegmentsAndCompaction() throws Exception {
+        TreeMap<String, String> expected = new TreeMap<>();
+        try (LsmStore store = LsmStore.open(dir)) {
+            store.setMemTableBytes(4 * 1024);
+            store.setCompactionFanout(3);
+            for (int i = 0; i < 5000; i++) {
+                String key = String.format("key-%05d", i % 2000);
+                if (i % 7 == 0) {
+                    store.delete(key);
+                    expected.remove(key);
+                } else {
+                    store.put(key, bytes("value-" + i));
+                    expected.put(key, "value-" + i);
+                }
+            }
+            store.flush();
+            assertTrue(store.getSegmentCount() > 1);
+
+            for (int i = 0; i < 2000; i++) {
+                String key = String.format("key-%05d", i);
+                assertEquals(expected.get(key), string(store.get(key)), key);
+            }
+
+            store.compact();
+            assertEquals(1, store.getSegmentCount());
+
+            List<String> keys = new ArrayList<>();
+            long count = store.forEach((k, v) -> {
+                keys.add(k);
+                assertEquals(expected.get(k), string(v));
+            });
+            assertEquals(expected.size(), count);
+            assertEquals(new ArrayList<>(expected.keySet()), keys, "Scan is in key order without deleted keys");
+        }
+
+        try (LsmStore store = LsmStore.open(dir)) {
+            for (int i = 0; i < 2000; i++) {
+                String key = String.format("key-%05d", i);
+                assertEquals(expected.get(key), string(store.get(key)), key);
+            }
+        }
+    }
+
+    @Test
+    void bloomFilter_shouldNeverMissAddedKeys() {
+        BloomFilter filter = BloomFilter.create(1000, BloomFilter.DEFAULT_BITS_PER_KEY);
+        for (int i = 0; i < 1000; i++) {
+            filter.add("key-" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain("key-" + i));
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 50, "False positive rate stays low: " + falsePositives);
+    }
+
+    @Test
+    void bookRepository_shouldRoundTripAndSaveIncrementally() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            books.add(new Book("ISBN-" + i, "Title " + i, "Author " + i));
+        }
+        try (LsmBookRepository repo = new LsmBookRepository(dir.resolve("items"))) {
+            repo.writeBooks(books);
+            assertFalse(books.get(0).isDirty());
+
+            books.get(5).setTitle("Changed");
+            books.remove(7);
+            repo.writeBooks(books);
+
+            assertEquals("Changed", repo.findBook("ISBN-5").getTitle());
+            assertNull(repo.findBook("ISBN-7"));
+        }
+
+        try (LsmBookRepository repo = new LsmBookRepository(dir.resolve("items"))) {
+            List<Book> loaded = repo.loadBooks();
+            assertEquals(99, loaded.size());
+            assertFalse(loaded.get(0).isDirty());
+
+            repo.putBook(new Book("ISBN-NEW", "New", "Author"));
+            repo.deleteBook("ISBN-1");
+            assertEquals("New", repo.findBook("ISBN-NEW").getTitle());
+            assertNull(repo.findBook("ISBN-1"));
+        }
+    }
+
+    @Test
+    void bookRepository_failedSave_shouldRewriteItemsMarkedCleanMeanwhile() throws Exception {
+        boolean[] failing = { true };
+        Book broken = new Book("ISBN-0", "Title 0", "Author 0") {
+            @Override
+            public String getTitle() {
+                if (failing[0]) {
+                    throw new IllegalStateException("simulated write failure");
+                }
+                return super.getTitle();
+            }
+        };
+        Book changed = new Book("ISBN-1", "Title 1", "Author 1");
+        try (LsmBookRepository repo = new LsmBookRepository(dir.resolve("items"))) {
+            failing[0] = false;
+            repo.writeBooks(new ArrayList<>(Arrays.asList(broken, changed)));
+
+            failing[0] = true;
+            broken.setTitle("Renamed 0");
+            changed.setTitle("Renamed 1");
+            assertThrows(IllegalStateException.class,
+                    () -> repo.writeBooks(Arrays.asList(broken, changed)));
+
+            // A checkpoint writes copies and marks the live items clean.
+            broken.markClean();
+            changed.markClean();
+            failing[0] = false;
+            repo.writeBooks(Arrays.asList(broken, changed));
+        }
+
+        try (LsmBookRepository repo = new LsmBookRepository(dir.resolve("items"))) {
+            assertEquals("Renamed 0", repo.findBook("ISBN-0").getTitle());
+            assertEquals("Renamed 1", repo.findBook("ISBN-1").getTitle());
+        }
+    }
+
+    @Test
+    void bookRepository_saveBeforeLoad_shouldDeleteRemovedItems() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            books.add(new Book("ISBN-" + i, "Title " + i, "Author " + i));
+        }
+        try (LsmBookRepository repo = new LsmBookRepository(dir.resolve("items"))) {
+            repo.writeBooks(books);
+        }
+
+        // A fresh repository saves a shorter list without loading first
+        books.remove(3);
+        try (LsmBookRepository repo = new LsmBookRepository(dir.resolve("items"))) {
+            repo.writeBooks(books);
+        }
+
+        try (LsmBookRepository repo = new LsmBookRepository(dir.resolve("items"))) {
+            assertEquals(9, repo.loadBooks().size());
+            assertNull(repo.findBook("ISBN-3"));
+        }
+    }
+
+    @Test
+    void userRepository_saveBeforeLoad_shouldDeleteRemovedUsers() throws Exception {
+        List<User> users = new ArrayList<>();
+        users.add(new User("1", "Admin", "admin", "pw", true, "a@test.com"));
+        users.add(new User("2", "Reader", "reader", "pw", false, "r@test.com"));
+        try (LsmUserRepository repo = new LsmUserRepository(dir.resolve("users"))) {
+            repo.writeUsers(users);
+        }
+
+        users.remove(1);
+        try (LsmUserRepository repo = new LsmUserRepository(dir.resolve("users"))) {
+            repo.writeUsers(users);
+        }
+
+        try (LsmUserRepository repo = new LsmUserRepository(dir.resolve("users"))) {
+            assertEquals(1, repo.loadUsers().size());
+            assertNull(repo.findUser("2"));
+        }
+    }
+
+    @Test
+    void userRepository_shouldRoundTrip() throws Exception {
+        List<User> users = new ArrayList<>();
+        users.add(new User("1", "Admin", "admin", "pw", true, "a@test.com"));
+        users.add(new User("2", "Reader", "reader", "pw", false, "r@test.com"));
+
+        try (LsmUserRepository repo = new LsmUserRepository(dir.resolve("users"))) {
+            repo.writeUsers(users);
+            users.get(1).addFine(5);
+            repo.writeUsers(users);
+        }
+        try (LsmUserRepository repo = new LsmUserRepository(dir.resolve("users"))) {
+            List<User> loaded = repo.loadUsers();
+            assertEquals(2, loaded.size());
+            assertEquals(5, repo.findUser("2").getFineBalance(), 0.001);
+        }
+    }
+}
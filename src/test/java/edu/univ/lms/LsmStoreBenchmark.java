@@ -0,0 +1,68 @@
+package edu.univ.lms;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import edu.univ.lms.repository.lsm.LsmStore;
+
+/**
+ * Measures point writes and reads of the embedded store (not run by Surefire).
+ * <p>
+ * Loads a number of keys in random order, then reads random existing and
+ * missing keys, and prints throughput and the resulting segment count.
+ * Pass the key count as the first argument. Run it with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.univ.lms.LsmStoreBenchmark -Dexec.args=10000000
+ * </pre>
+ */
+public class LsmStoreBenchmark {
+
+    private static final int READS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        byte[] value = ("{\"isbn\":\"x\",\"title\":\"Some Title\",\"author\":\"Some Author\","
+                + "\"borrowed\":false,\"fineType\":\"BOOK\"}").getBytes(StandardCharsets.UTF_8);
+        Path dir = Files.createTempDirectory("lms-lsm-bench");
+        Random random = new Random(42);
+
+        try (LsmStore store = LsmStore.open(dir)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < keys; i++) {
+                store.put(key(random.nextInt(keys)), value);
+            }
+            store.sync();
+            report("put", keys, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            int found = 0;
+            for (int i = 0; i < READS; i++) {
+                if (store.get(key(random.nextInt(keys))) != null) {
+                    found++;
+                }
+            }
+            report("get (existing range)", READS, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                store.get("missing-" + random.nextInt(keys));
+            }
+            report("get (missing)", READS, System.nanoTime() - start);
+
+            System.out.printf("%d of %d reads hit, %d segments%n", found, READS, store.getSegmentCount());
+        }
+    }
+
+    private static String key(int i) {
+        String digits = Integer.toString(i);
+        return "0000000000".substring(digits.length()) + digits;
+    }
+
+    private static void report(String label, int ops, long nanos) {
+        System.out.printf("%-22s %,12d ops  %8.0f ms  %,12.0f ops/s%n",
+                label, ops, nanos / 1e6, ops / (nanos / 1e9));
+    }
+}
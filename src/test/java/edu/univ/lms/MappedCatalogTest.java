@@ -0,0 +1,121 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.MappedBookRepository;
+import edu.univ.lms.repository.MappedCatalog;
+import edu.univ.lms.strategy.DvdFine;
+
+public class MappedCatalogTest {
+
+    @TempDir
+    Path dir;
+
+    private MappedBookRepository saveSample() {
+        List<Book> books = new ArrayList<>();
+        // Deliberately unsorted
+        books.add(new Book("300", "Third", "Shared Author"));
+        Book dvd = new Book("100", "Inception", "Nolan", new DvdFine());
+        dvd.setBorrowed(true);
+        dvd.setBorrowedByUserId("7");
+        dvd.setBorrowDate(LocalDate.of(2025, 1, 1));
+        dvd.setDueDate(LocalDate.of(2025, 1, 8));
+        books.add(dvd);
+        books.add(new Book("200", "Second", "Shared Author"));
+
+        MappedBookRepository repo = new MappedBookRepository(dir.resolve("items.map"));
+        assertTrue(repo.saveBooks(books));
+        return repo;
+    }
+
+    @Test
+    void find_shouldReadItemsFromMappedFile() throws Exception {
+        MappedBookRepository repo = saveSample();
+
+        try (MappedCatalog catalog = repo.openCatalog()) {
+            assertEquals(3, catalog.size());
+            assertEquals("100", catalog.getIsbn(0), "Slots are sorted by ISBN");
+
+            Book dvd = catalog.find("100");
+            assertNotNull(dvd);
+            assertEquals("Inception", dvd.getTitle());
+            assertEquals("DVD", dvd.getItemType());
+            assertTrue(dvd.isBorrowed());
+            assertEquals("7", dvd.getBorrowedByUserId());
+            assertEquals(LocalDate.of(2025, 1, 8), dvd.getDueDate());
+
+            assertEquals("Shared Author", catalog.find("300").getAuthor());
+            assertNull(catalog.find("300").getDueDate());
+            assertNull(catalog.find("150"));
+            assertEquals(-1, catalog.indexOf("999"));
+        }
+    }
+
+    @Test
+    void fieldAccessors_shouldNotNeedFullDecode() throws Exception {
+        MappedBookRepository repo = saveSample();
+
+        try (MappedCatalog catalog = repo.openCatalog()) {
+            int index = catalog.indexOf("100");
+            assertTrue(catalog.isBorrowed(index));
+            assertEquals(LocalDate.of(2025, 1, 8), catalog.getDueDate(index));
+            assertFalse(catalog.isBorrowed(catalog.indexOf("200")));
+        }
+    }
+
+    @Test
+    void binarySearch_shouldFindEveryItemInLargeCatalog() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            books.add(new Book("ISBN-" + i, "Title " + i, "Author " + (i % 50)));
+        }
+        Path file = dir.resolve("big.map");
+        MappedCatalog.write(file, books);
+
+        try (MappedCatalog catalog = MappedCatalog.open(file)) {
+            for (int i = 0; i < 5000; i += 97) {
+                assertEquals("Title " + i, catalog.find("ISBN-" + i).getTitle());
+            }
+        }
+    }
+
+    @Test
+    void open_withInvalidHeader_shouldFail() throws Exception {
+        Path file = dir.resolve("bad.map");
+        Files.write(file, new byte[128]);
+
+        assertThrows(IOException.class, () -> MappedCatalog.open(file));
+    }
+
+    @Test
+    void open_withTruncatedFile_shouldFail() throws Exception {
+        MappedBookRepository repo = saveSample();
+        byte[] bytes = Files.readAllBytes(repo.getFile());
+        Files.write(repo.getFile(), Arrays.copyOf(bytes, bytes.length - 3));
+
+        assertThrows(IOException.class, repo::openCatalog);
+        assertTrue(repo.loadBooks().isEmpty());
+    }
+
+    @Test
+    void loadBooks_shouldDecodeWholeCatalog() {
+        MappedBookRepository repo = saveSample();
+
+        List<Book> loaded = repo.loadBooks();
+
+        assertEquals(3, loaded.size());
+        assertEquals("200", loaded.get(1).getIsbn());
+    }
+}
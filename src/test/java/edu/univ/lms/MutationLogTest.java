@@ -0,0 +1,226 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.MutationLog;
+import edu.univ.lms.repository.UnitOfWork;
+import edu.univ.lms.strategy.DvdFine;
+
+public class MutationLogTest {
+
+    @TempDir
+    Path dir;
+
+    private Path logFile;
+    private Path snapshot;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        logFile = dir.resolve("journal.log");
+        snapshot = dir.resolve("items.json");
+        Files.write(snapshot, "[]".getBytes());
+    }
+
+    @Test
+    void replay_shouldApplyRecordsInOrder() throws Exception {
+        Book dvd = new Book("101", "Inception", "Nolan", new DvdFine());
+        User user = new User("1", "Mahmoud", "mahmoud", "1234", false, "m@test.com");
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, dvd);
+            dvd.setBorrowed(true);
+            dvd.setBorrowedByUserId("1");
+            dvd.setDueDate(LocalDate.of(2025, 1, 10));
+            log.appendBook(LogRecord.Type.BORROW, dvd);
+            log.appendUser(LogRecord.Type.REGISTER, user);
+        }
+
+        // Reopen to make sure the records come back from disk
+        List<Book> books = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            assertEquals(3, log.getLastSequence());
+            assertEquals(3, log.replay(books, users));
+        }
+
+        assertEquals(1, books.size());
+        Book replayed = books.get(0);
+        assertTrue(replayed.isBorrowed());
+        assertEquals(LocalDate.of(2025, 1, 10), replayed.getDueDate());
+        assertEquals("DVD", replayed.getItemType(), "Fine strategy should be rebuilt on replay");
+        assertEquals(1, users.size());
+        assertEquals("mahmoud", users.get(0).getUsername());
+    }
+
+    @Test
+    void replay_shouldApplyRemovalsOnTopOfSnapshot() throws Exception {
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("101", "Keep", "A"));
+        books.add(new Book("102", "Drop", "B"));
+        List<User> users = new ArrayList<>();
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.REMOVE_ITEM, books.get(1));
+            log.replay(books, users);
+        }
+
+        assertEquals(1, books.size());
+        assertEquals("101", books.get(0).getIsbn());
+    }
+
+    @Test
+    void open_shouldTruncateTornTail() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, new Book("101", "T", "A"));
+            log.appendBook(LogRecord.Type.ADD_ITEM, new Book("102", "T", "A"));
+        }
+
+        // Simulate a crash in the middle of the second record
+        long size = Files.size(logFile);
+        try (RandomAccessFile raf = new RandomAccessFile(logFile.toFile(), "rw")) {
+            raf.setLength(size - 5);
+        }
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            assertEquals(1, log.getLastSequence());
+            assertEquals(1, log.readAll().size());
+
+            // New appends continue right after the last valid record
+            log.appendBook(LogRecord.Type.ADD_ITEM, new Book("103", "T", "A"));
+            assertEquals(2, log.readAll().size());
+        }
+    }
+
+    @Test
+    void replay_shouldDiscardLogWhenSnapshotWasRewritten() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, new Book("101", "T", "A"));
+        }
+
+        // Someone replaces the snapshot without going through a checkpoint
+        Files.write(snapshot, "[ ]".getBytes());
+
+        List<Book> books = new ArrayList<>();
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            assertEquals(0, log.replay(books, new ArrayList<>()));
+            assertTrue(log.readAll().isEmpty());
+        }
+        assertTrue(books.isEmpty());
+    }
+
+    @Test
+    void reset_shouldEmptyLogButKeepSequenceIncreasing() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, new Book("101", "T", "A"));
+            log.appendBook(LogRecord.Type.ADD_ITEM, new Book("102", "T", "A"));
+            log.reset();
+
+            assertTrue(log.readAll().isEmpty());
+            assertEquals(3, log.appendBook(LogRecord.Type.ADD_ITEM, new Book("103", "T", "A")));
+        }
+    }
+
+    @Test
+    void concurrentAppends_shouldAllBeRecorded() throws Exception {
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                final int offset = t * 100;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        try {
+                            log.appendBook(LogRecord.Type.ADD_ITEM,
+                                    new Book(String.valueOf(offset + i), "T", "A"));
+                        } catch (Exception e) {
+                            fail(e);
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            List<LogRecord> records = log.readAll();
+            assertEquals(100, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(i + 1, records.get(i).getSeq());
+            }
+        }
+    }
+
+    @Test
+    void unitOfWork_shouldReplayAllRecordsOfACommit() throws Exception {
+        Book book = new Book("101", "Dune", "Herbert");
+        User user = new User("1", "Mahmoud", "mahmoud", "1234", false, "m@test.com");
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, book);
+            user.addFine(3.0);
+            long last = new UnitOfWork(log)
+                    .registerUser(LogRecord.Type.FINE, user)
+                    .registerBook(LogRecord.Type.RETURN, book)
+                    .commit();
+            assertEquals(3, last, "Records of a unit get consecutive sequence numbers");
+        }
+
+        List<Book> books = new ArrayList<>();
+        List<User> users = new ArrayList<>();
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            assertEquals(3, log.getLastSequence());
+            assertEquals(3, log.replay(books, users));
+        }
+        assertEquals(1, books.size());
+        assertEquals(3.0, users.get(0).getFineBalance());
+    }
+
+    @Test
+    void unitOfWork_shouldBeDroppedWholeWhenTorn() throws Exception {
+        Book book = new Book("101", "Dune", "Herbert");
+        User user = new User("1", "Mahmoud", "mahmoud", "1234", false, "m@test.com");
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            log.appendBook(LogRecord.Type.ADD_ITEM, book);
+            new UnitOfWork(log)
+                    .registerUser(LogRecord.Type.FINE, user)
+                    .registerBook(LogRecord.Type.RETURN, book)
+                    .commit();
+        }
+        // Cut into the last frame, as a crash during the write would
+        long size = Files.size(logFile);
+        try (RandomAccessFile raf = new RandomAccessFile(logFile.toFile(), "rw")) {
+            raf.setLength(size - 5);
+        }
+
+        try (MutationLog log = new MutationLog(logFile, snapshot)) {
+            assertEquals(1, log.getLastSequence());
+            List<LogRecord> records = log.readAll();
+            assertEquals(1, records.size(), "Neither record of the torn unit survives");
+            assertEquals(LogRecord.Type.ADD_ITEM, records.get(0).getType());
+        }
+    }
+
+    @Test
+    void unitOfWork_shouldRejectReuse() throws Exception {
+        UnitOfWork unit = new UnitOfWork(null);
+        assertEquals(0, unit.commit(), "Nothing to journal without a log");
+        assertThrows(IllegalStateException.class,
+                () -> unit.registerBook(LogRecord.Type.RETURN, new Book("1", "T", "A")));
+    }
+}
@@ -0,0 +1,100 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.NdjsonBookRepository;
+
+public class NdjsonRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    private List<Book> catalog(int n) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add(new Book("ISBN-" + i, "Title " + i, "Author " + i));
+        }
+        return books;
+    }
+
+    @Test
+    void saveAndLoad_shouldWriteOneItemPerLine() throws Exception {
+        NdjsonBookRepository repo = new NdjsonBookRepository(dir.resolve("items.ndjson"));
+        assertTrue(repo.saveBooks(catalog(10)));
+
+        List<String> lines = Files.readAllLines(repo.getFile(), StandardCharsets.UTF_8);
+        assertEquals(10, lines.size());
+        assertTrue(lines.get(0).startsWith("{") && lines.get(0).contains("ISBN-0"));
+
+        List<Book> loaded = repo.loadBooks();
+        assertEquals(10, loaded.size());
+        assertEquals("Title 9", loaded.get(9).getTitle());
+        assertTrue(repo.getRejectedLines().isEmpty());
+    }
+
+    @Test
+    void loadBooks_shouldRejectBadLinesAndKeepTheRest() throws Exception {
+        Path file = dir.resolve("items.ndjson");
+        NdjsonBookRepository repo = new NdjsonBookRepository(file);
+        repo.saveBooks(catalog(3));
+        Files.write(file, "{not json\n\n{\"title\":\"No ISBN\"}\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        repo.appendBooks(Collections.singletonList(new Book("ISBN-LAST", "Last", "Author")));
+
+        List<Book> loaded = repo.loadBooks();
+
+        assertEquals(4, loaded.size(), "Valid lines around the bad ones still load");
+        assertEquals("ISBN-LAST", loaded.get(3).getIsbn());
+        assertEquals(2, repo.getRejectedLines().size());
+        assertEquals("{not json", repo.getRejectedLines().get(0).getContent());
+    }
+
+    @Test
+    void appendBooks_shouldTerminateUnfinishedLastLine() throws Exception {
+        Path file = dir.resolve("items.ndjson");
+        Files.write(file, "{\"isbn\":\"A\",\"title\":\"T\",\"author\":\"X\"}".getBytes(StandardCharsets.UTF_8));
+        NdjsonBookRepository repo = new NdjsonBookRepository(file);
+
+        repo.appendBooks(catalog(1));
+
+        assertEquals(2, repo.loadBooks().size());
+    }
+
+    @Test
+    void splits_shouldCoverFileAtLineBoundariesAndLoadInOrder() throws Exception {
+        NdjsonBookRepository repo = new NdjsonBookRepository(dir.resolve("items.ndjson"));
+        repo.saveBooks(catalog(1000));
+
+        List<NdjsonBookRepository.Split> splits = repo.split(7);
+        assertTrue(splits.size() > 1);
+        assertEquals(0, splits.get(0).getStart());
+        assertEquals(Files.size(repo.getFile()), splits.get(splits.size() - 1).getEnd());
+        int total = 0;
+        for (int i = 0; i < splits.size(); i++) {
+            if (i > 0) {
+                assertEquals(splits.get(i - 1).getEnd(), splits.get(i).getStart());
+            }
+            List<Book> part = new ArrayList<>();
+            repo.readSplit(splits.get(i), part::add, r -> fail("Split cut a line: " + r.getContent()));
+            total += part.size();
+        }
+        assertEquals(1000, total);
+
+        List<Book> parallel = repo.loadBooks(4);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("ISBN-" + i, parallel.get(i).getIsbn());
+        }
+    }
+}
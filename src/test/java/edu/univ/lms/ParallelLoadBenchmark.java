@@ -0,0 +1,67 @@
+package edu.univ.lms;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.SegmentedBookRepository;
+
+/**
+ * Measures segmented catalog loads at increasing parallelism (not run by Surefire).
+ * <p>
+ * Writes a synthetic catalog as segment files once, then loads it with 1, 2,
+ * 4 and 8 workers and prints the best time and the speedup over one worker.
+ * The speedup is bounded by the number of available cores. Run it with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.univ.lms.ParallelLoadBenchmark
+ * </pre>
+ */
+public class ParallelLoadBenchmark {
+
+    private static final int ITEMS = 1_000_000;
+    private static final int SEGMENTS = 64;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        List<Book> books = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            Book b = new Book(String.valueOf(1_000_000 + i), "Title " + i, "Author " + (i % 5_000));
+            if (i % 3 == 0) {
+                b.setBorrowed(true);
+                b.setBorrowedByUserId(String.valueOf(i % 2_000));
+                b.setBorrowDate(LocalDate.of(2025, 1, 1).plusDays(i % 60));
+                b.setDueDate(b.getBorrowDate().plusDays(28));
+            }
+            books.add(b);
+        }
+
+        Path dir = Files.createTempDirectory("lms-parallel-bench");
+        new SegmentedBookRepository(dir, SEGMENTS).writeBooks(books);
+        books = null;
+
+        System.out.println(Runtime.getRuntime().availableProcessors() + " cores available");
+        long baseline = 0;
+        for (int workers = 1; workers <= 8; workers *= 2) {
+            SegmentedBookRepository repo = new SegmentedBookRepository(dir, SEGMENTS);
+            repo.setParallelism(workers);
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = System.nanoTime();
+                int n = repo.loadBooks().size();
+                best = Math.min(best, System.nanoTime() - start);
+                if (n != ITEMS) {
+                    throw new IllegalStateException("Loaded " + n + " items");
+                }
+            }
+            if (workers == 1) {
+                baseline = best;
+            }
+            System.out.printf("%d worker(s): %6.0f ms  speedup %.2fx%n",
+                    workers, best / 1e6, (double) baseline / best);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.service.LibraryService;
+import edu.univ.lms.service.PersistenceService;
+
+public class PersistenceServiceTest {
+
+    private PersistenceService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void markDirty_shouldReturnImmediatelyAndFlushAfterDebounce() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        service = new PersistenceService(flushes::incrementAndGet);
+        service.setDebounce(50, TimeUnit.MILLISECONDS);
+        service.start();
+
+        for (int i = 0; i < 10; i++) {
+            service.markDirty();
+        }
+        assertEquals(0, flushes.get(), "Changes are not flushed synchronously");
+
+        waitUntil(() -> service.getPendingChanges() == 0);
+        assertEquals(0, service.getPendingChanges());
+        assertEquals(1, flushes.get(), "A burst of changes is flushed once");
+    }
+
+    @Test
+    void maxDelay_shouldBoundLossWindowUnderContinuousChanges() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        service = new PersistenceService(flushes::incrementAndGet);
+        service.setDebounce(1, TimeUnit.SECONDS);
+        service.setMaxDelay(100, TimeUnit.MILLISECONDS);
+        service.start();
+
+        // Keep changing faster than the debounce interval for a while
+        long end = System.currentTimeMillis() + 400;
+        while (System.currentTimeMillis() < end) {
+            service.markDirty();
+            Thread.sleep(10);
+        }
+
+        assertTrue(flushes.get() >= 2, "The max delay must force flushes despite ongoing changes");
+    }
+
+    @Test
+    void flushThreshold_shouldFlushWithoutWaitingForDebounce() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        service = new PersistenceService(flushes::incrementAndGet);
+        service.setDebounce(10, TimeUnit.SECONDS);
+        service.setMaxDelay(10, TimeUnit.SECONDS);
+        service.setFlushThreshold(5);
+        service.start();
+
+        for (int i = 0; i < 5; i++) {
+            service.markDirty();
+        }
+
+        waitUntil(() -> flushes.get() > 0);
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    void markDirty_atBackpressureLimit_shouldBlockUntilFlushed() throws Exception {
+        AtomicInteger flushes = new AtomicInteger();
+        service = new PersistenceService(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            flushes.incrementAndGet();
+        });
+        service.setDebounce(10, TimeUnit.SECONDS);
+        service.setMaxDelay(10, TimeUnit.SECONDS);
+        service.setFlushThreshold(3);
+        service.setMaxPending(3);
+        service.start();
+
+        service.markDirty();
+        service.markDirty();
+        long start = System.nanoTime();
+        service.markDirty(); // reaches the limit
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(waited >= 50, "Caller should have waited for the flush, waited " + waited + " ms");
+        assertEquals(1, flushes.get());
+    }
+
+    @Test
+    void close_shouldFlushPendingChanges() {
+        AtomicInteger flushes = new AtomicInteger();
+        service = new PersistenceService(flushes::incrementAndGet);
+        service.setDebounce(10, TimeUnit.SECONDS);
+        service.start();
+
+        service.markDirty();
+        service.close();
+
+        assertEquals(1, flushes.get());
+        assertEquals(0, service.getPendingChanges());
+    }
+
+    @Test
+    void flush_shouldPropagateFailureAndKeepChangesPending() {
+        service = new PersistenceService(() -> {
+            throw new IOException("disk gone");
+        });
+        service.markDirty();
+
+        assertThrows(IOException.class, service::flush);
+        assertEquals(1, service.getPendingChanges());
+        service = null;
+    }
+
+    @Test
+    void libraryService_shouldReportMutations() {
+        AtomicInteger flushes = new AtomicInteger();
+        service = new PersistenceService(flushes::incrementAndGet);
+        LibraryService library = new LibraryService();
+        library.setPersistenceService(service);
+
+        User admin = new User("1", "Admin", "admin", "1234", true, "admin@test.com");
+        admin.login("admin", "1234");
+
+        assertTrue(library.addBook(admin, new Book("1", "Clean Code", "Martin")));
+
+        assertEquals(1, service.getPendingChanges());
+    }
+}
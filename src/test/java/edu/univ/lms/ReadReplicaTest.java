@@ -0,0 +1,162 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.MutationLog;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.service.ReadReplica;
+
+public class ReadReplicaTest {
+
+    @TempDir
+    Path dir;
+
+    private Path items;
+    private Path usersFile;
+    private Path journal;
+
+    @BeforeEach
+    void setUp() {
+        items = dir.resolve("items.json");
+        usersFile = dir.resolve("users.json");
+        journal = dir.resolve("journal.log");
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("100", "Clean Code", "Martin"));
+        assertTrue(new BookRepository(items).saveBooks(books));
+        List<User> users = new ArrayList<>();
+        users.add(new User("1", "Admin", "admin", "pw", true, "a@b.c"));
+        assertTrue(new UserRepository(usersFile).saveUsers(users));
+    }
+
+    /**
+     * Primary process for the multi-JVM test: appends item additions to a
+     * journal, one every few milliseconds.
+     */
+    public static class Primary {
+        public static void main(String[] args) throws Exception {
+            Path journal = Paths.get(args[0]);
+            int count = Integer.parseInt(args[2]);
+            try (MutationLog log = new MutationLog(journal, Paths.get(args[1]))) {
+                for (int i = 0; i < count; i++) {
+                    log.appendBook(LogRecord.Type.ADD_ITEM, new Book("p" + i, "Primary Title " + i, "Remote"));
+                    Thread.sleep(2);
+                }
+            }
+        }
+    }
+
+    @Test
+    void refresh_shouldFollowPrimaryChanges() throws Exception {
+        try (MutationLog primary = new MutationLog(journal, items, usersFile);
+             ReadReplica replica = new ReadReplica(items, usersFile, journal)) {
+            primary.appendBook(LogRecord.Type.ADD_ITEM, new Book("200", "Refactoring", "Fowler"));
+            replica.open();
+            assertEquals(2, replica.getLibraryService().getAllBooks().size());
+            assertEquals(1, replica.getLastSequence());
+
+            Book borrowed = new Book("100", "Clean Code", "Martin");
+            borrowed.setBorrowed(true);
+            borrowed.setBorrowedByUserId("1");
+            primary.appendBook(LogRecord.Type.BORROW, borrowed);
+            primary.appendUser(LogRecord.Type.REGISTER, new User("2", "Reader", "reader", "pw", false, "r@b.c"));
+
+            assertEquals(2, replica.refresh());
+            assertTrue(replica.getLibraryService().searchBookByIsbn("100").isBorrowed());
+            assertEquals(2, replica.getUsers().size());
+            assertEquals(0, replica.refresh());
+        }
+    }
+
+    @Test
+    void refresh_shouldApplyUpdatesAndRemovalsInPlace() throws Exception {
+        try (MutationLog primary = new MutationLog(journal, items, usersFile);
+             ReadReplica replica = new ReadReplica(items, usersFile, journal)) {
+            replica.open();
+            Book kept = replica.getLibraryService().searchBookByIsbn("100");
+
+            primary.appendBook(LogRecord.Type.ADD_ITEM, new Book("200", "Refactoring", "Fowler"));
+            primary.appendBook(LogRecord.Type.UPDATE_ITEM, new Book("200", "Refactoring, 2nd ed.", "Fowler"));
+            primary.appendUser(LogRecord.Type.REGISTER, new User("2", "Reader", "reader", "pw", false, "r@b.c"));
+            User fined = new User("1", "Admin", "admin", "pw", true, "a@b.c");
+            fined.addFine(5);
+            primary.appendUser(LogRecord.Type.FINE, fined);
+            assertEquals(4, replica.refresh());
+
+            assertEquals(2, replica.getLibraryService().getAllBooks().size());
+            assertEquals("Refactoring, 2nd ed.", replica.getLibraryService().searchBookByIsbn("200").getTitle());
+            assertSame(kept, replica.getLibraryService().searchBookByIsbn("100"), "Untouched items are not copied");
+            assertEquals(5.0, replica.getUsers().findByUsername("admin").getFineBalance());
+            assertEquals("1", replica.getUsers().get(0).getUserId(), "Updated users keep their position");
+
+            Book removed = new Book("200", "Refactoring, 2nd ed.", "Fowler");
+            primary.appendBook(LogRecord.Type.REMOVE_ITEM, removed);
+            primary.appendUser(LogRecord.Type.UNREGISTER, new User("2", "Reader", "reader", "pw", false, "r@b.c"));
+            assertEquals(2, replica.refresh());
+
+            assertNull(replica.getLibraryService().searchBookByIsbn("200"));
+            assertNull(replica.getUsers().findById("2"));
+            assertEquals(1, replica.getUsers().size());
+        }
+    }
+
+    @Test
+    void refresh_shouldReloadAfterMissedCheckpoint() throws Exception {
+        try (MutationLog primary = new MutationLog(journal, items, usersFile);
+             ReadReplica replica = new ReadReplica(items, usersFile, journal)) {
+            replica.open();
+
+            // The primary checkpoints before the replica polls
+            List<Book> books = new ArrayList<>();
+            books.add(new Book("100", "Clean Code", "Martin"));
+            books.add(new Book("300", "Checkpointed", "Author"));
+            primary.appendBook(LogRecord.Type.ADD_ITEM, books.get(1));
+            primary.beginCheckpoint();
+            new BookRepository(items).writeBooks(books);
+            primary.completeCheckpoint(1);
+
+            assertEquals(0, replica.refresh());
+            assertEquals(1, replica.getReloadCount());
+            assertNotNull(replica.getLibraryService().searchBookByIsbn("300"));
+            assertEquals(1, replica.getLastSequence());
+        }
+    }
+
+    @Test
+    void replica_shouldTrackPrimaryInAnotherJvm() throws Exception {
+        try (ReadReplica replica = new ReadReplica(items, usersFile, journal)) {
+            replica.open();
+            replica.start(5);
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    Primary.class.getName(), journal.toString(), items.toString(), "50")
+                    .redirectErrorStream(true)
+                    .redirectOutput(new File(dir.toFile(), "primary.out"))
+                    .start();
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS), "Primary did not finish");
+            assertEquals(0, process.exitValue());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (replica.getLastSequence() < 50 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(50, replica.getLastSequence());
+            assertEquals(50, replica.getLibraryService().searchBooksByAuthor("Remote").size());
+        }
+    }
+}
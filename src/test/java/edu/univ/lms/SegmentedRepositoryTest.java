@@ -0,0 +1,155 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.SegmentedBookRepository;
+import edu.univ.lms.repository.SegmentedUserRepository;
+
+public class SegmentedRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    private List<Book> catalog(int n) {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            books.add(new Book("ISBN-" + i, "Title " + i, "Author " + i));
+        }
+        return books;
+    }
+
+    @Test
+    void book_shouldTrackDirtyState() {
+        Book book = new Book("1", "Title", "Author");
+        assertTrue(book.isDirty(), "New items are dirty");
+
+        book.markClean();
+        assertFalse(book.isDirty());
+
+        book.setDueDate(LocalDate.now());
+        assertTrue(book.isDirty());
+    }
+
+    @Test
+    void user_shouldTrackDirtyStateButIgnoreLogin() {
+        User user = new User("1", "Mahmoud", "mahmoud", "1234", false, "m@test.com");
+        user.markClean();
+
+        user.login("mahmoud", "1234");
+        assertFalse(user.isDirty(), "Session state does not need a write");
+
+        user.addFine(5);
+        assertTrue(user.isDirty());
+    }
+
+    @Test
+    void saveBooks_afterSingleChange_shouldRewriteOneSegment() {
+        SegmentedBookRepository repo = new SegmentedBookRepository(dir.resolve("items"), 16);
+        List<Book> books = catalog(1000);
+
+        assertTrue(repo.saveBooks(books));
+        assertEquals(16, repo.getLastWrittenSegments(), "First save writes everything");
+        assertTrue(books.stream().noneMatch(Book::isDirty), "Saved items are clean");
+
+        // Nothing changed
+        repo.saveBooks(books);
+        assertEquals(0, repo.getLastWrittenSegments());
+
+        // A single return touches one item
+        books.get(123).setBorrowed(false);
+        repo.saveBooks(books);
+        assertEquals(1, repo.getLastWrittenSegments());
+    }
+
+    @Test
+    void saveBooks_afterRemoval_shouldRewriteThatSegment() {
+        SegmentedBookRepository repo = new SegmentedBookRepository(dir.resolve("items"), 16);
+        List<Book> books = catalog(200);
+        repo.saveBooks(books);
+
+        books.remove(50);
+        repo.saveBooks(books);
+
+        assertEquals(1, repo.getLastWrittenSegments());
+        assertEquals(199, new SegmentedBookRepository(dir.resolve("items"), 16).loadBooks().size());
+    }
+
+    @Test
+    void loadBooks_shouldRestoreCleanItemsAndTrackFurtherChanges() {
+        Path items = dir.resolve("items");
+        List<Book> books = catalog(300);
+        books.get(7).setBorrowed(true);
+        new SegmentedBookRepository(items, 8).saveBooks(books);
+
+        SegmentedBookRepository reopened = new SegmentedBookRepository(items, 8);
+        List<Book> loaded = reopened.loadBooks();
+
+        assertEquals(300, loaded.size());
+        assertTrue(loaded.stream().noneMatch(Book::isDirty));
+        assertTrue(loaded.stream().anyMatch(b -> b.getIsbn().equals("ISBN-7") && b.isBorrowed()));
+
+        loaded.add(new Book("NEW", "New", "Author"));
+        reopened.saveBooks(loaded);
+        assertEquals(1, reopened.getLastWrittenSegments());
+    }
+
+    @Test
+    void saveUsers_afterFineChange_shouldRewriteOneSegment() throws Exception {
+        Path usersDir = dir.resolve("users");
+        SegmentedUserRepository repo = new SegmentedUserRepository(usersDir, 4);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            users.add(new User(String.valueOf(i), "User " + i, "user" + i, "pw", false, i + "@test.com"));
+        }
+        repo.saveUsers(users);
+        assertEquals(4, repo.getLastWrittenSegments());
+
+        users.get(3).addFine(10);
+        repo.saveUsers(users);
+        assertEquals(1, repo.getLastWrittenSegments());
+
+        List<User> loaded = new SegmentedUserRepository(usersDir, 4).loadUsers();
+        assertEquals(40, loaded.size());
+        assertTrue(loaded.stream().anyMatch(u -> u.getFineBalance() == 10));
+        assertTrue(Files.isDirectory(repo.getFile()));
+    }
+
+    @Test
+    void loadBooks_inParallel_shouldMatchSequentialOrder() throws Exception {
+        Path items = dir.resolve("items");
+        new SegmentedBookRepository(items, 32).saveBooks(catalog(2000));
+
+        SegmentedBookRepository sequential = new SegmentedBookRepository(items, 32);
+        sequential.setParallelism(1);
+        SegmentedBookRepository parallel = new SegmentedBookRepository(items, 32);
+        parallel.setParallelism(8);
+
+        List<String> expected = new ArrayList<>();
+        sequential.loadBooks().forEach(b -> expected.add(b.getIsbn()));
+        List<String> actual = new ArrayList<>();
+        parallel.loadBooks().forEach(b -> actual.add(b.getIsbn()));
+        assertEquals(expected, actual);
+
+        List<Integer> shardSizes = new ArrayList<>();
+        parallel.loadBooks(shard -> shardSizes.add(shard.size()));
+        assertEquals(32, shardSizes.size(), "One hand-over per segment");
+        assertEquals(2000, shardSizes.stream().mapToInt(Integer::intValue).sum());
+
+        // Bookkeeping from a parallel load still detects single changes
+        List<Book> loaded = parallel.loadBooks();
+        loaded.get(0).setTitle("Changed");
+        parallel.saveBooks(loaded);
+        assertEquals(1, parallel.getLastWrittenSegments());
+    }
+}
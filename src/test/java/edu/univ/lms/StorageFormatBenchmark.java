@@ -0,0 +1,67 @@
+package edu.univ.lms;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.repository.BinaryBookRepository;
+import edu.univ.lms.repository.BookRepository;
+
+/**
+ * Compares JSON and binary catalog files (not run by Surefire).
+ * <p>
+ * Saves and loads the same synthetic catalog with each backend and prints
+ * file size and timings. Run it with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.univ.lms.StorageFormatBenchmark
+ * </pre>
+ */
+public class StorageFormatBenchmark {
+
+    private static final int ITEMS = 500_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        List<Book> books = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            Book b = new Book(String.valueOf(1_000_000 + i), "Title " + i, "Author " + (i % 5_000));
+            if (i % 3 == 0) {
+                b.setBorrowed(true);
+                b.setBorrowedByUserId(String.valueOf(i % 2_000));
+                b.setBorrowDate(LocalDate.of(2025, 1, 1).plusDays(i % 60));
+                b.setDueDate(b.getBorrowDate().plusDays(28));
+            }
+            books.add(b);
+        }
+
+        Path dir = Files.createTempDirectory("lms-bench");
+        BookRepository json = new BookRepository(dir.resolve("items.json"));
+        BookRepository compact = new BookRepository(dir.resolve("items-compact.json"));
+        compact.setCompact(true);
+        BookRepository binary = new BinaryBookRepository(dir.resolve("items.bin"));
+
+        run("json", json, books);
+        run("compact", compact, books);
+        run("binary", binary, books);
+    }
+
+    private static void run(String label, BookRepository repo, List<Book> books) throws Exception {
+        long save = Long.MAX_VALUE;
+        long load = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            repo.saveBooks(books);
+            save = Math.min(save, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            repo.loadBooks();
+            load = Math.min(load, System.nanoTime() - start);
+        }
+        System.out.printf("%-8s %,14d bytes  save %7.1f ms  load %7.1f ms%n",
+                label, Files.size(repo.getFile()), save / 1e6, load / 1e6);
+    }
+}
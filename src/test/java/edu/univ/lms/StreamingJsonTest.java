@@ -0,0 +1,156 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.Compression;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.strategy.DvdFine;
+
+public class StreamingJsonTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void loadBooks_shouldStreamAllRecordsAndRebuildStrategies() {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        List<Book> books = new ArrayList<>();
+        books.add(new Book("101", "Inception", "Nolan", new DvdFine()));
+        books.add(new Book("102", "Clean Code", "Martin"));
+        repo.saveBooks(books);
+
+        List<Book> loaded = repo.loadBooks();
+
+        assertEquals(2, loaded.size());
+        assertEquals("DVD", loaded.get(0).getItemType());
+        assertEquals("Clean Code", loaded.get(1).getTitle());
+    }
+
+    @Test
+    void loadBooks_withEmptyFile_shouldReturnEmptyList() throws Exception {
+        Path file = dir.resolve("items.json");
+        Files.write(file, new byte[0]);
+
+        assertTrue(new BookRepository(file).loadBooks().isEmpty());
+    }
+
+    @Test
+    void loadBooks_withTruncatedArray_shouldReturnEmptyList() throws Exception {
+        Path file = dir.resolve("items.json");
+        Files.write(file, "[{\"isbn\":\"1\",\"title\":\"A\"},".getBytes());
+
+        assertTrue(new BookRepository(file).loadBooks().isEmpty(),
+                "A half-read file must not produce a partial catalog");
+    }
+
+    @Test
+    void loadBooks_shouldReportProgressForLargeFiles() {
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            books.add(new Book(String.valueOf(i), "Title " + i, "Author " + i));
+        }
+        repo.saveBooks(books);
+
+        List<long[]> updates = new ArrayList<>();
+        repo.setProgressListener((file, bytesRead, totalBytes, records) ->
+                updates.add(new long[] {bytesRead, totalBytes, records}));
+
+        assertEquals(20000, repo.loadBooks().size());
+
+        // Several intermediate updates plus the final one
+        assertTrue(updates.size() > 2, "Expected intermediate progress updates");
+        long[] last = updates.get(updates.size() - 1);
+        assertEquals(last[1], last[0]);
+        assertEquals(20000, last[2]);
+        for (int i = 1; i < updates.size(); i++) {
+            assertTrue(updates.get(i)[0] >= updates.get(i - 1)[0], "Progress must not go backwards");
+        }
+    }
+
+    @Test
+    void loadUsers_shouldStreamAllRecords() {
+        UserRepository repo = new UserRepository(dir.resolve("users.json"));
+        List<User> users = new ArrayList<>();
+        users.add(new User("1", "Mahmoud", "mahmoud", "1234", false, "m@test.com"));
+        users.add(new User("2", "Admin", "admin", "admin", true, "a@test.com"));
+        repo.saveUsers(users);
+
+        List<User> loaded = repo.loadUsers();
+
+        assertEquals(2, loaded.size());
+        assertTrue(loaded.get(1).isAdmin());
+    }
+
+    @Test
+    void saveBooks_compact_shouldBeSmallerAndLoadTheSame() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            books.add(new Book(String.valueOf(i), "Title " + i, "Author " + i));
+        }
+
+        BookRepository pretty = new BookRepository(dir.resolve("pretty.json"));
+        pretty.saveBooks(books);
+        BookRepository compact = new BookRepository(dir.resolve("compact.json"));
+        compact.setCompact(true);
+        compact.saveBooks(books);
+
+        assertTrue(Files.size(compact.getFile()) < Files.size(pretty.getFile()));
+        assertFalse(new String(Files.readAllBytes(compact.getFile())).contains("\n"));
+
+        List<Book> loaded = compact.loadBooks();
+        assertEquals(100, loaded.size());
+        assertEquals("Title 99", loaded.get(99).getTitle());
+    }
+
+    @Test
+    void saveUsers_shouldOverwritePreviousContent() {
+        UserRepository repo = new UserRepository(dir.resolve("users.json"));
+        List<User> users = new ArrayList<>();
+        users.add(new User("1", "Mahmoud", "mahmoud", "1234", false, "m@test.com"));
+        users.add(new User("2", "Admin", "admin", "admin", true, "a@test.com"));
+        repo.saveUsers(users);
+
+        // A shorter second save must not leave bytes from the first one behind
+        users.remove(1);
+        repo.setCompact(true);
+        assertTrue(repo.saveUsers(users));
+
+        assertEquals(1, repo.loadUsers().size());
+    }
+
+    @Test
+    void saveBooks_compressed_shouldBeSmallerAndLoadTransparently() throws Exception {
+        List<Book> books = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            books.add(new Book(String.valueOf(i), "Title " + i, "Author " + (i % 10)));
+        }
+
+        BookRepository plain = new BookRepository(dir.resolve("plain.json"));
+        plain.saveBooks(books);
+        BookRepository gzip = new BookRepository(dir.resolve("items.json.gz"));
+        gzip.setCompression(Compression.GZIP_FAST);
+        assertTrue(gzip.saveBooks(books));
+
+        byte[] stored = Files.readAllBytes(gzip.getFile());
+        assertEquals((byte) 0x1f, stored[0]);
+        assertEquals((byte) 0x8b, stored[1]);
+        assertTrue(stored.length * 5 < Files.size(plain.getFile()), "Catalog text compresses well");
+
+        // A repository without the setting still reads the compressed file
+        List<Book> loaded = new BookRepository(gzip.getFile()).loadBooks();
+        assertEquals(1000, loaded.size());
+        assertEquals("Title 999", loaded.get(999).getTitle());
+    }
+}
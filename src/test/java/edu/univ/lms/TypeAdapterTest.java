@@ -0,0 +1,112 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.repository.BookRepository;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.strategy.DvdFine;
+import edu.univ.lms.strategy.JournalFine;
+
+public class TypeAdapterTest {
+
+    @TempDir
+    Path dir;
+
+    /** Reflective GSON as used before the streaming adapters. */
+    private static final Gson reflective = new GsonBuilder()
+            .setPrettyPrinting()
+            .registerTypeAdapter(LocalDate.class,
+                    (JsonSerializer<LocalDate>) (date, type, context) -> new JsonPrimitive(date.toString()))
+            .create();
+
+    @Test
+    void books_shouldBeWrittenExactlyLikeReflectiveBinding() throws Exception {
+        List<Book> books = new ArrayList<>();
+        Book borrowed = new Book("101", "Inception \"<&>\"", "Nolan", new DvdFine());
+        borrowed.setBorrowed(true);
+        borrowed.setBorrowedByUserId("7");
+        borrowed.setBorrowDate(LocalDate.of(2025, 3, 1));
+        borrowed.setDueDate(LocalDate.of(2025, 3, 8));
+        books.add(borrowed);
+        books.add(new Book("102", "Clean Code", null));
+
+        BookRepository repo = new BookRepository(dir.resolve("items.json"));
+        repo.writeBooks(books);
+
+        String written = new String(Files.readAllBytes(repo.getFile()), StandardCharsets.UTF_8);
+        assertEquals(reflective.toJson(books), written);
+    }
+
+    @Test
+    void users_shouldBeWrittenExactlyLikeReflectiveBinding() throws Exception {
+        List<User> users = new ArrayList<>();
+        User user = new User("1", "Ada", "ada", "pw", false, "ada@example.com");
+        user.addFine(2.5);
+        users.add(user);
+        users.add(new User("2", "Admin", "admin", "pw", true, null));
+
+        UserRepository repo = new UserRepository(dir.resolve("users.json"));
+        repo.writeUsers(users);
+
+        String written = new String(Files.readAllBytes(repo.getFile()), StandardCharsets.UTF_8);
+        assertEquals(reflective.toJson(users), written);
+    }
+
+    @Test
+    void loadBooks_shouldResolveStrategiesAndDatesInline() throws Exception {
+        Path file = dir.resolve("items.json");
+        Files.write(file, ("[{\"isbn\":\"1\",\"title\":\"A\",\"fineType\":\"JOURNAL\","
+                + "\"borrowed\":true,\"dueDate\":\"2025-01-31\",\"extra\":{\"ignored\":[1,2]}},"
+                + "{\"isbn\":\"2\",\"title\":\"B\",\"borrowDate\":null}]").getBytes(StandardCharsets.UTF_8));
+
+        List<Book> loaded = new BookRepository(file).loadBooks();
+
+        assertEquals(2, loaded.size());
+        Book journal = loaded.get(0);
+        assertEquals("JOURNAL", journal.getItemType());
+        assertEquals(new JournalFine().calculateFine(3), journal.calculateFine(3));
+        assertTrue(journal.isBorrowed());
+        assertEquals(LocalDate.of(2025, 1, 31), journal.getDueDate());
+        assertFalse(journal.isDirty(), "Loaded items are clean");
+
+        Book plain = loaded.get(1);
+        assertEquals("BOOK", plain.getFineType(), "A missing type loads as a book");
+        assertNull(plain.getBorrowDate());
+    }
+
+    @Test
+    void loadUsers_shouldRestoreBalanceAndStartLoggedOut() {
+        User user = new User("1", "Ada", "ada", "pw", true, "ada@example.com");
+        user.addFine(4.0);
+        user.login("ada", "pw");
+        List<User> users = new ArrayList<>();
+        users.add(user);
+        UserRepository repo = new UserRepository(dir.resolve("users.json"));
+        assertTrue(repo.saveUsers(users));
+
+        User loaded = repo.loadUsers().get(0);
+
+        assertEquals("ada", loaded.getUsername());
+        assertTrue(loaded.isAdmin());
+        assertEquals(4.0, loaded.getFineBalance());
+        assertFalse(loaded.isLoggedIn());
+        assertFalse(loaded.isDirty());
+    }
+}
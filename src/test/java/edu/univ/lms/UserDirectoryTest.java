@@ -0,0 +1,170 @@
+package edu.univ.lms;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.univ.lms.model.Book;
+import edu.univ.lms.model.User;
+import edu.univ.lms.observer.Observer;
+import edu.univ.lms.repository.UserRepository;
+import edu.univ.lms.service.LibraryService;
+import edu.univ.lms.service.ReminderService;
+import edu.univ.lms.service.UserDirectory;
+import edu.univ.lms.service.UserService;
+
+public class UserDirectoryTest {
+
+    @TempDir
+    Path dir;
+
+    private static User user(String id, String username) {
+        return new User(id, "Name " + id, username, "pw" + id, false, username + "@x.y");
+    }
+
+    @Test
+    void findByUsername_shouldIgnoreCase() {
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "Alice"), user("2", "bob")));
+
+        assertEquals("1", directory.findByUsername("ALICE").getUserId());
+        assertEquals("2", directory.findById("2").getUserId());
+        assertTrue(directory.containsUsername("Bob"));
+        assertNull(directory.findByUsername("carol"));
+        assertEquals(2, directory.size());
+    }
+
+    @Test
+    void findByUsername_shouldMatchLikeEqualsIgnoreCase() {
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "kim"), user("2", "sam")));
+
+        // Dotless i and long s equal i and s ignoring case, though their
+        // lower-case forms differ
+        for (String name : Arrays.asList("kım", "KIM", "ſam", "SAM")) {
+            User found = directory.findByUsername(name);
+            assertNotNull(found, name);
+            assertTrue(found.getUsername().equalsIgnoreCase(name), name);
+            assertTrue(directory.containsUsername(name), name);
+        }
+        assertNull(directory.findByUsername("kin"));
+    }
+
+    @Test
+    void remove_shouldUpdateIndexes() {
+        User bob = user("2", "bob");
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "alice"), bob));
+
+        assertTrue(directory.remove(bob));
+
+        assertFalse(directory.containsUsername("bob"));
+        assertFalse(directory.containsId("2"));
+        assertEquals(1, directory.size());
+    }
+
+    @Test
+    void set_shouldReplaceIndexEntries() {
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "alice"), user("2", "bob")));
+        User renamed = user("2", "robert");
+
+        directory.set(1, renamed);
+
+        assertSame(renamed, directory.findById("2"));
+        assertSame(renamed, directory.findByUsername("ROBERT"));
+        assertFalse(directory.containsUsername("bob"));
+        assertEquals(2, directory.size());
+    }
+
+    @Test
+    void set_shouldKeepFirstUserWhenReplacementDuplicatesALaterOne() {
+        User later = user("3", "carol");
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "alice"), user("2", "bob"), later));
+        User duplicate = user("2", "Carol");
+
+        directory.set(1, duplicate);
+
+        assertSame(duplicate, directory.findByUsername("carol"), "Earlier position wins, like a scan");
+        assertSame(later, directory.findById("3"));
+    }
+
+    @Test
+    void indexOf_shouldFollowAppendsReplacementsAndRemovals() {
+        User alice = user("1", "alice");
+        User bob = user("2", "bob");
+        UserDirectory directory = new UserDirectory(Arrays.asList(alice, bob));
+        assertEquals(1, directory.indexOf(bob));
+
+        User carol = user("3", "carol");
+        directory.add(carol);
+        User newBob = user("2", "bob");
+        directory.set(1, newBob);
+        assertEquals(2, directory.indexOf(carol));
+        assertEquals(1, directory.indexOf(newBob));
+        assertEquals(-1, directory.indexOf(bob));
+
+        directory.remove(0);
+        assertEquals(0, directory.indexOf(newBob));
+        assertEquals(1, directory.indexOf(carol));
+        assertEquals(-1, directory.indexOf(alice));
+    }
+
+    @Test
+    void authenticate_shouldStayCaseSensitiveLikeUser() {
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "alice")));
+        UserService service = new UserService(new UserRepository());
+
+        assertSame(directory.get(0), service.authenticateUser(directory, "alice", "pw1"));
+        assertNull(service.authenticateUser(directory, "ALICE", "pw1"));
+        assertNull(service.authenticateUser(directory, "alice", "wrong"));
+    }
+
+    @Test
+    void authenticate_shouldFindUsersShadowedByLegacyDuplicates() {
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "Sam"), user("2", "sam")));
+
+        assertEquals("1", directory.findByUsername("sam").getUserId(), "First user wins, as with a scan");
+        assertEquals("2", directory.authenticate("sam", "pw2").getUserId());
+
+        directory.remove(0);
+        assertEquals("2", directory.findByUsername("SAM").getUserId());
+    }
+
+    @Test
+    void registerUser_shouldSkipIdStillInUse() {
+        UserService service = new UserService(new UserRepository(dir.resolve("users.json")));
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "a"), user("2", "b"), user("3", "c")));
+        directory.remove(1);
+
+        assertTrue(service.registerUser(directory, "New", "new", "pw", "n@x.y"));
+        assertFalse(service.registerUser(directory, "Dup", "NEW", "pw", "d@x.y"));
+
+        assertEquals("4", directory.findByUsername("new").getUserId());
+        assertEquals(3, directory.size());
+    }
+
+    @Test
+    void sendOverdueReminders_shouldLookUpBorrowersById() {
+        ReminderService reminders = new ReminderService();
+        Observer observer = mock(Observer.class);
+        reminders.addObserver(observer);
+        User borrower = user("2", "bob");
+        UserDirectory directory = new UserDirectory(Arrays.asList(user("1", "alice"), borrower));
+
+        Book book = new Book("10", "Book", "Author");
+        book.setBorrowed(true);
+        book.setBorrowedByUserId("2");
+        book.setDueDate(LocalDate.now().minusDays(2));
+        LibraryService library = new LibraryService();
+        library.setItems(new ArrayList<>(Arrays.asList(book)));
+
+        reminders.sendOverdueReminders(library, directory);
+
+        verify(observer, times(1)).notify(borrower, "You have 1 overdue item(s).");
+        verifyNoMoreInteractions(observer);
+    }
+}
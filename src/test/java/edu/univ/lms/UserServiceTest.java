@@ -11,8 +11,11 @@ import java.nio.file.Paths;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
 
 import edu.univ.lms.model.User;
+import edu.univ.lms.repository.LogRecord;
+import edu.univ.lms.repository.MutationLog;
 import edu.univ.lms.repository.UserRepository;
 import edu.univ.lms.service.UserService;
 
@@ -59,6 +62,23 @@ public class UserServiceTest {
         assertFalse(users.get(0).isAdmin());
     }
 
+    @Test
+    void registerUser_withJournal_shouldAppendInsteadOfRewritingFile(@TempDir Path dir) throws Exception {
+        try (MutationLog log = new MutationLog(dir.resolve("journal.log"))) {
+            userService.setMutationLog(log);
+            List<User> users = new ArrayList<>();
+
+            assertTrue(userService.registerUser(users, "John Doe", "john", "password123", "john@test.com"));
+
+            // The full user file is not rewritten; a single record is journaled instead
+            assertFalse(Files.exists(USERS_PATH));
+            List<LogRecord> records = log.readAll();
+            assertEquals(1, records.size());
+            assertEquals(LogRecord.Type.REGISTER, records.get(0).getType());
+            assertEquals("john", records.get(0).getUser().getUsername());
+        }
+    }
+
     @Test
     void registerUser_shouldRejectDuplicateUsername() {
         List<User> users = new ArrayList<>();
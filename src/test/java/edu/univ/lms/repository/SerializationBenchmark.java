@@ -0,0 +1,111 @@
+package edu.univ.lms.repository;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import edu.univ.lms.model.Book;
+
+/**
+ * Compares reflective GSON binding with the streaming {@link BookTypeAdapter}
+ * (not run by Surefire).
+ * <p>
+ * The reflective side reproduces the former setup: field reflection, tree
+ * based {@link LocalDate} (de)serializers and a {@link Book#rebuildFineStrategy()}
+ * pass per item. Both sides encode and decode the same catalog in memory, so
+ * only the adapters are measured; this class sits in the repository package
+ * because {@link JsonSupport} is not public. Each round's time is printed and
+ * the best one summarized. Run it with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=edu.univ.lms.repository.SerializationBenchmark
+ * </pre>
+ */
+public class SerializationBenchmark {
+
+    private static final int ITEMS = 300_000;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        List<Book> books = new ArrayList<>(ITEMS);
+        for (int i = 0; i < ITEMS; i++) {
+            Book b = new Book(String.valueOf(1_000_000 + i), "Title " + i, "Author " + (i % 5_000));
+            if (i % 3 == 0) {
+                b.setBorrowed(true);
+                b.setBorrowedByUserId(String.valueOf(i % 2_000));
+                b.setBorrowDate(LocalDate.of(2025, 1, 1).plusDays(i % 60));
+                b.setDueDate(b.getBorrowDate().plusDays(28));
+            }
+            books.add(b);
+        }
+
+        Gson reflective = new GsonBuilder()
+                .registerTypeAdapter(LocalDate.class,
+                        (JsonSerializer<LocalDate>) (date, type, context) -> new JsonPrimitive(date.toString()))
+                .registerTypeAdapter(LocalDate.class,
+                        (JsonDeserializer<LocalDate>) (json, type, context) -> LocalDate.parse(json.getAsString()))
+                .create();
+        Gson streaming = JsonSupport.builder().create();
+
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < ROUNDS; round++) {
+            String reflectiveJson = run("reflective", reflective, books, true, best, 0);
+            String streamingJson = run("streaming", streaming, books, false, best, 2);
+            if (!reflectiveJson.equals(streamingJson)) {
+                throw new IllegalStateException("Adapters wrote different JSON");
+            }
+        }
+        System.out.printf("best: reflective write %4.0f ms read %4.0f ms, streaming write %4.0f ms read %4.0f ms%n",
+                best[0] / 1e6, best[1] / 1e6, best[2] / 1e6, best[3] / 1e6);
+    }
+
+    private static String run(String label, Gson gson, List<Book> books, boolean rebuild,
+                              long[] best, int slot) throws Exception {
+        TypeAdapter<Book> adapter = gson.getAdapter(Book.class);
+
+        long start = System.nanoTime();
+        StringWriter out = new StringWriter(64 * ITEMS);
+        JsonWriter writer = gson.newJsonWriter(out);
+        writer.beginArray();
+        for (Book book : books) {
+            adapter.write(writer, book);
+        }
+        writer.endArray();
+        writer.flush();
+        long write = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        String json = out.toString();
+        JsonReader reader = new JsonReader(new StringReader(json));
+        List<Book> loaded = new ArrayList<>(ITEMS);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Book book = adapter.read(reader);
+            if (rebuild) {
+                book.rebuildFineStrategy();
+            }
+            loaded.add(book);
+        }
+        reader.endArray();
+        long read = System.nanoTime() - start;
+
+        if (loaded.size() != ITEMS) {
+            throw new IllegalStateException("Loaded " + loaded.size() + " items");
+        }
+        best[slot] = Math.min(best[slot], write);
+        best[slot + 1] = Math.min(best[slot + 1], read);
+        System.out.printf("%-10s write %4.0f ms  read %4.0f ms%n", label, write / 1e6, read / 1e6);
+        return json;
+    }
+}